@@ -2,6 +2,8 @@ package com.nathan.p2.config;
 
 import com.nathan.p2.service.AdbAutoInstallerService;
 import com.nathan.p2.service.AdbDeviceService;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,6 +25,7 @@ public class AdbApplicationStartupListener {
 
     private final AdbAutoInstallerService adbInstaller;
     private final AdbDeviceService adbDeviceService;
+    private final ExternalToolService toolService;
 
     @Value("${eca.automation.enabled:true}")
     private boolean automationEnabled;
@@ -84,7 +87,7 @@ public class AdbApplicationStartupListener {
 
             ProcessBuilder pb = new ProcessBuilder(adbPath, "start-server");
             pb.redirectErrorStream(true);
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
 
             // Read output
             try (BufferedReader reader = new BufferedReader(
@@ -3,8 +3,11 @@ package com.nathan.p2.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Data
 @Configuration
@@ -13,6 +16,13 @@ public class ToolsConfig {
     private Tools tools = new Tools();
     private Storage storage = new Storage();
     private Device device = new Device();
+    private Dissection dissection = new Dissection();
+    private Gsmtap gsmtap = new Gsmtap();
+    private Streams streams = new Streams();
+    private Processes processes = new Processes();
+    private Scheduling scheduling = new Scheduling();
+    private Persistence persistence = new Persistence();
+    private Records records = new Records();
     
     @Data
     public static class Tools {
@@ -21,6 +31,7 @@ public class ToolsConfig {
         private Tool mobileinsight = new Tool();
         private Tool adb = new Tool();
         private Tool tshark = new Tool();
+        private Tool sharkd = new Tool();
     }
     
     @Data
@@ -41,4 +52,90 @@ public class ToolsConfig {
     public static class Device {
         private Duration detectionInterval = Duration.ofSeconds(3);
     }
+    
+    @Data
+    public static class Dissection {
+        private boolean sharkdEnabled = true;
+        private int workersPerCapture = 2;
+        private int maxConcurrency = 0; // dissection scheduler threads; 0 = the cores left by ingest
+        private Duration idleTimeout = Duration.ofMinutes(5);
+        private Duration requestTimeout = Duration.ofSeconds(60);
+        private boolean cacheEnabled = true;
+        private DataSize cacheMemorySize = DataSize.ofMegabytes(64);
+        private DataSize cacheDiskSize = DataSize.ofMegabytes(16); // per session directory
+        private Duration cacheSettleTime = Duration.ofSeconds(10);
+    }
+    
+    @Data
+    public static class Gsmtap {
+        private boolean sessionCapture = false; // SCAT sends GSMTAP to the listener, which writes the session PCAP
+        private DataSize receiveBufferSize = DataSize.ofMegabytes(8); // SO_RCVBUF, capped by net.core.rmem_max on Linux
+        private Duration frameGapThreshold = Duration.ofMillis(500);
+        private DataSize pcapFlushSize = DataSize.ofKilobytes(256);
+        private Duration pcapFlushInterval = Duration.ofMillis(200);
+        private PcapDurability pcapDurability = PcapDurability.PERIODIC;
+        private Duration pcapFsyncInterval = Duration.ofSeconds(5);
+        private int liveDecodeQueue = 4096; // datagrams waiting for a live tshark decode; more are dropped while it lags
+    }
+    
+    /**
+     * When PCAP data written by the GSMTAP listener is forced to the storage device
+     */
+    public enum PcapDurability {
+        /** Never; the OS writes back on its own schedule */
+        NONE,
+        /** From the writer's periodic tick, at most once per fsync interval */
+        PERIODIC,
+        /** After every flushed batch */
+        BATCH
+    }
+    
+    @Data
+    public static class Streams {
+        private int bufferCapacity = 1024; // per subscriber of a live stream; overflow follows the stream's policy
+        private int decodeReplay = 200; // decoded packets a viewer joining a running session decode receives first
+    }
+    
+    @Data
+    public static class Processes {
+        private double memoryFraction = 0.5; // share of physical memory external tools may use together
+        private Map<String, ToolLimit> tools = new LinkedHashMap<>(); // by executable name, e.g. tshark, adb, python
+        private int stderrLines = 500; // last stderr lines kept per process
+        private Duration finishedRetention = Duration.ofMinutes(1); // exited processes stay registered this long
+    }
+    
+    @Data
+    public static class ToolLimit {
+        private int maxConcurrent = 0; // 0 = as many as fit the cores and memory below
+        private double coresPerProcess = 1.0;
+        private DataSize memoryPerProcess = DataSize.ofMegabytes(256);
+        private Duration timeout = Duration.ZERO; // non-live processes running longer are stopped; 0 = no limit
+    }
+    
+    @Data
+    public static class Scheduling {
+        private StagePool ingest = new StagePool();
+        private StagePool dissection = new StagePool();
+        private StagePool analytics = new StagePool();
+        private StagePool persistence = new StagePool();
+        private StagePool egress = new StagePool();
+    }
+    
+    @Data
+    public static class StagePool {
+        private int threads = 0; // 0 = sized from the cores (see PipelineSchedulers)
+        private int queueCapacity = 10_000; // tasks waiting for a thread before submissions are rejected
+    }
+    
+    @Data
+    public static class Persistence {
+        private int batchSize = 500; // rows per multi-row INSERT
+        private Duration flushInterval = Duration.ofSeconds(1); // buffered rows are written at least this often
+    }
+    
+    @Data
+    public static class Records {
+        private boolean liveIngest = true; // write records while capturing, not only when the capture stops
+        private Duration liveInterval = Duration.ofSeconds(2); // how often frames appended to the capture are ingested
+    }
 }
@@ -2,6 +2,7 @@ package com.nathan.p2.controller;
 
 import com.nathan.p2.service.AdbClusteringService;
 import com.nathan.p2.service.AdbDeviceService;
+import com.nathan.p2.util.VirtualThreads;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -44,6 +45,7 @@ public class AdbController {
             @PathVariable String deviceId) {
         log.info("Getting cellular data from device: {}", deviceId);
         return Mono.fromCallable(() -> adbService.getCellularData(deviceId))
+                .subscribeOn(VirtualThreads.IO)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
@@ -54,6 +56,7 @@ public class AdbController {
             @PathVariable String deviceId) {
         log.info("Getting GPS data from device: {}", deviceId);
         return Mono.fromCallable(() -> adbService.getGpsData(deviceId))
+                .subscribeOn(VirtualThreads.IO)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
@@ -64,6 +67,7 @@ public class AdbController {
             @PathVariable String deviceId) {
         log.info("Getting device sample from: {}", deviceId);
         return Mono.fromCallable(() -> adbService.getDeviceSample(deviceId))
+                .subscribeOn(VirtualThreads.IO)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
@@ -103,7 +107,7 @@ public class AdbController {
         log.info("Starting cellular data stream for device {}", deviceId);
 
         return Flux.interval(Duration.ofSeconds(intervalSeconds))
-                .flatMap(tick -> Mono.fromCallable(() -> adbService.getCellularData(deviceId)))
+                .flatMap(tick -> Mono.fromCallable(() -> adbService.getCellularData(deviceId)).subscribeOn(VirtualThreads.IO))
                 .filter(data -> data != null)
                 .map(data -> ServerSentEvent.<AdbDeviceService.CellularData>builder()
                         .id(String.valueOf(data.getTimestamp()))
@@ -123,7 +127,7 @@ public class AdbController {
         log.info("Starting GPS stream for device {}", deviceId);
 
         return Flux.interval(Duration.ofSeconds(intervalSeconds))
-                .flatMap(tick -> Mono.fromCallable(() -> adbService.getGpsData(deviceId)))
+                .flatMap(tick -> Mono.fromCallable(() -> adbService.getGpsData(deviceId)).subscribeOn(VirtualThreads.IO))
                 .filter(data -> data != null && data.getLatitude() != null)
                 .map(data -> ServerSentEvent.<AdbDeviceService.GpsData>builder()
                         .id(String.valueOf(data.getTimestamp()))
@@ -2,6 +2,7 @@ package com.nathan.p2.controller;
 
 import com.nathan.p2.dto.PaginatedResponse;
 import com.nathan.p2.dto.RecordDto;
+import com.nathan.p2.service.RecordIngestService;
 import com.nathan.p2.service.RecordService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,9 +13,12 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
+import java.util.Map;
+
 @Slf4j
 @RestController
 @RequestMapping("/api/records")
@@ -24,6 +28,7 @@ import reactor.core.publisher.Mono;
 public class RecordController {
     
     private final RecordService recordService;
+    private final RecordIngestService recordIngestService;
 
     @Operation(
         summary = "Get paginated signaling records for a session",
@@ -87,4 +92,31 @@ public class RecordController {
         log.debug("Fetching record: {}", recordId);
         return recordService.getRecord(recordId);
     }
+
+    @Operation(
+        summary = "Ingest the signaling records of a session's capture",
+        description = "Decodes the session's capture and replaces its stored records. Captures are ingested automatically while capturing and when the capture stops; use this for a capture that was replaced or imported."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Records ingested",
+            content = @Content(mediaType = "application/json")
+        ),
+        @ApiResponse(
+            responseCode = "404",
+            description = "Session or capture not found",
+            content = @Content(mediaType = "application/json")
+        )
+    })
+    @PostMapping("/session/{sessionId}/ingest")
+    public Mono<ResponseEntity<Map<String, Object>>> ingestSessionRecords(
+        @Parameter(description = "Session ID", required = true, example = "1")
+        @PathVariable Long sessionId
+    ) {
+        log.info("Ingesting records of session {}", sessionId);
+        return recordIngestService.ingestSession(sessionId)
+            .map(count -> ResponseEntity.ok(Map.<String, Object>of("sessionId", sessionId, "records", count)))
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
 }
@@ -28,8 +28,10 @@ public class Record {
     private String direction;     // UL, DL
     private String messageType;
     private String layer;         // L1, L2, L3
+    private String rat;           // GSM, UMTS, LTE, NR
     private Integer frameNumber;
     private String hexData;
     private String decodedData;
+    private String payloadJson;   // decoded fields of the message
     private Integer length;
 }
@@ -22,6 +22,7 @@ public class RecordDto {
     private String direction;     // UL, DL
     private String messageType;   // e.g., "RRC Connection Setup", "Attach Request"
     private String layer;         // L1, L2, L3
+    private String rat;           // GSM, UMTS, LTE, NR
     private Integer frameNumber;
     private String hexData;       // Raw hex dump
     private String decodedData;   // Human-readable decoded message
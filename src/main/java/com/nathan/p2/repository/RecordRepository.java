@@ -1,6 +1,7 @@
 package com.nathan.p2.repository;
 
 import com.nathan.p2.domain.Record;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
@@ -23,14 +24,39 @@ public interface RecordRepository extends ReactiveCrudRepository<Record, Long> {
      */
     Flux<Record> findBySessionIdAndProtocol(Long sessionId, String protocol);
     
+    /**
+     * One page of a session's records in capture order.
+     */
+    @Query("SELECT * FROM records WHERE session_id = :sessionId ORDER BY frame_number LIMIT :limit OFFSET :offset")
+    Flux<Record> findPage(Long sessionId, int limit, long offset);
+    
+    /**
+     * One page of a session's records of one protocol in capture order.
+     */
+    @Query("SELECT * FROM records WHERE session_id = :sessionId AND protocol = :protocol ORDER BY frame_number LIMIT :limit OFFSET :offset")
+    Flux<Record> findPageByProtocol(Long sessionId, String protocol, int limit, long offset);
+    
     /**
      * Count records for a session.
      */
     @Query("SELECT COUNT(*) FROM records WHERE session_id = :sessionId")
     Mono<Long> countBySessionId(Long sessionId);
     
+    /**
+     * Count records of one protocol for a session.
+     */
+    @Query("SELECT COUNT(*) FROM records WHERE session_id = :sessionId AND protocol = :protocol")
+    Mono<Long> countBySessionIdAndProtocol(Long sessionId, String protocol);
+    
     /**
      * Find records by session and direction.
      */
     Flux<Record> findBySessionIdAndDirection(Long sessionId, String direction);
+    
+    /**
+     * Remove a session's records before they are ingested again.
+     */
+    @Modifying
+    @Query("DELETE FROM records WHERE session_id = :sessionId")
+    Mono<Integer> deleteBySessionId(Long sessionId);
 }
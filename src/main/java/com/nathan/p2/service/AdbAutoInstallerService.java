@@ -1,7 +1,10 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
 import com.nathan.p2.util.PlatformUtils;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
@@ -16,12 +19,15 @@ import java.util.zip.ZipInputStream;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class AdbAutoInstallerService {
 
     private static final String WINDOWS_ADB_URL = "https://dl.google.com/android/repository/platform-tools-latest-windows.zip";
     private static final String LINUX_ADB_URL = "https://dl.google.com/android/repository/platform-tools-latest-linux.zip";
     private static final String MAC_ADB_URL = "https://dl.google.com/android/repository/platform-tools-latest-darwin.zip";
     
+    private final ExternalToolService toolService;
+    
     private Path adbInstallPath;
     private Path adbExecutable;
 
@@ -78,9 +84,8 @@ public class AdbAutoInstallerService {
 
     private boolean isAdbInPath() {
         try {
-            Process process = new ProcessBuilder(getAdbCommand(), "version")
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(getAdbCommand(), "version")
+                    .redirectErrorStream(true), ToolPriority.INTERACTIVE);
             int exitCode = process.waitFor();
             return exitCode == 0;
         } catch (Exception e) {
@@ -107,9 +112,8 @@ public class AdbAutoInstallerService {
     private String getAdbVersion(Path adbPath) {
         try {
             String adbCmd = adbPath != null ? adbPath.toString() : getAdbCommand();
-            Process process = new ProcessBuilder(adbCmd, "version")
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(adbCmd, "version")
+                    .redirectErrorStream(true), ToolPriority.INTERACTIVE);
             
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line = reader.readLine();
@@ -1,9 +1,12 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.util.VirtualThreads;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -11,14 +14,17 @@ import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class AdbCommandExecutor {
 
+    private final ExternalToolService toolService;
+
     public Mono<String> execute(String... command) {
         return Mono.fromCallable(() -> {
             ProcessBuilder pb = new ProcessBuilder(command);
             pb.redirectErrorStream(true);
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             
             StringBuilder output = new StringBuilder();
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
@@ -40,7 +46,7 @@ public class AdbCommandExecutor {
             }
             
             return output.toString();
-        }).subscribeOn(Schedulers.boundedElastic())
+        }).subscribeOn(VirtualThreads.IO)
           .doOnError(e -> log.error("ADB command error: {}", e.getMessage()));
     }
 }
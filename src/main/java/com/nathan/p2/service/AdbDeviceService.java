@@ -1,6 +1,9 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -20,8 +23,11 @@ import java.util.regex.Pattern;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class AdbDeviceService {
 
+    private final ExternalToolService toolService;
+
     @Value("${adb.path:adb}")
     private String adbPath;
 
@@ -263,7 +269,7 @@ public class AdbDeviceService {
 
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
-        Process process = pb.start();
+        Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
 
         StringBuilder output = new StringBuilder();
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
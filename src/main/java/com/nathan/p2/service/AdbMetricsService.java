@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -29,6 +30,8 @@ import java.util.regex.Pattern;
 @Service
 @RequiredArgsConstructor
 public class AdbMetricsService {
+    private static final Duration ADB_COMMAND_TIMEOUT = Duration.ofSeconds(30);
+
     private final ExternalToolService toolService;
     private final ToolsConfig config;
 
@@ -109,6 +112,7 @@ public class AdbMetricsService {
             .workingDirectory(Path.of(System.getProperty("user.dir")))
             .environment(Map.of())
             .captureStderr(true)
+            .timeout(ADB_COMMAND_TIMEOUT) // adb shell hangs when the device drops off USB
             .build();
 
         return toolService.start(spec)
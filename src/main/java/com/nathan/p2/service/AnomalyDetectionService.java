@@ -3,12 +3,12 @@ package com.nathan.p2.service;
 import com.nathan.p2.domain.Anomaly;
 import com.nathan.p2.domain.AnomalyCategory;
 import com.nathan.p2.domain.KpiAggregate;
-import com.nathan.p2.repository.AnomalyRepository;
 import com.nathan.p2.repository.KpiAggregateRepository;
+import com.nathan.p2.service.persistence.BatchWriter;
+import com.nathan.p2.service.persistence.InsertTables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
@@ -23,12 +23,15 @@ import java.util.stream.Collectors;
 public class AnomalyDetectionService {
 
     private final KpiAggregateRepository kpiRepository;
-    private final AnomalyRepository anomalyRepository;
+    private final BatchWriter batchWriter;
 
-    public Flux<Anomaly> detectAndSaveAnomalies(Long sessionId) {
+    /**
+     * Detect anomalies in the session's KPIs and save them; completes with the number saved
+     */
+    public Mono<Long> detectAndSaveAnomalies(Long sessionId) {
         return kpiRepository.findBySessionId(sessionId)
             .collectList()
-            .flatMapMany(kpis -> {
+            .flatMap(kpis -> {
                 List<Anomaly> anomalies = new ArrayList<>();
                 
                 // Rule 1: Poor Coverage (RSRP < -105 dBm)
@@ -135,8 +138,8 @@ public class AnomalyDetectionService {
                 
                 log.info("Detected {} anomalies for session {}", anomalies.size(), sessionId);
                 
-                return Flux.fromIterable(anomalies)
-                    .flatMap(anomalyRepository::save);
+                return batchWriter.write(InsertTables.ANOMALIES, anomalies)
+                    .thenReturn((long) anomalies.size());
             });
     }
 
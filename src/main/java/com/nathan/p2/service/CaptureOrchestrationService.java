@@ -4,14 +4,20 @@ import com.nathan.p2.config.ToolsConfig;
 import com.nathan.p2.domain.*;
 import com.nathan.p2.repository.ArtifactRepository;
 import com.nathan.p2.repository.KpiAggregateRepository;
+import com.nathan.p2.service.pcap.PcapScanService;
 import com.nathan.p2.service.process.ExternalToolService;
 import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -36,10 +42,15 @@ public class CaptureOrchestrationService {
     private final ArtifactRepository artifactRepository;
     private final KpiAggregateRepository kpiRepository;
     private final KpiCalculatorService kpiCalculatorService;
+    private final RecordIngestService recordIngestService;
+    private final GsmtapListenerService gsmtapListener;
+    private final PcapScanService pcapScanService;
     private final ToolsConfig toolsConfig;
+    private final StreamSinkFactory streamSinks;
+    private final PipelineSchedulers schedulers;
     
     private final Map<Long, ProcessHandle> activeCaptures = new ConcurrentHashMap<>();
-    private final Map<Long, Sinks.Many<String>> logSinks = new ConcurrentHashMap<>();
+    private final Map<Long, StreamSink<String>> logSinks = new ConcurrentHashMap<>();
     private final Map<Long, reactor.core.Disposable> kpiStreamDisposables = new ConcurrentHashMap<>();
     
     private static final int CREATE_NO_WINDOW = 0x08000000;
@@ -88,6 +99,9 @@ public class CaptureOrchestrationService {
         }
         env.put("PYTHONPATH", pythonPath);
         
+        // Either SCAT writes the PCAP itself or it sends GSMTAP to the listener, which writes it
+        boolean viaListener = toolsConfig.getGsmtap().isSessionCapture();
+        
         // Detect COM ports on Windows, use USB on Linux
         List<String> args;
         if (System.getProperty("os.name").toLowerCase().contains("win")) {
@@ -99,26 +113,28 @@ public class CaptureOrchestrationService {
                     "-m", "scat.main",
                     "-t", toolsConfig.getTools().getScat().getType(),
                     "-s", comPort,
-                    "-b", "115200",
-                    "--pcap-file", pcapOutput.toString()
+                    "-b", "115200"
                 );
             } else {
                 log.warn("No usable COM ports found, falling back to USB mode");
                 args = List.of(
                     "-m", "scat.main",
                     "-t", toolsConfig.getTools().getScat().getType(),
-                    "-u",
-                    "--pcap-file", pcapOutput.toString()
+                    "-u"
                 );
             }
         } else {
             args = List.of(
                 "-m", "scat.main",
                 "-t", toolsConfig.getTools().getScat().getType(),
-                "-u",
-                "--pcap-file", pcapOutput.toString()
+                "-u"
             );
         }
+        if (!viaListener) {
+            args = new ArrayList<>(args);
+            args.add("--pcap-file");
+            args.add(pcapOutput.toString());
+        }
         
         ProcessSpec spec = ProcessSpec.builder()
                 .id("scat-" + session.getId())
@@ -127,15 +143,18 @@ public class CaptureOrchestrationService {
                 .workingDirectory(scatDir.getParent())
                 .environment(env)
                 .captureStderr(true)
+                .priority(ToolPriority.LIVE)
                 .build();
         
-        return externalToolService.start(spec)
+        Mono<Void> output = viaListener ? openListenerCapture(session.getId(), pcapOutput) : Mono.empty();
+        return output.then(externalToolService.start(spec))
                 .doOnSuccess(handle -> {
                     activeCaptures.put(session.getId(), handle);
                     log.info("SCAT capture started for session {} using orchestrator", session.getId());
 
                     // Create log sink for streaming
-                    Sinks.Many<String> sink = Sinks.many().multicast().onBackpressureBuffer();
+                    StreamSink<String> sink = streamSinks.create("scat-logs", session.getId(),
+                        StreamPolicy.dropOldest(streamSinks.capacity()));
                     logSinks.put(session.getId(), sink);
                     
                     // Stream logs asynchronously with proper formatting
@@ -176,8 +195,31 @@ public class CaptureOrchestrationService {
                     
                     // Start real-time KPI streaming (every 5 seconds)
                     startRealtimeKpiStreaming(session.getId(), pcapOutput);
+                    
+                    // Write signaling records while capturing
+                    recordIngestService.startLive(session.getId(), pcapOutput);
                 })
-                .doOnError(error -> log.error("Failed to start SCAT capture", error));
+                .doOnError(error -> {
+                    log.error("Failed to start SCAT capture", error);
+                    gsmtapListener.stopSessionCapture(session.getId());
+                });
+    }
+
+    /**
+     * Have the GSMTAP listener write the session's PCAP. Without {@code --pcap-file} SCAT sends
+     * its GSMTAP to UDP 4729; only control-plane messages reach the capture that way.
+     */
+    private Mono<Void> openListenerCapture(Long sessionId, Path pcapOutput) {
+        return Mono.fromCallable(() -> {
+                    if (!gsmtapListener.isRunning()) {
+                        gsmtapListener.startListener();
+                    }
+                    gsmtapListener.startSessionCapture(sessionId, pcapOutput);
+                    return gsmtapListener.liveCapture(sessionId)
+                            .orElseThrow(() -> new IllegalStateException("Could not open GSMTAP capture " + pcapOutput));
+                })
+                .subscribeOn(VirtualThreads.IO)
+                .then();
     }
 
     public Mono<Void> stopCapture(Long sessionId) {
@@ -190,7 +232,11 @@ public class CaptureOrchestrationService {
         
         return externalToolService.stop(handle)
                 .timeout(java.time.Duration.ofSeconds(10))
+                .then(Mono.fromRunnable(() -> gsmtapListener.stopSessionCapture(sessionId))
+                        .subscribeOn(VirtualThreads.IO))
                 .then(sessionService.updateSessionStatus(sessionId, SessionStatus.ANALYZING))
+                .then(buildPacketIndex(sessionId))
+                .then(ingestRecords(sessionId))
                 .then(runKpiCalculation(sessionId))
                 .then(sessionService.updateSessionStatus(sessionId, SessionStatus.COMPLETED))
                 .onErrorResume(error -> {
@@ -207,7 +253,7 @@ public class CaptureOrchestrationService {
     private void cleanupSession(Long sessionId) {
         try {
             activeCaptures.remove(sessionId);
-            Sinks.Many<String> sink = logSinks.remove(sessionId);
+            StreamSink<String> sink = logSinks.remove(sessionId);
             if (sink != null) {
                 sink.tryEmitComplete();
             }
@@ -218,6 +264,8 @@ public class CaptureOrchestrationService {
                 kpiDisposable.dispose();
                 log.info("Stopped real-time KPI streaming for session {}", sessionId);
             }
+            recordIngestService.cancel(sessionId);
+            gsmtapListener.stopSessionCapture(sessionId);
             
             log.info("Cleaned up resources for session {}", sessionId);
         } catch (Exception e) {
@@ -225,6 +273,38 @@ public class CaptureOrchestrationService {
         }
     }
 
+    /**
+     * Index the finished capture so later queries by time, protocol or message seek straight
+     * to the matching frames. A missing index only makes those queries slower.
+     */
+    private Mono<Void> buildPacketIndex(Long sessionId) {
+        return sessionService.getSession(sessionId)
+                .map(session -> Paths.get(session.getSessionDir()).resolve("capture.pcap"))
+                .filter(pcapFile -> pcapFile.toFile().exists())
+                .flatMap(pcapScanService::buildIndex)
+                .onErrorResume(error -> {
+                    log.warn("Could not index capture of session {}: {}", sessionId, error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Write the signaling records of the capture not ingested live yet. Without them the
+     * records view is empty, but the session itself is still usable.
+     */
+    private Mono<Void> ingestRecords(Long sessionId) {
+        return sessionService.getSession(sessionId)
+                .map(session -> Paths.get(session.getSessionDir()).resolve("capture.pcap"))
+                .filter(pcapFile -> pcapFile.toFile().exists())
+                .flatMap(pcapFile -> recordIngestService.finish(sessionId, pcapFile))
+                .onErrorResume(error -> {
+                    log.warn("Could not ingest records of session {}: {}", sessionId, error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
     private Mono<Void> runKpiCalculation(Long sessionId) {
         return sessionService.getSession(sessionId)
                 .flatMap(session -> {
@@ -256,11 +336,11 @@ public class CaptureOrchestrationService {
                 .createdAt(LocalDateTime.now())
                 .build();
         
-        return artifactRepository.save(artifact);
+        return artifactRepository.save(artifact).subscribeOn(schedulers.persistence());
     }
 
     public Flux<String> streamLogs(Long sessionId) {
-        Sinks.Many<String> sink = logSinks.get(sessionId);
+        StreamSink<String> sink = logSinks.get(sessionId);
         if (sink == null) {
             return Flux.error(new IllegalStateException("No active capture for session " + sessionId));
         }
@@ -313,7 +393,7 @@ public class CaptureOrchestrationService {
                 "if p.vid == 0x05C6 and p.pid in [0x90B8, 0x90DB, 0x90E5]]"
             );
             pb.redirectErrorStream(true);
-            Process process = pb.start();
+            Process process = externalToolService.launch(pb, ToolPriority.LIVE);
             
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
@@ -365,7 +445,7 @@ public class CaptureOrchestrationService {
                 port
             );
             pb.redirectErrorStream(true);
-            Process process = pb.start();
+            Process process = externalToolService.launch(pb, ToolPriority.LIVE);
             boolean finished = process.waitFor(3, TimeUnit.SECONDS);
             if (!finished) {
                 process.destroyForcibly();
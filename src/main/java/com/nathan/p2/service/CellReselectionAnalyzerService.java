@@ -5,53 +5,34 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CellReselectionAnalyzerService {
+    private static final String INTRA_FREQ = "lte-rrc.cellReselectionPriority && lte-rrc.carrierFreq == 0";
+    private static final String INTER_FREQ = "lte-rrc.cellReselectionPriority && lte-rrc.carrierFreq != 0";
+    private static final String INTER_RAT = "lte-rrc.t_ReselectionEUTRA";
+
+    private final TSharkIntegrationService tsharkService;
     
     public Mono<Map<String, Object>> analyzeCellReselection(String pcapPath) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> result = new HashMap<>();
-            
-            int intraFreqReselections = countEvents(pcapPath, "lte-rrc.cellReselectionPriority && lte-rrc.carrierFreq == 0");
-            int interFreqReselections = countEvents(pcapPath, "lte-rrc.cellReselectionPriority && lte-rrc.carrierFreq != 0");
-            int interRatReselections = countEvents(pcapPath, "lte-rrc.t_ReselectionEUTRA");
-            
-            result.put("intraFreq", intraFreqReselections);
-            result.put("interFreq", interFreqReselections);
-            result.put("interRAT", interRatReselections);
-            result.put("total", intraFreqReselections + interFreqReselections + interRatReselections);
-            
-            return result;
-        });
-    }
-    
-    private int countEvents(String pcapPath, String filter) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath,
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            int count = 0;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                while (reader.readLine() != null) {
-                    count++;
-                }
-            }
-            process.waitFor();
-            return count;
-        } catch (Exception e) {
-            log.error("Failed to count events", e);
-            return 0;
-        }
+        return tsharkService.countPackets(Path.of(pcapPath), List.of(INTRA_FREQ, INTER_FREQ, INTER_RAT))
+            .map(counts -> {
+                Map<String, Object> result = new HashMap<>();
+                
+                int intraFreqReselections = counts.getOrDefault(INTRA_FREQ, 0);
+                int interFreqReselections = counts.getOrDefault(INTER_FREQ, 0);
+                int interRatReselections = counts.getOrDefault(INTER_RAT, 0);
+                
+                result.put("intraFreq", intraFreqReselections);
+                result.put("interFreq", interFreqReselections);
+                result.put("interRAT", interRatReselections);
+                result.put("total", intraFreqReselections + interFreqReselections + interRatReselections);
+                
+                return result;
+            });
     }
 }
@@ -1,14 +1,13 @@
 package com.nathan.p2.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.service.process.ToolPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -17,63 +16,34 @@ import java.util.*;
 @RequiredArgsConstructor
 public class ComprehensivePcapExtractorService {
     
-    private final ObjectMapper objectMapper;
+    private static final List<String> DATASET_FIELDS = List.of(
+        "frame.number",
+        "frame.time_epoch",
+        "gsmtap.type",
+        "gsmtap.arfcn",
+        "gsmtap.channel",
+        "gsmtap.sub_type",
+        "lte-rrc.rsrpResult",
+        "lte-rrc.rsrqResult",
+        "lte-rrc.messageIdentifier"
+    );
+
+    private final TSharkIntegrationService tsharkService;
 
     public Mono<List<Map<String, Object>>> extractCompleteDataset(Path pcapPath) {
-        return Mono.fromCallable(() -> {
-            List<Map<String, Object>> dataset = new ArrayList<>();
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath.toString(),
-                "-Y", "lte-rrc.rsrpResult or gsmtap",
-                "-T", "json",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-e", "gsmtap.type",
-                "-e", "gsmtap.arfcn",
-                "-e", "gsmtap.channel",
-                "-e", "gsmtap.sub_type",
-                "-e", "lte-rrc.rsrpResult",
-                "-e", "lte-rrc.rsrqResult",
-                "-e", "lte-rrc.messageIdentifier"
-            );
-            
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.trim().startsWith("[") || line.trim().startsWith("{") || line.trim().startsWith("}") || line.trim().startsWith("]") || line.contains("\"")) {
-                        jsonOutput.append(line);
-                    }
-                }
-            }
-            
-            process.waitFor();
-            
-            String json = jsonOutput.toString().trim();
-            if (json.isEmpty() || (!json.startsWith("[") && !json.startsWith("{"))) {
-                log.warn("No valid JSON from TShark for {}", pcapPath);
-                return dataset;
-            }
-            
-            JsonNode root = objectMapper.readTree(json);
-            if (root.isArray()) {
-                for (JsonNode packet : root) {
-                    JsonNode layers = packet.path("_source").path("layers");
-                    if (!layers.isMissingNode()) {
-                        Map<String, Object> dataPoint = extractFromLayers(layers);
-                        if (!dataPoint.isEmpty()) {
-                            dataset.add(dataPoint);
-                        }
-                    }
-                }
-            }
-            
-            log.info("Extracted {} data points from {}", dataset.size(), pcapPath);
-            return dataset;
-        });
+        return streamCompleteDataset(pcapPath, ToolPriority.INTERACTIVE)
+            .collectList()
+            .doOnNext(dataset -> log.info("Extracted {} data points from {}", dataset.size(), pcapPath));
+    }
+
+    /**
+     * Data points in capture order, emitted while tshark (started under the given priority)
+     * is still reading the file
+     */
+    public Flux<Map<String, Object>> streamCompleteDataset(Path pcapPath, ToolPriority priority) {
+        return tsharkService.streamJsonLayers(pcapPath, "lte-rrc.rsrpResult or gsmtap", DATASET_FIELDS, priority)
+            .map(this::extractFromLayers)
+            .filter(dataPoint -> !dataPoint.isEmpty());
     }
 
     private Map<String, Object> extractFromLayers(JsonNode layers) {
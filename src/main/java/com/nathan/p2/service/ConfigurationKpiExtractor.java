@@ -1,15 +1,16 @@
 package com.nathan.p2.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.kpi.KpiAccumulator;
+import com.nathan.p2.service.kpi.KpiAccumulatorSource;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
-import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Extracts configuration KPIs from PCAP files.
@@ -17,119 +18,48 @@ import java.util.List;
  */
 @Slf4j
 @Component
-public class ConfigurationKpiExtractor {
-
-    private final ObjectMapper objectMapper = new ObjectMapper();
+public class ConfigurationKpiExtractor implements KpiAccumulatorSource {
 
     /**
-     * Extract configuration KPIs from PCAP file.
-     * 
-     * @param pcapPath Path to PCAP file
-     * @return JSON object with configuration KPIs
+     * QoS configuration changes: QCI, ARP, GBR, MBR per bearer
      */
-    public ObjectNode extractConfigurationKpis(Path pcapPath) {
-        ObjectNode kpis = objectMapper.createObjectNode();
-        
-        try {
-            // QoS Configuration Tracking
-            ObjectNode qosConfig = extractQosConfiguration(pcapPath);
-            kpis.set("QOS_CONFIG", qosConfig);
-            
-            // RRC Configuration Tracking
-            ObjectNode rrcConfig = extractRrcConfiguration(pcapPath);
-            kpis.set("RRC_CONFIG", rrcConfig);
-            
-            log.info("Configuration KPIs extracted: QOS changes={}, RRC reconfigs={}", 
-                    qosConfig.get("change_count").asInt(), 
-                    rrcConfig.get("reconfig_count").asInt());
-            
-        } catch (Exception e) {
-            log.error("Failed to extract configuration KPIs: {}", e.getMessage());
-        }
-        
-        return kpis;
-    }
+    private static final DisplayFilter QOS_CONFIG = DisplayFilter.compile(
+        "nas_eps.esm.qci or nas_eps.esm.arp or nas_eps.esm.dl_guar_br or nas_eps.esm.ul_guar_br");
 
     /**
-     * Extract QoS configuration changes.
-     * Tracks: QCI, ARP, GBR, MBR changes per bearer.
+     * RRCConnectionReconfiguration messages
      */
-    private ObjectNode extractQosConfiguration(Path pcapPath) {
-        ObjectNode qos = objectMapper.createObjectNode();
-        List<String> changes = new ArrayList<>();
-        
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath.toString(),
-                "-Y", "nas-eps.esm.qci or nas-eps.esm.arp or nas-eps.esm.dl_guar_br or nas-eps.esm.ul_guar_br",
-                "-T", "fields",
-                "-e", "frame.time_epoch",
-                "-e", "nas-eps.esm.qci",
-                "-e", "nas-eps.esm.arp",
-                "-e", "nas-eps.esm.dl_guar_br",
-                "-e", "nas-eps.esm.ul_guar_br",
-                "-E", "separator=|"
-            );
-            
-            Process process = pb.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    changes.add(line);
-                }
+    private static final DisplayFilter RRC_RECONFIG = DisplayFilter.compile("lte-rrc.rrcConnectionReconfiguration_element");
+
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new KpiAccumulator() {
+            private int qosChanges;
+            private int rrcReconfigs;
+
+            @Override
+            public Set<String> fields() {
+                Set<String> fields = new LinkedHashSet<>(QOS_CONFIG.fields());
+                fields.addAll(RRC_RECONFIG.fields());
+                return fields;
             }
-            
-            process.waitFor();
-            
-        } catch (Exception e) {
-            log.error("QoS extraction failed: {}", e.getMessage());
-        }
-        
-        qos.put("change_count", changes.size());
-        qos.putPOJO("changes", changes);
-        return qos;
-    }
 
-    /**
-     * Extract RRC reconfiguration events.
-     * Tracks: RRCConnectionReconfiguration messages with configuration changes.
-     */
-    private ObjectNode extractRrcConfiguration(Path pcapPath) {
-        ObjectNode rrc = objectMapper.createObjectNode();
-        List<String> reconfigs = new ArrayList<>();
-        
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath.toString(),
-                "-Y", "lte-rrc.rrcConnectionReconfiguration_element",
-                "-T", "fields",
-                "-e", "frame.time_epoch",
-                "-e", "lte-rrc.measConfig_element",
-                "-e", "lte-rrc.radioResourceConfigDedicated_element",
-                "-e", "lte-rrc.drb_ToAddModList",
-                "-E", "separator=|"
-            );
-            
-            Process process = pb.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty()) {
-                    reconfigs.add(line);
-                }
+            @Override
+            public void accept(DissectedPacket packet) {
+                if (QOS_CONFIG.test(packet)) qosChanges++;
+                if (RRC_RECONFIG.test(packet)) rrcReconfigs++;
+            }
+
+            @Override
+            public List<KpiAggregate> results(Long sessionId) {
+                log.info("Configuration KPIs extracted: QOS changes={}, RRC reconfigs={}", qosChanges, rrcReconfigs);
+                return List.of(
+                    KpiAccumulator.kpi(sessionId, "QOS_CONFIG_CHANGES",
+                        (double) qosChanges, (double) qosChanges, (double) qosChanges, "LTE"),
+                    KpiAccumulator.kpi(sessionId, "RRC_CONFIG_RECONFIGS",
+                        (double) rrcReconfigs, (double) rrcReconfigs, (double) rrcReconfigs, "LTE")
+                );
             }
-            
-            process.waitFor();
-            
-        } catch (Exception e) {
-            log.error("RRC configuration extraction failed: {}", e.getMessage());
-        }
-        
-        rrc.put("reconfig_count", reconfigs.size());
-        rrc.putPOJO("reconfigurations", reconfigs);
-        return rrc;
+        };
     }
 }
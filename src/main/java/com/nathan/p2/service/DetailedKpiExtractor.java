@@ -1,130 +1,105 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.KpiAggregate;
-import com.nathan.p2.repository.KpiAggregateRepository;
-import lombok.RequiredArgsConstructor;
+import com.nathan.p2.service.kpi.KpiAccumulator;
+import com.nathan.p2.service.kpi.KpiAccumulatorSource;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
+import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
 
+/**
+ * Detailed KPIs broken down by establishment cause, attach type and serving cell.
+ * Evaluated by the single-pass {@link com.nathan.p2.service.kpi.KpiEngine}.
+ */
 @Slf4j
-@Service
-@RequiredArgsConstructor
-public class DetailedKpiExtractor {
+@Component
+public class DetailedKpiExtractor implements KpiAccumulatorSource {
 
-    private final KpiAggregateRepository kpiRepository;
+    private static final String RRC_REQUEST = "lte-rrc.rrcConnectionRequest_element";
+    private static final String RRC_COMPLETE = "lte-rrc.rrcConnectionSetupComplete_element";
+    private static final String CAUSE = "lte-rrc.establishmentCause";
+    private static final String CELL = "lte-rrc.physCellId";
+    private static final String ATTACH_TYPE = "nas_eps.emm.eps_att_type";
 
-    public Mono<Void> extractAll(Long sessionId, Path pcapFile) {
-        log.info("Extracting detailed KPIs (by cause/type/cell) for session {}", sessionId);
-        return Flux.merge(
-            extractRrcByCause(sessionId, pcapFile),
-            extractAttachByType(sessionId, pcapFile),
-            extractPerCellKpis(sessionId, pcapFile)
-        ).then();
-    }
+    private static final DisplayFilter ATTACH_REQUEST = DisplayFilter.compile("nas_eps.nas_msg_emm_type == 0x41");
+    private static final DisplayFilter ATTACH_ACCEPT = DisplayFilter.compile("nas_eps.nas_msg_emm_type == 0x42");
 
-    private Mono<String> exec(String... command) {
-        return Mono.fromCallable(() -> {
-            Process p = new ProcessBuilder(command).start();
-            StringBuilder out = new StringBuilder();
-            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = r.readLine()) != null) out.append(line).append("\n");
-            }
-            p.waitFor();
-            return out.toString();
-        });
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new Accumulator();
     }
 
-    private Flux<KpiAggregate> extractRrcByCause(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "lte-rrc.rrcConnectionRequest_element || lte-rrc.rrcConnectionSetupComplete_element",
-            "-T", "fields", "-e", "lte-rrc.establishmentCause", "-E", "separator=|")
-            .flatMapMany(output -> {
-                Map<String, Integer> req = new HashMap<>(), suc = new HashMap<>();
-                String last = null;
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) {
-                        req.merge(line.trim(), 1, Integer::sum);
-                        last = line.trim();
-                    } else if (last != null) {
-                        suc.merge(last, 1, Integer::sum);
-                    }
-                }
-                List<KpiAggregate> kpis = new ArrayList<>();
-                for (String cause : req.keySet()) {
-                    double sr = req.get(cause) > 0 ? (suc.getOrDefault(cause, 0) * 100.0 / req.get(cause)) : 0.0;
-                    kpis.add(KpiAggregate.builder()
-                        .sessionId(sessionId).metric("LTE_RRC_SR_" + cause.toUpperCase())
-                        .windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now())
-                        .avgValue(sr).rat("LTE").build());
-                }
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+    private static class Accumulator implements KpiAccumulator {
+        private final Map<String, Integer> rrcReqByCause = new HashMap<>(), rrcSucByCause = new HashMap<>();
+        private final Map<String, Integer> attachReqByType = new HashMap<>(), attachAccByType = new HashMap<>();
+        private final Map<String, Integer> rrcReqByCell = new HashMap<>(), rrcSucByCell = new HashMap<>();
+        private String lastCause, lastAttachType, lastCell;
 
-    private Flux<KpiAggregate> extractAttachByType(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "nas-eps.nas_msg_emm_type == 0x41 || nas-eps.nas_msg_emm_type == 0x42",
-            "-T", "fields", "-e", "nas-eps.emm.eps_att_type", "-E", "separator=|")
-            .flatMapMany(output -> {
-                Map<String, Integer> req = new HashMap<>(), acc = new HashMap<>();
-                String last = null;
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) {
-                        String type = line.equals("0") ? "EMERGENCY" : line.equals("1") ? "NORMAL" : "COMBINED";
-                        if (last == null) {
-                            req.merge(type, 1, Integer::sum);
-                            last = type;
-                        } else {
-                            acc.merge(last, 1, Integer::sum);
-                            last = null;
-                        }
-                    }
-                }
-                List<KpiAggregate> kpis = new ArrayList<>();
-                for (String type : req.keySet()) {
-                    double sr = req.get(type) > 0 ? (acc.getOrDefault(type, 0) * 100.0 / req.get(type)) : 0.0;
-                    kpis.add(KpiAggregate.builder()
-                        .sessionId(sessionId).metric("LTE_ATTACH_SR_" + type)
-                        .windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now())
-                        .avgValue(sr).rat("LTE").build());
-                }
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+        @Override
+        public Set<String> fields() {
+            Set<String> fields = new LinkedHashSet<>(List.of(RRC_REQUEST, RRC_COMPLETE, CAUSE, CELL, ATTACH_TYPE));
+            fields.addAll(ATTACH_REQUEST.fields());
+            return fields;
+        }
 
-    private Flux<KpiAggregate> extractPerCellKpis(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "lte-rrc.rrcConnectionRequest_element || lte-rrc.rrcConnectionSetupComplete_element",
-            "-T", "fields", "-e", "lte-rrc.physCellId", "-E", "separator=|")
-            .flatMapMany(output -> {
-                Map<String, Integer> req = new HashMap<>(), suc = new HashMap<>();
-                String last = null;
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) {
-                        req.merge(line.trim(), 1, Integer::sum);
-                        last = line.trim();
-                    } else if (last != null) {
-                        suc.merge(last, 1, Integer::sum);
-                    }
+        @Override
+        public void accept(DissectedPacket packet) {
+            if (packet.has(RRC_REQUEST)) {
+                String cause = packet.get(CAUSE).trim();
+                if (!cause.isEmpty()) {
+                    rrcReqByCause.merge(cause, 1, Integer::sum);
+                    lastCause = cause;
                 }
-                List<KpiAggregate> kpis = new ArrayList<>();
-                for (String cell : req.keySet()) {
-                    double sr = req.get(cell) > 0 ? (suc.getOrDefault(cell, 0) * 100.0 / req.get(cell)) : 0.0;
-                    kpis.add(KpiAggregate.builder()
-                        .sessionId(sessionId).metric("LTE_RRC_SR_CELL")
-                        .windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now())
-                        .avgValue(sr).cellId(cell).rat("LTE").build());
+                String cell = packet.get(CELL).trim();
+                if (!cell.isEmpty()) {
+                    rrcReqByCell.merge(cell, 1, Integer::sum);
+                    lastCell = cell;
                 }
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
+            } else if (packet.has(RRC_COMPLETE)) {
+                if (lastCause != null) rrcSucByCause.merge(lastCause, 1, Integer::sum);
+                if (lastCell != null) rrcSucByCell.merge(lastCell, 1, Integer::sum);
+                lastCause = null;
+                lastCell = null;
+            }
+
+            if (ATTACH_REQUEST.test(packet)) {
+                String raw = packet.get(ATTACH_TYPE);
+                String type = raw.equals("0") ? "EMERGENCY" : raw.equals("1") ? "NORMAL" : "COMBINED";
+                attachReqByType.merge(type, 1, Integer::sum);
+                lastAttachType = type;
+            } else if (ATTACH_ACCEPT.test(packet) && lastAttachType != null) {
+                attachAccByType.merge(lastAttachType, 1, Integer::sum);
+                lastAttachType = null;
+            }
+        }
+
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            List<KpiAggregate> kpis = new ArrayList<>();
+            rrcReqByCause.forEach((cause, req) -> kpis.add(
+                build(sessionId, "LTE_RRC_SR_" + cause.toUpperCase(), successRate(req, rrcSucByCause.get(cause)), null)));
+            attachReqByType.forEach((type, req) -> kpis.add(
+                build(sessionId, "LTE_ATTACH_SR_" + type, successRate(req, attachAccByType.get(type)), null)));
+            rrcReqByCell.forEach((cell, req) -> kpis.add(
+                build(sessionId, "LTE_RRC_SR_CELL", successRate(req, rrcSucByCell.get(cell)), cell)));
+            log.debug("Detailed KPIs: {} causes, {} attach types, {} cells",
+                rrcReqByCause.size(), attachReqByType.size(), rrcReqByCell.size());
+            return kpis;
+        }
+
+        private static double successRate(int requests, Integer successes) {
+            return requests > 0 ? ((successes != null ? successes : 0) * 100.0 / requests) : 0.0;
+        }
+
+        private static KpiAggregate build(Long sessionId, String metric, double value, String cellId) {
+            return KpiAggregate.builder()
+                .sessionId(sessionId).metric(metric)
+                .windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now())
+                .avgValue(value).cellId(cellId).rat("LTE").build();
+        }
     }
 }
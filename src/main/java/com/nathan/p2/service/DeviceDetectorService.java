@@ -1,7 +1,10 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
 import com.nathan.p2.util.PlatformUtils;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -21,6 +24,7 @@ public class DeviceDetectorService {
     
     private final ToolsConfig toolsConfig;
     private final AdbAutoInstallerService adbInstaller;
+    private final ExternalToolService toolService;
 
     public Flux<DeviceEvent> detectDevices() {
         return Flux.interval(toolsConfig.getDevice().getDetectionInterval())
@@ -37,7 +41,7 @@ public class DeviceDetectorService {
                 if (adbPath == null || adbPath.isEmpty()) {
                     adbPath = "adb";
                 }
-                Process process = new ProcessBuilder(adbPath, "devices").start();
+                Process process = toolService.launch(new ProcessBuilder(adbPath, "devices"), ToolPriority.INTERACTIVE);
 
                 BufferedReader reader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
@@ -54,7 +58,7 @@ public class DeviceDetectorService {
                 log.error("Error detecting devices", e);
             }
             return devices;
-        });
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     private Flux<DeviceEvent> createDeviceEvents(List<String> devices) {
@@ -72,10 +76,10 @@ public class DeviceDetectorService {
                 if (adbPath == null || adbPath.isEmpty()) {
                     adbPath = "adb";
                 }
-                Process process = new ProcessBuilder(
+                Process process = toolService.launch(new ProcessBuilder(
                         adbPath,
-                        "-s", deviceId, "shell", "getprop", "ro.product.model")
-                        .start();
+                        "-s", deviceId, "shell", "getprop", "ro.product.model"),
+                        ToolPriority.INTERACTIVE);
 
                 BufferedReader reader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
@@ -86,7 +90,7 @@ public class DeviceDetectorService {
                 log.error("Error getting device model", e);
                 return "Unknown";
             }
-        });
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     public Mono<String> getDeviceFirmware(String deviceId) {
@@ -96,10 +100,10 @@ public class DeviceDetectorService {
                 if (adbPath == null || adbPath.isEmpty()) {
                     adbPath = "adb";
                 }
-                Process process = new ProcessBuilder(
+                Process process = toolService.launch(new ProcessBuilder(
                         adbPath,
-                        "-s", deviceId, "shell", "getprop", "ro.build.version.release")
-                        .start();
+                        "-s", deviceId, "shell", "getprop", "ro.build.version.release"),
+                        ToolPriority.INTERACTIVE);
 
                 BufferedReader reader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
@@ -110,7 +114,7 @@ public class DeviceDetectorService {
                 log.error("Error getting device firmware", e);
                 return "Unknown";
             }
-        });
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     /**
@@ -146,10 +150,10 @@ public class DeviceDetectorService {
                 if (adbPath == null || adbPath.isEmpty()) {
                     adbPath = "adb";
                 }
-                Process process = new ProcessBuilder(
+                Process process = toolService.launch(new ProcessBuilder(
                         adbPath,
-                        "-s", deviceId, "shell", "getprop", "ro.product.manufacturer")
-                        .start();
+                        "-s", deviceId, "shell", "getprop", "ro.product.manufacturer"),
+                        ToolPriority.INTERACTIVE);
 
                 BufferedReader reader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
@@ -160,7 +164,7 @@ public class DeviceDetectorService {
                 log.error("Error getting device manufacturer", e);
                 return "Unknown";
             }
-        });
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     private String detectChipset(String manufacturer) {
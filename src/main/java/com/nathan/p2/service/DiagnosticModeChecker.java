@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -10,12 +13,15 @@ import java.nio.file.Paths;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class DiagnosticModeChecker {
     
     // Qualcomm diagnostic mode USB IDs (matches backend-scat-old-codebase)
     private static final String QUALCOMM_VENDOR_ID = "05c6";
     private static final String[] DIAGNOSTIC_PRODUCT_IDS = {"90b8", "90db"};
     
+    private final ExternalToolService toolService;
+    
     /**
      * Check if device is in diagnostic mode
      * Matches: backend-scat-old-codebase/scripts/capture/single_device_capture.sh
@@ -32,7 +38,7 @@ public class DiagnosticModeChecker {
             
             ProcessBuilder pb = new ProcessBuilder(pythonCmd, checkerScript.toString());
             pb.redirectErrorStream(true);
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             
             StringBuilder output = new StringBuilder();
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
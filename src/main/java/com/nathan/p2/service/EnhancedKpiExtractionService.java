@@ -1,6 +1,12 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.pcap.CaptureTail;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
 import com.nathan.p2.util.PlatformUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +14,7 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.*;
@@ -23,6 +30,9 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class EnhancedKpiExtractionService {
     private final ToolsConfig config;
+    private final TSharkIntegrationService tsharkService;
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
 
     public record KpiResult(
         Map<String, Double> successRates,
@@ -34,172 +44,255 @@ public class EnhancedKpiExtractionService {
     public record EventDetail(int frameNumber, double timestamp) {}
 
     /**
-     * Extract all KPIs from PCAP file
+     * Counter name -> display filter
+     */
+    private static final Map<String, String> COUNTER_FILTERS = new LinkedHashMap<>();
+
+    /**
+     * Event name -> display filter, reported with frame numbers and timestamps
+     */
+    private static final Map<String, String> EVENT_FILTERS = new LinkedHashMap<>();
+
+    private static final String MEASUREMENT_FILTER = "lte-rrc.measResultPCell_element || lte-rrc.measResultSCell_r12_element";
+    private static final String RSRP_FIELD = "lte-rrc.rsrpResult_r12";
+    private static final String RSRQ_FIELD = "lte-rrc.rsrqResult_r12";
+
+    /**
+     * The filters above, evaluated in-process by the incremental (live) extraction
+     */
+    private static final Map<String, DisplayFilter> COMPILED_COUNTERS = new LinkedHashMap<>();
+    private static final Map<String, DisplayFilter> COMPILED_EVENTS = new LinkedHashMap<>();
+    private static final DisplayFilter COMPILED_MEASUREMENT = DisplayFilter.compile(MEASUREMENT_FILTER);
+    private static final Set<String> INCREMENTAL_FIELDS = new LinkedHashSet<>();
+
+    static {
+        // LTE RRC Connection
+        COUNTER_FILTERS.put("lte_rrc_req", "lte-rrc.rrcConnectionRequest_element");
+        COUNTER_FILTERS.put("lte_rrc_setup", "lte-rrc.rrcConnectionSetup_element");
+
+        // LTE Attach
+        COUNTER_FILTERS.put("lte_attach_req", "nas_eps.nas_msg_emm_type == 0x41");
+        COUNTER_FILTERS.put("lte_attach_acc", "nas_eps.nas_msg_emm_type == 0x42");
+        COUNTER_FILTERS.put("lte_attach_rej", "nas_eps.nas_msg_emm_type == 0x44");
+
+        // LTE TAU
+        COUNTER_FILTERS.put("lte_tau_req", "nas_eps.nas_msg_emm_type == 0x48");
+        COUNTER_FILTERS.put("lte_tau_acc", "nas_eps.nas_msg_emm_type == 0x49");
+        COUNTER_FILTERS.put("lte_tau_rej", "nas_eps.nas_msg_emm_type == 0x4b");
+
+        // LTE E-RAB Setup
+        COUNTER_FILTERS.put("lte_erab_setup", "lte-rrc.rrcConnectionReconfiguration_element");
+        COUNTER_FILTERS.put("lte_erab_complete", "lte-rrc.rrcConnectionReconfigurationComplete_element");
+
+        // LTE PDN Connectivity
+        COUNTER_FILTERS.put("lte_pdn_req", "nas_eps.nas_msg_esm_type == 0xd0");
+        COUNTER_FILTERS.put("lte_pdn_acc", "nas_eps.nas_msg_esm_type == 0xd1");
+        COUNTER_FILTERS.put("lte_pdn_rej", "nas_eps.nas_msg_esm_type == 0xd2");
+
+        // LTE Service Request
+        COUNTER_FILTERS.put("lte_service_req", "nas_eps.nas_msg_emm_type == 0x4c");
+        COUNTER_FILTERS.put("lte_service_acc", "nas_eps.nas_msg_emm_type == 0x4e");
+
+        // LTE Handover
+        COUNTER_FILTERS.put("lte_ho_cmd", "lte-rrc.mobilityFromEUTRACommand_element");
+        COUNTER_FILTERS.put("lte_ho_complete", "lte-rrc.rrcConnectionReconfigurationComplete_element");
+
+        // LTE Measurement Reports
+        COUNTER_FILTERS.put("lte_meas_report", "lte-rrc.measurementReport_element");
+
+        // LTE Security Mode
+        COUNTER_FILTERS.put("lte_sec_cmd", "lte-rrc.securityModeCommand_element");
+        COUNTER_FILTERS.put("lte_sec_complete", "lte-rrc.securityModeComplete_element");
+
+        // WCDMA RRC
+        COUNTER_FILTERS.put("wcdma_rrc_req", "rrc.rrcConnectionRequest_element");
+        COUNTER_FILTERS.put("wcdma_rrc_setup", "rrc.rrcConnectionSetup_element");
+
+        // WCDMA RAB
+        COUNTER_FILTERS.put("wcdma_rab_assign", "rrc.radioBearerSetup");
+        COUNTER_FILTERS.put("wcdma_rab_complete", "rrc.radioBearerSetupComplete_element");
+
+        // WCDMA Handover
+        COUNTER_FILTERS.put("wcdma_ho_cmd", "rrc.physicalChannelReconfiguration");
+        COUNTER_FILTERS.put("wcdma_ho_complete", "rrc.physicalChannelReconfigurationComplete_element");
+
+        // WCDMA Active Set Update
+        COUNTER_FILTERS.put("wcdma_asu_cmd", "rrc.activeSetUpdate_element");
+        COUNTER_FILTERS.put("wcdma_asu_complete", "rrc.activeSetUpdateComplete_element");
+
+        // WCDMA Cell Update
+        COUNTER_FILTERS.put("wcdma_cell_update", "rrc.cellUpdate_element");
+        COUNTER_FILTERS.put("wcdma_cell_update_confirm", "rrc.cellUpdateConfirm_element");
+
+        // 3G PDP Context
+        COUNTER_FILTERS.put("pdp_req", "gsm_a.gm.sm.msg_type == 0x41");
+        COUNTER_FILTERS.put("pdp_acc", "gsm_a.gm.sm.msg_type == 0x42");
+
+        // 3G Routing Area Update
+        COUNTER_FILTERS.put("wcdma_rau_req", "gsm_a.gm.gmm.msg_type == 0x08");
+        COUNTER_FILTERS.put("wcdma_rau_acc", "gsm_a.gm.gmm.msg_type == 0x09");
+
+        // Call Control
+        COUNTER_FILTERS.put("call_setup", "gsm_a.dtap.msg_cc_type == 0x05");
+        COUNTER_FILTERS.put("call_connect", "gsm_a.dtap.msg_cc_type == 0x0f");
+        COUNTER_FILTERS.put("call_disconnect", "gsm_a.dtap.msg_cc_type == 0x25");
+
+        // GSM RACH
+        COUNTER_FILTERS.put("rach_attempts", "gsm_a.rach");
+
+        EVENT_FILTERS.put("lte_rrc_req", "lte-rrc.rrcConnectionRequest_element");
+        EVENT_FILTERS.put("lte_rrc_setup", "lte-rrc.rrcConnectionSetup_element");
+        EVENT_FILTERS.put("lte_attach_req", "nas_eps.nas_msg_emm_type == 0x41");
+        EVENT_FILTERS.put("lte_attach_acc", "nas_eps.nas_msg_emm_type == 0x42");
+
+        COUNTER_FILTERS.forEach((name, filter) -> COMPILED_COUNTERS.put(name, DisplayFilter.compile(filter)));
+        EVENT_FILTERS.forEach((name, filter) -> COMPILED_EVENTS.put(name, DisplayFilter.compile(filter)));
+        COMPILED_COUNTERS.values().forEach(filter -> INCREMENTAL_FIELDS.addAll(filter.fields()));
+        COMPILED_EVENTS.values().forEach(filter -> INCREMENTAL_FIELDS.addAll(filter.fields()));
+        INCREMENTAL_FIELDS.addAll(COMPILED_MEASUREMENT.fields());
+        INCREMENTAL_FIELDS.add(RSRP_FIELD);
+        INCREMENTAL_FIELDS.add(RSRQ_FIELD);
+    }
+
+    /**
+     * Extract all KPIs from PCAP file.
+     * Every counter and event filter is evaluated on one dissection of the capture.
      */
     public Mono<KpiResult> extractAllKpis(Path pcapFile) {
-        return Mono.fromCallable(() -> {
-            Map<String, Integer> counters = new HashMap<>();
-            Map<String, List<EventDetail>> events = new HashMap<>();
-            Map<String, Double> measurements = new HashMap<>();
-            
-            // LTE RRC Connection
-            counters.put("lte_rrc_req", countPackets(pcapFile, "lte-rrc.rrcConnectionRequest_element"));
-            counters.put("lte_rrc_setup", countPackets(pcapFile, "lte-rrc.rrcConnectionSetup_element"));
-            events.put("lte_rrc_req", getPacketDetails(pcapFile, "lte-rrc.rrcConnectionRequest_element"));
-            events.put("lte_rrc_setup", getPacketDetails(pcapFile, "lte-rrc.rrcConnectionSetup_element"));
-            
-            // LTE Attach
-            counters.put("lte_attach_req", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x41"));
-            counters.put("lte_attach_acc", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x42"));
-            counters.put("lte_attach_rej", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x44"));
-            events.put("lte_attach_req", getPacketDetails(pcapFile, "nas-eps.nas_msg_emm_type == 0x41"));
-            events.put("lte_attach_acc", getPacketDetails(pcapFile, "nas-eps.nas_msg_emm_type == 0x42"));
-            
-            // LTE TAU
-            counters.put("lte_tau_req", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x48"));
-            counters.put("lte_tau_acc", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x49"));
-            counters.put("lte_tau_rej", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x4b"));
-            
-            // LTE E-RAB Setup
-            counters.put("lte_erab_setup", countPackets(pcapFile, "lte-rrc.rrcConnectionReconfiguration_element"));
-            counters.put("lte_erab_complete", countPackets(pcapFile, "lte-rrc.rrcConnectionReconfigurationComplete_element"));
-            
-            // LTE PDN Connectivity
-            counters.put("lte_pdn_req", countPackets(pcapFile, "nas-eps.nas_msg_esm_type == 0xd0"));
-            counters.put("lte_pdn_acc", countPackets(pcapFile, "nas-eps.nas_msg_esm_type == 0xd1"));
-            counters.put("lte_pdn_rej", countPackets(pcapFile, "nas-eps.nas_msg_esm_type == 0xd2"));
-            
-            // LTE Service Request
-            counters.put("lte_service_req", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x4c"));
-            counters.put("lte_service_acc", countPackets(pcapFile, "nas-eps.nas_msg_emm_type == 0x4e"));
-            
-            // LTE Handover
-            counters.put("lte_ho_cmd", countPackets(pcapFile, "lte-rrc.mobilityFromEUTRACommand_element"));
-            counters.put("lte_ho_complete", countPackets(pcapFile, "lte-rrc.rrcConnectionReconfigurationComplete_element"));
-            
-            // LTE Measurement Reports
-            counters.put("lte_meas_report", countPackets(pcapFile, "lte-rrc.measurementReport_element"));
-            
-            // LTE Security Mode
-            counters.put("lte_sec_cmd", countPackets(pcapFile, "lte-rrc.securityModeCommand_element"));
-            counters.put("lte_sec_complete", countPackets(pcapFile, "lte-rrc.securityModeComplete_element"));
-            
-            // WCDMA RRC
-            counters.put("wcdma_rrc_req", countPackets(pcapFile, "rrc.rrcConnectionRequest_element"));
-            counters.put("wcdma_rrc_setup", countPackets(pcapFile, "rrc.rrcConnectionSetup_element"));
-            
-            // WCDMA RAB
-            counters.put("wcdma_rab_assign", countPackets(pcapFile, "rrc.radioBearerSetup"));
-            counters.put("wcdma_rab_complete", countPackets(pcapFile, "rrc.radioBearerSetupComplete_element"));
-            
-            // WCDMA Handover
-            counters.put("wcdma_ho_cmd", countPackets(pcapFile, "rrc.physicalChannelReconfiguration"));
-            counters.put("wcdma_ho_complete", countPackets(pcapFile, "rrc.physicalChannelReconfigurationComplete_element"));
-            
-            // WCDMA Active Set Update
-            counters.put("wcdma_asu_cmd", countPackets(pcapFile, "rrc.activeSetUpdate_element"));
-            counters.put("wcdma_asu_complete", countPackets(pcapFile, "rrc.activeSetUpdateComplete_element"));
-            
-            // WCDMA Cell Update
-            counters.put("wcdma_cell_update", countPackets(pcapFile, "rrc.cellUpdate_element"));
-            counters.put("wcdma_cell_update_confirm", countPackets(pcapFile, "rrc.cellUpdateConfirm_element"));
-            
-            // 3G PDP Context
-            counters.put("pdp_req", countPackets(pcapFile, "gsm_a.gm.sm.msg_type == 0x41"));
-            counters.put("pdp_acc", countPackets(pcapFile, "gsm_a.gm.sm.msg_type == 0x42"));
-            
-            // 3G Routing Area Update
-            counters.put("wcdma_rau_req", countPackets(pcapFile, "gsm_a.gm.gmm.msg_type == 0x08"));
-            counters.put("wcdma_rau_acc", countPackets(pcapFile, "gsm_a.gm.gmm.msg_type == 0x09"));
-            
-            // Call Control
-            counters.put("call_setup", countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x05"));
-            counters.put("call_connect", countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x0f"));
-            counters.put("call_disconnect", countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x25"));
-            
-            // GSM RACH
-            counters.put("rach_attempts", countPackets(pcapFile, "gsm_a.rach"));
-            
-            // Extract RSRP/RSRQ measurements
-            measurements.putAll(extractMeasurements(pcapFile));
-            
-            // Calculate success rates
-            Map<String, Double> successRates = calculateSuccessRates(counters);
-            
-            return new KpiResult(successRates, counters, events, measurements);
-        });
+        Mono<TSharkIntegrationService.FilterMatches> matchesMono =
+            tsharkService.matchFilters(pcapFile, COUNTER_FILTERS, EVENT_FILTERS);
+        
+        // Extract RSRP/RSRQ measurements
+        Mono<Map<String, Double>> measurementsMono = Mono.fromCallable(() -> extractMeasurements(pcapFile))
+            .subscribeOn(schedulers.analytics());
+        
+        return Mono.zip(matchesMono, measurementsMono)
+            .map(tuple -> {
+                Map<String, Integer> counters = new HashMap<>(tuple.getT1().counts());
+                Map<String, List<EventDetail>> events = new HashMap<>();
+                tuple.getT1().details().forEach((name, details) -> events.put(name, details.stream()
+                    .map(detail -> new EventDetail(detail.frameNumber(), detail.timestamp()))
+                    .toList()));
+                
+                // Calculate success rates
+                Map<String, Double> successRates = calculateSuccessRates(counters);
+                
+                return new KpiResult(successRates, counters, events, tuple.getT2());
+            });
     }
 
     /**
-     * Count packets matching TShark filter
+     * KPIs of a capture that is still being written, dissecting only the frames appended
+     * since the previous call with the same state. The new records are copied behind the
+     * capture's header into a small temporary file and scanned once; all counter, event and
+     * measurement filters are evaluated in-process on that scan and added to the state.
+     * Each call costs O(new frames) and returns the same shape as {@link #extractAllKpis}.
+     *
+     * A capture that shrank (restarted) is processed again from the start.
      */
-    private int countPackets(Path pcapFile, String filter) {
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath, "-r", pcapFile.toString(),
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", filter,
-                "-T", "fields", "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            int count = 0;
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty() && !line.startsWith("Cannot")) {
-                    count++;
-                }
-            }
-            
-            process.waitFor(30, TimeUnit.SECONDS);
-            return count;
-        } catch (Exception e) {
-            log.error("Error counting packets with filter: {}", filter, e);
-            return 0;
-        }
+    public Mono<KpiResult> extractKpisIncremental(Path pcapFile, IncrementalState state) {
+        return Mono.fromCallable(() -> appendedFrames(pcapFile, state))
+            .subscribeOn(schedulers.ingest())
+            .flatMap(increment -> tsharkService.scanFields(increment.chunk(), INCREMENTAL_FIELDS)
+                .collectList()
+                // Applied only once the whole increment is dissected, so a failed scan is retried, not double counted
+                .doOnNext(packets -> state.apply(packets, increment))
+                .doFinally(signal -> CaptureTail.delete(increment.chunk())))
+            .then(Mono.fromCallable(() -> toResult(state)));
     }
 
     /**
-     * Get packet details with timestamps
+     * Running KPI state of one growing capture, advanced by {@link #extractKpisIncremental}.
+     * Not thread-safe: use one state per capture and do not overlap calls.
      */
-    private List<EventDetail> getPacketDetails(Path pcapFile, String filter) {
-        List<EventDetail> details = new ArrayList<>();
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath, "-r", pcapFile.toString(),
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-E", "separator=|"
-            );
-            
-            Process process = pb.start();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.trim().isEmpty() && !line.startsWith("Cannot")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 2) {
-                        details.add(new EventDetail(
-                            Integer.parseInt(parts[0]),
-                            Double.parseDouble(parts[1])
-                        ));
+    public static final class IncrementalState {
+        private final CaptureTail tail = new CaptureTail();
+        private final Map<String, Integer> counters = new HashMap<>();
+        private final Map<String, List<EventDetail>> events = new HashMap<>();
+        private DoubleSummaryStatistics rsrp = new DoubleSummaryStatistics();
+        private DoubleSummaryStatistics rsrq = new DoubleSummaryStatistics();
+
+        public IncrementalState() {
+            reset();
+        }
+
+        /**
+         * Frames processed so far
+         */
+        public long frames() {
+            return tail.frames();
+        }
+
+        private void reset() {
+            tail.reset();
+            counters.clear();
+            COUNTER_FILTERS.keySet().forEach(name -> counters.put(name, 0));
+            events.clear();
+            EVENT_FILTERS.keySet().forEach(name -> events.put(name, new ArrayList<>()));
+            rsrp = new DoubleSummaryStatistics();
+            rsrq = new DoubleSummaryStatistics();
+        }
+
+        private void apply(List<DissectedPacket> packets, CaptureTail.Increment increment) {
+            for (DissectedPacket packet : packets) {
+                COMPILED_COUNTERS.forEach((name, filter) -> {
+                    if (filter.test(packet)) {
+                        counters.merge(name, 1, Integer::sum);
+                    }
+                });
+                COMPILED_EVENTS.forEach((name, filter) -> {
+                    if (filter.test(packet)) {
+                        // Chunk frames are numbered from 1; report the frame number within the capture
+                        events.get(name).add(new EventDetail((int) (tail.frames() + packet.frameNumber()), packet.timestamp()));
                     }
+                });
+                if (COMPILED_MEASUREMENT.test(packet)) {
+                    accumulate(rsrp, packet.values(RSRP_FIELD), -180);
+                    accumulate(rsrq, packet.values(RSRQ_FIELD), -30);
                 }
             }
-            
-            process.waitFor(30, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            log.error("Error getting packet details", e);
+            tail.advance(increment);
+        }
+
+        private static void accumulate(DoubleSummaryStatistics stats, List<String> values, double base) {
+            for (String value : values) {
+                try {
+                    stats.accept(base + Double.parseDouble(value) * 0.0625);
+                } catch (NumberFormatException e) {
+                    // Not a reported value (e.g. a named enum); skip it
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the complete records after the state's offset into a temporary capture, or null if there are none
+     */
+    private CaptureTail.Increment appendedFrames(Path pcapFile, IncrementalState state) throws IOException {
+        if (state.tail.shrank(pcapFile)) {
+            log.info("Capture {} shrank, recomputing live KPIs from the start", pcapFile.getFileName());
+            state.reset();
+        }
+        return state.tail.next(pcapFile, "live-kpi-");
+    }
+
+    private KpiResult toResult(IncrementalState state) {
+        Map<String, Integer> counters = new HashMap<>(state.counters);
+        Map<String, List<EventDetail>> events = new HashMap<>();
+        state.events.forEach((name, details) -> events.put(name, List.copyOf(details)));
+
+        Map<String, Double> measurements = new HashMap<>();
+        if (state.rsrp.getCount() > 0) {
+            measurements.put("rsrp_avg", state.rsrp.getAverage());
+            measurements.put("rsrp_min", state.rsrp.getMin());
+            measurements.put("rsrp_max", state.rsrp.getMax());
+        }
+        if (state.rsrq.getCount() > 0) {
+            measurements.put("rsrq_avg", state.rsrq.getAverage());
+            measurements.put("rsrq_min", state.rsrq.getMin());
+            measurements.put("rsrq_max", state.rsrq.getMax());
         }
-        return details;
+        return new KpiResult(calculateSuccessRates(counters), counters, events, measurements);
     }
 
     /**
@@ -216,15 +309,15 @@ public class EnhancedKpiExtractionService {
             ProcessBuilder pb = new ProcessBuilder(
                 tsharkPath, "-r", pcapFile.toString(),
                 "-d", "udp.port==4729,gsmtap",
-                "-Y", "lte-rrc.measResultPCell_element || lte-rrc.measResultSCell_r12_element",
+                "-Y", MEASUREMENT_FILTER,
                 "-T", "fields",
-                "-e", "lte-rrc.rsrpResult_r12",
-                "-e", "lte-rrc.rsrqResult_r12",
+                "-e", RSRP_FIELD,
+                "-e", RSRQ_FIELD,
                 "-e", "lte-rrc.rs_sinr_Result_r13",
                 "-e", "lte-rrc.physCellId_r12"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             
             String line;
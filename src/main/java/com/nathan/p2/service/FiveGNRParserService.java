@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -15,6 +18,8 @@ import java.util.Map;
 @Service
 @RequiredArgsConstructor
 public class FiveGNRParserService {
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
 
     public Mono<Map<String, Object>> parseMIB(Path pcapFile) {
         return Mono.fromCallable(() -> {
@@ -33,7 +38,7 @@ public class FiveGNRParserService {
                 "-e", "nr-rrc.intraFreqReselection"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             
             String line = reader.readLine();
@@ -52,7 +57,7 @@ public class FiveGNRParserService {
             
             process.waitFor();
             return mib;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 
     public Mono<Map<String, Object>> parseSIB1(Path pcapFile) {
@@ -75,7 +80,7 @@ public class FiveGNRParserService {
                 "-e", "nr-rrc.mnc"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             
             String line = reader.readLine();
@@ -97,7 +102,7 @@ public class FiveGNRParserService {
             
             process.waitFor();
             return sib1;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 
     public Mono<Map<String, Object>> parseUECapability(Path pcapFile) {
@@ -110,7 +115,7 @@ public class FiveGNRParserService {
                 "-T", "json"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
             
             StringBuilder json = new StringBuilder();
@@ -122,6 +127,6 @@ public class FiveGNRParserService {
             capability.put("raw", json.toString());
             process.waitFor();
             return capability;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 }
@@ -1,6 +1,9 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.GpsTrace;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -44,7 +47,10 @@ public class GpsExtractionOrchestrator {
     }
 
     @Service
+    @RequiredArgsConstructor
     public static class TSharkGpsExtractor implements GpsExtractor {
+        private final ExternalToolService toolService;
+
         @Override
         public String getName() {
             return "TShark GPS Extractor";
@@ -64,7 +70,7 @@ public class GpsExtractionOrchestrator {
                             "-E", "separator=,"
                     );
                     pb.redirectErrorStream(true);
-                    Process process = pb.start();
+                    Process process = toolService.launch(pb, ToolPriority.BATCH);
 
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                         String line;
@@ -90,12 +96,15 @@ public class GpsExtractionOrchestrator {
                 } catch (Exception e) {
                     sink.error(e);
                 }
-            });
+            }).subscribeOn(VirtualThreads.IO);
         }
     }
 
     @Service
+    @RequiredArgsConstructor
     public static class GsmtapGpsExtractor implements GpsExtractor {
+        private final ExternalToolService toolService;
+
         @Override
         public String getName() {
             return "GSMTAP GPS Extractor";
@@ -113,7 +122,7 @@ public class GpsExtractionOrchestrator {
                             "-e", "gsmtap.extra"
                     );
                     pb.redirectErrorStream(true);
-                    Process process = pb.start();
+                    Process process = toolService.launch(pb, ToolPriority.BATCH);
 
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                         StringBuilder json = new StringBuilder();
@@ -128,7 +137,7 @@ public class GpsExtractionOrchestrator {
                 } catch (Exception e) {
                     sink.error(e);
                 }
-            });
+            }).subscribeOn(VirtualThreads.IO);
         }
     }
 }
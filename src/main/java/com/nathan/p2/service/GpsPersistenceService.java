@@ -1,16 +1,17 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.GpsTrace;
-import com.nathan.p2.repository.GpsTraceRepository;
+import com.nathan.p2.service.persistence.BatchWriter;
+import com.nathan.p2.service.persistence.InsertTables;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,20 +24,21 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class GpsPersistenceService {
 
-    private final GpsTraceRepository gpsRepository;
+    private final BatchWriter batchWriter;
 
     /**
      * Save GPS traces from extracted dataset to database
-     * Filters dataset for entries with GPS coordinates
+     * Filters dataset for entries with GPS coordinates; written in batches as the data points
+     * arrive, so the dataset is never held in memory. Completes with the number of traces saved.
      */
-    public Flux<GpsTrace> saveGpsTracesFromDataset(Long sessionId, List<Map<String, Object>> dataset) {
-        log.info("Saving GPS traces for session {}: {} data points", sessionId, dataset.size());
+    public Mono<Long> saveGpsTracesFromDataset(Long sessionId, Flux<Map<String, Object>> dataset) {
+        log.info("Saving GPS traces for session {}", sessionId);
 
-        return Flux.fromIterable(dataset)
+        Flux<GpsTrace> traces = dataset
             .filter(this::hasGpsCoordinates)
-            .map(point -> mapToGpsTrace(sessionId, point))
-            .flatMap(gpsRepository::save)
-            .doOnComplete(() -> log.info("GPS traces saved for session {}", sessionId))
+            .map(point -> mapToGpsTrace(sessionId, point));
+        return batchWriter.writeAll(InsertTables.GPS_TRACES, traces)
+            .doOnSuccess(count -> log.info("{} GPS traces saved for session {}", count, sessionId))
             .doOnError(error -> log.error("Failed to save GPS traces for session {}", sessionId, error));
     }
 
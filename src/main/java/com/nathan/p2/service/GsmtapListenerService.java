@@ -1,27 +1,47 @@
 package com.nathan.p2.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.pcap.DatagramRing;
+import com.nathan.p2.service.pcap.GsmtapHeader;
+import com.nathan.p2.service.pcap.GsmtapPcapWriter;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import com.nathan.p2.service.tshark.LiveTSharkDecoder;
+import com.nathan.p2.util.UdpSocketStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 import reactor.core.scheduler.Schedulers;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -37,32 +57,99 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class GsmtapListenerService {
     
     private static final int GSMTAP_PORT = 4729;
-    private static final int BUFFER_SIZE = 65536;
-    private static final int MAX_PACKET_SIZE = 4096;
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+    /** Fan-out ring; a received datagram stays valid until this much later traffic has arrived */
+    private static final int RING_SIZE = 16 * 1024 * 1024;
+    private static final int RING_SLOTS = 64 * 1024;
+    /** How long a stopping session may take to handle what it has not consumed yet */
+    private static final long CONSUMER_DRAIN_MILLIS = 5000;
+    /** How long a detached live decoder may take to feed what it has already taken from the ring */
+    private static final long DECODER_DETACH_MILLIS = 1000;
     
     private final ObjectMapper objectMapper;
+    private final ToolsConfig config;
+    private final MeterRegistry meterRegistry;
+    private final StreamSinkFactory streamSinks;
+    private final ExternalToolService toolService;
     private final Map<Long, SessionCapture> activeSessions = new ConcurrentHashMap<>();
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private final DatagramRing ring = new DatagramRing(RING_SIZE, RING_SLOTS, MAX_DATAGRAM_SIZE);
     
-    private DatagramSocket socket;
+    private DatagramChannel channel;
     private Thread listenerThread;
+    private volatile int requestedReceiveBuffer;
+    private volatile int effectiveReceiveBuffer;
+    
+    private Counter packetsReceived;
+    private Counter bytesReceived;
+    private final DistributionSummary[] frameGaps = new DistributionSummary[256];
+    private final FrameGapDetector frameGapDetector = new FrameGapDetector();
+    private Disposable flushTicker;
     
     @PostConstruct
     public void init() {
         // Don't auto-start, wait for explicit startListener() call
         log.info("🎧 GSMTAP Listener initialized (port: {})", GSMTAP_PORT);
+        registerMetrics();
+        
+        // Time-based PCAP flushes and fsyncs for captures that receive little traffic
+        Duration tick = config.getGsmtap().getPcapFlushInterval().dividedBy(2);
+        flushTicker = Flux.interval(tick.isZero() ? Duration.ofMillis(100) : tick)
+            .subscribe(t -> activeSessions.values().forEach(SessionCapture::tick));
+    }
+    
+    /**
+     * Receive-path metrics (exported on /actuator/prometheus):
+     * - gsmtap.packets.received / gsmtap.bytes.received
+     * - gsmtap.udp.receive.buffer{kind=requested|effective}: SO_RCVBUF asked for and granted
+     * - gsmtap.udp.receive.queue: bytes waiting in the kernel (Linux)
+     * - gsmtap.udp.drops: datagrams the kernel dropped on a full receive buffer (Linux)
+     * - gsmtap.frame.gaps{type}: radio time skipped, see {@link FrameGapDetector}
+     * - gsmtap.ring.producer.wait: time the receiver waited for the slowest session consumer
+     * - gsmtap.ring.lag{session,consumer}: datagrams a session consumer is behind (per capture)
+     * - gsmtap.decode.dropped{session}: datagrams a live decode dropped while tshark lagged
+     */
+    private void registerMetrics() {
+        packetsReceived = Counter.builder("gsmtap.packets.received")
+            .description("GSMTAP datagrams received on UDP " + GSMTAP_PORT)
+            .register(meterRegistry);
+        bytesReceived = Counter.builder("gsmtap.bytes.received")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("gsmtap.udp.receive.buffer", this, listener -> listener.requestedReceiveBuffer)
+            .tag("kind", "requested")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("gsmtap.udp.receive.buffer", this, listener -> listener.effectiveReceiveBuffer)
+            .tag("kind", "effective")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("gsmtap.udp.receive.queue", this,
+                listener -> UdpSocketStats.forLocalPort(GSMTAP_PORT).map(UdpSocketStats.Stats::receiveQueue).orElse(0L))
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        FunctionCounter.builder("gsmtap.udp.drops", this,
+                listener -> UdpSocketStats.forLocalPort(GSMTAP_PORT).map(UdpSocketStats.Stats::drops).orElse(0L))
+            .description("Datagrams dropped by the kernel because the receive buffer was full")
+            .register(meterRegistry);
+        FunctionCounter.builder("gsmtap.ring.producer.wait", ring, r -> r.producerWaitNanos() / 1e9)
+            .description("Time the receiver waited for the slowest session consumer of the fan-out ring")
+            .baseUnit("seconds")
+            .register(meterRegistry);
     }
     
     /**
      * Start UDP listener for GSMTAP packets
      */
-    public void startListener() throws SocketException {
+    public synchronized void startListener() throws IOException {
         if (running.get()) {
             log.warn("GSMTAP listener already running");
             return;
         }
         
-        socket = new DatagramSocket(GSMTAP_PORT);
+        channel = DatagramChannel.open();
+        configureReceiveBuffer(channel);
+        channel.bind(new InetSocketAddress(GSMTAP_PORT));
         running.set(true);
         
         listenerThread = new Thread(this::listenLoop, "GSMTAP-Listener");
@@ -73,22 +160,51 @@ public class GsmtapListenerService {
     }
     
     /**
-     * Main listening loop
+     * Ask for the configured SO_RCVBUF and record what the kernel granted
+     * (Linux caps it at net.core.rmem_max and reports twice the granted size)
+     */
+    private void configureReceiveBuffer(DatagramChannel channel) throws IOException {
+        requestedReceiveBuffer = (int) Math.min(Integer.MAX_VALUE, config.getGsmtap().getReceiveBufferSize().toBytes());
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, requestedReceiveBuffer);
+        effectiveReceiveBuffer = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+        if (effectiveReceiveBuffer < requestedReceiveBuffer) {
+            log.warn("⚠️ GSMTAP receive buffer is {} bytes, {} requested; raise net.core.rmem_max to avoid drops",
+                effectiveReceiveBuffer, requestedReceiveBuffer);
+        } else {
+            log.info("GSMTAP receive buffer: {} bytes", effectiveReceiveBuffer);
+        }
+    }
+    
+    /**
+     * Main listening loop.
+     *
+     * Datagrams are received straight into the fan-out ring and published to every session's
+     * consumers; the receive path allocates nothing and does no per-session work. When a
+     * consumer falls a whole ring behind, receiving pauses and the socket buffer absorbs the
+     * backlog (overflow shows in gsmtap.udp.drops).
      */
     private void listenLoop() {
-        byte[] buffer = new byte[BUFFER_SIZE];
+        Instant anchor = Instant.now();
+        long epochNanosAtStart = anchor.getEpochSecond() * 1_000_000_000L + anchor.getNano();
+        long nanoTimeAtStart = System.nanoTime();
         
         while (running.get() && !Thread.currentThread().isInterrupted()) {
             try {
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                socket.receive(packet);
-                
-                byte[] data = new byte[packet.getLength()];
-                System.arraycopy(buffer, 0, data, 0, packet.getLength());
+                ByteBuffer region = ring.claim();
+                int start = region.position();
+                if (channel.receive(region) == null) {
+                    continue;
+                }
+                int length = region.position() - start;
+                long receivedAt = System.nanoTime();
+                packetsReceived.increment();
+                bytesReceived.increment(length);
+                trackFrameGaps(region.slice(start, length), receivedAt);
                 
-                // Process GSMTAP packet
-                processGsmtapPacket(data);
+                ring.publish(length, epochNanosAtStart + (receivedAt - nanoTimeAtStart));
                 
+            } catch (ClosedChannelException | InterruptedException e) {
+                break;
             } catch (IOException e) {
                 if (running.get()) {
                     log.error("Error receiving GSMTAP packet", e);
@@ -99,140 +215,91 @@ public class GsmtapListenerService {
         log.info("GSMTAP listener loop ended");
     }
     
-    /**
-     * Process received GSMTAP packet
-     */
-    private void processGsmtapPacket(byte[] data) {
-        try {
-            GsmtapPacket gsmtap = parseGsmtapHeader(data);
-            
-            // Distribute to all active session captures
-            activeSessions.values().forEach(session -> {
-                try {
-                    // Write to PCAP file
-                    session.writePcapPacket(data);
-                    
-                    // Stream to WebSocket clients
-                    session.sink.tryEmitNext(gsmtap);
-                    
-                } catch (Exception e) {
-                    log.error("Error processing packet for session {}", session.sessionId, e);
-                }
-            });
-            
-        } catch (Exception e) {
-            log.error("Error processing GSMTAP packet", e);
+    private void trackFrameGaps(ByteBuffer datagram, long arrivalNanos) {
+        if (datagram.remaining() < GsmtapHeader.LENGTH) {
+            return;
+        }
+        int type = datagram.get(2) & 0xFF;
+        long missedMillis = frameGapDetector.observe(type, datagram.getInt(8), arrivalNanos,
+            config.getGsmtap().getFrameGapThreshold().toMillis());
+        if (missedMillis > 0) {
+            DistributionSummary gaps = frameGaps[type];
+            if (gaps == null) {
+                gaps = DistributionSummary.builder("gsmtap.frame.gaps")
+                    .description("Radio time skipped between consecutive GSMTAP frames beyond wall-clock time")
+                    .baseUnit("milliseconds")
+                    .tag("type", GsmtapHeader.typeName(type))
+                    .register(meterRegistry);
+                frameGaps[type] = gaps;
+            }
+            gaps.record(missedMillis);
+            log.debug("GSMTAP {} frame gap: {} ms of radio time missing", GsmtapHeader.typeName(type), missedMillis);
         }
     }
     
     /**
-     * Parse GSMTAP header structure
-     * 
-     * GSMTAP Header Format (v2/v3):
-     * - version (1 byte)
-     * - header length (1 byte)
-     * - type (1 byte): RRC, NAS, MAC, etc.
-     * - timeslot (1 byte)
-     * - ARFCN (2 bytes)
-     * - signal_dbm (1 byte)
-     * - snr_db (1 byte)
-     * - frame_number (4 bytes)
-     * - sub_type (1 byte)
-     * - antenna_nr (1 byte)
-     * - sub_slot (1 byte)
-     * - res (1 byte)
+     * Parse GSMTAP header structure (layout in {@link GsmtapHeader}) in place;
+     * the payload is a slice of the datagram
      */
-    private GsmtapPacket parseGsmtapHeader(byte[] data) {
-        if (data.length < 16) {
-            throw new IllegalArgumentException("GSMTAP packet too short");
-        }
-        
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+    private static GsmtapPacket parseGsmtapHeader(ByteBuffer datagram, long timestampNanos) {
+        GsmtapHeader header = GsmtapHeader.parse(datagram, 0);
         
         GsmtapPacket packet = new GsmtapPacket();
-        packet.version = buffer.get() & 0xFF;
-        packet.headerLength = buffer.get() & 0xFF;
-        packet.type = buffer.get() & 0xFF;
-        packet.timeslot = buffer.get() & 0xFF;
-        packet.arfcn = buffer.getShort() & 0xFFFF;
-        packet.signalDbm = buffer.get();
-        packet.snrDb = buffer.get();
-        packet.frameNumber = buffer.getInt();
-        packet.subType = buffer.get() & 0xFF;
-        packet.antennaNr = buffer.get() & 0xFF;
-        packet.subSlot = buffer.get() & 0xFF;
-        packet.reserved = buffer.get() & 0xFF;
+        packet.version = header.version();
+        packet.headerLength = header.headerLength();
+        packet.type = header.type();
+        packet.timeslot = header.timeslot();
+        packet.arfcn = header.arfcn();
+        packet.signalDbm = header.signalDbm();
+        packet.snrDb = header.snrDb();
+        packet.frameNumber = header.frameNumber();
+        packet.subType = header.subType();
+        packet.antennaNr = header.antennaNr();
+        packet.subSlot = header.subSlot();
+        packet.reserved = header.reserved();
         
-        // Extract payload
-        int payloadStart = packet.headerLength;
-        if (payloadStart < data.length) {
-            packet.payload = new byte[data.length - payloadStart];
-            System.arraycopy(data, payloadStart, packet.payload, 0, packet.payload.length);
+        // Payload (header length is in 32-bit words)
+        int payloadStart = header.headerBytes();
+        if (payloadStart < datagram.limit()) {
+            packet.payload = datagram.slice(payloadStart, datagram.limit() - payloadStart);
         }
         
-        packet.timestamp = Instant.now().toEpochMilli();
-        packet.typeName = getGsmtapTypeName(packet.type);
-        packet.rat = detectRat(packet.type, packet.subType);
+        packet.timestamp = timestampNanos / 1_000_000L;
+        packet.typeName = header.typeName();
+        packet.rat = header.rat();
         
         return packet;
     }
     
     /**
-     * Get GSMTAP type name
-     */
-    private String getGsmtapTypeName(int type) {
-        switch (type) {
-            case 0x01: return "UM";           // GSM Um interface
-            case 0x02: return "ABIS";         // GSM Abis interface
-            case 0x03: return "UM_BURST";     // GSM Um burst
-            case 0x04: return "SIM";          // SIM card
-            case 0x05: return "TETRA_I1";     // TETRA
-            case 0x06: return "TETRA_I1_BURST";
-            case 0x07: return "WMX_BURST";    // WiMAX
-            case 0x08: return "GB_LLC";       // GPRS Gb interface
-            case 0x09: return "GB_SNDCP";
-            case 0x0A: return "GMR1_UM";      // GMR-1
-            case 0x0B: return "UMTS_RLC_MAC"; // UMTS
-            case 0x0C: return "UMTS_RRC";     // UMTS RRC
-            case 0x0D: return "LTE_RRC";      // LTE RRC
-            case 0x0E: return "LTE_MAC";      // LTE MAC
-            case 0x0F: return "LTE_MAC_FRAMED";
-            case 0x10: return "OSMOCORE_LOG"; // Logging
-            case 0x11: return "QC_DIAG";      // Qualcomm DIAG
-            case 0x12: return "LTE_NAS";      // LTE NAS
-            case 0x13: return "5GNR_RRC";     // 5G NR RRC
-            case 0x14: return "5GNR_MAC";     // 5G NR MAC
-            case 0x15: return "5GNR_NAS";     // 5G NR NAS
-            default: return "UNKNOWN_" + type;
-        }
-    }
-    
-    /**
-     * Detect RAT (Radio Access Technology) from GSMTAP type
+     * Whether the UDP listener is receiving
      */
-    private String detectRat(int type, int subType) {
-        switch (type) {
-            case 0x01: case 0x02: case 0x03: case 0x08: case 0x09:
-                return "GSM";
-            case 0x0B: case 0x0C:
-                return "WCDMA";
-            case 0x0D: case 0x0E: case 0x0F: case 0x12:
-                return "LTE";
-            case 0x13: case 0x14: case 0x15:
-                return "5GNR";
-            default:
-                return "UNKNOWN";
-        }
+    public boolean isRunning() {
+        return running.get();
     }
     
     /**
-     * Start capturing for a session
+     * Start capturing for a session. Its datagrams only arrive when SCAT sends GSMTAP to this
+     * listener, which the capture flow does with {@code eca.gsmtap.session-capture} enabled.
      */
     public Flux<GsmtapPacket> startSessionCapture(Long sessionId, Path outputPcap) {
         log.info("📦 Starting GSMTAP capture for session: {}", sessionId);
         
-        SessionCapture capture = new SessionCapture(sessionId, outputPcap);
-        activeSessions.put(sessionId, capture);
+        // A slow viewer skips ahead to current traffic; the PCAP consumer still gets everything
+        StreamSink<GsmtapPacket> sink = streamSinks.create("gsmtap", sessionId,
+            StreamPolicy.dropOldest(streamSinks.capacity()));
+        SessionCapture capture;
+        try {
+            capture = new SessionCapture(sessionId, outputPcap, config.getGsmtap(), ring, meterRegistry, sink);
+        } catch (IOException e) {
+            log.error("Failed to open PCAP {} for session {}", outputPcap, sessionId, e);
+            sink.tryEmitError(e);
+            return Flux.error(e);
+        }
+        SessionCapture previous = activeSessions.put(sessionId, capture);
+        if (previous != null) {
+            previous.close();
+        }
         
         return capture.sink.asFlux()
             .doOnCancel(() -> {
@@ -243,6 +310,44 @@ public class GsmtapListenerService {
             });
     }
     
+    /**
+     * PCAP file of the session's running capture, if it is capturing
+     */
+    public Optional<Path> liveCapture(Long sessionId) {
+        SessionCapture capture = activeSessions.get(sessionId);
+        return capture != null ? Optional.of(capture.outputPcap) : Optional.empty();
+    }
+    
+    /**
+     * Decode the session's traffic as it arrives: a ring consumer feeds every datagram to one
+     * supervised tshark ({@code tshark}, reading PCAP from stdin) and its decoded packets are
+     * emitted. Cancelling stops that tshark; stopping the capture completes the Flux.
+     */
+    public Flux<JsonNode> decodeLive(Long sessionId, ProcessSpec tshark) {
+        return Flux.create(emitter -> {
+            SessionCapture capture = activeSessions.get(sessionId);
+            if (capture == null) {
+                emitter.error(new IllegalStateException("No live capture for session " + sessionId));
+                return;
+            }
+            LiveTSharkDecoder decoder = LiveTSharkDecoder.start(toolService, tshark, objectMapper,
+                config.getGsmtap().getLiveDecodeQueue(), emitter::next);
+            FunctionCounter drops = FunctionCounter.builder("gsmtap.decode.dropped", decoder, LiveTSharkDecoder::dropped)
+                .description("Datagrams a live decode dropped because tshark fell behind")
+                .tags(Tags.of("session", String.valueOf(sessionId)))
+                .register(meterRegistry);
+            Runnable detach = capture.attach("decode", decoder, () -> {
+                decoder.close();
+                emitter.complete();
+            });
+            emitter.onDispose(() -> {
+                detach.run();
+                decoder.close();
+                meterRegistry.remove(drops);
+            });
+        });
+    }
+    
     /**
      * Stop capturing for a session
      */
@@ -259,6 +364,12 @@ public class GsmtapListenerService {
      */
     @PreDestroy
     public void stopListener() {
+        if (flushTicker != null) {
+            flushTicker.dispose();
+        }
+        activeSessions.values().forEach(SessionCapture::close);
+        activeSessions.clear();
+        
         if (!running.get()) {
             return;
         }
@@ -266,13 +377,13 @@ public class GsmtapListenerService {
         log.info("⏹️ Stopping GSMTAP listener...");
         running.set(false);
         
-        // Close all active sessions
-        activeSessions.values().forEach(SessionCapture::close);
-        activeSessions.clear();
-        
-        // Close socket
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        // Close channel (unblocks receive)
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing GSMTAP channel: {}", e.getMessage());
+            }
         }
         
         // Interrupt listener thread
@@ -284,7 +395,10 @@ public class GsmtapListenerService {
     }
     
     /**
-     * GSMTAP Packet representation
+     * GSMTAP Packet representation.
+     *
+     * Packets of a session stream own a read-only copy of their {@code payload}, shared by all
+     * subscribers: read it with absolute gets or a {@code duplicate()}.
      */
     public static class GsmtapPacket {
         public int version;
@@ -301,9 +415,18 @@ public class GsmtapListenerService {
         public int antennaNr;
         public int subSlot;
         public int reserved;
-        public byte[] payload;
+        public ByteBuffer payload;
         public long timestamp;
         
+        public byte[] payloadBytes() {
+            if (payload == null) {
+                return new byte[0];
+            }
+            byte[] bytes = new byte[payload.remaining()];
+            payload.duplicate().get(bytes);
+            return bytes;
+        }
+        
         public Map<String, Object> toMap() {
             Map<String, Object> map = new HashMap<>();
             map.put("version", version);
@@ -315,86 +438,147 @@ public class GsmtapListenerService {
             map.put("snrDb", snrDb);
             map.put("frameNumber", frameNumber);
             map.put("timestamp", timestamp);
-            map.put("payloadSize", payload != null ? payload.length : 0);
+            map.put("payloadSize", payload != null ? payload.remaining() : 0);
             return map;
         }
     }
     
     /**
-     * Session capture state
+     * GSMTAP has no sequence number, but LTE and GSM frame numbers are radio time. When the
+     * frame number of a type advances further than wall-clock time between two deliveries,
+     * the frames in between never reached us (typically a full socket buffer after a stall).
+     * Other types, frame number 0 and jumps beyond half the wrap period are ignored.
+     * Used from the listener thread only.
+     */
+    private static final class FrameGapDetector {
+        private static final long LTE_FRAME_WRAP = 10240;       // SFN * 10 + subframe, 1 ms
+        private static final long GSM_FRAME_WRAP = 2715648;     // TDMA frame number, 120/26 ms
+        
+        private final long[] lastFrame = new long[256];
+        private final long[] lastArrival = new long[256];
+        
+        /**
+         * @return milliseconds of radio time missing before this frame, or 0
+         */
+        long observe(int type, int frameNumber, long arrivalNanos, long thresholdMillis) {
+            long wrap;
+            double frameMicros;
+            switch (type) {
+                case 0x0D, 0x0E, 0x0F -> { wrap = LTE_FRAME_WRAP; frameMicros = 1000; }
+                case 0x01, 0x03 -> { wrap = GSM_FRAME_WRAP; frameMicros = 120_000.0 / 26; }
+                default -> { return 0; }
+            }
+            if (frameNumber == 0) {
+                return 0;
+            }
+            long frame = Integer.toUnsignedLong(frameNumber) % wrap;
+            long previousFrame = lastFrame[type];
+            long previousArrival = lastArrival[type];
+            lastFrame[type] = frame;
+            lastArrival[type] = arrivalNanos;
+            if (previousArrival == 0) {
+                return 0;
+            }
+            long wallMicros = (arrivalNanos - previousArrival) / 1000;
+            long advance = Math.floorMod(frame - previousFrame, wrap);
+            if (advance > wrap / 2 || wallMicros > wrap / 2 * frameMicros) {
+                // Reordered, restarted, or quiet for longer than the frame number can tell
+                return 0;
+            }
+            long missedMillis = ((long) (advance * frameMicros) - wallMicros) / 1000;
+            return missedMillis > thresholdMillis ? missedMillis : 0;
+        }
+    }
+    
+    /**
+     * Session capture state: two consumers of the fan-out ring on their own threads, one
+     * appending to the session PCAP and one streaming parsed packets, so a slow disk does not
+     * delay the stream and a slow stream does not delay the PCAP. Further consumers (the live
+     * decoder) can be attached while the capture runs. Each consumer's lag is exported as
+     * gsmtap.ring.lag{session,consumer}.
      */
     private static class SessionCapture {
         final Long sessionId;
         final Path outputPcap;
-        final Sinks.Many<GsmtapPacket> sink;
-        private ByteArrayOutputStream pcapBuffer;
-        private boolean pcapHeaderWritten = false;
+        final StreamSink<GsmtapPacket> sink;
+        private final GsmtapPcapWriter writer;
+        private final DatagramRing ring;
+        private final MeterRegistry meterRegistry;
+        private final List<DatagramRing.Subscription> consumers;
+        private final List<Gauge> lagGauges;
+        private final List<Attached> attached = new CopyOnWriteArrayList<>();
         
-        SessionCapture(Long sessionId, Path outputPcap) {
+        private record Attached(DatagramRing.Subscription consumer, Gauge lagGauge, Runnable onCaptureClose) {}
+        
+        SessionCapture(Long sessionId, Path outputPcap, ToolsConfig.Gsmtap settings,
+                       DatagramRing ring, MeterRegistry meterRegistry, StreamSink<GsmtapPacket> sink) throws IOException {
             this.sessionId = sessionId;
             this.outputPcap = outputPcap;
-            this.sink = Sinks.many().multicast().onBackpressureBuffer();
-            this.pcapBuffer = new ByteArrayOutputStream();
-            
-            try {
-                writePcapGlobalHeader();
-            } catch (IOException e) {
-                log.error("Failed to write PCAP header", e);
-            }
+            this.sink = sink;
+            this.writer = new GsmtapPcapWriter(outputPcap,
+                (int) settings.getPcapFlushSize().toBytes(), settings.getPcapFlushInterval(),
+                settings.getPcapDurability(), settings.getPcapFsyncInterval());
+            this.ring = ring;
+            this.meterRegistry = meterRegistry;
+            DatagramRing.Subscription pcap = ring.subscribe("pcap-" + sessionId, writer::append);
+            DatagramRing.Subscription stream = ring.subscribe("stream-" + sessionId, this::emit);
+            this.consumers = List.of(pcap, stream);
+            this.lagGauges = List.of(lagGauge(pcap, "pcap"), lagGauge(stream, "stream"));
+        }
+        
+        /**
+         * Add a consumer until the returned detach action runs; if the capture stops first,
+         * it is drained and then {@code onCaptureClose} runs
+         */
+        Runnable attach(String kind, DatagramRing.Handler handler, Runnable onCaptureClose) {
+            DatagramRing.Subscription consumer = ring.subscribe(kind + "-" + sessionId, handler);
+            Attached entry = new Attached(consumer, lagGauge(consumer, kind), onCaptureClose);
+            attached.add(entry);
+            return () -> {
+                if (attached.remove(entry)) {
+                    consumer.close(DECODER_DETACH_MILLIS);
+                    meterRegistry.remove(entry.lagGauge());
+                }
+            };
         }
         
-        private void writePcapGlobalHeader() throws IOException {
-            // PCAP Global Header
-            ByteBuffer header = ByteBuffer.allocate(24);
-            header.putInt(0xa1b2c3d4);      // Magic number
-            header.putShort((short) 2);      // Major version
-            header.putShort((short) 4);      // Minor version
-            header.putInt(0);                // Timezone
-            header.putInt(0);                // Sigfigs
-            header.putInt(65535);            // Snaplen
-            header.putInt(1);                // Network (Ethernet)
-            
-            pcapBuffer.write(header.array());
-            pcapHeaderWritten = true;
+        private Gauge lagGauge(DatagramRing.Subscription consumer, String kind) {
+            return Gauge.builder("gsmtap.ring.lag", consumer, DatagramRing.Subscription::lag)
+                .description("Datagrams published to the fan-out ring and not yet handled by this consumer")
+                .tags(Tags.of("session", String.valueOf(sessionId), "consumer", kind))
+                .register(meterRegistry);
         }
         
-        synchronized void writePcapPacket(byte[] data) throws IOException {
-            long ts = System.currentTimeMillis();
-            int tsSec = (int) (ts / 1000);
-            int tsUsec = (int) ((ts % 1000) * 1000);
-            
-            // PCAP Packet Header
-            ByteBuffer header = ByteBuffer.allocate(16);
-            header.putInt(tsSec);            // Timestamp seconds
-            header.putInt(tsUsec);           // Timestamp microseconds
-            header.putInt(data.length);      // Captured length
-            header.putInt(data.length);      // Original length
-            
-            pcapBuffer.write(header.array());
-            pcapBuffer.write(data);
-            
-            // Flush to file periodically (every 100 packets or 1MB)
-            if (pcapBuffer.size() > 1024 * 1024) {
-                flushToFile();
+        private void emit(ByteBuffer datagram, long timestampNanos) {
+            if (datagram.remaining() >= GsmtapHeader.LENGTH) {
+                // The sink buffers packets past the ring slot's lifetime, so they carry their own copy
+                GsmtapPacket packet = parseGsmtapHeader(datagram, timestampNanos);
+                packet.payload = ByteBuffer.wrap(packet.payloadBytes()).asReadOnlyBuffer();
+                sink.tryEmitNext(packet);
             }
         }
         
-        private void flushToFile() throws IOException {
-            if (pcapBuffer.size() == 0) return;
-            
-            Files.write(outputPcap, pcapBuffer.toByteArray(), 
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            pcapBuffer.reset();
-            
-            // Re-write header if needed
-            if (pcapHeaderWritten) {
-                writePcapGlobalHeader();
+        void tick() {
+            try {
+                writer.tick();
+            } catch (IOException e) {
+                log.error("Error flushing PCAP for session {}", sessionId, e);
             }
         }
         
         void close() {
+            // Let all consumers catch up with what was received before the stop
+            consumers.forEach(consumer -> consumer.close(CONSUMER_DRAIN_MILLIS));
+            lagGauges.forEach(meterRegistry::remove);
+            for (Attached entry : attached) {
+                if (attached.remove(entry)) {
+                    entry.consumer().close(CONSUMER_DRAIN_MILLIS);
+                    meterRegistry.remove(entry.lagGauge());
+                    entry.onCaptureClose().run();
+                }
+            }
             try {
-                flushToFile();
+                writer.close();
             } catch (IOException e) {
                 log.error("Error flushing PCAP on close", e);
             }
@@ -5,66 +5,51 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class HandoverAnalyzerService {
+    private static final String HO_COMMAND = "lte-rrc.rrcConnectionReconfiguration_element";
+    private static final String HO_COMPLETE = "lte-rrc.rrcConnectionReconfigurationComplete_element";
+    private static final String HO_FAILURE = "lte-rrc.handoverFailure_element";
+    private static final String HO_INTRA_FREQ = "lte-rrc.mobilityControlInfo_element && lte-rrc.carrierFreq == 0";
+    private static final String HO_INTER_FREQ = "lte-rrc.mobilityControlInfo_element && lte-rrc.carrierFreq != 0";
+    private static final String HO_INTER_RAT = "lte-rrc.mobilityFromEUTRACommand_element";
+
+    private final TSharkIntegrationService tsharkService;
     
     public Mono<Map<String, Object>> analyzeHandovers(String pcapPath) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> result = new HashMap<>();
-            
-            int hoCommands = countEvents(pcapPath, "lte-rrc.rrcConnectionReconfiguration_element");
-            int hoCompletes = countEvents(pcapPath, "lte-rrc.rrcConnectionReconfigurationComplete_element");
-            int hoFailures = countEvents(pcapPath, "lte-rrc.handoverFailure_element");
-            
-            double successRate = hoCommands > 0 ? (hoCompletes * 100.0 / hoCommands) : 0;
-            double failureRate = hoCommands > 0 ? (hoFailures * 100.0 / hoCommands) : 0;
-            
-            result.put("hoCommands", hoCommands);
-            result.put("hoCompletes", hoCompletes);
-            result.put("hoFailures", hoFailures);
-            result.put("successRate", successRate);
-            result.put("failureRate", failureRate);
-            result.put("hoTypes", analyzeHandoverTypes(pcapPath));
-            
-            return result;
-        });
-    }
-    
-    private int countEvents(String pcapPath, String filter) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath,
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            int count = 0;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                while (reader.readLine() != null) {
-                    count++;
-                }
-            }
-            process.waitFor();
-            return count;
-        } catch (Exception e) {
-            log.error("Failed to count events", e);
-            return 0;
-        }
+        return tsharkService.countPackets(Path.of(pcapPath), List.of(
+                HO_COMMAND, HO_COMPLETE, HO_FAILURE, HO_INTRA_FREQ, HO_INTER_FREQ, HO_INTER_RAT))
+            .map(counts -> {
+                Map<String, Object> result = new HashMap<>();
+                
+                int hoCommands = counts.getOrDefault(HO_COMMAND, 0);
+                int hoCompletes = counts.getOrDefault(HO_COMPLETE, 0);
+                int hoFailures = counts.getOrDefault(HO_FAILURE, 0);
+                
+                double successRate = hoCommands > 0 ? (hoCompletes * 100.0 / hoCommands) : 0;
+                double failureRate = hoCommands > 0 ? (hoFailures * 100.0 / hoCommands) : 0;
+                
+                result.put("hoCommands", hoCommands);
+                result.put("hoCompletes", hoCompletes);
+                result.put("hoFailures", hoFailures);
+                result.put("successRate", successRate);
+                result.put("failureRate", failureRate);
+                result.put("hoTypes", analyzeHandoverTypes(counts));
+                
+                return result;
+            });
     }
     
-    private Map<String, Integer> analyzeHandoverTypes(String pcapPath) {
+    private Map<String, Integer> analyzeHandoverTypes(Map<String, Integer> counts) {
         Map<String, Integer> types = new HashMap<>();
-        types.put("intraFreq", countEvents(pcapPath, "lte-rrc.mobilityControlInfo_element && lte-rrc.carrierFreq == 0"));
-        types.put("interFreq", countEvents(pcapPath, "lte-rrc.mobilityControlInfo_element && lte-rrc.carrierFreq != 0"));
-        types.put("interRAT", countEvents(pcapPath, "lte-rrc.mobilityFromEUTRACommand_element"));
+        types.put("intraFreq", counts.getOrDefault(HO_INTRA_FREQ, 0));
+        types.put("interFreq", counts.getOrDefault(HO_INTER_FREQ, 0));
+        types.put("interRAT", counts.getOrDefault(HO_INTER_RAT, 0));
         return types;
     }
 }
@@ -2,6 +2,7 @@ package com.nathan.p2.service;
 
 import com.nathan.p2.domain.KpiAggregate;
 import com.nathan.p2.repository.KpiAggregateRepository;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -22,12 +23,14 @@ import java.util.stream.Collectors;
 public class KMeansClusteringService {
 
     private final KpiAggregateRepository kpiRepository;
+    private final PipelineSchedulers schedulers;
     private List<CentroidCluster<FeaturePoint>> clusters;
     private Map<String, FeatureStats> featureStats;
 
     public Mono<ClusterResult> performClustering(Long sessionId, int numClusters) {
         return kpiRepository.findBySessionId(sessionId)
             .collectList()
+            .publishOn(schedulers.analytics())
             .map(kpis -> {
                 List<FeaturePoint> points = extractFeaturePoints(kpis);
                 
@@ -60,9 +63,10 @@ public class KMeansClusteringService {
                     .clusterStatistics(stats)
                     .build();
             })
-            .flatMap(result -> kpiRepository.saveAll(
-                kpiRepository.findBySessionId(sessionId).collectList().block()
-            ).collectList().thenReturn(result));
+            .flatMap(result -> kpiRepository.saveAll(kpiRepository.findBySessionId(sessionId))
+                .subscribeOn(schedulers.persistence())
+                .then()
+                .thenReturn(result));
     }
 
     private List<FeaturePoint> extractFeaturePoints(List<KpiAggregate> kpis) {
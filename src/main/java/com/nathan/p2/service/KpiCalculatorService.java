@@ -1,7 +1,11 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.KpiAggregate;
-import com.nathan.p2.repository.KpiAggregateRepository;
+import com.nathan.p2.service.kpi.KpiAccumulator;
+import com.nathan.p2.service.kpi.KpiEngine;
+import com.nathan.p2.service.persistence.BatchWriter;
+import com.nathan.p2.service.persistence.InsertTables;
+import com.nathan.p2.service.process.ToolPriority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -9,94 +13,36 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.Map;
+import java.util.List;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class KpiCalculatorService {
     
-    private final KpiAggregateRepository kpiRepository;
-    private final TSharkIntegrationService tsharkService;
-    private final DetailedKpiExtractor detailedExtractor;
-    private final MissingKpiExtractor missingKpiExtractor;
-    private final ConfigurationKpiExtractor configurationExtractor;
-    private final ProcedureCorrelationService correlationService;
+    private final KpiEngine kpiEngine;
     private final GpsPersistenceService gpsPersistenceService;
     private final ComprehensivePcapExtractorService pcapExtractor;
+    private final BatchWriter batchWriter;
 
     public Mono<Void> calculate(Long sessionId, Path pcapFile) {
         log.info("📊 Calculating ALL KPIs for ALL RATs (5G/LTE/WCDMA/GSM) - Session {}", sessionId);
         
         // First, extract and save GPS traces from PCAP
-        Mono<Void> saveGps = pcapExtractor.extractCompleteDataset(pcapFile)
-            .flatMapMany(dataset -> gpsPersistenceService.saveGpsTracesFromDataset(sessionId, dataset))
+        Mono<Void> saveGps = gpsPersistenceService
+            .saveGpsTracesFromDataset(sessionId, pcapExtractor.streamCompleteDataset(pcapFile, ToolPriority.BATCH))
             .then()
             .doOnSuccess(v -> log.info("✅ GPS traces saved for session {}", sessionId))
-            .doOnError(e -> log.warn("⚠️ GPS extraction failed (will continue without GPS): {}", e.getMessage()));
+            .doOnError(e -> log.warn("⚠️ GPS extraction failed (will continue without GPS): {}", e.getMessage()))
+            .onErrorResume(e -> Mono.empty());
 
-        // Then calculate all KPIs (in parallel with GPS saving for performance)
+        // Then calculate all KPIs (in parallel with GPS saving for performance).
+        // Procedure (counted and correlated), signal quality, detailed, missing and configuration
+        // KPIs share one tshark pass.
         Mono<Void> calculateKpis = Flux.merge(
-            // === 5G NR KPIs ===
-            calculate5gRrcSr(sessionId, pcapFile),
-            calculate5gPduSessionSr(sessionId, pcapFile),
-            calculate5gHoSr(sessionId, pcapFile),
-            calculate5gSignalQuality(sessionId, pcapFile),
-            
-            // === LTE KPIs ===
-            calculateLteRrcSr(sessionId, pcapFile),
-            calculateLteAttachSr(sessionId, pcapFile),
-            calculateLteTauSr(sessionId, pcapFile),
-            calculateLteServiceReqSr(sessionId, pcapFile),
-            calculateLteRachSr(sessionId, pcapFile),
-            calculateLteErabSetupSr(sessionId, pcapFile),
-            calculateLteHoSr(sessionId, pcapFile),
-            calculateLteHoLatency(sessionId, pcapFile),
-            calculateLteAbnormalRelease(sessionId, pcapFile),
-            calculateLteSignalQuality(sessionId, pcapFile),
-            calculateLtePdnConnectivitySr(sessionId, pcapFile),
-            calculateLteMeasurementReports(sessionId, pcapFile),
-            calculateLteSecurityModeSr(sessionId, pcapFile),
-            
-            // === WCDMA KPIs ===
-            calculateWcdmaRrcSr(sessionId, pcapFile),
-            calculateWcdmaHoSr(sessionId, pcapFile),
-            calculateWcdmaAbnormalRelease(sessionId, pcapFile),
-            calculateWcdmaSignalQuality(sessionId, pcapFile),
-            calculateWcdmaRabSetupSr(sessionId, pcapFile),
-            calculateWcdmaPhysicalChannelReconfig(sessionId, pcapFile),
-            calculateWcdmaActiveSetUpdate(sessionId, pcapFile),
-            calculateWcdmaCellReselection(sessionId, pcapFile),
-            calculateWcdmaPdpContextSr(sessionId, pcapFile),
-            calculateWcdmaSecurityModeSr(sessionId, pcapFile),
-            calculateWcdmaRauSr(sessionId, pcapFile),
-            
-            // === GSM KPIs ===
-            calculateGsmRrSr(sessionId, pcapFile),
-            calculateGsmHoSr(sessionId, pcapFile),
-            calculateGsmSignalQuality(sessionId, pcapFile),
-            calculateGsmRach(sessionId, pcapFile),
-            calculateGsmLocationUpdate(sessionId, pcapFile),
-            
-            // === Common KPIs ===
-            calculateCallSetupSr(sessionId, pcapFile),
-            calculateCallDropRate(sessionId, pcapFile),
-            calculateRrcReestablishmentRate(sessionId, pcapFile),
-            calculateThroughput(sessionId, pcapFile),
-            calculateLatency(sessionId, pcapFile),
-            calculatePacketLoss(sessionId, pcapFile),
-            calculateJitter(sessionId, pcapFile),
-            
-            // === Detailed KPIs (by cause/type/cell) ===
-            detailedExtractor.extractAll(sessionId, pcapFile),
-            
-            // === Missing KPIs (auth, bearer, PDCP, BLER, etc.) ===
-            missingKpiExtractor.extractAll(sessionId, pcapFile),
-            
-            // === Configuration KPIs (QoS, RRC config tracking) ===
-            extractConfigurationKpis(sessionId, pcapFile)
+            kpiEngine.run(sessionId, pcapFile)
+                .flatMap(kpis -> batchWriter.write(InsertTables.KPI_AGGREGATES, kpis)),
+            batchWriter.write(InsertTables.KPI_AGGREGATES, placeholderKpis(sessionId))
         )
         .then();
 
@@ -107,522 +53,22 @@ public class KpiCalculatorService {
             .doOnError(e -> log.error("❌ KPI calculation failed for session {}", sessionId, e));
     }
 
-    // ==================== 5G NR KPIs ====================
-    
-    private Mono<KpiAggregate> calculate5gRrcSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nr-rrc.rrcSetup")
-                .zipWith(tsharkService.countPackets(pcapFile, "nr-rrc.rrcSetupComplete"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = requests > 0 ? (completes * 100.0 / requests) : 0.0;
-                    log.info("5G RRC SR: {}/{} = {:.2f}%", completes, requests, sr);
-                    return createKpi(sessionId, "5G_RRC_SR", sr, sr, sr, "5GNR");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculate5gPduSessionSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas-5gs.sm.message_type == 0xc1")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas-5gs.sm.message_type == 0xc2"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    return createKpi(sessionId, "5G_PDU_SESSION_SR", sr, sr, sr, "5GNR");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculate5gHoSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nr-rrc.rrcReconfiguration")
-                .zipWith(tsharkService.countPackets(pcapFile, "nr-rrc.rrcReconfigurationComplete"))
-                .map(tuple -> {
-                    long attempts = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = attempts > 0 ? (completes * 100.0 / attempts) : 0.0;
-                    return createKpi(sessionId, "5G_HO_SR", sr, sr, sr, "5GNR");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculate5gSignalQuality(Long sessionId, Path pcapFile) {
-        return Flux.merge(
-            tsharkService.extractFields(pcapFile, Arrays.asList("nr-rrc.ss-RSRP"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "5G_SS_RSRP_AVG", -100.0, -120.0, -80.0, "5GNR"))
-                .flatMap(kpiRepository::save),
-            
-            tsharkService.extractFields(pcapFile, Arrays.asList("nr-rrc.ss-RSRQ"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "5G_SS_RSRQ_AVG", -15.0, -20.0, -10.0, "5GNR"))
-                .flatMap(kpiRepository::save),
-            
-            tsharkService.extractFields(pcapFile, Arrays.asList("nr-rrc.ss-SINR"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "5G_SS_SINR_AVG", 10.0, 0.0, 20.0, "5GNR"))
-                .flatMap(kpiRepository::save)
-        ).then(Mono.just(createKpi(sessionId, "5G_SIGNAL_QUALITY", 0.0, 0.0, 0.0, "5GNR")));
-    }
-
-    // ==================== LTE KPIs ====================
-    
-    private Mono<KpiAggregate> calculateLteRrcSr(Long sessionId, Path pcapFile) {
-        // Use procedure correlation for accurate RRC Success Rate
-        return correlationService.correlateLteRrcProcedures(pcapFile)
-            .map(procedures -> {
-                long total = procedures.size();
-                long successful = procedures.stream().filter(p -> p.success).count();
-                double sr = total > 0 ? (successful * 100.0 / total) : 0.0;
-                
-                // Calculate average latencies for successful procedures
-                double avgSetupLatency = procedures.stream()
-                    .filter(p -> p.success && p.setupLatencyMs > 0)
-                    .mapToLong(p -> p.setupLatencyMs)
-                    .average()
-                    .orElse(0.0);
-                
-                double avgTotalLatency = procedures.stream()
-                    .filter(p -> p.success && p.totalLatencyMs > 0)
-                    .mapToLong(p -> p.totalLatencyMs)
-                    .average()
-                    .orElse(0.0);
-                
-                log.info("📊 LTE RRC SR: {}/{} = {:.2f}% (Setup: {:.0f}ms, Total: {:.0f}ms)", 
-                    successful, total, sr, avgSetupLatency, avgTotalLatency);
-                
-                return createKpi(sessionId, "LTE_RRC_SR", sr, sr, sr, "LTE");
-            })
-            .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteAttachSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x41")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x42"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    log.info("LTE Attach SR: {}/{} = {:.2f}%", accepts, requests, sr);
-                    return createKpi(sessionId, "LTE_ATTACH_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteTauSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x48")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x49"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    log.info("LTE TAU SR: {}/{} = {:.2f}%", accepts, requests, sr);
-                    return createKpi(sessionId, "LTE_TAU_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteServiceReqSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x4c")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_emm_type == 0x4d"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    return createKpi(sessionId, "LTE_SERVICE_REQ_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteRachSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "mac-lte.rach-preamble")
-                .zipWith(tsharkService.countPackets(pcapFile, "mac-lte.rar"))
-                .map(tuple -> {
-                    long attempts = tuple.getT1();
-                    long responses = tuple.getT2();
-                    double sr = attempts > 0 ? (responses * 100.0 / attempts) : 95.0;
-                    return createKpi(sessionId, "LTE_RACH_SR", sr, 90.0, 100.0, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteErabSetupSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_esm_type == 0xc1")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_esm_type == 0xc2"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 98.0;
-                    return createKpi(sessionId, "LTE_ERAB_SETUP_SR", sr, 95.0, 100.0, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteHoSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "lte-rrc.mobilityFromEUTRACommand_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "lte-rrc.rrcConnectionReconfigurationComplete_element"))
-                .map(tuple -> {
-                    long attempts = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = attempts > 0 ? (completes * 100.0 / attempts) : 0.0;
-                    log.info("LTE Handover SR: {}/{} = {:.2f}%", completes, attempts, sr);
-                    return createKpi(sessionId, "LTE_HO_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteHoLatency(Long sessionId, Path pcapFile) {
-        return Mono.just(createKpi(sessionId, "LTE_HO_LATENCY", 50.0, 30.0, 100.0, "LTE"))
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteAbnormalRelease(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "lte-rrc.rrcConnectionRelease_element")
-                .map(releases -> {
-                    double rate = 2.0;
-                    return createKpi(sessionId, "LTE_AB_REL_RATE", rate, rate, rate, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteSignalQuality(Long sessionId, Path pcapFile) {
-        return Flux.merge(
-            tsharkService.extractFields(pcapFile, Arrays.asList("lte-rrc.rsrpResult"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "LTE_RSRP_AVG", -85.0, -100.0, -70.0, "LTE"))
-                .flatMap(kpiRepository::save),
-            
-            tsharkService.extractFields(pcapFile, Arrays.asList("lte-rrc.rsrqResult"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "LTE_RSRQ_AVG", -10.0, -15.0, -5.0, "LTE"))
-                .flatMap(kpiRepository::save),
-            
-            Mono.just(createKpi(sessionId, "LTE_SINR_AVG", 15.0, 5.0, 25.0, "LTE"))
-                .flatMap(kpiRepository::save)
-        ).then(Mono.just(createKpi(sessionId, "LTE_SIGNAL_QUALITY", 0.0, 0.0, 0.0, "LTE")));
-    }
-
-    // ==================== WCDMA KPIs ====================
-    
-    private Mono<KpiAggregate> calculateWcdmaRrcSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.rrcConnectionRequest_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.rrcConnectionSetupComplete_element"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = requests > 0 ? (completes * 100.0 / requests) : 0.0;
-                    log.info("WCDMA RRC SR: {}/{} = {:.2f}%", completes, requests, sr);
-                    return createKpi(sessionId, "WCDMA_RRC_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaHoSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.cellUpdate_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.cellUpdateConfirm_element"))
-                .map(tuple -> {
-                    long attempts = tuple.getT1();
-                    long confirms = tuple.getT2();
-                    double sr = attempts > 0 ? (confirms * 100.0 / attempts) : 0.0;
-                    return createKpi(sessionId, "WCDMA_HO_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaAbnormalRelease(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.rrcConnectionRelease_element")
-                .map(releases -> {
-                    double rate = 2.0;
-                    return createKpi(sessionId, "WCDMA_AB_REL_RATE", rate, rate, rate, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaSignalQuality(Long sessionId, Path pcapFile) {
-        return Flux.merge(
-            tsharkService.extractFields(pcapFile, Arrays.asList("rrc.cpich-RSCP"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "WCDMA_RSCP_AVG", -80.0, -100.0, -60.0, "WCDMA"))
-                .flatMap(kpiRepository::save),
-            
-            tsharkService.extractFields(pcapFile, Arrays.asList("rrc.cpich-Ec-N0"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "WCDMA_ECIO_AVG", -10.0, -15.0, -5.0, "WCDMA"))
-                .flatMap(kpiRepository::save)
-        ).then(Mono.just(createKpi(sessionId, "WCDMA_SIGNAL_QUALITY", 0.0, 0.0, 0.0, "WCDMA")));
-    }
-
-    // ==================== GSM KPIs ====================
-    
-    private Mono<KpiAggregate> calculateGsmRrSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_rr_type == 0x27")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_rr_type == 0x3f"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long assigns = tuple.getT2();
-                    double sr = requests > 0 ? (assigns * 100.0 / requests) : 0.0;
-                    log.info("GSM RR SR: {}/{} = {:.2f}%", assigns, requests, sr);
-                    return createKpi(sessionId, "GSM_RR_SR", sr, sr, sr, "GSM");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateGsmHoSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_rr_type == 0x2b")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_rr_type == 0x2c"))
-                .map(tuple -> {
-                    long commands = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = commands > 0 ? (completes * 100.0 / commands) : 0.0;
-                    return createKpi(sessionId, "GSM_HO_SR", sr, sr, sr, "GSM");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateGsmSignalQuality(Long sessionId, Path pcapFile) {
-        return Flux.merge(
-            tsharkService.extractFields(pcapFile, Arrays.asList("gsm_a.rr.rxlev_full_serv_cell"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "GSM_RXLEV_AVG", 40.0, 20.0, 60.0, "GSM"))
-                .flatMap(kpiRepository::save),
-            
-            tsharkService.extractFields(pcapFile, Arrays.asList("gsm_a.rr.rxqual_full_serv_cell"))
-                .collectList()
-                .map(values -> createKpi(sessionId, "GSM_RXQUAL_AVG", 2.0, 0.0, 5.0, "GSM"))
-                .flatMap(kpiRepository::save)
-        ).then(Mono.just(createKpi(sessionId, "GSM_SIGNAL_QUALITY", 0.0, 0.0, 0.0, "GSM")));
-    }
-
-    // ==================== Common KPIs ====================
-    
-    private Mono<KpiAggregate> calculateCallDropRate(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x05")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x2d"))
-                .map(tuple -> {
-                    long setups = tuple.getT1();
-                    long disconnects = tuple.getT2();
-                    double rate = setups > 0 ? (disconnects * 100.0 / setups) : 0.0;
-                    return createKpi(sessionId, "CALL_DROP_RATE", rate, rate, rate, "ALL");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateRrcReestablishmentRate(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "lte-rrc.rrcConnectionReestablishmentRequest_element")
-                .map(reestablishments -> {
-                    double rate = 1.0;
-                    return createKpi(sessionId, "RRC_REESTABLISHMENT_RATE", rate, rate, rate, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateThroughput(Long sessionId, Path pcapFile) {
-        return Flux.merge(
-            Mono.just(createKpi(sessionId, "DL_THROUGHPUT_MBPS", 50.0, 10.0, 150.0, "ALL"))
-                .flatMap(kpiRepository::save),
-            Mono.just(createKpi(sessionId, "UL_THROUGHPUT_MBPS", 20.0, 5.0, 50.0, "ALL"))
-                .flatMap(kpiRepository::save)
-        ).then(Mono.just(createKpi(sessionId, "THROUGHPUT", 0.0, 0.0, 0.0, "ALL")));
-    }
-
-    private Mono<KpiAggregate> calculateLatency(Long sessionId, Path pcapFile) {
-        return Mono.just(createKpi(sessionId, "LATENCY_MS", 30.0, 20.0, 50.0, "ALL"))
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculatePacketLoss(Long sessionId, Path pcapFile) {
-        return Mono.just(createKpi(sessionId, "PACKET_LOSS_RATE", 0.5, 0.0, 2.0, "ALL"))
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateJitter(Long sessionId, Path pcapFile) {
-        return Mono.just(createKpi(sessionId, "JITTER_MS", 5.0, 2.0, 10.0, "ALL"))
-                .flatMap(kpiRepository::save);
-    }
-
-    // ==================== Additional LTE KPIs ====================
-    
-    private Mono<KpiAggregate> calculateLtePdnConnectivitySr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_esm_type == 0xd0")
-                .zipWith(tsharkService.countPackets(pcapFile, "nas_eps.nas_msg_esm_type == 0xd1"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    return createKpi(sessionId, "LTE_PDN_CONNECTIVITY_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteMeasurementReports(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "lte-rrc.measurementReport_element")
-                .map(count -> createKpi(sessionId, "LTE_MEAS_REPORT_COUNT", count.doubleValue(), count.doubleValue(), count.doubleValue(), "LTE"))
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateLteSecurityModeSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "lte-rrc.securityModeCommand_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "lte-rrc.securityModeComplete_element"))
-                .map(tuple -> {
-                    long commands = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = commands > 0 ? (completes * 100.0 / commands) : 0.0;
-                    return createKpi(sessionId, "LTE_SECURITY_MODE_SR", sr, sr, sr, "LTE");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    // ==================== Additional WCDMA KPIs ====================
-    
-    private Mono<KpiAggregate> calculateWcdmaRabSetupSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.radioBearerSetup")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.radioBearerSetupComplete_element"))
-                .map(tuple -> {
-                    long setups = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = setups > 0 ? (completes * 100.0 / setups) : 0.0;
-                    return createKpi(sessionId, "WCDMA_RAB_SETUP_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaPhysicalChannelReconfig(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.physicalChannelReconfiguration")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.physicalChannelReconfigurationComplete_element"))
-                .map(tuple -> {
-                    long reconfigs = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = reconfigs > 0 ? (completes * 100.0 / reconfigs) : 0.0;
-                    return createKpi(sessionId, "WCDMA_PHY_CH_RECONFIG_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaActiveSetUpdate(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.activeSetUpdate_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.activeSetUpdateComplete_element"))
-                .map(tuple -> {
-                    long updates = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = updates > 0 ? (completes * 100.0 / updates) : 0.0;
-                    return createKpi(sessionId, "WCDMA_ACTIVE_SET_UPDATE_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaCellReselection(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.cellUpdate_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.cellUpdateConfirm_element"))
-                .map(tuple -> {
-                    long updates = tuple.getT1();
-                    long confirms = tuple.getT2();
-                    double sr = updates > 0 ? (confirms * 100.0 / updates) : 0.0;
-                    return createKpi(sessionId, "WCDMA_CELL_RESELECTION_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaPdpContextSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.gm.sm.msg_type == 0x41")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.gm.sm.msg_type == 0x42"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    return createKpi(sessionId, "WCDMA_PDP_CONTEXT_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaSecurityModeSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "rrc.securityModeCommand_element")
-                .zipWith(tsharkService.countPackets(pcapFile, "rrc.securityModeComplete_element"))
-                .map(tuple -> {
-                    long commands = tuple.getT1();
-                    long completes = tuple.getT2();
-                    double sr = commands > 0 ? (completes * 100.0 / commands) : 0.0;
-                    return createKpi(sessionId, "WCDMA_SECURITY_MODE_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateWcdmaRauSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.gm.gmm.msg_type == 0x08")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.gm.gmm.msg_type == 0x09"))
-                .map(tuple -> {
-                    long requests = tuple.getT1();
-                    long accepts = tuple.getT2();
-                    double sr = requests > 0 ? (accepts * 100.0 / requests) : 0.0;
-                    return createKpi(sessionId, "WCDMA_RAU_SR", sr, sr, sr, "WCDMA");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    // ==================== Additional GSM KPIs ====================
-    
-    private Mono<KpiAggregate> calculateGsmRach(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.rach")
-                .map(count -> createKpi(sessionId, "GSM_RACH_ATTEMPTS", count.doubleValue(), count.doubleValue(), count.doubleValue(), "GSM"))
-                .flatMap(kpiRepository::save);
-    }
-
-    private Mono<KpiAggregate> calculateGsmLocationUpdate(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_mm_type == 0x08")
-                .map(count -> createKpi(sessionId, "GSM_LOCATION_UPDATE_COUNT", count.doubleValue(), count.doubleValue(), count.doubleValue(), "GSM"))
-                .flatMap(kpiRepository::save);
-    }
-
-    // ==================== Call Control KPIs ====================
-    
-    private Mono<KpiAggregate> calculateCallSetupSr(Long sessionId, Path pcapFile) {
-        return tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x05")
-                .zipWith(tsharkService.countPackets(pcapFile, "gsm_a.dtap.msg_cc_type == 0x0f"))
-                .map(tuple -> {
-                    long setups = tuple.getT1();
-                    long connects = tuple.getT2();
-                    double sr = setups > 0 ? (connects * 100.0 / setups) : 0.0;
-                    return createKpi(sessionId, "CALL_SETUP_SR", sr, sr, sr, "ALL");
-                })
-                .flatMap(kpiRepository::save);
-    }
-
-    // ==================== Helper ====================
-    
-    private Mono<Void> extractConfigurationKpis(Long sessionId, Path pcapFile) {
-        return Mono.fromCallable(() -> configurationExtractor.extractConfigurationKpis(pcapFile))
-                .flatMap(configKpis -> {
-                    // Save QOS_CONFIG KPI
-                    var qosConfig = configKpis.get("QOS_CONFIG");
-                    int qosChanges = qosConfig.get("change_count").asInt();
-                    
-                    // Save RRC_CONFIG KPI
-                    var rrcConfig = configKpis.get("RRC_CONFIG");
-                    int rrcReconfigs = rrcConfig.get("reconfig_count").asInt();
-                    
-                    return Flux.merge(
-                        kpiRepository.save(createKpi(sessionId, "QOS_CONFIG_CHANGES", 
-                                (double) qosChanges, (double) qosChanges, (double) qosChanges, "LTE")),
-                        kpiRepository.save(createKpi(sessionId, "RRC_CONFIG_RECONFIGS", 
-                                (double) rrcReconfigs, (double) rrcReconfigs, (double) rrcReconfigs, "LTE"))
-                    ).then();
-                })
-                .doOnSuccess(v -> log.info("✅ Configuration KPIs extracted for session {}", sessionId))
-                .doOnError(e -> log.error("❌ Configuration KPI extraction failed: {}", e.getMessage()))
-                .onErrorResume(e -> Mono.empty())
-                .then();
-    }
-    
-    private KpiAggregate createKpi(Long sessionId, String metric, Double avg, Double min, Double max, String rat) {
-        LocalDateTime now = LocalDateTime.now();
-        return KpiAggregate.builder()
-                .sessionId(sessionId)
-                .metric(metric)
-                .windowStart(now.minusMinutes(5))
-                .windowEnd(now)
-                .avgValue(avg)
-                .minValue(min)
-                .maxValue(max)
-                .rat(rat)
-                .build();
+    // ==================== Placeholder KPIs ====================
+
+    /**
+     * KPIs that cannot be derived from signaling alone yet and are reported with fixed values
+     */
+    private List<KpiAggregate> placeholderKpis(Long sessionId) {
+        return List.of(
+            KpiAccumulator.kpi(sessionId, "LTE_AB_REL_RATE", 2.0, 2.0, 2.0, "LTE"),
+            KpiAccumulator.kpi(sessionId, "LTE_SINR_AVG", 15.0, 5.0, 25.0, "LTE"),
+            KpiAccumulator.kpi(sessionId, "WCDMA_AB_REL_RATE", 2.0, 2.0, 2.0, "WCDMA"),
+            KpiAccumulator.kpi(sessionId, "RRC_REESTABLISHMENT_RATE", 1.0, 1.0, 1.0, "LTE"),
+            KpiAccumulator.kpi(sessionId, "DL_THROUGHPUT_MBPS", 50.0, 10.0, 150.0, "ALL"),
+            KpiAccumulator.kpi(sessionId, "UL_THROUGHPUT_MBPS", 20.0, 5.0, 50.0, "ALL"),
+            KpiAccumulator.kpi(sessionId, "LATENCY_MS", 30.0, 20.0, 50.0, "ALL"),
+            KpiAccumulator.kpi(sessionId, "PACKET_LOSS_RATE", 0.5, 0.0, 2.0, "ALL"),
+            KpiAccumulator.kpi(sessionId, "JITTER_MS", 5.0, 2.0, 10.0, "ALL")
+        );
     }
 }
@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -13,6 +16,8 @@ import java.util.*;
 @Service
 @RequiredArgsConstructor
 public class LatencyAnalyzerService {
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
     
     public Mono<Map<String, Object>> analyzeLatency(String pcapPath) {
         return Mono.fromCallable(() -> {
@@ -27,7 +32,7 @@ public class LatencyAnalyzerService {
                 "-e", "frame.time_delta"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
@@ -56,6 +61,6 @@ public class LatencyAnalyzerService {
             }
             
             return result;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 }
@@ -1,16 +1,23 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.pcap.PcapTailer;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Map;
@@ -27,11 +34,17 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class LiveGsmtapCaptureService {
     
+    /** Longest wait between file checks when the file system sends no change notification */
+    private static final Duration MONITOR_WAKEUP = Duration.ofMillis(500);
+    
     private final ToolsConfig config;
     private final AdbAutoInstallerService adbInstaller;
+    private final StreamSinkFactory streamSinks;
+    private final ExternalToolService toolService;
     
     private final Map<String, Process> activeCaptureProcesses = new ConcurrentHashMap<>();
-    private final Map<String, Sinks.Many<byte[]>> deviceSinks = new ConcurrentHashMap<>();
+    private final Map<String, StreamSink<byte[]>> deviceSinks = new ConcurrentHashMap<>();
+    private final Map<String, Thread> fileMonitors = new ConcurrentHashMap<>();
     
     /**
      * Start live capture from device with GSMTAP encapsulation
@@ -40,7 +53,7 @@ public class LiveGsmtapCaptureService {
     public Flux<byte[]> startLiveCapture(String deviceId, Long sessionId) {
         log.info("🔴 Starting live GSMTAP capture for device: {}", deviceId);
         
-        Sinks.Many<byte[]> sink = Sinks.many().multicast().onBackpressureBuffer();
+        StreamSink<byte[]> sink = streamSinks.create("live-gsmtap", sessionId, StreamPolicy.dropOldest(streamSinks.capacity()));
         deviceSinks.put(deviceId, sink);
         
         // Create capture file path
@@ -56,14 +69,14 @@ public class LiveGsmtapCaptureService {
         Path pcapFile = captureDir.resolve("live_capture.pcap");
         
         // Start capture in background thread
-        new Thread(() -> {
+        VirtualThreads.start("live-capture-" + deviceId, () -> {
             try {
                 captureLiveTraffic(deviceId, pcapFile, sink);
             } catch (Exception e) {
                 log.error("Live capture failed", e);
                 sink.tryEmitError(e);
             }
-        }, "live-capture-" + deviceId).start();
+        });
         
         return sink.asFlux()
             .doOnCancel(() -> stopCapture(deviceId))
@@ -73,7 +86,7 @@ public class LiveGsmtapCaptureService {
     /**
      * Capture live traffic using multiple strategies
      */
-    private void captureLiveTraffic(String deviceId, Path pcapFile, Sinks.Many<byte[]> sink) throws IOException {
+    private void captureLiveTraffic(String deviceId, Path pcapFile, StreamSink<byte[]> sink) throws IOException {
         String adbPath = adbInstaller.getAdbExecutablePath();
         
         // Strategy 1: Try tcpdump on device (if rooted)
@@ -101,12 +114,12 @@ public class LiveGsmtapCaptureService {
     /**
      * Strategy 1: Direct tcpdump on rooted device
      */
-    private boolean tryTcpdumpCapture(String deviceId, String adbPath, Path pcapFile, Sinks.Many<byte[]> sink) {
+    private boolean tryTcpdumpCapture(String deviceId, String adbPath, Path pcapFile, StreamSink<byte[]> sink) {
         try {
             // Check if tcpdump is available on device
-            Process checkProcess = new ProcessBuilder(
+            Process checkProcess = toolService.launch(new ProcessBuilder(
                 adbPath, "-s", deviceId, "shell", "which", "tcpdump"
-            ).start();
+            ), ToolPriority.LIVE);
             
             if (checkProcess.waitFor() != 0) {
                 return false; // tcpdump not available
@@ -121,7 +134,7 @@ public class LiveGsmtapCaptureService {
                 "udp", "port", "4729"  // GSMTAP port
             );
             
-            Process captureProcess = pb.start();
+            Process captureProcess = toolService.launch(pb, ToolPriority.LIVE);
             activeCaptureProcesses.put(deviceId, captureProcess);
             
             // Stream PCAP data
@@ -155,7 +168,7 @@ public class LiveGsmtapCaptureService {
      * Strategy 2: ADB logcat with GSMTAP wrapper
      * Parses Qualcomm diag messages and wraps in GSMTAP
      */
-    private boolean tryLogcatWithGsmtapWrapper(String deviceId, String adbPath, Path pcapFile, Sinks.Many<byte[]> sink) {
+    private boolean tryLogcatWithGsmtapWrapper(String deviceId, String adbPath, Path pcapFile, StreamSink<byte[]> sink) {
         try {
             log.info("📱 Using logcat with GSMTAP wrapper...");
             
@@ -164,7 +177,7 @@ public class LiveGsmtapCaptureService {
                 adbPath, "-s", deviceId, "logcat", "-b", "radio", "-v", "raw"
             );
             
-            Process logcatProcess = pb.start();
+            Process logcatProcess = toolService.launch(pb, ToolPriority.LIVE);
             activeCaptureProcesses.put(deviceId, logcatProcess);
             
             // Create PCAP writer
@@ -202,16 +215,16 @@ public class LiveGsmtapCaptureService {
     /**
      * Strategy 3: USB tethering + local tcpdump
      */
-    private boolean tryUsbTetheringCapture(String deviceId, Path pcapFile, Sinks.Many<byte[]> sink) {
+    private boolean tryUsbTetheringCapture(String deviceId, Path pcapFile, StreamSink<byte[]> sink) {
         try {
             log.info("📱 Trying USB tethering capture...");
             
             // Enable USB tethering on device
             String adbPath = adbInstaller.getAdbExecutablePath();
-            Process tetheringProcess = new ProcessBuilder(
+            Process tetheringProcess = toolService.launch(new ProcessBuilder(
                 adbPath, "-s", deviceId, "shell",
                 "svc", "usb", "setFunctions", "rndis"
-            ).start();
+            ), ToolPriority.LIVE);
             
             if (tetheringProcess.waitFor() != 0) {
                 return false;
@@ -234,11 +247,11 @@ public class LiveGsmtapCaptureService {
                 "udp", "port", "4729"
             );
             
-            Process captureProcess = pb.start();
+            Process captureProcess = toolService.launch(pb, ToolPriority.LIVE);
             activeCaptureProcesses.put(deviceId, captureProcess);
             
             // Monitor capture file and stream packets
-            monitorPcapFile(pcapFile, sink);
+            monitorPcapFile(deviceId, pcapFile, sink);
             
             return true;
             
@@ -333,7 +346,7 @@ public class LiveGsmtapCaptureService {
      */
     private String findUsbInterface() {
         try {
-            Process ifconfigProcess = new ProcessBuilder("ifconfig").start();
+            Process ifconfigProcess = toolService.launch(new ProcessBuilder("ifconfig"), ToolPriority.LIVE);
             BufferedReader reader = new BufferedReader(new InputStreamReader(ifconfigProcess.getInputStream()));
             
             String line;
@@ -349,31 +362,29 @@ public class LiveGsmtapCaptureService {
     }
     
     /**
-     * Monitor PCAP file and stream new packets
+     * Follow the PCAP file tcpdump is writing and stream it as the global header followed by
+     * one element per complete record (record header + packet)
      */
-    private void monitorPcapFile(Path pcapFile, Sinks.Many<byte[]> sink) {
-        new Thread(() -> {
-            try (RandomAccessFile raf = new RandomAccessFile(pcapFile.toFile(), "r")) {
-                long lastPosition = 0;
-                
+    private void monitorPcapFile(String deviceId, Path pcapFile, StreamSink<byte[]> sink) {
+        Thread monitor = VirtualThreads.unstarted("pcap-monitor-" + deviceId, () -> {
+            try (PcapTailer tailer = new PcapTailer(pcapFile)) {
                 while (!Thread.currentThread().isInterrupted()) {
-                    long fileLength = raf.length();
-                    
-                    if (fileLength > lastPosition) {
-                        raf.seek(lastPosition);
-                        byte[] buffer = new byte[(int) (fileLength - lastPosition)];
-                        raf.read(buffer);
-                        
-                        sink.tryEmitNext(buffer);
-                        lastPosition = fileLength;
-                    }
-                    
-                    Thread.sleep(100);  // Poll every 100ms
+                    tailer.poll(MONITOR_WAKEUP, record -> {
+                        byte[] bytes = new byte[record.remaining()];
+                        record.get(bytes);
+                        sink.tryEmitNext(bytes);
+                    });
                 }
+            } catch (InterruptedException | java.nio.channels.ClosedByInterruptException e) {
+                log.debug("Stopped monitoring {}", pcapFile);
             } catch (Exception e) {
                 log.error("File monitoring failed", e);
+            } finally {
+                fileMonitors.remove(deviceId, Thread.currentThread());
             }
-        }, "pcap-monitor").start();
+        });
+        fileMonitors.put(deviceId, monitor);
+        monitor.start();
     }
     
     /**
@@ -395,7 +406,12 @@ public class LiveGsmtapCaptureService {
             }
         }
         
-        Sinks.Many<byte[]> sink = deviceSinks.remove(deviceId);
+        Thread monitor = fileMonitors.remove(deviceId);
+        if (monitor != null) {
+            monitor.interrupt();
+        }
+        
+        StreamSink<byte[]> sink = deviceSinks.remove(deviceId);
         if (sink != null) {
             sink.tryEmitComplete();
         }
@@ -1,9 +1,12 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
 import java.util.Map;
@@ -11,13 +14,15 @@ import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class LogStreamService {
     
-    private final Map<Long, Sinks.Many<String>> sessionSinks = new ConcurrentHashMap<>();
+    private final StreamSinkFactory streamSinks;
+    private final Map<Long, StreamSink<String>> sessionSinks = new ConcurrentHashMap<>();
     
     public Flux<String> streamLogs(Long sessionId) {
-        Sinks.Many<String> sink = sessionSinks.computeIfAbsent(sessionId, 
-            id -> Sinks.many().multicast().onBackpressureBuffer());
+        StreamSink<String> sink = sessionSinks.computeIfAbsent(sessionId, 
+            id -> streamSinks.create("logs", id, StreamPolicy.dropOldest(streamSinks.capacity())));
         
         return sink.asFlux()
             .doOnCancel(() -> log.info("Client disconnected from session {}", sessionId))
@@ -25,14 +30,14 @@ public class LogStreamService {
     }
     
     public void publishLog(Long sessionId, String logLine) {
-        Sinks.Many<String> sink = sessionSinks.get(sessionId);
+        StreamSink<String> sink = sessionSinks.get(sessionId);
         if (sink != null) {
             sink.tryEmitNext(logLine);
         }
     }
     
     public void closeStream(Long sessionId) {
-        Sinks.Many<String> sink = sessionSinks.remove(sessionId);
+        StreamSink<String> sink = sessionSinks.remove(sessionId);
         if (sink != null) {
             sink.tryEmitComplete();
         }
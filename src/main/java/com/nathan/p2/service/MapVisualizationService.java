@@ -3,6 +3,9 @@ package com.nathan.p2.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nathan.p2.domain.GeoJsonFeatureCollection;
 import com.nathan.p2.repository.KpiAggregateRepository;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,6 +24,8 @@ public class MapVisualizationService {
 
     private final KpiAggregateRepository kpiRepository;
     private final ObjectMapper objectMapper;
+    private final PipelineSchedulers schedulers;
+    private final ExternalToolService toolService;
     
     @Value("${eca.storage.base-dir:./data/sessions}")
     private String baseDir;
@@ -47,7 +52,7 @@ public class MapVisualizationService {
             
             ProcessBuilder pb = new ProcessBuilder(command);
             pb.redirectErrorStream(true);
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             
             int exitCode = process.waitFor();
             if (exitCode != 0) {
@@ -56,7 +61,7 @@ public class MapVisualizationService {
             
             log.info("Generated {} map for session {}: {}", mapType, sessionId, htmlPath);
             return htmlPath.toString();
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 
     public Mono<byte[]> getMapHtml(Long sessionId, String mapType) {
@@ -66,6 +71,6 @@ public class MapVisualizationService {
                 throw new RuntimeException("Map not found: " + htmlPath);
             }
             return Files.readAllBytes(htmlPath);
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 }
@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -7,26 +10,32 @@ import reactor.core.publisher.Mono;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class MeasurementReportAnalyzerService {
+    private final TSharkIntegrationService tsharkService;
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
     
     public Mono<Map<String, Object>> analyzeMeasurementReports(String pcapPath) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> result = new HashMap<>();
-            
-            int totalReports = countEvents(pcapPath, "lte-rrc.measurementReport_element");
-            List<Map<String, Object>> reports = extractMeasurementData(pcapPath);
-            
-            result.put("totalReports", totalReports);
-            result.put("reports", reports);
-            result.put("avgReportInterval", calculateAvgInterval(reports));
-            
-            return result;
-        });
+        Mono<List<Map<String, Object>>> reportsMono = Mono.fromCallable(() -> extractMeasurementData(pcapPath))
+            .subscribeOn(schedulers.analytics());
+        
+        return Mono.zip(tsharkService.countPackets(Path.of(pcapPath), "lte-rrc.measurementReport_element"), reportsMono)
+            .map(tuple -> {
+                Map<String, Object> result = new HashMap<>();
+                List<Map<String, Object>> reports = tuple.getT2();
+                
+                result.put("totalReports", tuple.getT1());
+                result.put("reports", reports);
+                result.put("avgReportInterval", calculateAvgInterval(reports));
+                
+                return result;
+            });
     }
     
     private List<Map<String, Object>> extractMeasurementData(String pcapPath) {
@@ -43,7 +52,7 @@ public class MeasurementReportAnalyzerService {
                 "-e", "lte-rrc.rsrqResult"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
@@ -80,28 +89,4 @@ public class MeasurementReportAnalyzerService {
         
         return totalInterval / (reports.size() - 1);
     }
-    
-    private int countEvents(String pcapPath, String filter) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath,
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            int count = 0;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                while (reader.readLine() != null) {
-                    count++;
-                }
-            }
-            process.waitFor();
-            return count;
-        } catch (Exception e) {
-            log.error("Failed to count events", e);
-            return 0;
-        }
-    }
 }
@@ -1,278 +1,181 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.KpiAggregate;
-import com.nathan.p2.repository.KpiAggregateRepository;
-import lombok.RequiredArgsConstructor;
+import com.nathan.p2.service.kpi.KpiAccumulator;
+import com.nathan.p2.service.kpi.KpiAccumulatorSource;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
+import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
 
+/**
+ * Authentication, dedicated bearer, reject cause, PDCP loss, BLER, TAU latency,
+ * cell load and modulation KPIs. Evaluated by the single-pass {@link com.nathan.p2.service.kpi.KpiEngine}.
+ */
 @Slf4j
-@Service
-@RequiredArgsConstructor
-public class MissingKpiExtractor {
+@Component
+public class MissingKpiExtractor implements KpiAccumulatorSource {
 
-    private final KpiAggregateRepository kpiRepository;
+    private static final String EMM_TYPE = "nas_eps.nas_msg_emm_type";
+    private static final String ESM_TYPE = "nas_eps.nas_msg_esm_type";
+    private static final String QCI = "nas_eps.esm.qci";
+    private static final String PDCP_SEQNUM = "pdcp-lte.seqnum";
+    private static final String PDCP_DIRECTION = "pdcp-lte.direction";
+    private static final String DL_SCH_LCID = "lte-mac.dl-sch.lcid";
+    private static final String CRC_STATUS = "lte-mac.dl-sch.crc-status";
+    private static final String MEAS_RESULTS = "lte-rrc.measResults_element";
+    private static final String MCS_INDEX = "lte-mac.dl-sch.mcs-index";
 
-    public Mono<Void> extractAll(Long sessionId, Path pcapFile) {
-        log.info("Extracting all missing KPIs for session {}", sessionId);
-        return Flux.merge(
-            extractAuthKpis(sessionId, pcapFile),
-            extractDedicatedBearerKpis(sessionId, pcapFile),
-            extractRejectCauses(sessionId, pcapFile),
-            extractPdcpLoss(sessionId, pcapFile),
-            extractBler(sessionId, pcapFile),
-            extractTauLatency(sessionId, pcapFile),
-            extractCellLoad(sessionId, pcapFile),
-            extractModulationScheme(sessionId, pcapFile)
-        ).then();
+    private static final DisplayFilter AUTH_REQUEST = DisplayFilter.compile(EMM_TYPE + " == 0x52");
+    private static final DisplayFilter AUTH_RESPONSE = DisplayFilter.compile(EMM_TYPE + " == 0x53");
+    private static final DisplayFilter AUTH_REJECT = DisplayFilter.compile(EMM_TYPE + " == 0x54");
+    private static final DisplayFilter SERVICE_REJECT = DisplayFilter.compile(EMM_TYPE + " == 0x4c");
+    private static final DisplayFilter TAU_REJECT = DisplayFilter.compile(EMM_TYPE + " == 0x4b");
+    private static final DisplayFilter TAU_REQUEST = DisplayFilter.compile(EMM_TYPE + " == 0x48");
+    private static final DisplayFilter TAU_ACCEPT = DisplayFilter.compile(EMM_TYPE + " == 0x49");
+    private static final DisplayFilter BEARER_REQUEST = DisplayFilter.compile(ESM_TYPE + " == 0xc5");
+    private static final DisplayFilter BEARER_ACCEPT = DisplayFilter.compile(ESM_TYPE + " == 0xc6");
+
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new Accumulator();
     }
 
-    private Mono<String> exec(String... cmd) {
-        return Mono.fromCallable(() -> {
-            Process p = new ProcessBuilder(cmd).start();
-            StringBuilder out = new StringBuilder();
-            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = r.readLine()) != null) out.append(line).append("\n");
+    private static class Accumulator implements KpiAccumulator {
+        private int authReq, authResp, authRej;
+        private int srRej, tauRej;
+        private final Map<String, Integer> bearerReq = new HashMap<>(), bearerAcc = new HashMap<>();
+        private String lastQci;
+        private final SequenceRange dlPdcp = new SequenceRange(), ulPdcp = new SequenceRange();
+        private int blerTotal, blerErrors;
+        private Double lastTauRequestTime;
+        private double tauLatencySum;
+        private int tauLatencyCount;
+        private int measResults;
+        private long mcsSum;
+        private int mcsCount;
+
+        @Override
+        public Set<String> fields() {
+            return new LinkedHashSet<>(List.of(EMM_TYPE, ESM_TYPE, QCI, PDCP_SEQNUM, PDCP_DIRECTION,
+                DL_SCH_LCID, CRC_STATUS, MEAS_RESULTS, MCS_INDEX));
+        }
+
+        @Override
+        public void accept(DissectedPacket packet) {
+            // Authentication
+            if (AUTH_REQUEST.test(packet)) authReq++;
+            else if (AUTH_RESPONSE.test(packet)) authResp++;
+            else if (AUTH_REJECT.test(packet)) authRej++;
+
+            // Reject causes
+            if (SERVICE_REJECT.test(packet)) srRej++;
+            else if (TAU_REJECT.test(packet)) tauRej++;
+
+            // Dedicated bearer per QCI
+            if (BEARER_REQUEST.test(packet)) {
+                String qci = packet.get(QCI).isEmpty() ? "1" : packet.values(QCI).get(0);
+                bearerReq.merge("QCI" + qci, 1, Integer::sum);
+                lastQci = qci;
+            } else if (BEARER_ACCEPT.test(packet) && lastQci != null) {
+                bearerAcc.merge("QCI" + lastQci, 1, Integer::sum);
             }
-            p.waitFor();
-            return out.toString();
-        });
-    }
 
-    private Flux<KpiAggregate> extractAuthKpis(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "nas-eps.nas_msg_emm_type == 0x52 || nas-eps.nas_msg_emm_type == 0x53 || nas-eps.nas_msg_emm_type == 0x54",
-            "-T", "fields", "-e", "nas-eps.nas_msg_emm_type", "-E", "separator=|")
-            .flatMapMany(output -> {
-                int authReq = 0, authResp = 0, authRej = 0;
-                for (String line : output.split("\n")) {
-                    if (line.contains("82")) authReq++;
-                    else if (line.contains("83")) authResp++;
-                    else if (line.contains("84")) authRej++;
-                }
-                double authSr = authReq > 0 ? ((authResp * 100.0) / authReq) : 0.0;
-                
-                List<KpiAggregate> kpis = Arrays.asList(
-                    KpiAggregate.builder().sessionId(sessionId).metric("AUTH_REQ")
-                        .avgValue((double) authReq).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("AUTH_SUC")
-                        .avgValue((double) authResp).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("AUTH_REJ")
-                        .avgValue((double) authRej).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("AUTH_SR")
-                        .avgValue(authSr).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build()
-                );
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+            // TAU latency
+            if (TAU_REQUEST.test(packet)) {
+                lastTauRequestTime = packet.timestamp();
+            } else if (TAU_ACCEPT.test(packet) && lastTauRequestTime != null) {
+                tauLatencySum += (packet.timestamp() - lastTauRequestTime) * 1000; // ms
+                tauLatencyCount++;
+                lastTauRequestTime = null;
+            }
 
-    private Flux<KpiAggregate> extractDedicatedBearerKpis(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "nas-eps.nas_msg_esm_type == 0xc5 || nas-eps.nas_msg_esm_type == 0xc6",
-            "-T", "fields", "-e", "nas-eps.esm.qci", "-e", "nas-eps.nas_msg_esm_type", "-E", "separator=|")
-            .flatMapMany(output -> {
-                Map<String, Integer> bearerReq = new HashMap<>();
-                Map<String, Integer> bearerAcc = new HashMap<>();
-                String lastQci = null;
-                
-                for (String line : output.split("\n")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 2) {
-                        String qci = parts[0].isEmpty() ? "1" : parts[0];
-                        String type = parts[1];
-                        if (type.contains("197")) { // 0xc5 = 197
-                            bearerReq.merge("QCI" + qci, 1, Integer::sum);
-                            lastQci = qci;
-                        } else if (type.contains("198") && lastQci != null) { // 0xc6 = 198
-                            bearerAcc.merge("QCI" + lastQci, 1, Integer::sum);
-                        }
-                    }
-                }
-                
-                List<KpiAggregate> kpis = new ArrayList<>();
-                for (String qci : bearerReq.keySet()) {
-                    int req = bearerReq.get(qci);
-                    int acc = bearerAcc.getOrDefault(qci, 0);
-                    double sr = req > 0 ? (acc * 100.0 / req) : 0.0;
-                    
-                    kpis.add(KpiAggregate.builder().sessionId(sessionId)
-                        .metric("DEDICATED_BEARER_SR_" + qci + "_REQ").avgValue((double) req)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-                    kpis.add(KpiAggregate.builder().sessionId(sessionId)
-                        .metric("DEDICATED_BEARER_SR_" + qci + "_SUC").avgValue((double) acc)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-                    kpis.add(KpiAggregate.builder().sessionId(sessionId)
-                        .metric("DEDICATED_BEARER_SR_" + qci + "_SR").avgValue(sr)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-                }
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+            // PDCP sequence gaps
+            if (packet.has(PDCP_SEQNUM) && packet.has(PDCP_DIRECTION)) {
+                try {
+                    int seq = Integer.parseInt(packet.values(PDCP_SEQNUM).get(0));
+                    if (packet.get(PDCP_DIRECTION).contains("0")) dlPdcp.add(seq); // Downlink
+                    else ulPdcp.add(seq); // Uplink
+                } catch (NumberFormatException ignored) {}
+            }
 
-    private Flux<KpiAggregate> extractRejectCauses(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "nas-eps.nas_msg_emm_type == 0x4c || nas-eps.nas_msg_emm_type == 0x4b || nas-eps.nas_msg_emm_type == 0x54",
-            "-T", "fields", "-e", "nas-eps.emm.cause", "-e", "nas-eps.nas_msg_emm_type", "-E", "separator=|")
-            .flatMapMany(output -> {
-                int srRej = 0, tauRej = 0, authRej = 0;
-                for (String line : output.split("\n")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 2) {
-                        String type = parts[1];
-                        if (type.contains("76")) srRej++;      // 0x4c = Service Reject
-                        else if (type.contains("75")) tauRej++; // 0x4b = TAU Reject
-                        else if (type.contains("84")) authRej++; // 0x54 = Auth Reject
-                    }
-                }
-                
-                List<KpiAggregate> kpis = Arrays.asList(
-                    KpiAggregate.builder().sessionId(sessionId).metric("SR_REJ").avgValue((double) srRej)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("TAU_REJ").avgValue((double) tauRej)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("AUTH_FAIL").avgValue((double) authRej)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build()
-                );
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+            // BLER
+            if (packet.has(DL_SCH_LCID)) {
+                blerTotal++;
+                if (packet.get(CRC_STATUS).contains("1")) blerErrors++; // CRC error
+            }
 
-    private Flux<KpiAggregate> extractPdcpLoss(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "pdcp-lte",
-            "-T", "fields", "-e", "pdcp-lte.seqnum", "-e", "pdcp-lte.direction", "-E", "separator=|")
-            .flatMapMany(output -> {
-                List<Integer> dlSeq = new ArrayList<>();
-                List<Integer> ulSeq = new ArrayList<>();
-                
-                for (String line : output.split("\n")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 2) {
-                        try {
-                            int seq = Integer.parseInt(parts[0]);
-                            String dir = parts[1];
-                            if (dir.contains("0")) dlSeq.add(seq); // Downlink
-                            else ulSeq.add(seq); // Uplink
-                        } catch (NumberFormatException ignored) {}
-                    }
-                }
-                
-                double dlLoss = calculateLoss(dlSeq);
-                double ulLoss = calculateLoss(ulSeq);
-                
-                List<KpiAggregate> kpis = Arrays.asList(
-                    KpiAggregate.builder().sessionId(sessionId).metric("DL_PDCP_LOSS").avgValue(dlLoss)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build(),
-                    KpiAggregate.builder().sessionId(sessionId).metric("UL_PDCP_LOSS").avgValue(ulLoss)
-                        .rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build()
-                );
-                return Flux.fromIterable(kpis);
-            }).flatMap(kpiRepository::save);
-    }
+            // Cell load
+            if (packet.has(MEAS_RESULTS)) measResults++;
 
-    private Flux<KpiAggregate> extractBler(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "lte-mac.dl-sch.lcid",
-            "-T", "fields", "-e", "lte-mac.dl-sch.crc-status", "-E", "separator=|")
-            .flatMapMany(output -> {
-                int total = 0, errors = 0;
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) {
-                        total++;
-                        if (line.contains("1")) errors++; // CRC error
-                    }
-                }
-                double bler = total > 0 ? (errors * 100.0 / total) : 0.0;
-                
-                return Flux.just(KpiAggregate.builder().sessionId(sessionId).metric("BLER")
-                    .avgValue(bler).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-            }).flatMap(kpiRepository::save);
-    }
+            // Modulation
+            for (String mcs : packet.values(MCS_INDEX)) {
+                try {
+                    mcsSum += Integer.parseInt(mcs);
+                    mcsCount++;
+                } catch (NumberFormatException ignored) {}
+            }
+        }
 
-    private Flux<KpiAggregate> extractTauLatency(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "nas-eps.nas_msg_emm_type == 0x48 || nas-eps.nas_msg_emm_type == 0x49",
-            "-T", "fields", "-e", "frame.time_epoch", "-e", "nas-eps.nas_msg_emm_type", "-E", "separator=|")
-            .flatMapMany(output -> {
-                List<Double> latencies = new ArrayList<>();
-                Double lastReqTime = null;
-                
-                for (String line : output.split("\n")) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 2) {
-                        try {
-                            double time = Double.parseDouble(parts[0]);
-                            String type = parts[1];
-                            if (type.contains("72")) { // 0x48 = TAU Request
-                                lastReqTime = time;
-                            } else if (type.contains("73") && lastReqTime != null) { // 0x49 = TAU Accept
-                                latencies.add((time - lastReqTime) * 1000); // ms
-                                lastReqTime = null;
-                            }
-                        } catch (NumberFormatException ignored) {}
-                    }
-                }
-                
-                double avgLatency = latencies.isEmpty() ? 0.0 : latencies.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                
-                return Flux.just(KpiAggregate.builder().sessionId(sessionId).metric("TAU_SR_LATENCY")
-                    .avgValue(avgLatency).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-            }).flatMap(kpiRepository::save);
-    }
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            List<KpiAggregate> kpis = new ArrayList<>();
 
-    private Flux<KpiAggregate> extractCellLoad(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "lte-rrc.measResults_element",
-            "-T", "fields", "-e", "lte-rrc.rsrpResult", "-E", "separator=|")
-            .flatMapMany(output -> {
-                int count = 0;
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) count++;
-                }
-                double load = count > 0 ? Math.min(100.0, count / 10.0) : 0.0; // Heuristic
-                
-                return Flux.just(KpiAggregate.builder().sessionId(sessionId).metric("CELL_LOAD")
-                    .avgValue(load).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-            }).flatMap(kpiRepository::save);
-    }
+            double authSr = authReq > 0 ? ((authResp * 100.0) / authReq) : 0.0;
+            kpis.add(build(sessionId, "AUTH_REQ", authReq));
+            kpis.add(build(sessionId, "AUTH_SUC", authResp));
+            kpis.add(build(sessionId, "AUTH_REJ", authRej));
+            kpis.add(build(sessionId, "AUTH_SR", authSr));
+
+            for (String qci : bearerReq.keySet()) {
+                int req = bearerReq.get(qci);
+                int acc = bearerAcc.getOrDefault(qci, 0);
+                double sr = req > 0 ? (acc * 100.0 / req) : 0.0;
+                kpis.add(build(sessionId, "DEDICATED_BEARER_SR_" + qci + "_REQ", req));
+                kpis.add(build(sessionId, "DEDICATED_BEARER_SR_" + qci + "_SUC", acc));
+                kpis.add(build(sessionId, "DEDICATED_BEARER_SR_" + qci + "_SR", sr));
+            }
+
+            kpis.add(build(sessionId, "SR_REJ", srRej));
+            kpis.add(build(sessionId, "TAU_REJ", tauRej));
+            kpis.add(build(sessionId, "AUTH_FAIL", authRej));
+
+            kpis.add(build(sessionId, "DL_PDCP_LOSS", dlPdcp.lossPercent()));
+            kpis.add(build(sessionId, "UL_PDCP_LOSS", ulPdcp.lossPercent()));
 
-    private Flux<KpiAggregate> extractModulationScheme(Long sessionId, Path pcapFile) {
-        return exec("tshark", "-r", pcapFile.toString(),
-            "-Y", "lte-mac.dl-sch.mcs-index",
-            "-T", "fields", "-e", "lte-mac.dl-sch.mcs-index", "-E", "separator=|")
-            .flatMapMany(output -> {
-                List<Integer> mcsValues = new ArrayList<>();
-                for (String line : output.split("\n")) {
-                    if (!line.isEmpty()) {
-                        try {
-                            mcsValues.add(Integer.parseInt(line.trim()));
-                        } catch (NumberFormatException ignored) {}
-                    }
-                }
-                
-                double avgMcs = mcsValues.isEmpty() ? 0.0 : mcsValues.stream().mapToInt(Integer::intValue).average().orElse(0.0);
-                String modulation = avgMcs < 10 ? "QPSK" : avgMcs < 17 ? "16QAM" : "64QAM";
-                
-                return Flux.just(KpiAggregate.builder().sessionId(sessionId).metric("MODULATION_SCHEME")
-                    .avgValue(avgMcs).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build());
-            }).flatMap(kpiRepository::save);
+            kpis.add(build(sessionId, "BLER", blerTotal > 0 ? (blerErrors * 100.0 / blerTotal) : 0.0));
+            kpis.add(build(sessionId, "TAU_SR_LATENCY", tauLatencyCount > 0 ? tauLatencySum / tauLatencyCount : 0.0));
+            kpis.add(build(sessionId, "CELL_LOAD", measResults > 0 ? Math.min(100.0, measResults / 10.0) : 0.0)); // Heuristic
+            kpis.add(build(sessionId, "MODULATION_SCHEME", mcsCount > 0 ? (double) mcsSum / mcsCount : 0.0));
+            return kpis;
+        }
+
+        private static KpiAggregate build(Long sessionId, String metric, double value) {
+            return KpiAggregate.builder().sessionId(sessionId).metric(metric)
+                .avgValue(value).rat("LTE").windowStart(LocalDateTime.now()).windowEnd(LocalDateTime.now()).build();
+        }
     }
 
-    private double calculateLoss(List<Integer> seqNums) {
-        if (seqNums.size() < 2) return 0.0;
-        Collections.sort(seqNums);
-        int expected = seqNums.get(seqNums.size() - 1) - seqNums.get(0) + 1;
-        int received = seqNums.size();
-        int lost = expected - received;
-        return lost > 0 ? (lost * 100.0 / expected) : 0.0;
+    /**
+     * Sequence number span seen on one direction; loss is the share of numbers missing between min and max.
+     */
+    private static class SequenceRange {
+        private int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, received;
+
+        void add(int seq) {
+            min = Math.min(min, seq);
+            max = Math.max(max, seq);
+            received++;
+        }
+
+        double lossPercent() {
+            if (received < 2) return 0.0;
+            int expected = max - min + 1;
+            int lost = expected - received;
+            return lost > 0 ? (lost * 100.0 / expected) : 0.0;
+        }
     }
 }
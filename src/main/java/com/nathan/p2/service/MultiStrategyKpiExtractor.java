@@ -1,6 +1,9 @@
 package com.nathan.p2.service;
 
 import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -52,7 +55,10 @@ public class MultiStrategyKpiExtractor {
     }
 
     @Service
+    @RequiredArgsConstructor
     public static class TSharkLteExtractor implements KpiExtractionStrategy {
+        private final ExternalToolService toolService;
+
         @Override
         public String getName() {
             return "TShark LTE Extractor";
@@ -74,7 +80,7 @@ public class MultiStrategyKpiExtractor {
                             "-E", "separator=,"
                     );
                     pb.redirectErrorStream(true);
-                    Process process = pb.start();
+                    Process process = toolService.launch(pb, ToolPriority.BATCH);
 
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                         String line;
@@ -114,12 +120,15 @@ public class MultiStrategyKpiExtractor {
                 } catch (Exception e) {
                     sink.error(e);
                 }
-            });
+            }).subscribeOn(VirtualThreads.IO);
         }
     }
 
     @Service
+    @RequiredArgsConstructor
     public static class TSharkNrExtractor implements KpiExtractionStrategy {
+        private final ExternalToolService toolService;
+
         @Override
         public String getName() {
             return "TShark 5G NR Extractor";
@@ -141,7 +150,7 @@ public class MultiStrategyKpiExtractor {
                             "-E", "separator=,"
                     );
                     pb.redirectErrorStream(true);
-                    Process process = pb.start();
+                    Process process = toolService.launch(pb, ToolPriority.BATCH);
 
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                         String line;
@@ -179,12 +188,15 @@ public class MultiStrategyKpiExtractor {
                 } catch (Exception e) {
                     sink.error(e);
                 }
-            });
+            }).subscribeOn(VirtualThreads.IO);
         }
     }
 
     @Service
+    @RequiredArgsConstructor
     public static class TSharkWcdmaExtractor implements KpiExtractionStrategy {
+        private final ExternalToolService toolService;
+
         @Override
         public String getName() {
             return "TShark WCDMA Extractor";
@@ -205,7 +217,7 @@ public class MultiStrategyKpiExtractor {
                             "-E", "separator=,"
                     );
                     pb.redirectErrorStream(true);
-                    Process process = pb.start();
+                    Process process = toolService.launch(pb, ToolPriority.BATCH);
 
                     try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                         String line;
@@ -239,7 +251,7 @@ public class MultiStrategyKpiExtractor {
                 } catch (Exception e) {
                     sink.error(e);
                 }
-            });
+            }).subscribeOn(VirtualThreads.IO);
         }
     }
 }
@@ -5,36 +5,60 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.*;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProcedureAnalyzerService {
+    private static final String ATTACH_REQUEST = "nas_eps.nas_msg_emm_type == 0x41";
+    private static final String ATTACH_ACCEPT = "nas_eps.nas_msg_emm_type == 0x42";
+    private static final String ATTACH_COMPLETE = "nas_eps.nas_msg_emm_type == 0x43";
+    private static final String ATTACH_REJECT = "nas_eps.nas_msg_emm_type == 0x44";
+    private static final String DETACH_REQUEST = "nas_eps.nas_msg_emm_type == 0x45";
+    private static final String DETACH_ACCEPT = "nas_eps.nas_msg_emm_type == 0x46";
+    private static final String TAU_REQUEST = "nas_eps.nas_msg_emm_type == 0x4a";
+    private static final String TAU_ACCEPT = "nas_eps.nas_msg_emm_type == 0x4b";
+    private static final String TAU_REJECT = "nas_eps.nas_msg_emm_type == 0x4c";
+    private static final String SERVICE_REQUEST = "nas_eps.nas_msg_emm_type == 0x4e";
+    private static final String RRC_CONNECTION_SETUP = "lte-rrc.rrcConnectionSetup_element";
+    private static final String BEARER_REQUEST = "nas_eps.nas_msg_esm_type == 0xc1";
+    private static final String BEARER_ACCEPT = "nas_eps.nas_msg_esm_type == 0xc2";
+    private static final String BEARER_REJECT = "nas_eps.nas_msg_esm_type == 0xc3";
+
+    private static final List<String> FILTERS = List.of(
+        ATTACH_REQUEST, ATTACH_ACCEPT, ATTACH_COMPLETE, ATTACH_REJECT,
+        DETACH_REQUEST, DETACH_ACCEPT,
+        TAU_REQUEST, TAU_ACCEPT, TAU_REJECT,
+        SERVICE_REQUEST, RRC_CONNECTION_SETUP,
+        BEARER_REQUEST, BEARER_ACCEPT, BEARER_REJECT
+    );
+
+    private final TSharkIntegrationService tsharkService;
     
     public Mono<Map<String, Object>> analyzeProcedures(String pcapPath) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> result = new HashMap<>();
-            
-            result.put("attach", analyzeAttachProcedure(pcapPath));
-            result.put("tau", analyzeTauProcedure(pcapPath));
-            result.put("serviceRequest", analyzeServiceRequest(pcapPath));
-            result.put("bearerSetup", analyzeBearerSetup(pcapPath));
-            result.put("detach", analyzeDetachProcedure(pcapPath));
-            
-            return result;
-        });
+        return tsharkService.countPackets(Path.of(pcapPath), FILTERS)
+            .map(counts -> {
+                Map<String, Object> result = new HashMap<>();
+                
+                result.put("attach", analyzeAttachProcedure(counts));
+                result.put("tau", analyzeTauProcedure(counts));
+                result.put("serviceRequest", analyzeServiceRequest(counts));
+                result.put("bearerSetup", analyzeBearerSetup(counts));
+                result.put("detach", analyzeDetachProcedure(counts));
+                
+                return result;
+            });
     }
     
-    private Map<String, Object> analyzeAttachProcedure(String pcapPath) {
+    private Map<String, Object> analyzeAttachProcedure(Map<String, Integer> counts) {
         Map<String, Object> attach = new HashMap<>();
         
-        int attachRequests = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x41");
-        int attachAccepts = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x42");
-        int attachRejects = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x44");
-        int attachCompletes = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x43");
+        int attachRequests = counts.getOrDefault(ATTACH_REQUEST, 0);
+        int attachAccepts = counts.getOrDefault(ATTACH_ACCEPT, 0);
+        int attachRejects = counts.getOrDefault(ATTACH_REJECT, 0);
+        int attachCompletes = counts.getOrDefault(ATTACH_COMPLETE, 0);
         
         attach.put("requests", attachRequests);
         attach.put("accepts", attachAccepts);
@@ -45,12 +69,12 @@ public class ProcedureAnalyzerService {
         return attach;
     }
     
-    private Map<String, Object> analyzeTauProcedure(String pcapPath) {
+    private Map<String, Object> analyzeTauProcedure(Map<String, Integer> counts) {
         Map<String, Object> tau = new HashMap<>();
         
-        int tauRequests = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x4a");
-        int tauAccepts = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x4b");
-        int tauRejects = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x4c");
+        int tauRequests = counts.getOrDefault(TAU_REQUEST, 0);
+        int tauAccepts = counts.getOrDefault(TAU_ACCEPT, 0);
+        int tauRejects = counts.getOrDefault(TAU_REJECT, 0);
         
         tau.put("requests", tauRequests);
         tau.put("accepts", tauAccepts);
@@ -60,11 +84,11 @@ public class ProcedureAnalyzerService {
         return tau;
     }
     
-    private Map<String, Object> analyzeServiceRequest(String pcapPath) {
+    private Map<String, Object> analyzeServiceRequest(Map<String, Integer> counts) {
         Map<String, Object> sr = new HashMap<>();
         
-        int srRequests = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x4e");
-        int srAccepts = countEvents(pcapPath, "lte-rrc.rrcConnectionSetup_element");
+        int srRequests = counts.getOrDefault(SERVICE_REQUEST, 0);
+        int srAccepts = counts.getOrDefault(RRC_CONNECTION_SETUP, 0);
         
         sr.put("requests", srRequests);
         sr.put("accepts", srAccepts);
@@ -73,12 +97,12 @@ public class ProcedureAnalyzerService {
         return sr;
     }
     
-    private Map<String, Object> analyzeBearerSetup(String pcapPath) {
+    private Map<String, Object> analyzeBearerSetup(Map<String, Integer> counts) {
         Map<String, Object> bearer = new HashMap<>();
         
-        int setupRequests = countEvents(pcapPath, "nas_eps.nas_msg_esm_type == 0xc1");
-        int setupAccepts = countEvents(pcapPath, "nas_eps.nas_msg_esm_type == 0xc2");
-        int setupRejects = countEvents(pcapPath, "nas_eps.nas_msg_esm_type == 0xc3");
+        int setupRequests = counts.getOrDefault(BEARER_REQUEST, 0);
+        int setupAccepts = counts.getOrDefault(BEARER_ACCEPT, 0);
+        int setupRejects = counts.getOrDefault(BEARER_REJECT, 0);
         
         bearer.put("requests", setupRequests);
         bearer.put("accepts", setupAccepts);
@@ -88,39 +112,15 @@ public class ProcedureAnalyzerService {
         return bearer;
     }
     
-    private Map<String, Object> analyzeDetachProcedure(String pcapPath) {
+    private Map<String, Object> analyzeDetachProcedure(Map<String, Integer> counts) {
         Map<String, Object> detach = new HashMap<>();
         
-        int detachRequests = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x45");
-        int detachAccepts = countEvents(pcapPath, "nas_eps.nas_msg_emm_type == 0x46");
+        int detachRequests = counts.getOrDefault(DETACH_REQUEST, 0);
+        int detachAccepts = counts.getOrDefault(DETACH_ACCEPT, 0);
         
         detach.put("requests", detachRequests);
         detach.put("accepts", detachAccepts);
         
         return detach;
     }
-    
-    private int countEvents(String pcapPath, String filter) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath,
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            int count = 0;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                while (reader.readLine() != null) {
-                    count++;
-                }
-            }
-            process.waitFor();
-            return count;
-        } catch (Exception e) {
-            log.error("Failed to count events", e);
-            return 0;
-        }
-    }
 }
@@ -1,485 +0,0 @@
-package com.nathan.p2.service;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
-import reactor.core.publisher.Mono;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
-import java.util.*;
-import java.util.stream.Collectors;
-
-/**
- * Procedure Correlation Service
- * 
- * Correlates signaling messages to form complete procedures for accurate KPI calculation.
- * Instead of simple counting, this service:
- * - Matches request/response pairs by transaction ID
- * - Calculates latencies between procedure steps
- * - Extracts failure cause codes
- * - Identifies incomplete/failed procedures
- * 
- * Critical for:
- * - RRC Connection Establishment Rate
- * - Handover Success Rate
- * - E-RAB Setup Success Rate
- * - PDN Connectivity Success Rate
- */
-@Slf4j
-@Service
-@RequiredArgsConstructor
-public class ProcedureCorrelationService {
-    
-    private final ObjectMapper objectMapper;
-    
-    /**
-     * Correlate LTE RRC Connection procedures
-     */
-    public Mono<List<RrcProcedure>> correlateLteRrcProcedures(Path pcapFile) {
-        return Mono.fromCallable(() -> {
-            log.info("🔗 Correlating LTE RRC procedures from: {}", pcapFile);
-            
-            // Extract all RRC messages with timing
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapFile.toString(),
-                "-Y", "lte-rrc",
-                "-T", "json",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-e", "lte-rrc.messageIdentifier",
-                "-e", "lte-rrc.rrc_TransactionIdentifier",
-                "-e", "lte-rrc.t_StatusProhibit",
-                "-e", "lte-rrc.establishmentCause"
-            );
-            
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    jsonOutput.append(line);
-                }
-            }
-            
-            process.waitFor();
-            
-            JsonNode root = objectMapper.readTree(jsonOutput.toString());
-            
-            // Build timeline of RRC messages
-            List<RrcMessage> messages = new ArrayList<>();
-            if (root.isArray()) {
-                for (JsonNode packet : root) {
-                    JsonNode layers = packet.path("_source").path("layers");
-                    RrcMessage msg = parseRrcMessage(layers);
-                    if (msg != null) {
-                        messages.add(msg);
-                    }
-                }
-            }
-            
-            // Correlate messages into procedures
-            List<RrcProcedure> procedures = new ArrayList<>();
-            Map<String, RrcProcedure> activeProcedures = new HashMap<>();
-            
-            for (RrcMessage msg : messages) {
-                String procKey = msg.transactionId != null ? msg.transactionId : msg.frameNumber + "";
-                
-                if (msg.messageType.contains("RRCConnectionRequest")) {
-                    // Start new procedure
-                    RrcProcedure proc = new RrcProcedure();
-                    proc.transactionId = procKey;
-                    proc.requestFrame = msg.frameNumber;
-                    proc.requestTime = msg.timestamp;
-                    proc.establishmentCause = msg.establishmentCause;
-                    activeProcedures.put(procKey, proc);
-                    
-                } else if (msg.messageType.contains("RRCConnectionSetup")) {
-                    // Match with request
-                    RrcProcedure proc = activeProcedures.get(procKey);
-                    if (proc != null) {
-                        proc.setupFrame = msg.frameNumber;
-                        proc.setupTime = msg.timestamp;
-                    }
-                    
-                } else if (msg.messageType.contains("RRCConnectionSetupComplete")) {
-                    // Complete procedure
-                    RrcProcedure proc = activeProcedures.remove(procKey);
-                    if (proc != null) {
-                        proc.completeFrame = msg.frameNumber;
-                        proc.completeTime = msg.timestamp;
-                        proc.success = true;
-                        proc.calculateLatencies();
-                        procedures.add(proc);
-                    }
-                    
-                } else if (msg.messageType.contains("RRCConnectionReject")) {
-                    // Failed procedure
-                    RrcProcedure proc = activeProcedures.remove(procKey);
-                    if (proc != null) {
-                        proc.success = false;
-                        proc.failureReason = "Rejected";
-                        procedures.add(proc);
-                    }
-                }
-            }
-            
-            // Add incomplete procedures as failures
-            activeProcedures.values().forEach(proc -> {
-                proc.success = false;
-                proc.failureReason = "Incomplete";
-                procedures.add(proc);
-            });
-            
-            log.info("✅ Correlated {} RRC procedures ({} successful, {} failed)", 
-                procedures.size(),
-                procedures.stream().filter(p -> p.success).count(),
-                procedures.stream().filter(p -> !p.success).count()
-            );
-            
-            return procedures;
-        });
-    }
-    
-    /**
-     * Correlate handover procedures
-     */
-    public Mono<List<HandoverProcedure>> correlateLteHandovers(Path pcapFile) {
-        return Mono.fromCallable(() -> {
-            log.info("🔗 Correlating LTE handover procedures from: {}", pcapFile);
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapFile.toString(),
-                "-Y", "lte-rrc.rrcConnectionReconfiguration or lte-rrc.rrcConnectionReconfigurationComplete",
-                "-T", "json",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-e", "lte-rrc.messageIdentifier",
-                "-e", "lte-rrc.rrc_TransactionIdentifier",
-                "-e", "lte-rrc.mobilityControlInfo",
-                "-e", "lte-rrc.physCellId"
-            );
-            
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    jsonOutput.append(line);
-                }
-            }
-            
-            process.waitFor();
-            
-            JsonNode root = objectMapper.readTree(jsonOutput.toString());
-            
-            List<HandoverProcedure> handovers = new ArrayList<>();
-            Map<String, HandoverProcedure> activeHandovers = new HashMap<>();
-            
-            if (root.isArray()) {
-                for (JsonNode packet : root) {
-                    JsonNode layers = packet.path("_source").path("layers");
-                    
-                    int frameNum = extractInt(layers, "frame.number");
-                    double timestamp = extractDouble(layers, "frame.time_epoch");
-                    String messageType = extractString(layers, "lte-rrc.messageIdentifier");
-                    String transId = extractString(layers, "lte-rrc.rrc_TransactionIdentifier");
-                    boolean hasMobilityControl = layers.has("lte-rrc.mobilityControlInfo");
-                    
-                    if (messageType != null && messageType.contains("rrcConnectionReconfiguration") && hasMobilityControl) {
-                        // Handover command
-                        HandoverProcedure ho = new HandoverProcedure();
-                        ho.transactionId = transId != null ? transId : frameNum + "";
-                        ho.commandFrame = frameNum;
-                        ho.commandTime = timestamp;
-                        ho.targetCellId = extractString(layers, "lte-rrc.physCellId");
-                        activeHandovers.put(ho.transactionId, ho);
-                        
-                    } else if (messageType != null && messageType.contains("rrcConnectionReconfigurationComplete")) {
-                        // Handover complete
-                        String key = transId != null ? transId : (frameNum - 1) + "";
-                        HandoverProcedure ho = activeHandovers.remove(key);
-                        if (ho != null) {
-                            ho.completeFrame = frameNum;
-                            ho.completeTime = timestamp;
-                            ho.success = true;
-                            ho.latencyMs = (long) ((timestamp - ho.commandTime) * 1000);
-                            handovers.add(ho);
-                        }
-                    }
-                }
-            }
-            
-            // Mark incomplete handovers as failures
-            activeHandovers.values().forEach(ho -> {
-                ho.success = false;
-                ho.failureReason = "No completion";
-                handovers.add(ho);
-            });
-            
-            log.info("✅ Correlated {} handover procedures ({} successful, {} failed)",
-                handovers.size(),
-                handovers.stream().filter(h -> h.success).count(),
-                handovers.stream().filter(h -> !h.success).count()
-            );
-            
-            return handovers;
-        });
-    }
-    
-    /**
-     * Correlate E-RAB setup procedures
-     */
-    public Mono<List<ErabProcedure>> correlateLteErabSetup(Path pcapFile) {
-        return Mono.fromCallable(() -> {
-            log.info("🔗 Correlating LTE E-RAB setup procedures from: {}", pcapFile);
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapFile.toString(),
-                "-Y", "lte-rrc.rrcConnectionReconfiguration or nas-eps",
-                "-T", "json",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-e", "nas-eps.nas_msg_emm_type",
-                "-e", "nas-eps.esm_msg_esm_type",
-                "-e", "lte-rrc.drb_ToAddMod"
-            );
-            
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    jsonOutput.append(line);
-                }
-            }
-            
-            process.waitFor();
-            
-            JsonNode root = objectMapper.readTree(jsonOutput.toString());
-            
-            List<ErabProcedure> procedures = new ArrayList<>();
-            // Implementation similar to above
-            
-            return procedures;
-        });
-    }
-    
-    /**
-     * Correlate PDN connectivity procedures
-     */
-    public Mono<List<PdnProcedure>> correlateLtePdnConnectivity(Path pcapFile) {
-        return Mono.fromCallable(() -> {
-            log.info("🔗 Correlating LTE PDN connectivity procedures from: {}", pcapFile);
-            
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapFile.toString(),
-                "-Y", "nas-eps.nas_msg_esm_type",
-                "-T", "json",
-                "-e", "frame.number",
-                "-e", "frame.time_epoch",
-                "-e", "nas-eps.nas_msg_esm_type",
-                "-e", "nas-eps.pti",
-                "-e", "nas-eps.esm_cause"
-            );
-            
-            Process process = pb.start();
-            StringBuilder jsonOutput = new StringBuilder();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    jsonOutput.append(line);
-                }
-            }
-            
-            process.waitFor();
-            
-            JsonNode root = objectMapper.readTree(jsonOutput.toString());
-            
-            List<PdnProcedure> procedures = new ArrayList<>();
-            Map<String, PdnProcedure> activeProcedures = new HashMap<>();
-            
-            if (root.isArray()) {
-                for (JsonNode packet : root) {
-                    JsonNode layers = packet.path("_source").path("layers");
-                    
-                    int frameNum = extractInt(layers, "frame.number");
-                    double timestamp = extractDouble(layers, "frame.time_epoch");
-                    String msgType = extractString(layers, "nas-eps.nas_msg_esm_type");
-                    String pti = extractString(layers, "nas-eps.pti");
-                    
-                    if ("0xc1".equals(msgType)) { // PDN Connectivity Request
-                        PdnProcedure proc = new PdnProcedure();
-                        proc.pti = pti != null ? pti : frameNum + "";
-                        proc.requestFrame = frameNum;
-                        proc.requestTime = timestamp;
-                        activeProcedures.put(proc.pti, proc);
-                        
-                    } else if ("0xc2".equals(msgType)) { // PDN Connectivity Reject
-                        PdnProcedure proc = activeProcedures.remove(pti);
-                        if (proc != null) {
-                            proc.success = false;
-                            proc.rejectFrame = frameNum;
-                            proc.rejectTime = timestamp;
-                            proc.cause = extractString(layers, "nas-eps.esm_cause");
-                            procedures.add(proc);
-                        }
-                        
-                    } else if ("0xd2".equals(msgType)) { // Activate Default EPS Bearer Context Request
-                        PdnProcedure proc = activeProcedures.get(pti);
-                        if (proc != null) {
-                            proc.activateFrame = frameNum;
-                            proc.activateTime = timestamp;
-                        }
-                        
-                    } else if ("0xd3".equals(msgType)) { // Activate Default EPS Bearer Context Accept
-                        PdnProcedure proc = activeProcedures.remove(pti);
-                        if (proc != null) {
-                            proc.success = true;
-                            proc.acceptFrame = frameNum;
-                            proc.acceptTime = timestamp;
-                            proc.latencyMs = (long) ((timestamp - proc.requestTime) * 1000);
-                            procedures.add(proc);
-                        }
-                    }
-                }
-            }
-            
-            // Mark incomplete as failures
-            activeProcedures.values().forEach(proc -> {
-                proc.success = false;
-                proc.cause = "Incomplete";
-                procedures.add(proc);
-            });
-            
-            log.info("✅ Correlated {} PDN connectivity procedures ({} successful, {} failed)",
-                procedures.size(),
-                procedures.stream().filter(p -> p.success).count(),
-                procedures.stream().filter(p -> !p.success).count()
-            );
-            
-            return procedures;
-        });
-    }
-    
-    // Helper methods
-    private RrcMessage parseRrcMessage(JsonNode layers) {
-        RrcMessage msg = new RrcMessage();
-        msg.frameNumber = extractInt(layers, "frame.number");
-        msg.timestamp = extractDouble(layers, "frame.time_epoch");
-        msg.messageType = extractString(layers, "lte-rrc.messageIdentifier");
-        msg.transactionId = extractString(layers, "lte-rrc.rrc_TransactionIdentifier");
-        msg.establishmentCause = extractString(layers, "lte-rrc.establishmentCause");
-        
-        return msg.messageType != null ? msg : null;
-    }
-    
-    private int extractInt(JsonNode layers, String field) {
-        JsonNode node = layers.path(field);
-        if (node.isArray() && node.size() > 0) {
-            return node.get(0).asInt(0);
-        }
-        return 0;
-    }
-    
-    private double extractDouble(JsonNode layers, String field) {
-        JsonNode node = layers.path(field);
-        if (node.isArray() && node.size() > 0) {
-            return node.get(0).asDouble(0.0);
-        }
-        return 0.0;
-    }
-    
-    private String extractString(JsonNode layers, String field) {
-        JsonNode node = layers.path(field);
-        if (node.isArray() && node.size() > 0) {
-            return node.get(0).asText();
-        }
-        return null;
-    }
-    
-    // Data models
-    @Data
-    public static class RrcMessage {
-        int frameNumber;
-        double timestamp;
-        String messageType;
-        String transactionId;
-        String establishmentCause;
-    }
-    
-    @Data
-    public static class RrcProcedure {
-        String transactionId;
-        int requestFrame;
-        double requestTime;
-        int setupFrame;
-        double setupTime;
-        int completeFrame;
-        double completeTime;
-        String establishmentCause;
-        boolean success;
-        String failureReason;
-        long setupLatencyMs;
-        long totalLatencyMs;
-        
-        void calculateLatencies() {
-            if (setupTime > 0) {
-                setupLatencyMs = (long) ((setupTime - requestTime) * 1000);
-            }
-            if (completeTime > 0) {
-                totalLatencyMs = (long) ((completeTime - requestTime) * 1000);
-            }
-        }
-    }
-    
-    @Data
-    public static class HandoverProcedure {
-        String transactionId;
-        int commandFrame;
-        double commandTime;
-        int completeFrame;
-        double completeTime;
-        String sourceCellId;
-        String targetCellId;
-        boolean success;
-        String failureReason;
-        long latencyMs;
-    }
-    
-    @Data
-    public static class ErabProcedure {
-        String transactionId;
-        int requestFrame;
-        double requestTime;
-        int completeFrame;
-        double completeTime;
-        boolean success;
-        String failureReason;
-        long latencyMs;
-    }
-    
-    @Data
-    public static class PdnProcedure {
-        String pti;  // Procedure Transaction Identifier
-        int requestFrame;
-        double requestTime;
-        int activateFrame;
-        double activateTime;
-        int acceptFrame;
-        double acceptTime;
-        int rejectFrame;
-        double rejectTime;
-        boolean success;
-        String cause;
-        long latencyMs;
-    }
-}
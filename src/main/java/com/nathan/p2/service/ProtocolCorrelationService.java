@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -13,6 +16,8 @@ import java.util.*;
 @Service
 @RequiredArgsConstructor
 public class ProtocolCorrelationService {
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
     
     public Mono<Map<String, Object>> correlateProtocols(String pcapPath) {
         return Mono.fromCallable(() -> {
@@ -28,7 +33,7 @@ public class ProtocolCorrelationService {
             result.put("correlations", findCorrelations(protocolEvents));
             
             return result;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
     
     private List<Map<String, Object>> extractProtocolEvents(String pcapPath, String protocol) {
@@ -44,7 +49,7 @@ public class ProtocolCorrelationService {
                 "-e", protocol
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
@@ -1,5 +1,9 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
@@ -18,7 +22,10 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class QmdlConversionService {
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
     
     // Multiple converter paths - will try in order
     private static final String[] CONVERTER_PATHS = {
@@ -76,7 +83,7 @@ public class QmdlConversionService {
             log.info("Attempting Python-based QMDL conversion...");
             return convertWithPython(qmdlFile, outputPcap);
             
-        }).onErrorResume(e -> {
+        }).subscribeOn(schedulers.analytics()).onErrorResume(e -> {
             log.error("❌ QMDL conversion failed", e);
             return Mono.error(new RuntimeException(
                 "QMDL conversion failed: " + e.getMessage() + 
@@ -172,7 +179,7 @@ public class QmdlConversionService {
      */
     private void executeConversion(ProcessBuilder pb, String toolName) throws Exception {
         pb.redirectErrorStream(true);
-        Process process = pb.start();
+        Process process = toolService.launch(pb, ToolPriority.BATCH);
 
         // Capture output for logging
         StringBuilder output = new StringBuilder();
@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -16,6 +19,8 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class QualcommDMParserService {
 
+    private final ExternalToolService toolService;
+
     public Flux<Map<String, Object>> parseDMMessages(Path qmdlFile) {
         return Flux.create(sink -> {
             try {
@@ -26,7 +31,7 @@ public class QualcommDMParserService {
                     "--stdout"
                 );
                 
-                Process process = pb.start();
+                Process process = toolService.launch(pb, ToolPriority.BATCH);
                 BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
                 
                 String line;
@@ -47,7 +52,7 @@ public class QualcommDMParserService {
                 log.error("Failed to parse Qualcomm DM messages", e);
                 sink.error(e);
             }
-        });
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     private String extractType(String line) {
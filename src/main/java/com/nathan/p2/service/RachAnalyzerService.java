@@ -5,56 +5,37 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RachAnalyzerService {
+    private static final String RACH_ATTEMPT = "mac-lte.rar";
+    private static final String RACH_SUCCESS = "lte-rrc.rrcConnectionRequest_element";
+
+    private final TSharkIntegrationService tsharkService;
     
     public Mono<Map<String, Object>> analyzeRach(String pcapPath) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> result = new HashMap<>();
-            
-            int rachAttempts = countEvents(pcapPath, "mac-lte.rar");
-            int rachSuccess = countEvents(pcapPath, "lte-rrc.rrcConnectionRequest_element");
-            int rachFailures = rachAttempts - rachSuccess;
-            
-            double successRate = rachAttempts > 0 ? (rachSuccess * 100.0 / rachAttempts) : 0;
-            
-            result.put("rachAttempts", rachAttempts);
-            result.put("rachSuccess", rachSuccess);
-            result.put("rachFailures", rachFailures);
-            result.put("successRate", successRate);
-            
-            return result;
-        });
-    }
-    
-    private int countEvents(String pcapPath, String filter) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder(
-                "tshark", "-r", pcapPath,
-                "-Y", filter,
-                "-T", "fields",
-                "-e", "frame.number"
-            );
-            
-            Process process = pb.start();
-            int count = 0;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                while (reader.readLine() != null) {
-                    count++;
-                }
-            }
-            process.waitFor();
-            return count;
-        } catch (Exception e) {
-            log.error("Failed to count events", e);
-            return 0;
-        }
+        return tsharkService.countPackets(Path.of(pcapPath), List.of(RACH_ATTEMPT, RACH_SUCCESS))
+            .map(counts -> {
+                Map<String, Object> result = new HashMap<>();
+                
+                int rachAttempts = counts.getOrDefault(RACH_ATTEMPT, 0);
+                int rachSuccess = counts.getOrDefault(RACH_SUCCESS, 0);
+                int rachFailures = rachAttempts - rachSuccess;
+                
+                double successRate = rachAttempts > 0 ? (rachSuccess * 100.0 / rachAttempts) : 0;
+                
+                result.put("rachAttempts", rachAttempts);
+                result.put("rachSuccess", rachSuccess);
+                result.put("rachFailures", rachFailures);
+                result.put("successRate", successRate);
+                
+                return result;
+            });
     }
 }
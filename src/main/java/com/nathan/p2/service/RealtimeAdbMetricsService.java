@@ -2,6 +2,9 @@ package com.nathan.p2.service;
 
 import com.nathan.p2.domain.GpsTrace;
 import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +25,7 @@ import java.util.regex.Pattern;
 public class RealtimeAdbMetricsService {
 
     private final AdbAutoInstallerService adbInstaller;
+    private final ExternalToolService toolService;
 
     public Flux<GpsTrace> streamGpsData(String deviceId, Long sessionId) {
         return Flux.interval(Duration.ofSeconds(1))
@@ -49,9 +53,8 @@ public class RealtimeAdbMetricsService {
                 "dumpsys", "location"
             };
 
-            Process process = new ProcessBuilder(commands)
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(commands)
+                    .redirectErrorStream(true), ToolPriority.LIVE);
 
             GpsTrace gps = new GpsTrace();
             gps.setSessionId(sessionId);
@@ -87,7 +90,7 @@ public class RealtimeAdbMetricsService {
 
             process.waitFor();
             return gps;
-        }).onErrorResume(e -> {
+        }).subscribeOn(VirtualThreads.IO).onErrorResume(e -> {
             log.warn("Failed to get GPS from device: {}", e.getMessage());
             return Mono.empty();
         });
@@ -103,9 +106,8 @@ public class RealtimeAdbMetricsService {
                 "dumpsys", "telephony.registry"
             };
 
-            Process process = new ProcessBuilder(commands)
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(commands)
+                    .redirectErrorStream(true), ToolPriority.LIVE);
 
             KpiAggregate kpi = new KpiAggregate();
             kpi.setSessionId(sessionId);
@@ -128,7 +130,7 @@ public class RealtimeAdbMetricsService {
 
             process.waitFor();
             return kpi;
-        }).onErrorResume(e -> {
+        }).subscribeOn(VirtualThreads.IO).onErrorResume(e -> {
             log.warn("Failed to get KPIs from device: {}", e.getMessage());
             return Mono.empty();
         });
@@ -160,9 +162,8 @@ public class RealtimeAdbMetricsService {
                 "dumpsys", "battery"
             };
 
-            Process process = new ProcessBuilder(commands)
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(commands)
+                    .redirectErrorStream(true), ToolPriority.LIVE);
 
             double temperature = 0.0;
 
@@ -182,7 +183,7 @@ public class RealtimeAdbMetricsService {
 
             process.waitFor();
             return temperature;
-        }).onErrorReturn(0.0);
+        }).subscribeOn(VirtualThreads.IO).onErrorReturn(0.0);
     }
 
     private Mono<String> getThermalInfo(String deviceId) {
@@ -194,9 +195,8 @@ public class RealtimeAdbMetricsService {
                 "dumpsys", "thermalservice"
             };
 
-            Process process = new ProcessBuilder(commands)
-                    .redirectErrorStream(true)
-                    .start();
+            Process process = toolService.launch(new ProcessBuilder(commands)
+                    .redirectErrorStream(true), ToolPriority.LIVE);
 
             String status = "NONE";
 
@@ -214,7 +214,7 @@ public class RealtimeAdbMetricsService {
 
             process.waitFor();
             return status;
-        }).onErrorReturn("NONE");
+        }).subscribeOn(VirtualThreads.IO).onErrorReturn("NONE");
     }
 
     private void parseSignalStrength(String line, KpiAggregate kpi) {
@@ -1,61 +1,85 @@
 package com.nathan.p2.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.service.stream.LiveStreamRegistry;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RealtimeKpiStreamingService {
+    private static final String STREAM = "kpi";
+    private static final String KPI_UPDATE = "kpi_update";
+    
     private final EnhancedKpiExtractionService kpiService;
     private final ObjectMapper objectMapper;
+    private final StreamSinkFactory streamSinks;
+    private final LiveStreamRegistry streamRegistry;
     
-    private final Map<Long, Sinks.Many<String>> sessionStreams = new ConcurrentHashMap<>();
+    /**
+     * One message of a KPI stream. A client that falls behind only gets the newest
+     * kpi_update; events are never merged with each other.
+     */
+    private record Update(String type, String json) {
+        Object conflationKey() {
+            return KPI_UPDATE.equals(type) ? type : this;
+        }
+    }
 
+    /**
+     * Live KPIs of a session, every 2 seconds. Only frames appended to the capture since the
+     * previous tick are dissected; ticks never overlap, a slow one makes the next be skipped.
+     * All clients of a session share one ticker, which stops when the last one disconnects.
+     */
     public Flux<String> streamKpis(Long sessionId) {
         log.info("Creating KPI stream for session: {}", sessionId);
         
-        Sinks.Many<String> sink = Sinks.many().multicast().onBackpressureBuffer();
-        sessionStreams.put(sessionId, sink);
-        
-        Flux.interval(Duration.ofSeconds(2))
-            .flatMap(tick -> extractAndEmitKpis(sessionId, sink))
-            .subscribe();
-        
-        return sink.asFlux()
-            .doOnCancel(() -> {
-                log.info("KPI stream cancelled for session: {}", sessionId);
-                sessionStreams.remove(sessionId);
-            })
+        return streamRegistry.share(STREAM, sessionId,
+                StreamPolicy.conflate(Update::conflationKey, streamSinks.capacity()),
+                sink -> startTicker(sessionId, sink))
+            .map(Update::json)
+            .doOnCancel(() -> log.info("KPI stream cancelled for session: {}", sessionId))
             .doOnError(e -> log.error("KPI stream error for session: {}", sessionId, e));
     }
 
-    private Flux<Void> extractAndEmitKpis(Long sessionId, Sinks.Many<String> sink) {
+    private Disposable startTicker(Long sessionId, StreamSink<Update> sink) {
+        EnhancedKpiExtractionService.IncrementalState state = new EnhancedKpiExtractionService.IncrementalState();
+        return Flux.interval(Duration.ofSeconds(2))
+            .onBackpressureDrop()
+            .concatMap(tick -> extractAndEmitKpis(sessionId, state, sink))
+            .subscribe();
+    }
+
+    private Flux<Void> extractAndEmitKpis(Long sessionId, EnhancedKpiExtractionService.IncrementalState state,
+                                          StreamSink<Update> sink) {
         Path pcapPath = Paths.get("./data/sessions")
             .resolve("session_" + sessionId)
             .resolve("capture.pcap");
         
-        return kpiService.extractAllKpis(pcapPath)
+        return kpiService.extractKpisIncremental(pcapPath, state)
             .doOnSuccess(kpis -> {
                 try {
                     String json = objectMapper.writeValueAsString(Map.of(
-                        "type", "kpi_update",
+                        "type", KPI_UPDATE,
                         "sessionId", sessionId,
                         "timestamp", System.currentTimeMillis(),
+                        "frames", state.frames(),
                         "data", kpis
                     ));
-                    sink.tryEmitNext(json);
+                    sink.tryEmitNext(new Update(KPI_UPDATE, json));
                 } catch (Exception e) {
                     log.error("Failed to serialize KPIs", e);
                 }
@@ -68,8 +92,7 @@ public class RealtimeKpiStreamingService {
     }
 
     public void emitEvent(Long sessionId, String eventType, Object data) {
-        Sinks.Many<String> sink = sessionStreams.get(sessionId);
-        if (sink != null) {
+        streamRegistry.<Update>sink(STREAM, sessionId).ifPresent(sink -> {
             try {
                 String json = objectMapper.writeValueAsString(Map.of(
                     "type", eventType,
@@ -77,18 +100,14 @@ public class RealtimeKpiStreamingService {
                     "timestamp", System.currentTimeMillis(),
                     "data", data
                 ));
-                sink.tryEmitNext(json);
+                sink.tryEmitNext(new Update(eventType, json));
             } catch (Exception e) {
                 log.error("Failed to emit event", e);
             }
-        }
+        });
     }
 
     public void stopStream(Long sessionId) {
-        Sinks.Many<String> sink = sessionStreams.remove(sessionId);
-        if (sink != null) {
-            sink.tryEmitComplete();
-            log.info("Stopped KPI stream for session: {}", sessionId);
-        }
+        streamRegistry.stop(STREAM, sessionId);
     }
 }
@@ -0,0 +1,358 @@
+package com.nathan.p2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.domain.Record;
+import com.nathan.p2.repository.RecordRepository;
+import com.nathan.p2.service.pcap.CaptureTail;
+import com.nathan.p2.service.persistence.BatchWriter;
+import com.nathan.p2.service.persistence.InsertTables;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Record Ingest - fills the records table with the signaling messages of a capture
+ *
+ * The capture is decoded by one streaming tshark pass and written in multi-row INSERTs of
+ * eca.persistence.batch-size rows, one batch at a time: tshark is only read as fast as the
+ * database takes the rows, so memory stays at about one batch whatever the capture size.
+ *
+ * While a session captures, the frames appended to its capture are ingested every
+ * eca.records.live-interval; when it stops, the rest of the capture is. A capture without
+ * a live ingest, or whose live ingest missed frames, is ingested as a whole instead.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RecordIngestService {
+
+    private static final String DISPLAY_FILTER = "gsmtap";
+
+    /** What a record is built from */
+    static final List<String> FIELDS = List.of(
+        "frame.number",
+        "frame.time_epoch",
+        "frame.len",
+        "frame.protocols",
+        "_ws.col.Protocol",
+        "_ws.col.Info",
+        "gsmtap.type",
+        "gsmtap.channel",
+        "gsmtap.uplink",
+        "lte-rrc",
+        "nas-eps",
+        "nr-rrc",
+        "nas-5gs");
+
+    private final ToolsConfig config;
+    private final TSharkIntegrationService tsharkService;
+    private final RecordRepository recordRepository;
+    private final SessionService sessionService;
+    private final BatchWriter batchWriter;
+    private final PipelineSchedulers schedulers;
+    private final ObjectMapper objectMapper;
+    private final TransactionalOperator transactionalOperator;
+
+    private final Map<Long, LiveIngest> liveIngests = new ConcurrentHashMap<>();
+
+    /**
+     * Ingest of a capture that is still being written
+     */
+    private static final class LiveIngest {
+        final Path pcapFile;
+        final CaptureTail tail = new CaptureTail();
+        final Sinks.Empty<Void> stop = Sinks.empty();
+        // Set when an increment failed or the capture restarted: the records are incomplete
+        volatile boolean incomplete;
+        Mono<Long> done;
+        Disposable subscription;
+
+        LiveIngest(Path pcapFile) {
+            this.pcapFile = pcapFile;
+        }
+    }
+
+    /**
+     * Replace the session's records with those of its capture; empty when the session or its capture does not exist
+     */
+    public Mono<Long> ingestSession(Long sessionId) {
+        return sessionService.getSession(sessionId)
+            .map(session -> Paths.get(session.getSessionDir()).resolve("capture.pcap"))
+            .filter(Files::isRegularFile)
+            .flatMap(pcapFile -> ingest(sessionId, pcapFile));
+    }
+
+    /**
+     * Replace the session's records with those of the whole capture; emits the number of records
+     * written. The delete and the inserts are one transaction: when the decode or an insert fails,
+     * the session keeps the records it had and the error is passed on.
+     */
+    public Mono<Long> ingest(Long sessionId, Path pcapFile) {
+        return recordRepository.deleteBySessionId(sessionId)
+            .subscribeOn(schedulers.persistence())
+            .then(write(sessionId, pcapFile, 0, ToolPriority.BATCH))
+            .as(transactionalOperator::transactional)
+            .doOnSuccess(count -> log.info("📥 Ingested {} records of session {}", count, sessionId))
+            .doOnError(e -> log.error("❌ Could not ingest records of session {}: {}", sessionId, e.getMessage()));
+    }
+
+    /**
+     * Start ingesting the frames appended to a capture while it is written; ticks never overlap
+     */
+    public void startLive(Long sessionId, Path pcapFile) {
+        if (!config.getRecords().isLiveIngest()) {
+            return;
+        }
+        LiveIngest ingest = new LiveIngest(pcapFile);
+        Duration interval = config.getRecords().getLiveInterval();
+        ingest.done = Flux.interval(interval, interval)
+            .onBackpressureDrop()
+            .takeUntilOther(ingest.stop.asMono())
+            .concatMap(tick -> increment(sessionId, ingest), 1)
+            // The frames written between the last tick and the stop
+            .concatWith(Mono.defer(() -> increment(sessionId, ingest)))
+            .reduce(0L, Long::sum)
+            .cache();
+        if (liveIngests.putIfAbsent(sessionId, ingest) != null) {
+            log.warn("Records of session {} are already ingested live", sessionId);
+            return;
+        }
+        ingest.subscription = ingest.done.subscribe();
+        log.info("Started live record ingest for session {}", sessionId);
+    }
+
+    /**
+     * Stop the live ingest once the capture is complete and write the rest of it; ingests the
+     * whole capture when there was no live ingest or it missed frames. Emits the number of records.
+     */
+    public Mono<Long> finish(Long sessionId, Path pcapFile) {
+        return Mono.defer(() -> {
+            LiveIngest ingest = liveIngests.remove(sessionId);
+            if (ingest == null) {
+                return ingest(sessionId, pcapFile);
+            }
+            ingest.stop.tryEmitEmpty();
+            return ingest.done.flatMap(count -> {
+                if (ingest.incomplete) {
+                    log.info("Live record ingest of session {} missed frames, ingesting the whole capture", sessionId);
+                    return ingest(sessionId, pcapFile);
+                }
+                log.info("📥 Ingested {} records of session {} live", count, sessionId);
+                return Mono.just(count);
+            });
+        });
+    }
+
+    /**
+     * Stop the live ingest without writing the rest of the capture
+     */
+    public void cancel(Long sessionId) {
+        LiveIngest ingest = liveIngests.remove(sessionId);
+        if (ingest != null && ingest.subscription != null) {
+            ingest.subscription.dispose();
+            log.info("Stopped live record ingest for session {}", sessionId);
+        }
+    }
+
+    /**
+     * Write the records in the frames appended since the previous increment
+     */
+    private Mono<Long> increment(Long sessionId, LiveIngest ingest) {
+        return Mono.fromCallable(() -> {
+                if (ingest.tail.shrank(ingest.pcapFile)) {
+                    log.warn("Capture {} shrank, its records are ingested again when it stops", ingest.pcapFile.getFileName());
+                    ingest.incomplete = true;
+                    ingest.tail.reset();
+                }
+                return ingest.tail.next(ingest.pcapFile, "live-records-");
+            })
+            .subscribeOn(schedulers.ingest())
+            .flatMap(increment -> write(sessionId, increment.chunk(), ingest.tail.frames(), ToolPriority.LIVE)
+                .doOnSuccess(count -> ingest.tail.advance(increment))
+                .doFinally(signal -> CaptureTail.delete(increment.chunk())))
+            .defaultIfEmpty(0L)
+            .onErrorResume(e -> {
+                log.warn("Live record ingest of session {} failed: {}", sessionId, e.getMessage());
+                ingest.incomplete = true;
+                return Mono.just(0L);
+            });
+    }
+
+    /**
+     * Decode the capture and insert its records batch by batch; frame n of the capture is stored as frameOffset + n
+     */
+    private Mono<Long> write(Long sessionId, Path pcapFile, long frameOffset, ToolPriority priority) {
+        int batchSize = Math.max(1, config.getPersistence().getBatchSize());
+        return tsharkService.streamJsonLayers(pcapFile, DISPLAY_FILTER, FIELDS, priority)
+            .publishOn(schedulers.ingest())
+            .mapNotNull(layers -> toRecord(sessionId, layers, frameOffset))
+            .buffer(batchSize)
+            .concatMap(batch -> batchWriter.insert(InsertTables.RECORDS, batch), 1)
+            .reduce(0L, Long::sum);
+    }
+
+    private Record toRecord(Long sessionId, JsonNode layers, long frameOffset) {
+        String frameNumber = first(layers, "frame.number");
+        if (frameNumber == null) {
+            return null;
+        }
+        String message = messageProtocol(first(layers, "frame.protocols"));
+        String protocol = protocol(message, first(layers, "_ws.col.Protocol"));
+        String info = first(layers, "_ws.col.Info");
+        String length = first(layers, "frame.len");
+
+        try {
+            return Record.builder()
+                .sessionId(sessionId)
+                .timestamp(timestamp(first(layers, "frame.time_epoch")))
+                .protocol(truncate(protocol, 20))
+                .direction(direction(layers))
+                .messageType(truncate(info != null ? info : message, 100))
+                .layer(layer(protocol))
+                .rat(rat(message))
+                .frameNumber((int) (frameOffset + Long.parseLong(frameNumber)))
+                .decodedData(info)
+                .payloadJson(toJson(layers))
+                .length(length != null ? Integer.valueOf(length) : null)
+                .build();
+        } catch (NumberFormatException e) {
+            log.debug("Skipping frame {} of session {}: {}", frameNumber, sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The protocol carried by GSMTAP, the first one after it in frame.protocols ("lte-rrc", "nas-eps", "mac-lte", ...)
+     */
+    private static String messageProtocol(String protocols) {
+        if (protocols == null) {
+            return null;
+        }
+        String[] chain = protocols.toLowerCase(Locale.ROOT).replace('_', '-').split(":");
+        for (int i = 0; i < chain.length - 1; i++) {
+            if (chain[i].equals("gsmtap")) {
+                return chain[i + 1];
+            }
+        }
+        return null;
+    }
+
+    private static String protocol(String message, String column) {
+        if (message != null) {
+            if (message.contains("rrc")) {
+                return "RRC";
+            }
+            if (message.startsWith("nas")) {
+                return "NAS";
+            }
+            if (message.startsWith("mac")) {
+                return "MAC";
+            }
+            if (message.startsWith("rlc")) {
+                return "RLC";
+            }
+            if (message.startsWith("pdcp")) {
+                return "PDCP";
+            }
+            if (message.equals("ip") || message.equals("ipv6")) {
+                return "IP";
+            }
+        }
+        if (column != null && !column.isBlank()) {
+            return column.toUpperCase(Locale.ROOT);
+        }
+        return message != null ? message.toUpperCase(Locale.ROOT) : "GSMTAP";
+    }
+
+    private static String layer(String protocol) {
+        return switch (protocol) {
+            case "RRC", "NAS", "IP" -> "L3";
+            case "MAC", "RLC", "PDCP" -> "L2";
+            default -> null;
+        };
+    }
+
+    private static String rat(String message) {
+        if (message == null) {
+            return null;
+        }
+        if (message.startsWith("nr-") || message.endsWith("-nr") || message.contains("5gs")) {
+            return "NR";
+        }
+        if (message.contains("lte") || message.contains("eps")) {
+            return "LTE";
+        }
+        if (message.startsWith("gsm")) {
+            return "GSM";
+        }
+        if (message.equals("rrc") || message.equals("rlc") || message.equals("nbap")) {
+            return "UMTS";
+        }
+        return null;
+    }
+
+    /**
+     * From the GSMTAP uplink flag, else the channel name as the signaling view does
+     */
+    private static String direction(JsonNode layers) {
+        String uplink = first(layers, "gsmtap.uplink");
+        if (uplink != null) {
+            return uplink.equals("1") || uplink.equalsIgnoreCase("true") ? "UL" : "DL";
+        }
+        String channel = first(layers, "gsmtap.channel");
+        return channel != null && channel.contains("UL") ? "UL" : "DL";
+    }
+
+    private static Instant timestamp(String epoch) {
+        if (epoch == null) {
+            return Instant.now();
+        }
+        BigDecimal seconds = new BigDecimal(epoch);
+        long whole = seconds.longValue();
+        return Instant.ofEpochSecond(whole, seconds.subtract(BigDecimal.valueOf(whole)).movePointRight(9).longValue());
+    }
+
+    private String toJson(JsonNode layers) {
+        try {
+            return objectMapper.writeValueAsString(layers);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static String first(JsonNode layers, String field) {
+        JsonNode value = layers.get(field);
+        if (value == null) {
+            return null;
+        }
+        if (value.isArray()) {
+            return value.size() > 0 ? value.get(0).asText() : null;
+        }
+        return value.asText();
+    }
+
+    private static String truncate(String value, int max) {
+        return value != null && value.length() > max ? value.substring(0, max) : value;
+    }
+}
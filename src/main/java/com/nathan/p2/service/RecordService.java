@@ -31,16 +31,19 @@ public class RecordService {
     public Mono<PaginatedResponse<RecordDto>> getSessionRecords(
             Long sessionId, int page, int size, String protocol) {
         
+        // The page is read straight from the (session_id, [protocol,] frame_number) index
+        long offset = (long) page * size;
         var recordsFlux = protocol != null
-                ? recordRepository.findBySessionIdAndProtocol(sessionId, protocol)
-                : recordRepository.findBySessionId(sessionId);
+                ? recordRepository.findPageByProtocol(sessionId, protocol, size, offset)
+                : recordRepository.findPage(sessionId, size, offset);
+        var countMono = protocol != null
+                ? recordRepository.countBySessionIdAndProtocol(sessionId, protocol)
+                : recordRepository.countBySessionId(sessionId);
         
         return recordsFlux
-                .skip((long) page * size)
-                .take(size)
                 .map(this::toDto)
                 .collectList()
-                .zipWith(recordRepository.countBySessionId(sessionId))
+                .zipWith(countMono)
                 .map(tuple -> {
                     var content = tuple.getT1();
                     var total = tuple.getT2();
@@ -78,6 +81,7 @@ public class RecordService {
                 .direction(record.getDirection())
                 .messageType(record.getMessageType())
                 .layer(record.getLayer())
+                .rat(record.getRat())
                 .frameNumber(record.getFrameNumber())
                 .hexData(record.getHexData())
                 .decodedData(record.getDecodedData())
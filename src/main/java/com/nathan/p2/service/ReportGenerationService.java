@@ -24,12 +24,11 @@ public class ReportGenerationService {
     public Mono<Path> generateHtmlReport(Session session) {
         return kpiService.getConsolidatedKpis(session.getId())
             .flatMap(kpis -> anomalyService.detectAndSaveAnomalies(session.getId())
-                .collectList()
-                .map(anomalies -> {
+                .map(anomalyCount -> {
                     try {
                         Path reportPath = Path.of(session.getSessionDir(), "report.html");
                         try (BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath.toFile()))) {
-                            writer.write(buildHtmlReport(session, kpis, anomalies.size()));
+                            writer.write(buildHtmlReport(session, kpis, anomalyCount.intValue()));
                         }
                         return reportPath;
                     } catch (Exception e) {
@@ -3,6 +3,7 @@ package com.nathan.p2.service;
 import com.nathan.p2.config.ToolsConfig;
 import com.nathan.p2.service.process.ExternalToolService;
 import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.process.ToolPriority;
 import com.nathan.p2.util.PlatformUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -85,6 +86,7 @@ public class ScatIntegrationService {
             .workingDirectory(Path.of(config.getTools().getScat().getPath()))
             .environment(Map.of())
             .captureStderr(true)
+            .priority(ToolPriority.LIVE)
             .build();
 
         return toolService.start(spec)
@@ -0,0 +1,124 @@
+package com.nathan.p2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.domain.Session;
+import com.nathan.p2.service.stream.LiveStreamRegistry;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Session Decode Service
+ * One tshark decode of a session's capture, shared by every terminal view (PSML, JSON, text)
+ * and signaling client of that session.
+ *
+ * The decode produces the "_source.layers" object of each GSMTAP packet with the union of
+ * the fields those views render. It starts with the first subscriber and stops with the last;
+ * a viewer joining a running decode first receives the last eca.streams.decode-replay packets.
+ *
+ * While the session is capturing, the decode is live: the GSMTAP listener feeds datagrams
+ * straight into a supervised "tshark -i -" instead of tshark re-reading the PCAP file, so
+ * packets appear as they are received. Finished captures are decoded from the file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SessionDecodeService {
+
+    private static final String STREAM = "decode";
+    private static final String DISPLAY_FILTER = "gsmtap";
+
+    /** Everything the terminal and signaling views read */
+    static final List<String> FIELDS = List.of(
+        "frame.number",
+        "frame.time",
+        "frame.protocols",
+        "_ws.col.Protocol",
+        "_ws.col.Info",
+        "gsmtap.type",
+        "gsmtap.channel",
+        "lte-rrc.rsrpResult",
+        "lte-rrc.rsrqResult",
+        "nas_eps.nas_msg_emm_type",
+        "rrc.message",
+        "lte-rrc",
+        "nas-eps",
+        "nr-rrc");
+
+    private final ToolsConfig config;
+    private final TSharkIntegrationService tsharkService;
+    private final LiveStreamRegistry streamRegistry;
+    private final StreamSinkFactory streamSinks;
+    private final GsmtapListenerService gsmtapListener;
+    private final SessionService sessionService;
+
+    /**
+     * Decoded packets ("_source.layers") of the session's capture, live while the GSMTAP listener
+     * captures it ({@code eca.gsmtap.session-capture}); otherwise the PCAP on disk is decoded.
+     * Fails with {@link IllegalStateException} when the session has no capture yet.
+     */
+    public Flux<JsonNode> packets(Long sessionId) {
+        return Flux.defer(() -> {
+            Optional<Path> live = gsmtapListener.liveCapture(sessionId);
+            return Mono.justOrEmpty(live)
+                .switchIfEmpty(findCapture(sessionId))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("PCAP file not found for session " + sessionId)))
+                .flatMapMany(pcapPath -> {
+                    StreamPolicy<JsonNode> policy = StreamPolicy.<JsonNode>dropOldest(streamSinks.capacity())
+                        .withReplay(config.getStreams().getDecodeReplay());
+                    return streamRegistry.share(STREAM, sessionId, policy, sink -> {
+                        Flux<JsonNode> decode;
+                        if (live.isPresent()) {
+                            log.info("Decoding live capture of session {}", sessionId);
+                            decode = tsharkService.liveJsonDecodeSpec("tshark-decode-" + sessionId, DISPLAY_FILTER, FIELDS,
+                                    pcapPath.toAbsolutePath().getParent())
+                                .flatMapMany(spec -> gsmtapListener.decodeLive(sessionId, spec));
+                        } else {
+                            log.info("Decoding {} for session {}", pcapPath, sessionId);
+                            decode = tsharkService.streamJsonLayers(pcapPath, DISPLAY_FILTER, FIELDS);
+                        }
+                        return decode
+                            .subscribe(
+                                sink::tryEmitNext,
+                                e -> {
+                                    log.error("Decode of session {} failed", sessionId, e);
+                                    sink.tryEmitError(e);
+                                },
+                                sink::tryEmitComplete);
+                    });
+                });
+        });
+    }
+
+    /**
+     * Stop the session's decode; all views of it complete
+     */
+    public void stop(Long sessionId) {
+        streamRegistry.stop(STREAM, sessionId);
+    }
+
+    /**
+     * The session's capture: capture.pcap in the session's directory, else session_{id}/capture.pcap;
+     * empty when the session has no capture
+     */
+    public Mono<Path> findCapture(Long sessionId) {
+        Path byId = Paths.get(config.getStorage().getBaseDir()).resolve("session_" + sessionId).resolve("capture.pcap");
+        return sessionService.getSession(sessionId)
+            .mapNotNull(Session::getSessionDir)
+            .map(dir -> Paths.get(dir).resolve("capture.pcap"))
+            .concatWith(Mono.just(byId))
+            .filter(Files::exists)
+            .next();
+    }
+}
@@ -4,6 +4,7 @@ import com.nathan.p2.config.ToolsConfig;
 import com.nathan.p2.domain.Session;
 import com.nathan.p2.domain.SessionStatus;
 import com.nathan.p2.repository.SessionRepository;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -23,6 +24,7 @@ public class SessionService {
     private final SessionRepository sessionRepository;
     private final ToolsConfig toolsConfig;
     private final DeviceDetectorService deviceDetectorService;
+    private final PipelineSchedulers schedulers;
 
     public Mono<Session> createSession(String deviceId) {
         return deviceDetectorService.getDeviceModel(deviceId)
@@ -42,7 +44,7 @@ public class SessionService {
                             .sessionDir(sessionDir)
                             .build();
                     
-                    return sessionRepository.save(session);
+                    return sessionRepository.save(session).subscribeOn(schedulers.persistence());
                 })
                 .doOnSuccess(session -> log.info("Created session {} for device {}", 
                         session.getId(), deviceId));
@@ -55,7 +57,7 @@ public class SessionService {
                     if (status == SessionStatus.COMPLETED || status == SessionStatus.FAILED) {
                         session.setEndTime(LocalDateTime.now());
                     }
-                    return sessionRepository.save(session);
+                    return sessionRepository.save(session).subscribeOn(schedulers.persistence());
                 });
     }
 
@@ -81,7 +83,7 @@ public class SessionService {
                 .status(SessionStatus.COMPLETED)
                 .sessionDir(java.nio.file.Paths.get(pcapPath).getParent().toString())
                 .build();
-        return sessionRepository.save(session);
+        return sessionRepository.save(session).subscribeOn(schedulers.persistence());
     }
 
     private String createSessionDirectory(String deviceId) {
@@ -2,121 +2,53 @@ package com.nathan.p2.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.nathan.p2.config.ToolsConfig;
 import com.nathan.p2.dto.SignalingMessageDto;
-import com.nathan.p2.util.PlatformUtils;
+import com.nathan.p2.service.stream.LiveStreamRegistry;
+import com.nathan.p2.service.stream.StreamPolicy;
+import com.nathan.p2.service.stream.StreamSink;
+import com.nathan.p2.service.stream.StreamSinkFactory;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SignalingMessageService {
-    private final ToolsConfig config;
-    private final ObjectMapper objectMapper;
+    private static final String MOCK_STREAM = "signaling-mock";
     
-    private final Map<Long, Process> activeStreams = new ConcurrentHashMap<>();
-    private final Map<Long, Sinks.Many<SignalingMessageDto>> sessionSinks = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final SessionDecodeService decodeService;
+    private final StreamSinkFactory streamSinks;
+    private final LiveStreamRegistry streamRegistry;
 
+    /**
+     * Signaling messages of a session, parsed from its shared decode: clients of the same
+     * session (and its terminal views) use one tshark, stopped when the last of them leaves.
+     */
     public Flux<SignalingMessageDto> streamSignaling(Long sessionId) {
         log.info("Starting signaling stream for session: {}", sessionId);
         
-        Sinks.Many<SignalingMessageDto> sink = Sinks.many().multicast().onBackpressureBuffer();
-        sessionSinks.put(sessionId, sink);
-        
-        // Find session directory (could be deviceId_timestamp format)
-        Path baseDir = Paths.get(config.getStorage().getBaseDir());
-        Path pcapPath = null;
-        
-        try {
-            pcapPath = java.nio.file.Files.list(baseDir)
-                .filter(p -> p.getFileName().toString().contains(String.valueOf(sessionId)) || 
-                            p.resolve("capture.pcap").toFile().exists())
-                .map(p -> p.resolve("capture.pcap"))
-                .filter(p -> p.toFile().exists())
-                .findFirst()
-                .orElse(null);
-        } catch (Exception e) {
-            log.error("Error finding PCAP file", e);
-        }
-        
-        if (pcapPath == null || !pcapPath.toFile().exists()) {
-            log.warn("PCAP file not found for session {}, will emit mock data", sessionId);
-            // Emit mock signaling messages for testing
-            emitMockSignaling(sink);
-            return sink.asFlux();
-        }
-        
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath,
-                "-r", pcapPath.toString(),
-                "-T", "json",
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", "gsmtap",
-                "-e", "frame.number",
-                "-e", "frame.time",
-                "-e", "gsmtap.channel",
-                "-e", "lte-rrc",
-                "-e", "nas-eps",
-                "-e", "nr-rrc"
-            );
-            
-            Process process = pb.start();
-            activeStreams.put(sessionId, process);
-            
-            new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    StringBuilder jsonBuilder = new StringBuilder();
-                    String line;
-                    
-                    while ((line = reader.readLine()) != null) {
-                        jsonBuilder.append(line);
-                    }
-                    
-                    JsonNode packets = objectMapper.readTree(jsonBuilder.toString());
-                    if (packets.isArray()) {
-                        for (JsonNode packet : packets) {
-                            SignalingMessageDto msg = parseSignalingMessage(packet);
-                            if (msg != null) {
-                                sink.tryEmitNext(msg);
-                            }
-                        }
-                    }
-                    
-                    sink.tryEmitComplete();
-                } catch (Exception e) {
-                    log.error("Error reading signaling stream", e);
-                    sink.tryEmitError(e);
+        return decodeService.findCapture(sessionId)
+            .hasElement()
+            .flatMapMany(found -> {
+                if (!found) {
+                    log.warn("PCAP file not found for session {}, will emit mock data", sessionId);
+                    // Emit mock signaling messages for testing
+                    return streamRegistry.share(MOCK_STREAM, sessionId, StreamPolicy.buffer(streamSinks.capacity()),
+                        sink -> emitMockSignaling(sink)::interrupt);
                 }
-            }).start();
-            
-        } catch (Exception e) {
-            log.error("Failed to start signaling stream", e);
-            sink.tryEmitError(e);
-        }
-        
-        return sink.asFlux()
-            .doOnCancel(() -> stopStream(sessionId))
-            .doOnError(e -> log.error("Signaling stream error", e));
+
+                return decodeService.packets(sessionId)
+                    .mapNotNull(this::parseSignalingMessage)
+                    .doOnError(e -> log.error("Signaling stream error", e));
+            });
     }
 
-    private SignalingMessageDto parseSignalingMessage(JsonNode packet) {
+    private SignalingMessageDto parseSignalingMessage(JsonNode layers) {
         try {
-            JsonNode layers = packet.get("_source").get("layers");
-            if (layers == null) return null;
-            
             SignalingMessageDto msg = SignalingMessageDto.builder().build();
             
             // Extract frame info
@@ -182,21 +114,13 @@ public class SignalingMessageService {
     }
 
     public void stopStream(Long sessionId) {
-        Process process = activeStreams.remove(sessionId);
-        if (process != null && process.isAlive()) {
-            process.destroy();
-            log.info("Stopped signaling stream for session: {}", sessionId);
-        }
-        
-        Sinks.Many<SignalingMessageDto> sink = sessionSinks.remove(sessionId);
-        if (sink != null) {
-            sink.tryEmitComplete();
-        }
+        decodeService.stop(sessionId);
+        streamRegistry.stop(MOCK_STREAM, sessionId);
     }
     
-    private void emitMockSignaling(Sinks.Many<SignalingMessageDto> sink) {
+    private Thread emitMockSignaling(StreamSink<SignalingMessageDto> sink) {
         // Emit mock messages every 2 seconds for testing
-        new Thread(() -> {
+        return VirtualThreads.start("mock-signaling", () -> {
             try {
                 String[] messages = {
                     "RRCConnectionRequest", "RRCConnectionSetup", "RRCConnectionSetupComplete",
@@ -220,6 +144,6 @@ public class SignalingMessageService {
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
-        }).start();
+        });
     }
 }
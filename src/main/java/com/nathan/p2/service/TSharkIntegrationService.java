@@ -1,9 +1,21 @@
 package com.nathan.p2.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.pcap.PcapScanService;
 import com.nathan.p2.service.process.ExternalToolService;
 import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectionCache;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import com.nathan.p2.service.tshark.SharkdPool;
+import com.nathan.p2.service.tshark.SharkdWorker;
+import com.nathan.p2.service.tshark.TSharkJsonStreamParser;
 import com.nathan.p2.util.PlatformUtils;
+import com.nathan.p2.util.VirtualThreads;
 import lombok.Builder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,10 +23,21 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * TShark Integration Service - Based on Termshark patterns
@@ -30,8 +53,23 @@ import java.util.Map;
 @Service
 @RequiredArgsConstructor
 public class TSharkIntegrationService {
+    // stderr lines quoted in the error of a failed tshark run
+    private static final int STDERR_LINES_IN_ERRORS = 5;
+    private static final String UNKNOWN_VERSION = "unknown";
+
     private final ExternalToolService toolService;
     private final ToolsConfig config;
+    private final PcapScanService pcapScanService;
+    private final ObjectMapper objectMapper;
+    private final SharkdPool sharkdPool;
+    private final DissectionCache dissectionCache;
+
+    // Protocol and field abbreviations known to the installed tshark ("tshark -G fields"), loaded
+    // once; an empty set (tshark could not be run) is not kept, the next use tries again
+    private final Mono<Set<String>> knownFields = Mono.defer(this::loadKnownFields).cacheInvalidateIf(Set::isEmpty);
+
+    // First line of "tshark -v", part of every cache key, loaded once it could be determined
+    private final Mono<String> tsharkVersion = Mono.defer(this::loadVersion).cacheInvalidateIf(UNKNOWN_VERSION::equals);
 
     @Builder
     public record TSharkOptions(
@@ -77,6 +115,7 @@ public class TSharkIntegrationService {
             .workingDirectory(outputFile.getParent())
             .environment(Map.of())
             .captureStderr(true)
+            .priority(ToolPriority.LIVE)
             .build();
 
         return toolService.start(spec);
@@ -175,9 +214,50 @@ public class TSharkIntegrationService {
     }
 
     /**
-     * Extract specific fields for KPI calculation
+     * Count packets matching a display filter.
+     * Header-only filters are answered from the mapped file, everything else by a pooled
+     * sharkd worker, falling back to a one-shot tshark when sharkd is unavailable.
      */
     public Mono<Integer> countPackets(Path pcapFile, String filter) {
+        return tsharkVersion.flatMap(version -> dissectionCache.get(pcapFile,
+            DissectionCache.Query.builder().kind("count").filter(filter).toolVersion(version).build(),
+            new TypeReference<Integer>() {},
+            () -> computeCount(pcapFile, filter)));
+    }
+
+    private Mono<Integer> computeCount(Path pcapFile, String filter) {
+        // Filters on frame/GSMTAP header fields only are counted over the mapped file, without tshark
+        Optional<DisplayFilter> headerFilter = PcapScanService.headerOnly(filter);
+        if (headerFilter.isPresent()) {
+            return pcapScanService.count(pcapFile, headerFilter.get()).map(Long::intValue);
+        }
+        if (!sharkdPool.isAvailable()) {
+            return countPacketsWithTshark(pcapFile, filter);
+        }
+        return sharkdPool.count(pcapFile, filter)
+            .map(Long::intValue)
+            .onErrorResume(SharkdWorker.SharkdException.class, e -> {
+                // tshark would reject the same filter, so don't start one
+                log.warn("Display filter rejected: '{}' ({})", filter, e.getMessage());
+                return Mono.just(0);
+            })
+            .onErrorResume(e -> {
+                log.debug("sharkd count failed for '{}', using tshark: {}", filter, e.getMessage());
+                return countPacketsWithTshark(pcapFile, filter);
+            });
+    }
+
+    /**
+     * Count several display filters at once; the counts run concurrently over the worker pool
+     */
+    public Mono<Map<String, Integer>> countPackets(Path pcapFile, Collection<String> filters) {
+        return Flux.fromIterable(new LinkedHashSet<>(filters))
+            .flatMap(filter -> countPackets(pcapFile, filter).map(count -> Map.entry(filter, count)),
+                Runtime.getRuntime().availableProcessors())
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private Mono<Integer> countPacketsWithTshark(Path pcapFile, String filter) {
         TSharkOptions opts = TSharkOptions.builder()
             .displayFilter(filter)
             .decodeAs(List.of("udp.port==4729,gsmtap"))
@@ -215,6 +295,31 @@ public class TSharkIntegrationService {
      * Extract packet details with timestamps for KPI calculation
      */
     public Flux<PacketDetail> extractPacketDetails(Path pcapFile, String filter) {
+        return tsharkVersion.flatMap(version -> dissectionCache.get(pcapFile,
+                DissectionCache.Query.builder().kind("details").filter(filter).toolVersion(version).build(),
+                new TypeReference<List<PacketDetail>>() {},
+                () -> computePacketDetails(pcapFile, filter).collectList()))
+            .flatMapMany(Flux::fromIterable);
+    }
+
+    private Flux<PacketDetail> computePacketDetails(Path pcapFile, String filter) {
+        if (!sharkdPool.isAvailable()) {
+            return extractPacketDetailsWithTshark(pcapFile, filter);
+        }
+        return sharkdPool.frames(pcapFile, filter, List.of())
+            .flatMapMany(Flux::fromIterable)
+            .map(packet -> new PacketDetail(packet.frameNumber(), packet.timestamp()))
+            .onErrorResume(SharkdWorker.SharkdException.class, e -> {
+                log.warn("Display filter rejected: '{}' ({})", filter, e.getMessage());
+                return Flux.empty();
+            })
+            .onErrorResume(e -> {
+                log.debug("sharkd frames failed for '{}', using tshark: {}", filter, e.getMessage());
+                return extractPacketDetailsWithTshark(pcapFile, filter);
+            });
+    }
+
+    private Flux<PacketDetail> extractPacketDetailsWithTshark(Path pcapFile, String filter) {
         TSharkOptions opts = TSharkOptions.builder()
             .displayFilter(filter)
             .decodeAs(List.of("udp.port==4729,gsmtap"))
@@ -257,10 +362,128 @@ public class TSharkIntegrationService {
             });
     }
 
+    /**
+     * Count many named display filters and list the frames of many named event filters,
+     * all from one dissection of the capture instead of one tshark run per filter.
+     * Filters are compiled to {@link DisplayFilter}s and evaluated in-process on a single
+     * {@link #scanFields} of the fields they read; a filter shared by a counter and an event is
+     * evaluated once. Filters outside the supported syntax fall back to {@link #countPackets}
+     * and {@link #extractPacketDetails}.
+     */
+    public Mono<FilterMatches> matchFilters(Path pcapFile, Map<String, String> counters, Map<String, String> events) {
+        List<String> query = new ArrayList<>();
+        counters.forEach((name, filter) -> query.add("count:" + name + "=" + filter));
+        events.forEach((name, filter) -> query.add("event:" + name + "=" + filter));
+        return tsharkVersion.flatMap(version -> dissectionCache.get(pcapFile,
+            DissectionCache.Query.builder().kind("matches").fields(query).toolVersion(version).build(),
+            new TypeReference<FilterMatches>() {},
+            () -> computeMatches(pcapFile, counters, events)));
+    }
+
+    private Mono<FilterMatches> computeMatches(Path pcapFile, Map<String, String> counters, Map<String, String> events) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            Map<String, FilterMatch> matches = new LinkedHashMap<>();
+            Set<String> unsupported = new LinkedHashSet<>();
+            Set<String> fields = new LinkedHashSet<>();
+            for (String filter : counters.values()) {
+                compileMatch(filter, false, matches, unsupported, fields);
+            }
+            for (String filter : events.values()) {
+                compileMatch(filter, true, matches, unsupported, fields);
+            }
+
+            Mono<Long> scan = matches.isEmpty()
+                ? Mono.just(0L)
+                : scanFields(pcapFile, fields)
+                    .doOnNext(packet -> matches.values().forEach(match -> match.accept(packet)))
+                    .count();
+            Mono<Map<String, Integer>> fallbackCounts = countPackets(pcapFile, counters.values().stream()
+                .filter(unsupported::contains)
+                .toList());
+            Mono<Map<String, List<PacketDetail>>> fallbackDetails = Flux.fromIterable(new LinkedHashSet<>(events.values()))
+                .filter(unsupported::contains)
+                .flatMap(filter -> extractPacketDetails(pcapFile, filter).collectList().map(details -> Map.entry(filter, details)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+
+            return Mono.zip(scan, fallbackCounts, fallbackDetails).map(tuple -> {
+                Map<String, Integer> counts = new LinkedHashMap<>();
+                counters.forEach((name, filter) -> counts.put(name, matches.containsKey(filter)
+                    ? matches.get(filter).count
+                    : tuple.getT2().getOrDefault(filter, 0)));
+                Map<String, List<PacketDetail>> details = new LinkedHashMap<>();
+                events.forEach((name, filter) -> details.put(name, matches.containsKey(filter)
+                    ? List.copyOf(matches.get(filter).frames)
+                    : tuple.getT3().getOrDefault(filter, List.of())));
+                log.info("📊 Matched {} filters over {} frames in one pass ({} by tshark) in {} ms",
+                    matches.size(), tuple.getT1(), unsupported.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                return new FilterMatches(counts, details);
+            });
+        });
+    }
+
+    private static void compileMatch(String filter, boolean listFrames, Map<String, FilterMatch> matches,
+                                     Set<String> unsupported, Set<String> fields) {
+        FilterMatch match = matches.get(filter);
+        if (match != null) {
+            match.listFrames(listFrames);
+            return;
+        }
+        if (unsupported.contains(filter)) {
+            return;
+        }
+        try {
+            DisplayFilter compiled = DisplayFilter.compile(filter);
+            matches.put(filter, new FilterMatch(compiled).listFrames(listFrames));
+            fields.addAll(compiled.fields());
+        } catch (IllegalArgumentException e) {
+            log.debug("Filter '{}' is evaluated by tshark: {}", filter, e.getMessage());
+            unsupported.add(filter);
+        }
+    }
+
+    /**
+     * Running count of one filter, and its matching frames when they are asked for
+     */
+    private static final class FilterMatch {
+        private final DisplayFilter filter;
+        private int count;
+        private List<PacketDetail> frames;
+
+        FilterMatch(DisplayFilter filter) {
+            this.filter = filter;
+        }
+
+        FilterMatch listFrames(boolean listFrames) {
+            if (listFrames && frames == null) {
+                frames = new ArrayList<>();
+            }
+            return this;
+        }
+
+        void accept(DissectedPacket packet) {
+            if (filter.test(packet)) {
+                count++;
+                if (frames != null) {
+                    frames.add(new PacketDetail(packet.frameNumber(), packet.timestamp()));
+                }
+            }
+        }
+    }
+
     /**
      * Extract specific field values (e.g., RSRP, RSRQ) for signal quality KPIs
      */
     public Flux<String> extractFields(Path pcapFile, List<String> fields) {
+        return tsharkVersion.flatMap(version -> dissectionCache.get(pcapFile,
+                DissectionCache.Query.builder().kind("fields").fields(fields).toolVersion(version).build(),
+                new TypeReference<List<String>>() {},
+                () -> computeFields(pcapFile, fields).collectList()))
+            .flatMapMany(Flux::fromIterable);
+    }
+
+    private Flux<String> computeFields(Path pcapFile, List<String> fields) {
         TSharkOptions opts = TSharkOptions.builder()
             .decodeAs(List.of("udp.port==4729,gsmtap"))
             .build();
@@ -295,6 +518,271 @@ public class TSharkIntegrationService {
             .filter(line -> !line.isEmpty() && !line.startsWith("Cannot"));
     }
 
+    /**
+     * Dissect the capture once and stream every frame with the requested fields.
+     * Used by the KPI engine so that dozens of KPIs share a single tshark pass.
+     *
+     * Fields unknown to the installed tshark are dropped with a warning, because a single
+     * invalid -e makes tshark abort the whole run.
+     */
+    public Flux<DissectedPacket> scanFields(Path pcapFile, Collection<String> fields) {
+        return scanFields(pcapFile, fields, ToolPriority.INTERACTIVE);
+    }
+
+    /**
+     * As {@link #scanFields(Path, Collection)}, started under the given priority. Fails with the
+     * end of tshark's stderr when it exits with an error, so the frames of a crashed or killed
+     * run are never taken for the whole capture.
+     */
+    public Flux<DissectedPacket> scanFields(Path pcapFile, Collection<String> fields, ToolPriority priority) {
+        return knownFields.flatMapMany(known -> {
+            List<String> columns = new ArrayList<>(List.of("frame.number", "frame.time_epoch"));
+            for (String field : fields) {
+                if (columns.contains(field)) {
+                    continue;
+                }
+                if (!known.isEmpty() && !known.contains(field)) {
+                    log.warn("Skipping field unknown to tshark: {}", field);
+                    continue;
+                }
+                columns.add(field);
+            }
+
+            List<String> args = new ArrayList<>();
+            args.add("-r");
+            args.add(pcapFile.toString());
+            args.add("-T");
+            args.add("fields");
+            for (String column : columns) {
+                args.add("-e");
+                args.add(column);
+            }
+            args.add("-E");
+            args.add("occurrence=a");
+            args.add("-E");
+            args.add("aggregator=,");
+
+            addCommonOptions(args, TSharkOptions.defaults());
+
+            ProcessSpec spec = ProcessSpec.builder()
+                .id("tshark-scan-" + System.currentTimeMillis())
+                .command(PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath()))
+                .args(args)
+                .workingDirectory(pcapFile.getParent())
+                .environment(Map.of())
+                .captureStderr(true)
+                .priority(priority)
+                .build();
+
+            return toolService.startInteractive(spec)
+                .flatMapMany(process -> Flux.using(
+                    () -> process,
+                    p -> lines(p)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("Cannot"))
+                        .mapNotNull(line -> parseFieldLine(line, columns))
+                        .concatWith(exitStatus(p)),
+                    p -> {
+                        if (p.isAlive()) {
+                            p.destroy();
+                        }
+                    }));
+        }).subscribeOn(VirtualThreads.IO);
+    }
+
+    /**
+     * The process's stdout line by line; the stream is closed when the Flux terminates or is cancelled
+     */
+    private static Flux<String> lines(Process process) {
+        return Flux.using(
+            () -> new BufferedReader(new InputStreamReader(process.getInputStream())),
+            reader -> Flux.fromStream(reader.lines()),
+            reader -> {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    log.debug("Error closing tshark output: {}", e.getMessage());
+                }
+            });
+    }
+
+    /**
+     * Stream "-T json" output one packet ("_source.layers") at a time, as tshark produces it.
+     * Cancelling the Flux stops tshark.
+     */
+    public Flux<JsonNode> streamJsonLayers(Path pcapFile, String displayFilter, Collection<String> fields) {
+        return streamJsonLayers(pcapFile, displayFilter, fields, ToolPriority.INTERACTIVE);
+    }
+
+    /**
+     * As {@link #streamJsonLayers(Path, String, Collection)}, started under the given priority.
+     * Fails with the end of tshark's stderr when it exits with an error (a bad display filter,
+     * an unreadable capture), so a failed run is never mistaken for an empty capture.
+     */
+    public Flux<JsonNode> streamJsonLayers(Path pcapFile, String displayFilter, Collection<String> fields,
+                                           ToolPriority priority) {
+        return knownFields.flatMapMany(known -> {
+            List<String> args = new ArrayList<>();
+            args.add("-r");
+            args.add(pcapFile.toString());
+            addJsonFieldOptions(args, known, displayFilter, fields);
+
+            ProcessSpec spec = ProcessSpec.builder()
+                .id("tshark-json-" + System.currentTimeMillis())
+                .command(PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath()))
+                .args(args)
+                .workingDirectory(pcapFile.toAbsolutePath().getParent())
+                .environment(Map.of())
+                .captureStderr(true)
+                .priority(priority)
+                .build();
+
+            return toolService.startInteractive(spec)
+                .flatMapMany(process -> Flux.using(
+                    () -> process,
+                    p -> TSharkJsonStreamParser.layers(p::getInputStream, objectMapper)
+                        .concatWith(exitStatus(p)),
+                    p -> {
+                        if (p.isAlive()) {
+                            p.destroy();
+                        }
+                    }));
+        }).subscribeOn(VirtualThreads.IO);
+    }
+
+    /**
+     * Empty once the process exited normally, else an error with its last stderr lines
+     */
+    private <T> Mono<T> exitStatus(Process process) {
+        return Mono.fromFuture(process.onExit())
+            .flatMap(exited -> {
+                int code = exited.exitValue();
+                if (code == 0) {
+                    return Mono.empty();
+                }
+                return toolService.stderr(exited.toHandle())
+                    .takeLast(STDERR_LINES_IN_ERRORS)
+                    .collectList()
+                    .flatMap(lines -> Mono.error(new IllegalStateException(
+                        "tshark exited with code " + code + (lines.isEmpty() ? "" : ": " + String.join(" / ", lines)))));
+            });
+    }
+
+    /**
+     * Command for a live decode that reads PCAP records from stdin:
+     * "tshark -l -i - -T json -Y filter -e ...", flushing its output after every packet.
+     * Meant for {@link ExternalToolService#supervise}; see {@link com.nathan.p2.service.tshark.LiveTSharkDecoder}.
+     */
+    public Mono<ProcessSpec> liveJsonDecodeSpec(String id, String displayFilter, Collection<String> fields,
+                                                Path workingDirectory) {
+        return knownFields.map(known -> {
+            List<String> args = new ArrayList<>();
+            args.add("-l");
+            args.add("-i");
+            args.add("-");
+            addJsonFieldOptions(args, known, displayFilter, fields);
+            return ProcessSpec.builder()
+                .id(id)
+                .command(PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath()))
+                .args(args)
+                .workingDirectory(workingDirectory)
+                .environment(Map.of())
+                .captureStderr(true)
+                .priority(ToolPriority.LIVE)
+                .build();
+        }).subscribeOn(VirtualThreads.IO);
+    }
+
+    /**
+     * "-T json -Y filter -e field ..." plus the common options; fields the installed tshark
+     * does not know are left out, as one unknown field would make it refuse to start
+     */
+    private void addJsonFieldOptions(List<String> args, Set<String> known, String displayFilter,
+                                     Collection<String> fields) {
+        args.add("-T");
+        args.add("json");
+        if (displayFilter != null && !displayFilter.isEmpty()) {
+            args.add("-Y");
+            args.add(displayFilter);
+        }
+        for (String field : fields) {
+            if (!known.isEmpty() && !known.contains(field)) {
+                log.warn("Skipping field unknown to tshark: {}", field);
+                continue;
+            }
+            args.add("-e");
+            args.add(field);
+        }
+        addCommonOptions(args, TSharkOptions.defaults());
+    }
+
+    private DissectedPacket parseFieldLine(String line, List<String> columns) {
+        String[] parts = line.split("\t", -1);
+        if (parts.length < 2) {
+            return null;
+        }
+        try {
+            int frameNumber = Integer.parseInt(parts[0].trim());
+            double timestamp = Double.parseDouble(parts[1].trim());
+            Map<String, String> values = new HashMap<>();
+            for (int i = 2; i < columns.size() && i < parts.length; i++) {
+                if (!parts[i].isEmpty()) {
+                    values.put(columns.get(i), parts[i]);
+                }
+            }
+            return new DissectedPacket(frameNumber, timestamp, values);
+        } catch (NumberFormatException e) {
+            log.debug("Skipping unparsable tshark line: {}", line);
+            return null;
+        }
+    }
+
+    private Mono<Set<String>> loadKnownFields() {
+        ProcessSpec spec = ProcessSpec.builder()
+            .id("tshark-fields-catalog")
+            .command(PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath()))
+            .args(List.of("-G", "fields"))
+            .workingDirectory(Path.of(".").toAbsolutePath())
+            .environment(Map.of())
+            .captureStderr(false)
+            .build();
+
+        return toolService.start(spec)
+            .flatMapMany(toolService::logs)
+            .filter(line -> line.startsWith("F\t") || line.startsWith("P\t"))
+            .map(line -> line.split("\t"))
+            .filter(parts -> parts.length > 2)
+            .map(parts -> parts[2])
+            .collect(Collectors.toUnmodifiableSet())
+            .doOnNext(set -> log.info("Loaded {} tshark field definitions", set.size()))
+            .onErrorResume(e -> {
+                log.warn("Could not list tshark fields, field validation disabled until it can: {}", e.getMessage());
+                return Mono.just(Set.of());
+            });
+    }
+
+    private Mono<String> loadVersion() {
+        ProcessSpec spec = ProcessSpec.builder()
+            .id("tshark-version")
+            .command(PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath()))
+            .args(List.of("-v"))
+            .workingDirectory(Path.of(".").toAbsolutePath())
+            .environment(Map.of())
+            .captureStderr(false)
+            .build();
+
+        return toolService.start(spec)
+            .flatMapMany(toolService::logs)
+            .filter(line -> !line.isBlank())
+            .next()
+            .map(String::trim)
+            .doOnNext(version -> log.info("Using {}", version))
+            .onErrorResume(e -> {
+                log.warn("Could not determine tshark version: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .defaultIfEmpty(UNKNOWN_VERSION);
+    }
+
     /**
      * Get stderr output for debugging
      */
@@ -334,4 +822,9 @@ public class TSharkIntegrationService {
     }
 
     public record PacketDetail(int frameNumber, double timestamp) {}
+
+    /**
+     * Counts by counter name and matching frames by event name, see {@link #matchFilters}
+     */
+    public record FilterMatches(Map<String, Integer> counts, Map<String, List<PacketDetail>> details) {}
 }
@@ -1,281 +1,88 @@
 package com.nathan.p2.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.nathan.p2.config.ToolsConfig;
-import com.nathan.p2.util.PlatformUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Terminal Packet Stream Service
- * Streams parsed packets to terminal using TShark (like termshark does)
+ * Streams parsed packets to terminal (like termshark does)
  * 
  * Based on termshark patterns:
  * - PSML for packet list
  * - PDML for packet details
  * - JSON for structured data
+ * 
+ * All views are rendered from the session's shared decode ({@link SessionDecodeService}),
+ * so any number of terminals on one session cost a single tshark.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TerminalPacketStreamService {
-    private final ToolsConfig config;
-    private final ObjectMapper objectMapper;
-    
-    private final Map<Long, Process> activeStreams = new ConcurrentHashMap<>();
-    private final Map<Long, Sinks.Many<String>> sessionSinks = new ConcurrentHashMap<>();
+    private final SessionDecodeService decodeService;
 
     /**
-     * Stream packets in PSML format (packet summary)
-     * Command: tshark -r file.pcap -T psml -d udp.port==4729,gsmtap
+     * Stream packets as packet-list lines (PSML columns: number, time, protocol, info)
      */
     public Flux<String> streamPsml(Long sessionId) {
         log.info("Starting PSML stream for session: {}", sessionId);
         
-        Sinks.Many<String> sink = Sinks.many().multicast().onBackpressureBuffer();
-        sessionSinks.put(sessionId, sink);
-        
-        Path pcapPath = Paths.get(config.getStorage().getBaseDir())
-            .resolve("session_" + sessionId)
-            .resolve("capture.pcap");
-        
-        if (!pcapPath.toFile().exists()) {
-            log.error("PCAP file not found: {}", pcapPath);
-            sink.tryEmitError(new IllegalStateException("PCAP file not found"));
-            return sink.asFlux();
-        }
-        
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath,
-                "-r", pcapPath.toString(),
-                "-T", "psml",
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", "gsmtap"  // Filter for GSMTAP packets
-            );
-            
-            Process process = pb.start();
-            activeStreams.put(sessionId, process);
-            
-            // Read PSML output in background
-            new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    StringBuilder packet = new StringBuilder();
-                    boolean inPacket = false;
-                    
-                    while ((line = reader.readLine()) != null) {
-                        if (line.contains("<packet>")) {
-                            inPacket = true;
-                            packet = new StringBuilder();
-                        }
-                        
-                        if (inPacket) {
-                            packet.append(line).append("\n");
-                        }
-                        
-                        if (line.contains("</packet>")) {
-                            inPacket = false;
-                            String psmlPacket = packet.toString();
-                            
-                            // Parse PSML and emit formatted packet
-                            String formatted = formatPsmlPacket(psmlPacket);
-                            sink.tryEmitNext(formatted);
-                        }
-                    }
-                    
-                    sink.tryEmitComplete();
-                } catch (Exception e) {
-                    log.error("Error reading PSML stream", e);
-                    sink.tryEmitError(e);
-                }
-            }).start();
-            
-        } catch (Exception e) {
-            log.error("Failed to start PSML stream", e);
-            sink.tryEmitError(e);
-        }
-        
-        return sink.asFlux()
-            .doOnCancel(() -> stopStream(sessionId))
+        return decodeService.packets(sessionId)
+            .map(this::formatPsmlPacket)
             .doOnError(e -> log.error("PSML stream error", e));
     }
 
     /**
      * Stream packets in JSON format (structured data)
-     * Command: tshark -r file.pcap -T json -d udp.port==4729,gsmtap
      */
     public Flux<String> streamJson(Long sessionId) {
         log.info("Starting JSON stream for session: {}", sessionId);
         
-        Sinks.Many<String> sink = Sinks.many().multicast().onBackpressureBuffer();
-        sessionSinks.put(sessionId, sink);
-        
-        Path pcapPath = Paths.get(config.getStorage().getBaseDir())
-            .resolve("session_" + sessionId)
-            .resolve("capture.pcap");
-        
-        if (!pcapPath.toFile().exists()) {
-            log.error("PCAP file not found: {}", pcapPath);
-            sink.tryEmitError(new IllegalStateException("PCAP file not found"));
-            return sink.asFlux();
-        }
-        
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath,
-                "-r", pcapPath.toString(),
-                "-T", "json",
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", "gsmtap",
-                "-e", "frame.number",
-                "-e", "frame.time",
-                "-e", "frame.protocols",
-                "-e", "gsmtap.type",
-                "-e", "lte-rrc.rsrpResult",
-                "-e", "lte-rrc.rsrqResult",
-                "-e", "nas_eps.nas_msg_emm_type",
-                "-e", "rrc.message"
-            );
-            
-            Process process = pb.start();
-            activeStreams.put(sessionId, process);
-            
-            // Read JSON output in background
-            new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    StringBuilder jsonBuilder = new StringBuilder();
-                    String line;
-                    
-                    while ((line = reader.readLine()) != null) {
-                        jsonBuilder.append(line);
-                    }
-                    
-                    // Parse JSON array and emit individual packets
-                    JsonNode packets = objectMapper.readTree(jsonBuilder.toString());
-                    if (packets.isArray()) {
-                        for (JsonNode packet : packets) {
-                            String formatted = formatJsonPacket(packet);
-                            sink.tryEmitNext(formatted);
-                        }
-                    }
-                    
-                    sink.tryEmitComplete();
-                } catch (Exception e) {
-                    log.error("Error reading JSON stream", e);
-                    sink.tryEmitError(e);
-                }
-            }).start();
-            
-        } catch (Exception e) {
-            log.error("Failed to start JSON stream", e);
-            sink.tryEmitError(e);
-        }
-        
-        return sink.asFlux()
-            .doOnCancel(() -> stopStream(sessionId))
+        return decodeService.packets(sessionId)
+            .map(this::formatJsonPacket)
             .doOnError(e -> log.error("JSON stream error", e));
     }
 
     /**
-     * Stream packets in text format (like termshark display)
+     * Stream packets in text format (like termshark display): a summary line followed by
+     * one indented line per decoded field
      */
     public Flux<String> streamText(Long sessionId) {
         log.info("Starting text stream for session: {}", sessionId);
         
-        Sinks.Many<String> sink = Sinks.many().multicast().onBackpressureBuffer();
-        sessionSinks.put(sessionId, sink);
-        
-        Path pcapPath = Paths.get(config.getStorage().getBaseDir())
-            .resolve("session_" + sessionId)
-            .resolve("capture.pcap");
-        
-        if (!pcapPath.toFile().exists()) {
-            log.error("PCAP file not found: {}", pcapPath);
-            sink.tryEmitError(new IllegalStateException("PCAP file not found"));
-            return sink.asFlux();
-        }
-        
-        try {
-            String tsharkPath = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
-            ProcessBuilder pb = new ProcessBuilder(
-                tsharkPath,
-                "-r", pcapPath.toString(),
-                "-d", "udp.port==4729,gsmtap",
-                "-Y", "gsmtap",
-                "-V"  // Verbose output
-            );
-            
-            Process process = pb.start();
-            activeStreams.put(sessionId, process);
-            
-            // Read text output in background
-            new Thread(() -> {
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sink.tryEmitNext(line);
-                    }
-                    sink.tryEmitComplete();
-                } catch (Exception e) {
-                    log.error("Error reading text stream", e);
-                    sink.tryEmitError(e);
-                }
-            }).start();
-            
-        } catch (Exception e) {
-            log.error("Failed to start text stream", e);
-            sink.tryEmitError(e);
-        }
-        
-        return sink.asFlux()
-            .doOnCancel(() -> stopStream(sessionId))
+        return decodeService.packets(sessionId)
+            .flatMapIterable(this::formatTextPacket)
             .doOnError(e -> log.error("Text stream error", e));
     }
 
     /**
-     * Format PSML packet for terminal display
+     * Format packet list line for terminal display
      */
-    private String formatPsmlPacket(String psml) {
-        try {
-            // Extract key fields from PSML
-            String frameNum = extractXmlValue(psml, "num");
-            String time = extractXmlValue(psml, "time");
-            String protocol = extractXmlValue(psml, "protocol");
-            String info = extractXmlValue(psml, "info");
-            
-            return String.format("[%s] %s %s - %s", frameNum, time, protocol, info);
-        } catch (Exception e) {
-            return psml;
-        }
+    private String formatPsmlPacket(JsonNode layers) {
+        String frameNum = firstValue(layers, "frame.number", "0");
+        String time = firstValue(layers, "frame.time", "");
+        String protocol = firstValue(layers, "_ws.col.Protocol", "");
+        String info = firstValue(layers, "_ws.col.Info", "");
+        
+        return String.format("[%s] %s %s - %s", frameNum, time, protocol, info);
     }
 
     /**
      * Format JSON packet for terminal display
      */
-    private String formatJsonPacket(JsonNode packet) {
+    private String formatJsonPacket(JsonNode layers) {
         try {
-            JsonNode layers = packet.get("_source").get("layers");
-            JsonNode frameNode = layers.get("frame.number");
-            JsonNode timeNode = layers.get("frame.time");
-            JsonNode protocolsNode = layers.get("frame.protocols");
-            
-            String frameNum = frameNode != null && frameNode.isArray() ? frameNode.get(0).asText() : "0";
-            String time = timeNode != null && timeNode.isArray() ? timeNode.get(0).asText() : "";
-            String protocols = protocolsNode != null && protocolsNode.isArray() ? protocolsNode.get(0).asText() : "";
+            String frameNum = firstValue(layers, "frame.number", "0");
+            String time = firstValue(layers, "frame.time", "");
+            String protocols = firstValue(layers, "frame.protocols", "");
             
             StringBuilder sb = new StringBuilder();
             sb.append(String.format("\u001B[36m[%s]\u001B[0m ", frameNum));
@@ -296,35 +103,56 @@ public class TerminalPacketStreamService {
             
             return sb.toString();
         } catch (Exception e) {
-            return packet.toString();
+            return layers.toString();
         }
     }
 
     /**
-     * Extract value from XML
+     * Format packet details: summary line, then "  field: value" for every decoded field
      */
-    private String extractXmlValue(String xml, String tag) {
-        int start = xml.indexOf("<" + tag + ">");
-        int end = xml.indexOf("</" + tag + ">");
-        if (start != -1 && end != -1) {
-            return xml.substring(start + tag.length() + 2, end);
+    private List<String> formatTextPacket(JsonNode layers) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("Frame %s: %s %s",
+            firstValue(layers, "frame.number", "0"),
+            firstValue(layers, "frame.time", ""),
+            firstValue(layers, "frame.protocols", "")));
+        Iterator<Map.Entry<String, JsonNode>> fields = layers.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getKey().startsWith("frame.")) {
+                continue;
+            }
+            JsonNode values = field.getValue();
+            if (!values.isArray()) {
+                lines.add("    " + field.getKey() + ": " + values.asText());
+                continue;
+            }
+            for (JsonNode value : values) {
+                lines.add("    " + field.getKey() + ": " + value.asText());
+            }
         }
-        return "";
+        return lines;
     }
 
     /**
-     * Stop streaming for session
+     * First occurrence of a field ("-T json -e" gives every field as an array)
      */
-    public void stopStream(Long sessionId) {
-        Process process = activeStreams.remove(sessionId);
-        if (process != null && process.isAlive()) {
-            process.destroy();
-            log.info("Stopped packet stream for session: {}", sessionId);
+    private static String firstValue(JsonNode layers, String field, String fallback) {
+        JsonNode node = layers.get(field);
+        if (node == null) {
+            return fallback;
         }
-        
-        Sinks.Many<String> sink = sessionSinks.remove(sessionId);
-        if (sink != null) {
-            sink.tryEmitComplete();
+        if (node.isArray()) {
+            return node.size() > 0 ? node.get(0).asText() : fallback;
         }
+        return node.asText();
+    }
+
+    /**
+     * Stop streaming for session
+     */
+    public void stopStream(Long sessionId) {
+        decodeService.stop(sessionId);
+        log.info("Stopped packet stream for session: {}", sessionId);
     }
 }
@@ -1,5 +1,8 @@
 package com.nathan.p2.service;
 
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -14,6 +17,8 @@ import java.util.Map;
 @Service
 @RequiredArgsConstructor
 public class ThroughputAnalyzerService {
+    private final ExternalToolService toolService;
+    private final PipelineSchedulers schedulers;
     
     public Mono<Map<String, Object>> analyzeThroughput(String pcapPath) {
         return Mono.fromCallable(() -> {
@@ -24,7 +29,7 @@ public class ThroughputAnalyzerService {
                 "-q", "-z", "io,stat,1"
             );
             
-            Process process = pb.start();
+            Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 double totalBytes = 0;
                 double duration = 0;
@@ -56,7 +61,7 @@ public class ThroughputAnalyzerService {
             }
             
             return result;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
     
     public Mono<Map<String, Object>> analyzeDetailedThroughput(String pcapPath) {
@@ -76,7 +81,7 @@ public class ThroughputAnalyzerService {
                     "-e", "frame.len"
                 );
                 
-                Process process = pb.start();
+                Process process = toolService.launch(pb, ToolPriority.INTERACTIVE);
                 try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                     double bytes = 0;
                     int packets = 0;
@@ -101,6 +106,6 @@ public class ThroughputAnalyzerService {
             }
             
             return result;
-        });
+        }).subscribeOn(schedulers.analytics());
     }
 }
@@ -0,0 +1,48 @@
+package com.nathan.p2.service.correlation;
+
+/**
+ * One correlated procedure: from the frame that started it to the frame that ended it.
+ * Frame numbers are 0 and times 0.0 for steps that were not seen.
+ */
+public record Procedure(
+    ProcedureType type,
+    String rat,
+    String key,
+    Outcome outcome,
+    String cause,
+    int startFrame,
+    double startTime,
+    int responseFrame,
+    double responseTime,
+    int endFrame,
+    double endTime
+) {
+
+    public enum Outcome {
+        SUCCESS,
+        /** Rejected, failed, or started again before it ended */
+        FAILURE,
+        /** Abandoned: its guard timer expired before it ended (counts as a failure) */
+        TIMEOUT,
+        /** Still open at the end of the capture */
+        INCOMPLETE
+    }
+
+    public boolean success() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    /**
+     * Start to end, or -1 when the procedure did not end with a message
+     */
+    public long latencyMs() {
+        return endFrame > 0 ? (long) ((endTime - startTime) * 1000) : -1;
+    }
+
+    /**
+     * Start to the network's response (e.g. RRCConnectionRequest to RRCConnectionSetup), or -1
+     */
+    public long responseLatencyMs() {
+        return responseFrame > 0 ? (long) ((responseTime - startTime) * 1000) : -1;
+    }
+}
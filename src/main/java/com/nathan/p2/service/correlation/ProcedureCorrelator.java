@@ -0,0 +1,199 @@
+package com.nathan.p2.service.correlation;
+
+import com.nathan.p2.service.tshark.DissectedPacket;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Streaming procedure correlation: one state machine per {@link ProcedureDefinition}, all fed
+ * the same ordered frames of a single dissection pass.
+ *
+ * Every open procedure has a deadline (its guard timer, re-armed when the response arrives),
+ * kept in one queue ordered by deadline across all machines. Before each frame, procedures
+ * whose deadline lies before the frame's time are finalised as timed out. A procedure leaves
+ * its machine as soon as it is decided and is handed to the output, so memory is bounded by
+ * the procedures in flight - at most {@link #MAX_OPEN_PER_MACHINE} per machine - plus queue
+ * entries of procedures decided within the last guard time, however long the capture.
+ * Not thread-safe; feed frames in capture order.
+ */
+public final class ProcedureCorrelator {
+
+    /** Open procedures one machine may hold; beyond that the oldest is given up */
+    static final int MAX_OPEN_PER_MACHINE = 64;
+
+    private final List<Machine> machines = new ArrayList<>();
+    private final Consumer<Procedure> output;
+    // Lazily invalidated: entries of decided or re-armed procedures are skipped when they come due
+    private final PriorityQueue<Deadline> deadlines = new PriorityQueue<>(Comparator.comparingDouble(Deadline::at));
+
+    private record Deadline(double at, Open proc, int generation) {}
+
+    public ProcedureCorrelator(List<ProcedureDefinition> definitions, Consumer<Procedure> output) {
+        definitions.forEach(definition -> machines.add(new Machine(definition)));
+        this.output = output;
+    }
+
+    /**
+     * Union of the tshark fields all definitions read
+     */
+    public static Set<String> fields(List<ProcedureDefinition> definitions) {
+        Set<String> fields = new LinkedHashSet<>();
+        definitions.forEach(definition -> fields.addAll(definition.fields()));
+        return fields;
+    }
+
+    public void accept(DissectedPacket packet) {
+        expire(packet.timestamp());
+        for (Machine machine : machines) {
+            machine.accept(packet);
+        }
+    }
+
+    /**
+     * Finalise every procedure whose guard timer ran out before {@code now} (capture time)
+     */
+    public void expire(double now) {
+        Deadline due;
+        while ((due = deadlines.peek()) != null && due.at() < now) {
+            deadlines.poll();
+            Open proc = due.proc();
+            if (!proc.decided && proc.generation == due.generation()) {
+                String cause = proc.responseFrame > 0
+                    ? "No completion after response"
+                    : proc.machine.definition.guardTimer() + " expiry";
+                proc.machine.decide(proc, Procedure.Outcome.TIMEOUT, cause, 0, 0.0);
+            }
+        }
+    }
+
+    /**
+     * End of capture: everything still open is emitted as incomplete
+     */
+    public void finish() {
+        machines.forEach(Machine::finish);
+        deadlines.clear();
+    }
+
+    /**
+     * Procedures currently in flight, over all machines
+     */
+    public int openProcedures() {
+        int open = 0;
+        for (Machine machine : machines) {
+            open += machine.open.size();
+        }
+        return open;
+    }
+
+    private static final class Open {
+        final Machine machine;
+        final String key;
+        final int startFrame;
+        final double startTime;
+        int responseFrame;
+        double responseTime;
+        int generation;
+        boolean decided;
+
+        Open(Machine machine, String key, int startFrame, double startTime) {
+            this.machine = machine;
+            this.key = key;
+            this.startFrame = startFrame;
+            this.startTime = startTime;
+        }
+    }
+
+    private final class Machine {
+        final ProcedureDefinition definition;
+        // Open procedures by key, oldest start first
+        final LinkedHashMap<String, Open> open = new LinkedHashMap<>();
+
+        Machine(ProcedureDefinition definition) {
+            this.definition = definition;
+        }
+
+        void accept(DissectedPacket packet) {
+            // Ending messages first: a frame can end one procedure and start the next
+            if (definition.success().test(packet)) {
+                end(packet, Procedure.Outcome.SUCCESS, null);
+            } else if (definition.failure() != null && definition.failure().test(packet)) {
+                String cause = definition.causeField() != null ? first(packet, definition.causeField()) : "";
+                end(packet, Procedure.Outcome.FAILURE, cause.isEmpty() ? "Rejected" : cause);
+            } else if (definition.response() != null && definition.response().test(packet)) {
+                Open proc = match(packet);
+                if (proc != null && proc.responseFrame == 0) {
+                    proc.responseFrame = packet.frameNumber();
+                    proc.responseTime = packet.timestamp();
+                    arm(proc, packet.timestamp() + definition.completionGuardSeconds());
+                }
+            }
+            if (definition.start().test(packet)) {
+                String key = key(packet);
+                Open previous = open.get(key);
+                if (previous != null) {
+                    decide(previous, Procedure.Outcome.FAILURE, "Restarted", 0, 0.0);
+                } else if (open.size() >= MAX_OPEN_PER_MACHINE) {
+                    decide(open.values().iterator().next(), Procedure.Outcome.FAILURE, "Evicted", 0, 0.0);
+                }
+                Open proc = new Open(this, key, packet.frameNumber(), packet.timestamp());
+                open.put(key, proc);
+                arm(proc, packet.timestamp() + definition.guardSeconds());
+            }
+        }
+
+        void decide(Open proc, Procedure.Outcome outcome, String cause, int endFrame, double endTime) {
+            proc.decided = true;
+            open.remove(proc.key);
+            output.accept(new Procedure(definition.type(), definition.rat(), proc.key, outcome, cause,
+                proc.startFrame, proc.startTime, proc.responseFrame, proc.responseTime, endFrame, endTime));
+        }
+
+        void finish() {
+            for (Open proc : new ArrayList<>(open.values())) {
+                decide(proc, Procedure.Outcome.INCOMPLETE, "Incomplete", 0, 0.0);
+            }
+        }
+
+        private void end(DissectedPacket packet, Procedure.Outcome outcome, String cause) {
+            Open proc = match(packet);
+            if (proc != null) {
+                decide(proc, outcome, cause, packet.frameNumber(), packet.timestamp());
+            }
+        }
+
+        /**
+         * The open procedure with the packet's key, else the oldest open one
+         */
+        private Open match(DissectedPacket packet) {
+            if (open.isEmpty()) {
+                return null;
+            }
+            Open proc = open.get(key(packet));
+            return proc != null ? proc : open.values().iterator().next();
+        }
+
+        private String key(DissectedPacket packet) {
+            return definition.keyField() != null ? first(packet, definition.keyField()) : "";
+        }
+    }
+
+    /**
+     * (Re)start the procedure's guard timer; an earlier deadline of it becomes stale
+     */
+    private void arm(Open proc, double at) {
+        proc.generation++;
+        deadlines.add(new Deadline(at, proc, proc.generation));
+    }
+
+    private static String first(DissectedPacket packet, String field) {
+        List<String> values = packet.values(field);
+        return values.isEmpty() ? "" : values.get(0);
+    }
+}
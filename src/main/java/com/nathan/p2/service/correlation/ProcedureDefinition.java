@@ -0,0 +1,206 @@
+package com.nathan.p2.service.correlation;
+
+import com.nathan.p2.service.tshark.DisplayFilter;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * How one procedure is recognised in a dissected capture: the message that starts it, the
+ * network response (optional), and the messages that end it in success or failure.
+ *
+ * Messages are matched with display filters, so all definitions share the single tshark pass.
+ * With a {@code keyField} (transaction id, bearer id, PTI), ending messages are matched to the
+ * open procedure with the same key; messages without a matching key end the oldest open one.
+ *
+ * Open procedures are guarded like the UE guards them: {@code guardTimer} runs for
+ * {@code guardSeconds} from the start message until the response (or the end, for procedures
+ * without a response step), then {@code completionGuardSeconds} from the response until the
+ * end. A procedure whose timer expires is finalised as a failure, as the UE would abandon it.
+ * There is at most one definition per procedure type and RAT.
+ */
+public record ProcedureDefinition(
+    ProcedureType type,
+    String rat,
+    String srMetric,
+    String latencyMetric,
+    DisplayFilter start,
+    DisplayFilter response,
+    DisplayFilter success,
+    DisplayFilter failure,
+    String keyField,
+    String causeField,
+    String guardTimer,
+    double guardSeconds,
+    double completionGuardSeconds
+) {
+
+    /**
+     * Procedures of LTE, 5G NR and WCDMA. Guard times are the largest values the timers of
+     * 36.331 / 38.331 / 25.331 (T300, T301, T304) and 24.301 / 24.501 / 24.008 (T3410, T3430,
+     * T3417, T3482, T3510, T3580, T3380...) can be configured with, so that a slow but valid
+     * procedure is never cut short; "guard" marks network-driven procedures without a UE timer.
+     */
+    public static final List<ProcedureDefinition> STANDARD = List.of(
+        // === LTE ===
+        // (LTE_RRC_SR keeps the name of the earlier correlation-based KPI)
+        of(ProcedureType.RRC_SETUP, "LTE", "LTE_RRC_SR", "LTE_RRC_SETUP_LATENCY",
+            "lte-rrc.rrcConnectionRequest_element", "lte-rrc.rrcConnectionSetup_element",
+            "lte-rrc.rrcConnectionSetupComplete_element", "lte-rrc.rrcConnectionReject_element")
+            .withGuard("T300", 2, 2),
+        of(ProcedureType.RRC_REESTABLISHMENT, "LTE", "LTE_RRC_REEST_PROC_SR", "LTE_RRC_REEST_LATENCY",
+            "lte-rrc.rrcConnectionReestablishmentRequest_element", "lte-rrc.rrcConnectionReestablishment_element",
+            "lte-rrc.rrcConnectionReestablishmentComplete_element", "lte-rrc.rrcConnectionReestablishmentReject_element")
+            .withCause("lte-rrc.reestablishmentCause")
+            .withGuard("T301", 2, 2),
+        of(ProcedureType.HANDOVER, "LTE", "LTE_HO_PROC_SR", "LTE_HO_LATENCY",
+            "lte-rrc.mobilityControlInfo_element", null,
+            "lte-rrc.rrcConnectionReconfigurationComplete_element", "lte-rrc.rrcConnectionReestablishmentRequest_element")
+            .withGuard("T304", 8, 8),
+        of(ProcedureType.ERAB_SETUP, "LTE", "LTE_ERAB_PROC_SR", "LTE_ERAB_SETUP_LATENCY",
+            "nas_eps.nas_msg_esm_type == 0xc1 || nas_eps.nas_msg_esm_type == 0xc5", null,
+            "nas_eps.nas_msg_esm_type == 0xc2 || nas_eps.nas_msg_esm_type == 0xc6",
+            "nas_eps.nas_msg_esm_type == 0xc3 || nas_eps.nas_msg_esm_type == 0xc7")
+            .withKey("nas_eps.bearer_id").withCause("nas_eps.esm.cause")
+            .withGuard("T3485", 8, 8),
+        of(ProcedureType.PDN_CONNECTIVITY, "LTE", "LTE_PDN_PROC_SR", "LTE_PDN_CONNECTIVITY_LATENCY",
+            "nas_eps.nas_msg_esm_type == 0xd0", "nas_eps.nas_msg_esm_type == 0xc1",
+            "nas_eps.nas_msg_esm_type == 0xc2",
+            "nas_eps.nas_msg_esm_type == 0xd1 || nas_eps.nas_msg_esm_type == 0xc3")
+            .withKey("nas_eps.pti").withCause("nas_eps.esm.cause")
+            .withGuard("T3482", 8, 8),
+        of(ProcedureType.ATTACH, "LTE", "LTE_ATTACH_PROC_SR", "LTE_ATTACH_LATENCY",
+            "nas_eps.nas_msg_emm_type == 0x41", "nas_eps.nas_msg_emm_type == 0x42",
+            "nas_eps.nas_msg_emm_type == 0x43", "nas_eps.nas_msg_emm_type == 0x44")
+            .withCause("nas_eps.emm.cause")
+            .withGuard("T3410", 15, 6),
+        of(ProcedureType.TAU, "LTE", "LTE_TAU_PROC_SR", "LTE_TAU_LATENCY",
+            "nas_eps.nas_msg_emm_type == 0x48", null,
+            "nas_eps.nas_msg_emm_type == 0x49", "nas_eps.nas_msg_emm_type == 0x4b")
+            .withCause("nas_eps.emm.cause")
+            .withGuard("T3430", 15, 15),
+        of(ProcedureType.SERVICE_REQUEST, "LTE", "LTE_SERVICE_REQ_PROC_SR", "LTE_SERVICE_REQ_LATENCY",
+            "nas_eps.security_header_type == 12 || nas_eps.nas_msg_emm_type == 0x4c", null,
+            "lte-rrc.rrcConnectionReconfigurationComplete_element || nas_eps.nas_msg_emm_type == 0x4f",
+            "nas_eps.nas_msg_emm_type == 0x4e")
+            .withCause("nas_eps.emm.cause")
+            .withGuard("T3417", 5, 5),
+
+        // === 5G NR ===
+        of(ProcedureType.RRC_SETUP, "5GNR", "5G_RRC_SETUP_PROC_SR", "5G_RRC_SETUP_LATENCY",
+            "nr-rrc.rrcSetupRequest_element", "nr-rrc.rrcSetup_element",
+            "nr-rrc.rrcSetupComplete_element", "nr-rrc.rrcReject_element")
+            .withGuard("T300", 2, 2),
+        // An RRCSetup answering a re-establishment request is the fallback, i.e. a failure
+        of(ProcedureType.RRC_REESTABLISHMENT, "5GNR", "5G_RRC_REEST_PROC_SR", "5G_RRC_REEST_LATENCY",
+            "nr-rrc.rrcReestablishmentRequest_element", "nr-rrc.rrcReestablishment_element",
+            "nr-rrc.rrcReestablishmentComplete_element", "nr-rrc.rrcSetup_element || nr-rrc.rrcReject_element")
+            .withGuard("T301", 2, 2),
+        of(ProcedureType.HANDOVER, "5GNR", "5G_HO_PROC_SR", "5G_HO_LATENCY",
+            "nr-rrc.reconfigurationWithSync_element", null,
+            "nr-rrc.rrcReconfigurationComplete_element", "nr-rrc.rrcReestablishmentRequest_element")
+            .withGuard("T304", 10, 10),
+        of(ProcedureType.PDN_CONNECTIVITY, "5GNR", "5G_PDU_SESSION_PROC_SR", "5G_PDU_SESSION_LATENCY",
+            "nas-5gs.sm.message_type == 0xc1", null,
+            "nas-5gs.sm.message_type == 0xc2", "nas-5gs.sm.message_type == 0xc3")
+            .withKey("nas-5gs.pdu_session_id").withCause("nas-5gs.sm.5gsm_cause")
+            .withGuard("T3580", 16, 16),
+        of(ProcedureType.ATTACH, "5GNR", "5G_REGISTRATION_PROC_SR", "5G_REGISTRATION_LATENCY",
+            "nas-5gs.mm.message_type == 0x41", null,
+            "nas-5gs.mm.message_type == 0x42", "nas-5gs.mm.message_type == 0x44")
+            .withCause("nas-5gs.mm.5gmm_cause")
+            .withGuard("T3510", 15, 15),
+        of(ProcedureType.SERVICE_REQUEST, "5GNR", "5G_SERVICE_REQ_PROC_SR", "5G_SERVICE_REQ_LATENCY",
+            "nas-5gs.mm.message_type == 0x4c", null,
+            "nas-5gs.mm.message_type == 0x4e", "nas-5gs.mm.message_type == 0x4d")
+            .withCause("nas-5gs.mm.5gmm_cause")
+            .withGuard("T3517", 15, 15),
+
+        // === WCDMA ===
+        of(ProcedureType.RRC_SETUP, "WCDMA", "WCDMA_RRC_SETUP_PROC_SR", "WCDMA_RRC_SETUP_LATENCY",
+            "rrc.rrcConnectionRequest_element", "rrc.rrcConnectionSetup_element",
+            "rrc.rrcConnectionSetupComplete_element", "rrc.rrcConnectionReject_element")
+            .withGuard("T300", 8, 8),
+        // Soft handover (active set update), the common case on a UE-side WCDMA trace
+        of(ProcedureType.HANDOVER, "WCDMA", "WCDMA_HO_PROC_SR", "WCDMA_HO_LATENCY",
+            "rrc.activeSetUpdate_element", null,
+            "rrc.activeSetUpdateComplete_element", "rrc.activeSetUpdateFailure_element")
+            .withGuard("guard", 10, 10),
+        of(ProcedureType.ERAB_SETUP, "WCDMA", "WCDMA_RAB_PROC_SR", "WCDMA_RAB_SETUP_LATENCY",
+            "rrc.radioBearerSetup_element", null,
+            "rrc.radioBearerSetupComplete_element", "rrc.radioBearerSetupFailure_element")
+            .withGuard("guard", 10, 10),
+        of(ProcedureType.PDN_CONNECTIVITY, "WCDMA", "WCDMA_PDP_PROC_SR", "WCDMA_PDP_CONTEXT_LATENCY",
+            "gsm_a.gm.sm.msg_type == 0x41", null,
+            "gsm_a.gm.sm.msg_type == 0x42", "gsm_a.gm.sm.msg_type == 0x43")
+            .withCause("gsm_a.gm.sm.cause")
+            .withGuard("T3380", 30, 30),
+        of(ProcedureType.ATTACH, "WCDMA", "WCDMA_ATTACH_PROC_SR", "WCDMA_ATTACH_LATENCY",
+            "gsm_a.gm.gmm.msg_type == 0x01", null,
+            "gsm_a.gm.gmm.msg_type == 0x02", "gsm_a.gm.gmm.msg_type == 0x04")
+            .withCause("gsm_a.gm.gmm.cause")
+            .withGuard("T3310", 15, 15),
+        of(ProcedureType.TAU, "WCDMA", "WCDMA_RAU_PROC_SR", "WCDMA_RAU_LATENCY",
+            "gsm_a.gm.gmm.msg_type == 0x08", null,
+            "gsm_a.gm.gmm.msg_type == 0x09", "gsm_a.gm.gmm.msg_type == 0x0b")
+            .withCause("gsm_a.gm.gmm.cause")
+            .withGuard("T3330", 15, 15),
+        of(ProcedureType.SERVICE_REQUEST, "WCDMA", "WCDMA_SERVICE_REQ_PROC_SR", "WCDMA_SERVICE_REQ_LATENCY",
+            "gsm_a.gm.gmm.msg_type == 0x0c", null,
+            "gsm_a.gm.gmm.msg_type == 0x0d", "gsm_a.gm.gmm.msg_type == 0x0e")
+            .withCause("gsm_a.gm.gmm.cause")
+            .withGuard("T3317", 15, 15)
+    );
+
+    static ProcedureDefinition of(ProcedureType type, String rat, String srMetric, String latencyMetric,
+                                  String start, String response, String success, String failure) {
+        return new ProcedureDefinition(type, rat, srMetric, latencyMetric,
+            DisplayFilter.compile(start),
+            response != null ? DisplayFilter.compile(response) : null,
+            DisplayFilter.compile(success),
+            failure != null ? DisplayFilter.compile(failure) : null,
+            null, null, "guard", 10, 10);
+    }
+
+    public ProcedureDefinition withKey(String field) {
+        return new ProcedureDefinition(type, rat, srMetric, latencyMetric, start, response, success, failure,
+            field, causeField, guardTimer, guardSeconds, completionGuardSeconds);
+    }
+
+    public ProcedureDefinition withCause(String field) {
+        return new ProcedureDefinition(type, rat, srMetric, latencyMetric, start, response, success, failure,
+            keyField, field, guardTimer, guardSeconds, completionGuardSeconds);
+    }
+
+    /**
+     * @param timer             3GPP name of the timer guarding the procedure (reported as the failure cause)
+     * @param seconds           from the start message to the response
+     * @param completionSeconds from the response to the end message
+     */
+    public ProcedureDefinition withGuard(String timer, double seconds, double completionSeconds) {
+        return new ProcedureDefinition(type, rat, srMetric, latencyMetric, start, response, success, failure,
+            keyField, causeField, timer, seconds, completionSeconds);
+    }
+
+    /**
+     * tshark fields the definition reads
+     */
+    public Set<String> fields() {
+        Set<String> fields = new LinkedHashSet<>(start.fields());
+        if (response != null) {
+            fields.addAll(response.fields());
+        }
+        fields.addAll(success.fields());
+        if (failure != null) {
+            fields.addAll(failure.fields());
+        }
+        if (keyField != null) {
+            fields.add(keyField);
+        }
+        if (causeField != null) {
+            fields.add(causeField);
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,19 @@
+package com.nathan.p2.service.correlation;
+
+/**
+ * Signaling procedures tracked by the {@link ProcedureCorrelator}
+ */
+public enum ProcedureType {
+    RRC_SETUP,
+    RRC_REESTABLISHMENT,
+    HANDOVER,
+    /** E-RAB (LTE) or RAB (WCDMA) setup */
+    ERAB_SETUP,
+    /** PDN connectivity (LTE), PDU session (NR) or PDP context activation (WCDMA) */
+    PDN_CONNECTIVITY,
+    /** Attach (LTE, WCDMA) or initial registration (NR) */
+    ATTACH,
+    /** Tracking area update (LTE) or routing area update (WCDMA) */
+    TAU,
+    SERVICE_REQUEST
+}
@@ -0,0 +1,40 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.tshark.DissectedPacket;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stateful KPI calculation fed one packet at a time by the {@link KpiEngine}.
+ *
+ * An accumulator declares the tshark fields it needs, receives every frame of the
+ * single dissection pass, and turns its counters into KPI aggregates at the end.
+ */
+public interface KpiAccumulator {
+
+    /**
+     * tshark field names this accumulator reads (requested with -e)
+     */
+    Set<String> fields();
+
+    void accept(DissectedPacket packet);
+
+    List<KpiAggregate> results(Long sessionId);
+
+    static KpiAggregate kpi(Long sessionId, String metric, Double avg, Double min, Double max, String rat) {
+        LocalDateTime now = LocalDateTime.now();
+        return KpiAggregate.builder()
+                .sessionId(sessionId)
+                .metric(metric)
+                .windowStart(now.minusMinutes(5))
+                .windowEnd(now)
+                .avgValue(avg)
+                .minValue(min)
+                .maxValue(max)
+                .rat(rat)
+                .build();
+    }
+}
@@ -0,0 +1,10 @@
+package com.nathan.p2.service.kpi;
+
+/**
+ * Spring beans implementing this interface are picked up by the {@link KpiEngine};
+ * a fresh accumulator is created for every pass over a capture.
+ */
+public interface KpiAccumulatorSource {
+
+    KpiAccumulator newAccumulator();
+}
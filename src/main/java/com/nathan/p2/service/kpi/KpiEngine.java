@@ -0,0 +1,73 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.TSharkIntegrationService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-pass KPI Engine
+ *
+ * Dissects the capture once with the union of all fields the registered accumulators
+ * need, and streams every frame through each of them. Replaces the previous fan-out
+ * where every KPI started its own tshark over the same file.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KpiEngine {
+
+    private final TSharkIntegrationService tsharkService;
+    private final List<KpiAccumulatorSource> sources;
+    private final PipelineSchedulers schedulers;
+
+    public Mono<List<KpiAggregate>> run(Long sessionId, Path pcapFile) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            List<KpiAccumulator> accumulators = sources.stream()
+                    .map(KpiAccumulatorSource::newAccumulator)
+                    .toList();
+
+            Set<String> fields = new LinkedHashSet<>();
+            accumulators.forEach(accumulator -> fields.addAll(accumulator.fields()));
+
+            AtomicLong frames = new AtomicLong();
+            // Runs after the capture, so it yields to interactive dissections
+            return tsharkService.scanFields(pcapFile, fields, ToolPriority.BATCH)
+                    .publishOn(schedulers.analytics())
+                    .doOnNext(packet -> {
+                        frames.incrementAndGet();
+                        for (KpiAccumulator accumulator : accumulators) {
+                            try {
+                                accumulator.accept(packet);
+                            } catch (Exception e) {
+                                log.debug("{} failed on frame {}: {}",
+                                        accumulator.getClass().getSimpleName(), packet.frameNumber(), e.getMessage());
+                            }
+                        }
+                    })
+                    .then(Mono.fromCallable(() -> {
+                        List<KpiAggregate> results = new ArrayList<>();
+                        for (KpiAccumulator accumulator : accumulators) {
+                            results.addAll(accumulator.results(sessionId));
+                        }
+                        log.info("⚡ Single-pass KPI engine: {} frames, {} fields, {} accumulators -> {} KPIs in {} ms",
+                                frames.get(), fields.size(), accumulators.size(), results.size(),
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                        return results;
+                    }));
+        });
+    }
+}
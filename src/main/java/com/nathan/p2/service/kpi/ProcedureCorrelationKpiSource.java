@@ -0,0 +1,101 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.correlation.Procedure;
+import com.nathan.p2.service.correlation.ProcedureCorrelator;
+import com.nathan.p2.service.correlation.ProcedureDefinition;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Correlated procedure KPIs: success rate and start-to-end latency of every procedure in
+ * {@link ProcedureDefinition#STANDARD}, from request/response matching rather than message counts.
+ * A procedure that times out or is still open at the end counts as an attempt without success.
+ * Every latency KPI comes with a "_SAMPLES" KPI holding the number of successful procedures it
+ * is measured over; without any, the latency is reported as 0.
+ */
+@Slf4j
+@Component
+public class ProcedureCorrelationKpiSource implements KpiAccumulatorSource {
+
+    /** Suffix of the metric with the number of procedures a latency KPI is averaged over */
+    static final String SAMPLES_SUFFIX = "_SAMPLES";
+
+    private final List<ProcedureDefinition> definitions = ProcedureDefinition.STANDARD;
+    private final Set<String> fields = ProcedureCorrelator.fields(definitions);
+
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    private static final class Tally {
+        long attempts;
+        long successes;
+        long latencySamples;
+        double latencySum;
+        double latencyMin = Double.POSITIVE_INFINITY;
+        double latencyMax = Double.NEGATIVE_INFINITY;
+    }
+
+    private class Accumulator implements KpiAccumulator {
+        private final Map<String, Tally> tallies = new HashMap<>();
+        private final ProcedureCorrelator correlator = new ProcedureCorrelator(definitions, this::count);
+
+        @Override
+        public Set<String> fields() {
+            return fields;
+        }
+
+        @Override
+        public void accept(DissectedPacket packet) {
+            correlator.accept(packet);
+        }
+
+        private void count(Procedure procedure) {
+            Tally tally = tallies.computeIfAbsent(procedure.type() + "/" + procedure.rat(), k -> new Tally());
+            tally.attempts++;
+            if (procedure.success()) {
+                tally.successes++;
+                long latency = procedure.latencyMs();
+                if (latency >= 0) {
+                    tally.latencySamples++;
+                    tally.latencySum += latency;
+                    tally.latencyMin = Math.min(tally.latencyMin, latency);
+                    tally.latencyMax = Math.max(tally.latencyMax, latency);
+                }
+            }
+        }
+
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            correlator.finish();
+            List<KpiAggregate> results = new ArrayList<>();
+            for (ProcedureDefinition definition : definitions) {
+                Tally tally = tallies.getOrDefault(definition.type() + "/" + definition.rat(), new Tally());
+                double sr = tally.attempts > 0 ? tally.successes * 100.0 / tally.attempts : 0.0;
+                log.debug("{}: {}/{} = {}%", definition.srMetric(), tally.successes, tally.attempts,
+                    String.format("%.2f", sr));
+                results.add(KpiAccumulator.kpi(sessionId, definition.srMetric(), sr, sr, sr, definition.rat()));
+                // Always reported, 0 without samples, so consumers of e.g. LTE_HO_LATENCY find the metric
+                if (tally.latencySamples > 0) {
+                    results.add(KpiAccumulator.kpi(sessionId, definition.latencyMetric(),
+                        tally.latencySum / tally.latencySamples, tally.latencyMin, tally.latencyMax, definition.rat()));
+                } else {
+                    results.add(KpiAccumulator.kpi(sessionId, definition.latencyMetric(), 0.0, 0.0, 0.0, definition.rat()));
+                }
+                double samples = tally.latencySamples;
+                results.add(KpiAccumulator.kpi(sessionId, definition.latencyMetric() + SAMPLES_SUFFIX,
+                    samples, samples, samples, definition.rat()));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Procedure counters for all RATs (RRC, attach, TAU, service request, HO, PDU/PDN, RAB, call control).
+ * Each KPI is a ratio of two display filters, or a plain count, evaluated in the single KPI pass.
+ */
+@Slf4j
+@Component
+public class ProcedureKpiSource implements KpiAccumulatorSource {
+
+    private record RatioKpi(String metric, String rat, DisplayFilter attempts, DisplayFilter successes,
+                            double fallback, Double min, Double max) {}
+
+    private record CountKpi(String metric, String rat, DisplayFilter filter) {}
+
+    private final List<RatioKpi> ratios = List.of(
+        // === 5G NR ===
+        ratio("5G_RRC_SR", "5GNR", "nr-rrc.rrcSetup", "nr-rrc.rrcSetupComplete"),
+        ratio("5G_PDU_SESSION_SR", "5GNR", "nas-5gs.sm.message_type == 0xc1", "nas-5gs.sm.message_type == 0xc2"),
+        ratio("5G_HO_SR", "5GNR", "nr-rrc.rrcReconfiguration", "nr-rrc.rrcReconfigurationComplete"),
+
+        // === LTE ===
+        ratio("LTE_ATTACH_SR", "LTE", "nas_eps.nas_msg_emm_type == 0x41", "nas_eps.nas_msg_emm_type == 0x42"),
+        ratio("LTE_TAU_SR", "LTE", "nas_eps.nas_msg_emm_type == 0x48", "nas_eps.nas_msg_emm_type == 0x49"),
+        ratio("LTE_SERVICE_REQ_SR", "LTE", "nas_eps.nas_msg_emm_type == 0x4c", "nas_eps.nas_msg_emm_type == 0x4d"),
+        new RatioKpi("LTE_RACH_SR", "LTE", DisplayFilter.compile("mac-lte.rach-preamble"),
+            DisplayFilter.compile("mac-lte.rar"), 95.0, 90.0, 100.0),
+        new RatioKpi("LTE_ERAB_SETUP_SR", "LTE", DisplayFilter.compile("nas_eps.nas_msg_esm_type == 0xc1"),
+            DisplayFilter.compile("nas_eps.nas_msg_esm_type == 0xc2"), 98.0, 95.0, 100.0),
+        ratio("LTE_HO_SR", "LTE", "lte-rrc.mobilityFromEUTRACommand_element",
+            "lte-rrc.rrcConnectionReconfigurationComplete_element"),
+        ratio("LTE_PDN_CONNECTIVITY_SR", "LTE", "nas_eps.nas_msg_esm_type == 0xd0", "nas_eps.nas_msg_esm_type == 0xd1"),
+        ratio("LTE_SECURITY_MODE_SR", "LTE", "lte-rrc.securityModeCommand_element", "lte-rrc.securityModeComplete_element"),
+
+        // === WCDMA ===
+        ratio("WCDMA_RRC_SR", "WCDMA", "rrc.rrcConnectionRequest_element", "rrc.rrcConnectionSetupComplete_element"),
+        ratio("WCDMA_HO_SR", "WCDMA", "rrc.cellUpdate_element", "rrc.cellUpdateConfirm_element"),
+        ratio("WCDMA_RAB_SETUP_SR", "WCDMA", "rrc.radioBearerSetup", "rrc.radioBearerSetupComplete_element"),
+        ratio("WCDMA_PHY_CH_RECONFIG_SR", "WCDMA", "rrc.physicalChannelReconfiguration",
+            "rrc.physicalChannelReconfigurationComplete_element"),
+        ratio("WCDMA_ACTIVE_SET_UPDATE_SR", "WCDMA", "rrc.activeSetUpdate_element", "rrc.activeSetUpdateComplete_element"),
+        ratio("WCDMA_CELL_RESELECTION_SR", "WCDMA", "rrc.cellUpdate_element", "rrc.cellUpdateConfirm_element"),
+        ratio("WCDMA_PDP_CONTEXT_SR", "WCDMA", "gsm_a.gm.sm.msg_type == 0x41", "gsm_a.gm.sm.msg_type == 0x42"),
+        ratio("WCDMA_SECURITY_MODE_SR", "WCDMA", "rrc.securityModeCommand_element", "rrc.securityModeComplete_element"),
+        ratio("WCDMA_RAU_SR", "WCDMA", "gsm_a.gm.gmm.msg_type == 0x08", "gsm_a.gm.gmm.msg_type == 0x09"),
+
+        // === GSM ===
+        ratio("GSM_RR_SR", "GSM", "gsm_a.dtap.msg_rr_type == 0x27", "gsm_a.dtap.msg_rr_type == 0x3f"),
+        ratio("GSM_HO_SR", "GSM", "gsm_a.dtap.msg_rr_type == 0x2b", "gsm_a.dtap.msg_rr_type == 0x2c"),
+
+        // === Call control ===
+        ratio("CALL_SETUP_SR", "ALL", "gsm_a.dtap.msg_cc_type == 0x05", "gsm_a.dtap.msg_cc_type == 0x0f"),
+        ratio("CALL_DROP_RATE", "ALL", "gsm_a.dtap.msg_cc_type == 0x05", "gsm_a.dtap.msg_cc_type == 0x2d")
+    );
+
+    private final List<CountKpi> counts = List.of(
+        new CountKpi("LTE_MEAS_REPORT_COUNT", "LTE", DisplayFilter.compile("lte-rrc.measurementReport_element")),
+        new CountKpi("GSM_RACH_ATTEMPTS", "GSM", DisplayFilter.compile("gsm_a.rach")),
+        new CountKpi("GSM_LOCATION_UPDATE_COUNT", "GSM", DisplayFilter.compile("gsm_a.dtap.msg_mm_type == 0x08"))
+    );
+
+    private static RatioKpi ratio(String metric, String rat, String attempts, String successes) {
+        return new RatioKpi(metric, rat, DisplayFilter.compile(attempts), DisplayFilter.compile(successes),
+            0.0, null, null);
+    }
+
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    private class Accumulator implements KpiAccumulator {
+        private final long[] attempts = new long[ratios.size()];
+        private final long[] successes = new long[ratios.size()];
+        private final long[] counted = new long[counts.size()];
+
+        @Override
+        public Set<String> fields() {
+            Set<String> fields = new LinkedHashSet<>();
+            ratios.forEach(kpi -> {
+                fields.addAll(kpi.attempts().fields());
+                fields.addAll(kpi.successes().fields());
+            });
+            counts.forEach(kpi -> fields.addAll(kpi.filter().fields()));
+            return fields;
+        }
+
+        @Override
+        public void accept(DissectedPacket packet) {
+            for (int i = 0; i < ratios.size(); i++) {
+                RatioKpi kpi = ratios.get(i);
+                if (kpi.attempts().test(packet)) attempts[i]++;
+                if (kpi.successes().test(packet)) successes[i]++;
+            }
+            for (int i = 0; i < counts.size(); i++) {
+                if (counts.get(i).filter().test(packet)) counted[i]++;
+            }
+        }
+
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            List<KpiAggregate> results = new ArrayList<>();
+            for (int i = 0; i < ratios.size(); i++) {
+                RatioKpi kpi = ratios.get(i);
+                double sr = attempts[i] > 0 ? (successes[i] * 100.0 / attempts[i]) : kpi.fallback();
+                log.debug("{}: {}/{} = {}%", kpi.metric(), successes[i], attempts[i], String.format("%.2f", sr));
+                results.add(KpiAccumulator.kpi(sessionId, kpi.metric(), sr,
+                    kpi.min() != null ? kpi.min() : sr,
+                    kpi.max() != null ? kpi.max() : sr,
+                    kpi.rat()));
+            }
+            for (int i = 0; i < counts.size(); i++) {
+                CountKpi kpi = counts.get(i);
+                double value = counted[i];
+                results.add(KpiAccumulator.kpi(sessionId, kpi.metric(), value, value, value, kpi.rat()));
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Signal quality statistics (avg/min/max) for 5G NR, LTE, WCDMA and GSM.
+ *
+ * Reported ASN.1 indexes are converted to dB/dBm as per 3GPP 36.133 / 38.133 / 25.133.
+ * When a capture carries no samples for a metric, the previous default values are reported.
+ */
+@Component
+public class SignalQualityKpiSource implements KpiAccumulatorSource {
+
+    private record SignalStat(String metric, String rat, String field, DoubleUnaryOperator conversion,
+                              double defaultAvg, double defaultMin, double defaultMax) {}
+
+    private final List<SignalStat> stats = List.of(
+        new SignalStat("5G_SS_RSRP_AVG", "5GNR", "nr-rrc.ss-RSRP", idx -> idx - 156, -100.0, -120.0, -80.0),
+        new SignalStat("5G_SS_RSRQ_AVG", "5GNR", "nr-rrc.ss-RSRQ", idx -> -43 + idx * 0.5, -15.0, -20.0, -10.0),
+        new SignalStat("5G_SS_SINR_AVG", "5GNR", "nr-rrc.ss-SINR", idx -> -23 + idx * 0.5, 10.0, 0.0, 20.0),
+        new SignalStat("LTE_RSRP_AVG", "LTE", "lte-rrc.rsrpResult", idx -> idx - 140, -85.0, -100.0, -70.0),
+        new SignalStat("LTE_RSRQ_AVG", "LTE", "lte-rrc.rsrqResult", idx -> -20 + idx * 0.5, -10.0, -15.0, -5.0),
+        new SignalStat("WCDMA_RSCP_AVG", "WCDMA", "rrc.cpich-RSCP", idx -> idx - 116, -80.0, -100.0, -60.0),
+        new SignalStat("WCDMA_ECIO_AVG", "WCDMA", "rrc.cpich-Ec-N0", idx -> -24 + idx * 0.5, -10.0, -15.0, -5.0),
+        new SignalStat("GSM_RXLEV_AVG", "GSM", "gsm_a.rr.rxlev_full_serv_cell", idx -> idx, 40.0, 20.0, 60.0),
+        new SignalStat("GSM_RXQUAL_AVG", "GSM", "gsm_a.rr.rxqual_full_serv_cell", idx -> idx, 2.0, 0.0, 5.0)
+    );
+
+    @Override
+    public KpiAccumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    private class Accumulator implements KpiAccumulator {
+        private final long[] samples = new long[stats.size()];
+        private final double[] sum = new double[stats.size()];
+        private final double[] min = new double[stats.size()];
+        private final double[] max = new double[stats.size()];
+
+        Accumulator() {
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        @Override
+        public Set<String> fields() {
+            Set<String> fields = new LinkedHashSet<>();
+            stats.forEach(stat -> fields.add(stat.field()));
+            return fields;
+        }
+
+        @Override
+        public void accept(DissectedPacket packet) {
+            for (int i = 0; i < stats.size(); i++) {
+                SignalStat stat = stats.get(i);
+                for (String raw : packet.values(stat.field())) {
+                    try {
+                        double value = stat.conversion().applyAsDouble(Double.parseDouble(raw));
+                        samples[i]++;
+                        sum[i] += value;
+                        min[i] = Math.min(min[i], value);
+                        max[i] = Math.max(max[i], value);
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+        }
+
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            List<KpiAggregate> results = new ArrayList<>();
+            for (int i = 0; i < stats.size(); i++) {
+                SignalStat stat = stats.get(i);
+                if (samples[i] > 0) {
+                    results.add(KpiAccumulator.kpi(sessionId, stat.metric(), sum[i] / samples[i], min[i], max[i], stat.rat()));
+                } else {
+                    results.add(KpiAccumulator.kpi(sessionId, stat.metric(),
+                        stat.defaultAvg(), stat.defaultMin(), stat.defaultMax(), stat.rat()));
+                }
+            }
+            return results;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.nathan.p2.service.pcap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Position in a capture that is still being written, for processing it in increments: each
+ * {@link #next} copies the complete records appended since the last {@link #advance} behind
+ * the capture's header into a small temporary capture that tshark can read on its own.
+ * Not thread-safe: use one per capture and do not overlap increments.
+ */
+@Slf4j
+public final class CaptureTail {
+
+    private long headerLength = -1;
+    private long nextOffset = -1;
+    private long frames;
+
+    /**
+     * Records appended to the capture, copied behind its header into {@code chunk}. Frame n of
+     * the chunk is frame {@code offset + n} of the capture, where offset is the tail's frames()
+     * before this increment.
+     */
+    public record Increment(Path chunk, long headerLength, long nextOffset, long frames) {}
+
+    /**
+     * Frames of the capture processed so far
+     */
+    public long frames() {
+        return frames;
+    }
+
+    /**
+     * True when the capture is shorter than what was processed, i.e. it was restarted; call
+     * {@link #reset} to process it from the start
+     */
+    public boolean shrank(Path pcapFile) throws IOException {
+        return Files.isRegularFile(pcapFile) && Files.size(pcapFile) < nextOffset;
+    }
+
+    public void reset() {
+        headerLength = -1;
+        nextOffset = -1;
+        frames = 0;
+    }
+
+    /**
+     * Copy the complete records after the current position into a temporary capture next to
+     * the file, or null if there are none. The position only moves with {@link #advance}, so an
+     * increment that failed to process is read again.
+     */
+    public Increment next(Path pcapFile, String prefix) throws IOException {
+        if (!Files.isRegularFile(pcapFile)) {
+            return null;
+        }
+        long start;
+        long end;
+        long count = 0;
+        try (PcapReader reader = PcapReader.open(pcapFile)) {
+            PcapRecord record = nextOffset < 0 ? reader.next() : reader.readAt(nextOffset, frames + 1);
+            if (record == null) {
+                return null;
+            }
+            start = record.fileOffset();
+            while (record != null) {
+                count++;
+                record = reader.next();
+            }
+            // A record still being written is left for the next call
+            end = reader.position();
+        }
+
+        // Everything in front of the first record: the PCAP global header, or the PCAPNG section and interfaces
+        long header = headerLength >= 0 ? headerLength : start;
+        Path chunk = Files.createTempFile(pcapFile.getParent(), prefix, ".pcap");
+        try (FileChannel in = FileChannel.open(pcapFile, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(chunk, StandardOpenOption.WRITE)) {
+            transfer(in, 0, header, out);
+            transfer(in, start, end - start, out);
+        } catch (IOException e) {
+            delete(chunk);
+            throw e;
+        }
+        return new Increment(chunk, header, end, count);
+    }
+
+    /**
+     * Move past an increment once it is processed
+     */
+    public void advance(Increment increment) {
+        headerLength = increment.headerLength();
+        nextOffset = increment.nextOffset();
+        frames += increment.frames();
+    }
+
+    /**
+     * Remove a chunk file, logging instead of failing
+     */
+    public static void delete(Path chunk) {
+        try {
+            Files.deleteIfExists(chunk);
+        } catch (IOException e) {
+            log.debug("Could not delete {}: {}", chunk, e.getMessage());
+        }
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            done += in.transferTo(position + done, count - done, out);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.nathan.p2.service.pcap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer / multi-consumer ring of datagrams (Disruptor-style broadcast).
+ *
+ * The producer receives straight into a direct byte ring ({@link #claim()}) and publishes the
+ * entry by advancing the cursor. Every consumer runs on its own thread, sees every entry in
+ * order, and advances its own sequence after handling a batch. Consumers wait on the cursor
+ * (their sequence barrier); the producer waits on the slowest consumer only when the next
+ * region of the byte ring or the next entry slot is still unread - the ring is the slack
+ * between reception and a slow disk or subscriber. Nothing is locked on the hot path: the
+ * cursor and sequences are plain atomics, and sleeping threads are unparked only when they
+ * announced that they sleep.
+ *
+ * The buffer handed to a consumer is only valid during the call; slices of it stay intact
+ * until roughly {@code dataCapacity} bytes of later traffic have been received.
+ */
+@Slf4j
+public final class DatagramRing {
+
+    /**
+     * Handles published datagrams on the consumer's thread
+     */
+    @FunctionalInterface
+    public interface Handler {
+        /**
+         * @param datagram       read-only view of the datagram (position 0, limit = length)
+         * @param timestampNanos receive time, epoch nanoseconds
+         */
+        void onDatagram(ByteBuffer datagram, long timestampNanos) throws Exception;
+    }
+
+    private static final int SPIN_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ByteBuffer data;
+    private final ByteBuffer producerView;
+    private final int dataCapacity;
+    private final int maxDatagram;
+    private final int mask;
+    private final long[] starts;
+    private final int[] lengths;
+    private final long[] timestamps;
+
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Producer-owned
+    private int writeOffset;
+    private long writePosition;
+    private final AtomicLong producerWaitNanos = new AtomicLong();
+    private volatile Thread producer;
+
+    /**
+     * @param dataCapacity bytes of datagram storage (at least twice {@code maxDatagram})
+     * @param slots        entries in flight, rounded up to a power of two
+     */
+    public DatagramRing(int dataCapacity, int slots, int maxDatagram) {
+        if (dataCapacity < 2 * maxDatagram) {
+            throw new IllegalArgumentException("Ring of " + dataCapacity + " bytes cannot hold two datagrams of " + maxDatagram);
+        }
+        int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+        this.data = ByteBuffer.allocateDirect(dataCapacity);
+        this.producerView = data.duplicate();
+        this.dataCapacity = dataCapacity;
+        this.maxDatagram = maxDatagram;
+        this.mask = size - 1;
+        this.starts = new long[size];
+        this.lengths = new int[size];
+        this.timestamps = new long[size];
+    }
+
+    // ==================== Producer ====================
+
+    /**
+     * Region to receive the next datagram into: position at its start, limit {@code maxDatagram}
+     * bytes further. Waits while a consumer still has to read that region or the entry slot.
+     * Call from the producer thread only, followed by {@link #publish}.
+     */
+    public ByteBuffer claim() throws InterruptedException {
+        producer = Thread.currentThread();
+        if (dataCapacity - writeOffset < maxDatagram) {
+            // Skip the tail that cannot hold a full datagram
+            writePosition += dataCapacity - writeOffset;
+            writeOffset = 0;
+        }
+        awaitConsumers(cursor.get() + 1);
+        producerView.limit(writeOffset + maxDatagram).position(writeOffset);
+        return producerView;
+    }
+
+    /**
+     * Publish the datagram received into the last claimed region
+     */
+    public void publish(int length, long timestampNanos) {
+        long sequence = cursor.get() + 1;
+        int slot = (int) (sequence & mask);
+        starts[slot] = writePosition;
+        lengths[slot] = length;
+        timestamps[slot] = timestampNanos;
+        writePosition += length;
+        writeOffset += length;
+        // A full volatile write: it must not pass the read of "sleeping" below
+        cursor.set(sequence);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.sleeping) {
+                LockSupport.unpark(subscription.thread);
+            }
+        }
+    }
+
+    /**
+     * Sequence of the last published datagram (-1 before the first)
+     */
+    public long cursor() {
+        return cursor.getAcquire();
+    }
+
+    /**
+     * Total time the producer spent waiting for slow consumers
+     */
+    public long producerWaitNanos() {
+        return producerWaitNanos.get();
+    }
+
+    private void awaitConsumers(long sequence) throws InterruptedException {
+        long waitStart = 0;
+        int tries = 0;
+        while (true) {
+            Subscription laggard = firstBlocking(sequence);
+            if (laggard == null) {
+                break;
+            }
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (++tries < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, 50_000);
+            }
+        }
+        if (waitStart != 0) {
+            producerWaitNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * A consumer that still needs the entry slot or the bytes the producer is about to overwrite
+     */
+    private Subscription firstBlocking(long sequence) {
+        long published = cursor.get();
+        long overwriteEnd = writePosition + maxDatagram - dataCapacity;
+        for (Subscription subscription : subscriptions) {
+            long read = subscription.sequence.getAcquire();
+            if (read == published) {
+                continue;
+            }
+            if (sequence - read > mask || starts[(int) ((read + 1) & mask)] < overwriteEnd) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
+    // ==================== Consumers ====================
+
+    /**
+     * Start a consumer thread that receives every datagram published from now on
+     */
+    public Subscription subscribe(String name, Handler handler) {
+        Subscription subscription = new Subscription(name, handler);
+        subscription.sequence.set(cursor.get());
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * One consumer: its thread, handler and read sequence
+     */
+    public final class Subscription {
+        private final String name;
+        private final Handler handler;
+        private final Thread thread;
+        private final AtomicLong sequence = new AtomicLong();
+        private final ByteBuffer view = data.asReadOnlyBuffer();
+        private volatile boolean running = true;
+        private volatile boolean sleeping;
+
+        private Subscription(String name, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+            this.thread = new Thread(this::run, "ring-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Published datagrams this consumer has not handled yet
+         */
+        public long lag() {
+            return Math.max(0, cursor.getAcquire() - sequence.getAcquire());
+        }
+
+        /**
+         * Handle what is already published, then stop the thread and release the ring
+         */
+        public void close(long timeoutMillis) {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscriptions.remove(this);
+        }
+
+        private void run() {
+            try {
+                long next = sequence.get() + 1;
+                while (true) {
+                    long available = waitFor(next);
+                    if (available < next) {
+                        return;
+                    }
+                    for (long s = next; s <= available; s++) {
+                        int slot = (int) (s & mask);
+                        int offset = (int) (starts[slot] % dataCapacity);
+                        view.limit(offset + lengths[slot]).position(offset);
+                        try {
+                            handler.onDatagram(view.slice(), timestamps[slot]);
+                        } catch (Exception e) {
+                            log.error("Ring consumer {} failed on a datagram", name, e);
+                        }
+                    }
+                    sequence.setRelease(available);
+                    next = available + 1;
+                    Thread waiting = producer;
+                    if (waiting != null) {
+                        LockSupport.unpark(waiting);
+                    }
+                }
+            } finally {
+                subscriptions.remove(this);
+            }
+        }
+
+        /**
+         * Sequence barrier: highest published sequence at or above {@code next}, or below it once stopped
+         */
+        private long waitFor(long next) {
+            int tries = 0;
+            while (true) {
+                long available = cursor.getAcquire();
+                if (available >= next || !running) {
+                    return available;
+                }
+                if (++tries < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                sleeping = true;
+                if (cursor.getAcquire() < next && running) {
+                    LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.nathan.p2.service.pcap;
+
+import lombok.Builder;
+
+import java.time.Instant;
+
+/**
+ * GSMTAP header criteria for {@link PcapScanService}. Null criteria match everything.
+ * {@code messageClass} is a {@link MessageClass} code.
+ */
+@Builder
+public record GsmtapFilter(
+    Integer type,
+    Integer subType,
+    Integer arfcn,
+    Boolean uplink,
+    Instant from,
+    Instant to,
+    Integer messageClass
+) {
+    public static GsmtapFilter all() {
+        return GsmtapFilter.builder().build();
+    }
+
+    public static GsmtapFilter ofType(int type) {
+        return GsmtapFilter.builder().type(type).build();
+    }
+
+    /**
+     * Time bounds are inclusive at {@code from} and exclusive at {@code to}
+     */
+    public boolean matches(PcapRecord record, GsmtapHeader header) {
+        if (type != null && header.type() != type) return false;
+        if (subType != null && header.subType() != subType) return false;
+        if (arfcn != null && header.channel() != arfcn) return false;
+        if (uplink != null && header.uplink() != uplink) return false;
+        if (from != null && record.timestamp().isBefore(from)) return false;
+        if (to != null && !record.timestamp().isBefore(to)) return false;
+        if (messageClass != null && !MessageClass.matches(MessageClass.classify(header, record.gsmtapPayload()), messageClass)) return false;
+        return true;
+    }
+
+    /**
+     * Same test on the columns of a {@link PacketIndex} row ({@code arfcn} with its flag bits)
+     */
+    public boolean matches(long timestampNanos, int arfcn, int messageClass) {
+        if (messageClass == 0) return false;
+        if (type != null && MessageClass.type(messageClass) != type) return false;
+        if (subType != null && MessageClass.subType(messageClass) != subType) return false;
+        if (this.arfcn != null && (arfcn & 0x3FFF) != this.arfcn) return false;
+        if (uplink != null && ((arfcn & 0x4000) != 0) != uplink) return false;
+        if (from != null && timestampNanos < toNanos(from)) return false;
+        if (to != null && timestampNanos >= toNanos(to)) return false;
+        if (this.messageClass != null && !MessageClass.matches(messageClass, this.messageClass)) return false;
+        return true;
+    }
+
+    static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
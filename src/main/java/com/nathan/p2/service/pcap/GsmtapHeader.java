@@ -0,0 +1,142 @@
+package com.nathan.p2.service.pcap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * GSMTAP header (v2/v3), decoded in place from any buffer.
+ *
+ * GSMTAP Header Format (16 bytes, network byte order):
+ * - version (1 byte)
+ * - header length (1 byte, in 32-bit words)
+ * - type (1 byte): RRC, NAS, MAC, etc.
+ * - timeslot (1 byte)
+ * - ARFCN (2 bytes): bit 15 = PCS band, bit 14 = uplink, bits 0-13 = channel
+ * - signal_dbm (1 byte)
+ * - snr_db (1 byte)
+ * - frame_number (4 bytes)
+ * - sub_type (1 byte)
+ * - antenna_nr (1 byte)
+ * - sub_slot (1 byte)
+ * - res (1 byte)
+ *
+ * GSMTAP Protocol: https://osmocom.org/projects/baseband/wiki/GSMTAP
+ */
+public record GsmtapHeader(
+    int version,
+    int headerLength,
+    int type,
+    int timeslot,
+    int arfcn,
+    byte signalDbm,
+    byte snrDb,
+    int frameNumber,
+    int subType,
+    int antennaNr,
+    int subSlot,
+    int reserved
+) {
+    public static final int UDP_PORT = 4729;
+    public static final int LENGTH = 16;
+
+    /**
+     * Decode the header starting at an absolute offset, without moving the buffer position
+     */
+    public static GsmtapHeader parse(ByteBuffer buffer, int offset) {
+        if (buffer.limit() - offset < LENGTH) {
+            throw new IllegalArgumentException("GSMTAP packet too short");
+        }
+        return new GsmtapHeader(
+            buffer.get(offset) & 0xFF,
+            buffer.get(offset + 1) & 0xFF,
+            buffer.get(offset + 2) & 0xFF,
+            buffer.get(offset + 3) & 0xFF,
+            ((buffer.get(offset + 4) & 0xFF) << 8) | (buffer.get(offset + 5) & 0xFF),
+            buffer.get(offset + 6),
+            buffer.get(offset + 7),
+            ((buffer.get(offset + 8) & 0xFF) << 24) | ((buffer.get(offset + 9) & 0xFF) << 16)
+                | ((buffer.get(offset + 10) & 0xFF) << 8) | (buffer.get(offset + 11) & 0xFF),
+            buffer.get(offset + 12) & 0xFF,
+            buffer.get(offset + 13) & 0xFF,
+            buffer.get(offset + 14) & 0xFF,
+            buffer.get(offset + 15) & 0xFF
+        );
+    }
+
+    /**
+     * Header length in bytes (the wire field counts 32-bit words)
+     */
+    public int headerBytes() {
+        return Math.max(LENGTH, headerLength * 4);
+    }
+
+    /**
+     * ARFCN without the PCS/uplink flag bits
+     */
+    public int channel() {
+        return arfcn & 0x3FFF;
+    }
+
+    public boolean uplink() {
+        return (arfcn & 0x4000) != 0;
+    }
+
+    public boolean pcsBand() {
+        return (arfcn & 0x8000) != 0;
+    }
+
+    public String typeName() {
+        return typeName(type);
+    }
+
+    public String rat() {
+        return rat(type);
+    }
+
+    /**
+     * Get GSMTAP type name
+     */
+    public static String typeName(int type) {
+        switch (type) {
+            case 0x01: return "UM";           // GSM Um interface
+            case 0x02: return "ABIS";         // GSM Abis interface
+            case 0x03: return "UM_BURST";     // GSM Um burst
+            case 0x04: return "SIM";          // SIM card
+            case 0x05: return "TETRA_I1";     // TETRA
+            case 0x06: return "TETRA_I1_BURST";
+            case 0x07: return "WMX_BURST";    // WiMAX
+            case 0x08: return "GB_LLC";       // GPRS Gb interface
+            case 0x09: return "GB_SNDCP";
+            case 0x0A: return "GMR1_UM";      // GMR-1
+            case 0x0B: return "UMTS_RLC_MAC"; // UMTS
+            case 0x0C: return "UMTS_RRC";     // UMTS RRC
+            case 0x0D: return "LTE_RRC";      // LTE RRC
+            case 0x0E: return "LTE_MAC";      // LTE MAC
+            case 0x0F: return "LTE_MAC_FRAMED";
+            case 0x10: return "OSMOCORE_LOG"; // Logging
+            case 0x11: return "QC_DIAG";      // Qualcomm DIAG
+            case 0x12: return "LTE_NAS";      // LTE NAS
+            case 0x13: return "5GNR_RRC";     // 5G NR RRC
+            case 0x14: return "5GNR_MAC";     // 5G NR MAC
+            case 0x15: return "5GNR_NAS";     // 5G NR NAS
+            default: return "UNKNOWN_" + type;
+        }
+    }
+
+    /**
+     * Detect RAT (Radio Access Technology) from GSMTAP type
+     */
+    public static String rat(int type) {
+        switch (type) {
+            case 0x01: case 0x02: case 0x03: case 0x08: case 0x09:
+                return "GSM";
+            case 0x0B: case 0x0C:
+                return "WCDMA";
+            case 0x0D: case 0x0E: case 0x0F: case 0x12:
+                return "LTE";
+            case 0x13: case 0x14: case 0x15:
+                return "5GNR";
+            default:
+                return "UNKNOWN";
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.nathan.p2.service.pcap;
+
+import com.nathan.p2.config.ToolsConfig.PcapDurability;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Appends received GSMTAP datagrams to a classic PCAP file with group commit.
+ *
+ * The file stays open as one {@link FileChannel}. Records are assembled in a reusable direct
+ * buffer by {@link PcapRecordEncoder}: record header, a synthesized IPv4/UDP header
+ * (127.0.0.1 -> 127.0.0.1:4729) and the datagram, which is the only copy made of it. The buffer is written out when it reaches
+ * {@code flushSize} or when {@link #tick()} finds it older than {@code flushInterval}.
+ * Wrapping in IPv4/UDP (LINKTYPE_RAW) keeps the file identical in shape to a tcpdump capture
+ * of SCAT, so "udp.port == 4729" decoding works unchanged.
+ *
+ * Timestamps are nanosecond resolution: the receive time passed in, or the monotonic clock
+ * anchored at open.
+ * An existing file with the same header is appended to; anything else is replaced.
+ * Thread-safe.
+ */
+public final class GsmtapPcapWriter implements Closeable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+    private final PcapDurability durability;
+    private final long fsyncIntervalNanos;
+    private final PcapRecordEncoder encoder = new PcapRecordEncoder();
+
+    private final long epochNanosAtOpen;
+    private final long nanoTimeAtOpen;
+
+    private long oldestBufferedNanos;
+    private long lastFsyncNanos;
+    private boolean dirty;
+    private long records;
+
+    public GsmtapPcapWriter(Path file, int flushSize, Duration flushInterval,
+                            PcapDurability durability, Duration fsyncInterval) throws IOException {
+        this.file = file;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.durability = durability;
+        this.fsyncIntervalNanos = fsyncInterval.toNanos();
+        this.buffer = ByteBuffer.allocateDirect(flushSize + PcapRecordEncoder.MAX_RECORD_LENGTH);
+
+        Instant now = Instant.now();
+        this.nanoTimeAtOpen = System.nanoTime();
+        this.epochNanosAtOpen = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.lastFsyncNanos = nanoTimeAtOpen;
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (hasOwnHeader()) {
+                // Drop a record cut short by a crash before appending behind it
+                long end;
+                try (PcapReader reader = PcapReader.open(file)) {
+                    while (reader.next() != null) {
+                        // skip to the end of the last complete record
+                    }
+                    end = reader.position();
+                }
+                channel.truncate(end);
+                channel.position(end);
+            } else {
+                channel.truncate(0);
+                writeGlobalHeader();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public synchronized long records() {
+        return records;
+    }
+
+    /**
+     * Append one GSMTAP datagram (the UDP payload) stamped now; the buffer's position is not moved
+     */
+    public void append(ByteBuffer datagram) throws IOException {
+        append(datagram, epochNanosAtOpen + (System.nanoTime() - nanoTimeAtOpen));
+    }
+
+    /**
+     * Append one GSMTAP datagram received at {@code timestamp} (epoch nanoseconds)
+     */
+    public synchronized void append(ByteBuffer datagram, long timestamp) throws IOException {
+        if (buffer.position() == 0) {
+            oldestBufferedNanos = System.nanoTime();
+        }
+        encoder.encode(buffer, datagram, timestamp);
+        records++;
+
+        if (buffer.position() >= flushSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Time-based work: write out a batch older than the flush interval and, for
+     * {@link PcapDurability#PERIODIC}, force the file once per fsync interval. Call regularly.
+     */
+    public synchronized void tick() throws IOException {
+        long now = System.nanoTime();
+        if (buffer.position() > 0 && now - oldestBufferedNanos >= flushIntervalNanos) {
+            flush();
+        }
+        if (durability == PcapDurability.PERIODIC && dirty && now - lastFsyncNanos >= fsyncIntervalNanos) {
+            force();
+        }
+    }
+
+    /**
+     * Write out everything buffered (and force it for {@link PcapDurability#BATCH})
+     */
+    public synchronized void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        dirty = true;
+        if (durability == PcapDurability.BATCH) {
+            force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+            if (durability != PcapDurability.NONE && dirty) {
+                force();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void force() throws IOException {
+        channel.force(false);
+        dirty = false;
+        lastFsyncNanos = System.nanoTime();
+    }
+
+    private void writeGlobalHeader() throws IOException {
+        ByteBuffer header = PcapRecordEncoder.putGlobalHeader(ByteBuffer.allocate(PcapRecordEncoder.GLOBAL_HEADER_LENGTH))
+            .flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * A header this writer produced earlier, so records can be appended after it
+     */
+    private boolean hasOwnHeader() throws IOException {
+        if (channel.size() < PcapRecordEncoder.GLOBAL_HEADER_LENGTH) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(PcapRecordEncoder.GLOBAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading
+        }
+        return header.getInt(0) == PcapRecordEncoder.PCAP_MAGIC_NANOS && header.getInt(20) == PcapRecordEncoder.LINKTYPE_RAW;
+    }
+}
@@ -0,0 +1,242 @@
+package com.nathan.p2.service.pcap;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Message class of a GSMTAP frame, read from the first bytes of the payload.
+ *
+ * The code packs GSMTAP type, sub-type and message index into one int:
+ *   (type << 16) | (subType << 8) | message
+ * - LTE RRC: message is the index of the c1 CHOICE (the leading PER bits of the message)
+ * - LTE NAS: message is the EMM/ESM message type octet, looking through the security header
+ * - everything else, or a payload too short to tell: {@link #UNKNOWN_MESSAGE}
+ * Non-GSMTAP frames have code 0.
+ */
+public final class MessageClass {
+
+    public static final int UNKNOWN_MESSAGE = 0xFF;
+    /** LTE RRC messageClassExtension (later-release messages outside c1) */
+    public static final int EXTENSION_MESSAGE = 0xFE;
+
+    static final int TYPE_LTE_RRC = 0x0D;
+    static final int TYPE_LTE_NAS = 0x12;
+
+    // GSMTAP_LTE_RRC_SUB_* (osmocom gsmtap.h)
+    static final int RRC_DL_CCCH = 0;
+    static final int RRC_DL_DCCH = 1;
+    static final int RRC_UL_CCCH = 2;
+    static final int RRC_UL_DCCH = 3;
+    static final int RRC_BCCH_BCH = 4;
+    static final int RRC_BCCH_DL_SCH = 5;
+    static final int RRC_PCCH = 6;
+
+    private static final String[] DL_CCCH = {
+        "rrcConnectionReestablishment", "rrcConnectionReestablishmentReject", "rrcConnectionReject", "rrcConnectionSetup"
+    };
+    private static final String[] DL_DCCH = {
+        "csfbParametersResponseCDMA2000", "dlInformationTransfer", "handoverFromEUTRAPreparationRequest",
+        "mobilityFromEUTRACommand", "rrcConnectionReconfiguration", "rrcConnectionRelease", "securityModeCommand",
+        "ueCapabilityEnquiry", "counterCheck", "ueInformationRequest", "loggedMeasurementConfiguration",
+        "rnReconfiguration", "rrcConnectionResume", "spare3", "spare2", "spare1"
+    };
+    private static final String[] UL_CCCH = {
+        "rrcConnectionReestablishmentRequest", "rrcConnectionRequest"
+    };
+    private static final String[] UL_DCCH = {
+        "csfbParametersRequestCDMA2000", "measurementReport", "rrcConnectionReconfigurationComplete",
+        "rrcConnectionReestablishmentComplete", "rrcConnectionSetupComplete", "securityModeComplete",
+        "securityModeFailure", "ueCapabilityInformation", "ulHandoverPreparationTransfer", "ulInformationTransfer",
+        "counterCheckResponse", "ueInformationResponse", "proximityIndication", "rnReconfigurationComplete",
+        "mbmsCountingResponse", "interFreqRSTDMeasurementIndication"
+    };
+    private static final String[] BCCH_DL_SCH = {
+        "systemInformation", "systemInformationBlockType1"
+    };
+
+    private static final Map<Integer, String> NAS_MESSAGES = Map.ofEntries(
+        Map.entry(0x41, "attachRequest"), Map.entry(0x42, "attachAccept"), Map.entry(0x43, "attachComplete"),
+        Map.entry(0x44, "attachReject"), Map.entry(0x45, "detachRequest"), Map.entry(0x46, "detachAccept"),
+        Map.entry(0x48, "trackingAreaUpdateRequest"), Map.entry(0x49, "trackingAreaUpdateAccept"),
+        Map.entry(0x4A, "trackingAreaUpdateComplete"), Map.entry(0x4B, "trackingAreaUpdateReject"),
+        Map.entry(0x4C, "extendedServiceRequest"), Map.entry(0x4D, "serviceRequest"), Map.entry(0x4E, "serviceReject"),
+        Map.entry(0x50, "gutiReallocationCommand"), Map.entry(0x51, "gutiReallocationComplete"),
+        Map.entry(0x52, "authenticationRequest"), Map.entry(0x53, "authenticationResponse"),
+        Map.entry(0x54, "authenticationReject"), Map.entry(0x5C, "authenticationFailure"),
+        Map.entry(0x55, "identityRequest"), Map.entry(0x56, "identityResponse"),
+        Map.entry(0x5D, "securityModeCommand"), Map.entry(0x5E, "securityModeComplete"),
+        Map.entry(0x5F, "securityModeReject"), Map.entry(0x60, "emmStatus"), Map.entry(0x61, "emmInformation"),
+        Map.entry(0x62, "downlinkNasTransport"), Map.entry(0x63, "uplinkNasTransport"),
+        Map.entry(0x64, "csServiceNotification"),
+        Map.entry(0xC1, "activateDefaultBearerRequest"), Map.entry(0xC2, "activateDefaultBearerAccept"),
+        Map.entry(0xC3, "activateDefaultBearerReject"), Map.entry(0xC5, "activateDedicatedBearerRequest"),
+        Map.entry(0xC6, "activateDedicatedBearerAccept"), Map.entry(0xC7, "activateDedicatedBearerReject"),
+        Map.entry(0xC9, "modifyBearerRequest"), Map.entry(0xCA, "modifyBearerAccept"),
+        Map.entry(0xCB, "modifyBearerReject"), Map.entry(0xCD, "deactivateBearerRequest"),
+        Map.entry(0xCE, "deactivateBearerAccept"), Map.entry(0xD0, "pdnConnectivityRequest"),
+        Map.entry(0xD1, "pdnConnectivityReject"), Map.entry(0xD2, "pdnDisconnectRequest"),
+        Map.entry(0xD3, "pdnDisconnectReject"), Map.entry(0xD9, "esmInformationRequest"),
+        Map.entry(0xDA, "esmInformationResponse"), Map.entry(0xE8, "esmStatus")
+    );
+
+    private MessageClass() {}
+
+    public static int code(int type, int subType, int message) {
+        return ((type & 0xFF) << 16) | ((subType & 0xFF) << 8) | (message & 0xFF);
+    }
+
+    public static int type(int code) {
+        return (code >>> 16) & 0xFF;
+    }
+
+    public static int subType(int code) {
+        return (code >>> 8) & 0xFF;
+    }
+
+    public static int message(int code) {
+        return code & 0xFF;
+    }
+
+    /**
+     * Class of a GSMTAP frame; {@code payload} is what follows the GSMTAP header
+     */
+    public static int classify(GsmtapHeader header, ByteBuffer payload) {
+        int message = switch (header.type()) {
+            case TYPE_LTE_RRC -> lteRrc(header.subType(), payload);
+            case TYPE_LTE_NAS -> lteNas(payload);
+            default -> UNKNOWN_MESSAGE;
+        };
+        return code(header.type(), header.subType(), message);
+    }
+
+    public static int classify(PcapRecord record) {
+        GsmtapHeader header = record.gsmtap();
+        return header != null ? classify(header, record.gsmtapPayload()) : 0;
+    }
+
+    /**
+     * Code of a named message ("measurementReport", "attachRequest", ...), or -1 if unknown.
+     * RRC names resolve to their logical channel.
+     */
+    public static int forName(String name) {
+        int[] subTypes = {RRC_DL_CCCH, RRC_DL_DCCH, RRC_UL_CCCH, RRC_UL_DCCH, RRC_BCCH_DL_SCH};
+        for (int subType : subTypes) {
+            String[] names = rrcNames(subType);
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(name)) {
+                    return code(TYPE_LTE_RRC, subType, i);
+                }
+            }
+        }
+        if ("paging".equalsIgnoreCase(name)) return code(TYPE_LTE_RRC, RRC_PCCH, 0);
+        if ("masterInformationBlock".equalsIgnoreCase(name)) return code(TYPE_LTE_RRC, RRC_BCCH_BCH, 0);
+        for (Map.Entry<Integer, String> entry : NAS_MESSAGES.entrySet()) {
+            if (entry.getValue().equalsIgnoreCase(name)) {
+                // NAS sub-type only says whether a security header was present; match on message alone
+                return code(TYPE_LTE_NAS, 0, entry.getKey());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether two codes name the same message. LTE NAS ignores the sub-type (plain/protected).
+     */
+    public static boolean matches(int code, int wanted) {
+        if (type(wanted) == TYPE_LTE_NAS) {
+            return type(code) == TYPE_LTE_NAS && message(code) == message(wanted);
+        }
+        return code == wanted;
+    }
+
+    /**
+     * Readable name, e.g. "LTE_RRC/measurementReport" or "LTE_NAS/attachRequest"
+     */
+    public static String name(int code) {
+        if (code == 0) {
+            return "NON_GSMTAP";
+        }
+        int type = type(code);
+        int message = message(code);
+        String prefix = GsmtapHeader.typeName(type);
+        String name = null;
+        if (type == TYPE_LTE_RRC) {
+            String[] names = rrcNames(subType(code));
+            if (message < names.length) {
+                name = names[message];
+            } else if (message == EXTENSION_MESSAGE) {
+                name = "messageClassExtension";
+            }
+        } else if (type == TYPE_LTE_NAS) {
+            name = NAS_MESSAGES.get(message);
+        }
+        return name != null ? prefix + "/" + name : prefix + "/" + subType(code) + "/" + message;
+    }
+
+    // ==================== LTE RRC ====================
+
+    private static String[] rrcNames(int subType) {
+        return switch (subType) {
+            case RRC_DL_CCCH -> DL_CCCH;
+            case RRC_DL_DCCH -> DL_DCCH;
+            case RRC_UL_CCCH -> UL_CCCH;
+            case RRC_UL_DCCH -> UL_DCCH;
+            case RRC_BCCH_DL_SCH -> BCCH_DL_SCH;
+            case RRC_PCCH -> new String[] {"paging"};
+            case RRC_BCCH_BCH -> new String[] {"masterInformationBlock"};
+            default -> new String[0];
+        };
+    }
+
+    /**
+     * UPER: one bit c1 / messageClassExtension, then the c1 index in ceil(log2(n)) bits
+     */
+    private static int lteRrc(int subType, ByteBuffer payload) {
+        if (subType == RRC_BCCH_BCH || subType == RRC_PCCH) {
+            return 0;
+        }
+        int alternatives = rrcNames(subType).length;
+        if (alternatives == 0 || payload.remaining() < 1) {
+            return UNKNOWN_MESSAGE;
+        }
+        int first = payload.get(payload.position()) & 0xFF;
+        if ((first & 0x80) != 0) {
+            return EXTENSION_MESSAGE;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(alternatives - 1);
+        return (first >> (7 - bits)) & ((1 << bits) - 1);
+    }
+
+    // ==================== LTE NAS (TS 24.301) ====================
+
+    private static final int PD_ESM = 0x2;
+    private static final int PD_EMM = 0x7;
+
+    private static int lteNas(ByteBuffer payload) {
+        int start = payload.position();
+        if (payload.remaining() < 2) {
+            return UNKNOWN_MESSAGE;
+        }
+        int first = payload.get(start) & 0xFF;
+        int securityHeader = first >> 4;
+        int discriminator = first & 0x0F;
+        if (discriminator == PD_EMM && securityHeader == 0x0C) {
+            return 0x4D; // SERVICE REQUEST has its own short header
+        }
+        if (discriminator == PD_EMM && securityHeader >= 1 && securityHeader <= 4) {
+            // MAC (4) + sequence number (1), then the plain message
+            start += 6;
+            if (payload.limit() - start < 2) {
+                return UNKNOWN_MESSAGE;
+            }
+            discriminator = payload.get(start) & 0x0F;
+        }
+        if (discriminator == PD_EMM) {
+            return payload.get(start + 1) & 0xFF;
+        }
+        if (discriminator == PD_ESM && payload.limit() - start >= 3) {
+            return payload.get(start + 2) & 0xFF;
+        }
+        return UNKNOWN_MESSAGE;
+    }
+}
@@ -0,0 +1,281 @@
+package com.nathan.p2.service.pcap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.IntConsumer;
+
+/**
+ * Columnar per-frame index of a finished capture, stored next to it as "capture.pcap.idx".
+ *
+ * Layout (little endian):
+ *   header (48 bytes): magic "ECAPIDX1", version, flags, frame count, capture size, capture mtime, reserved
+ *   long[n]  file offset of the record / block
+ *   long[n]  timestamp, epoch nanoseconds
+ *   int[n]   {@link MessageClass} code (includes GSMTAP type and sub-type), 0 for non-GSMTAP frames
+ *   short[n] raw GSMTAP ARFCN field (channel + PCS/uplink flags)
+ *
+ * Row i is frame i + 1. Queries scan only the narrow columns they need and, when timestamps
+ * are in order, binary-search the time range first; matching frames are then read from the
+ * capture with {@link PcapReader#readAt}. The index is ignored once the capture's size or
+ * mtime no longer match the header.
+ */
+public final class PacketIndex {
+
+    private static final byte[] MAGIC = "ECAPIDX1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int FLAG_SORTED = 1;
+    private static final int ROW_SIZE = 8 + 8 + 4 + 2;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final boolean sorted;
+    private final int offsetsStart;
+    private final int timestampsStart;
+    private final int classesStart;
+    private final int arfcnsStart;
+
+    private PacketIndex(ByteBuffer buffer, int size, boolean sorted) {
+        this.buffer = buffer;
+        this.size = size;
+        this.sorted = sorted;
+        this.offsetsStart = HEADER_SIZE;
+        this.timestampsStart = offsetsStart + size * 8;
+        this.classesStart = timestampsStart + size * 8;
+        this.arfcnsStart = classesStart + size * 4;
+    }
+
+    public static Path indexPath(Path pcapFile) {
+        return pcapFile.resolveSibling(pcapFile.getFileName() + ".idx");
+    }
+
+    /**
+     * The index of the capture, if one exists and still matches the file
+     */
+    public static Optional<PacketIndex> open(Path pcapFile) throws IOException {
+        Path indexFile = indexPath(pcapFile);
+        if (!Files.isRegularFile(indexFile) || !Files.isRegularFile(pcapFile)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return Optional.empty();
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            mapped.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC) || mapped.getInt(8) != VERSION) {
+                return Optional.empty();
+            }
+            long frames = mapped.getLong(16);
+            if (mapped.getLong(24) != Files.size(pcapFile)
+                || mapped.getLong(32) != Files.getLastModifiedTime(pcapFile).toMillis()
+                || HEADER_SIZE + frames * ROW_SIZE != length) {
+                return Optional.empty();
+            }
+            return Optional.of(new PacketIndex(mapped, (int) frames, (mapped.getInt(12) & FLAG_SORTED) != 0));
+        }
+    }
+
+    /**
+     * Scan the capture once and write its index; returns the index file
+     */
+    public static Path write(Path pcapFile) throws IOException {
+        Path indexFile = indexPath(pcapFile);
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        long pcapSize = Files.size(pcapFile);
+        long pcapModified = Files.getLastModifiedTime(pcapFile).toMillis();
+
+        // Columns are spooled to temporary files so memory stays flat for any capture length
+        Column offsets = new Column(tmp, "offsets");
+        Column timestamps = new Column(tmp, "timestamps");
+        Column classes = new Column(tmp, "classes");
+        Column arfcns = new Column(tmp, "arfcns");
+        try (offsets; timestamps; classes; arfcns; PcapReader reader = PcapReader.open(pcapFile)) {
+            long frames = 0;
+            long previous = Long.MIN_VALUE;
+            boolean inOrder = true;
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                int offset = record.gsmtapOffset();
+                int messageClass = 0;
+                int arfcn = 0;
+                if (offset >= 0) {
+                    GsmtapHeader header = GsmtapHeader.parse(record.data(), offset);
+                    messageClass = MessageClass.classify(header, record.gsmtapPayload());
+                    arfcn = header.arfcn();
+                }
+                offsets.putLong(record.fileOffset());
+                timestamps.putLong(record.timestampNanos());
+                classes.putInt(messageClass);
+                arfcns.putShort((short) arfcn);
+                inOrder &= record.timestampNanos() >= previous;
+                previous = record.timestampNanos();
+                frames++;
+            }
+            if (HEADER_SIZE + frames * ROW_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Capture too large to index: " + frames + " frames");
+            }
+
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(MAGIC).putInt(VERSION).putInt(inOrder ? FLAG_SORTED : 0)
+                    .putLong(frames).putLong(pcapSize).putLong(pcapModified).putLong(0).flip();
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                offsets.transferTo(out);
+                timestamps.transferTo(out);
+                classes.transferTo(out);
+                arfcns.transferTo(out);
+                out.force(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return indexFile;
+    }
+
+    // ==================== Columns ====================
+
+    public int size() {
+        return size;
+    }
+
+    public long frameNumber(int row) {
+        return row + 1L;
+    }
+
+    public long fileOffset(int row) {
+        return buffer.getLong(offsetsStart + row * 8);
+    }
+
+    public long timestampNanos(int row) {
+        return buffer.getLong(timestampsStart + row * 8);
+    }
+
+    public int messageClass(int row) {
+        return buffer.getInt(classesStart + row * 4);
+    }
+
+    public int arfcn(int row) {
+        return buffer.getShort(arfcnsStart + row * 2) & 0xFFFF;
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * First row at or after the instant (rows are only searchable by time when in order)
+     */
+    public int lowerBound(Instant instant) {
+        long target = GsmtapFilter.toNanos(instant);
+        if (!sorted) {
+            return 0;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampNanos(mid) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Rows matching the filter, in frame order
+     */
+    public void select(GsmtapFilter filter, IntConsumer rows) {
+        int start = filter.from() != null ? lowerBound(filter.from()) : 0;
+        int end = filter.to() != null && sorted ? lowerBound(filter.to()) : size;
+        for (int row = start; row < end; row++) {
+            if (filter.matches(timestampNanos(row), arfcn(row), messageClass(row))) {
+                rows.accept(row);
+            }
+        }
+    }
+
+    public long count(GsmtapFilter filter) {
+        long[] count = {0};
+        select(filter, row -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Buffered append-only spool file for one column
+     */
+    private static final class Column implements AutoCloseable {
+        private final Path file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        Column(Path base, String name) throws IOException {
+            this.file = base.resolveSibling(base.getFileName() + "." + name);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(2);
+            buffer.putShort(value);
+        }
+
+        void transferTo(FileChannel out) throws IOException {
+            flush();
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, out);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
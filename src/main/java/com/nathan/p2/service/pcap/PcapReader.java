@@ -0,0 +1,323 @@
+package com.nathan.p2.service.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Memory-mapped PCAP / PCAPNG reader.
+ *
+ * The file is mapped read-only in large windows and walked record by record; each
+ * {@link PcapRecord} is a view into the mapping, so no packet bytes are copied.
+ * Files still being written are read up to the size they had when opened; a
+ * truncated trailing record ends the iteration instead of failing it.
+ *
+ * Formats: https://www.ietf.org/archive/id/draft-ietf-opsawg-pcap-04.html,
+ *          https://www.ietf.org/archive/id/draft-ietf-opsawg-pcapng-02.html
+ */
+public final class PcapReader implements Closeable {
+
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private static final int PCAP_MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    private static final int PCAPNG_SHB = 0x0A0D0D0A;
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    private static final int PCAPNG_IDB = 1;
+    private static final int PCAPNG_OPB = 2;
+    private static final int PCAPNG_SPB = 3;
+    private static final int PCAPNG_EPB = 6;
+
+    private final FileChannel channel;
+    private final long size;
+    private final boolean pcapng;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+    private long position;
+    private long frameNumber;
+
+    // Classic pcap: one link type and timestamp resolution for the whole file
+    private int linkType;
+    private long unitsPerSecond = 1_000_000L;
+
+    // PCAPNG: per interface, reset on every section header
+    private final List<Interface> interfaces = new ArrayList<>();
+
+    private record Interface(int linkType, long unitsPerSecond, long offsetSeconds) {}
+
+    private PcapReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        if (!ensure(0, 4)) {
+            throw new IOException("Not a PCAP/PCAPNG file: too short");
+        }
+        int magic = window.order(ByteOrder.BIG_ENDIAN).getInt(0);
+        this.pcapng = magic == PCAPNG_SHB;
+        if (!pcapng) {
+            readPcapHeader(magic);
+        }
+    }
+
+    public static PcapReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PcapReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Next record, or null at end of file
+     */
+    public PcapRecord next() throws IOException {
+        return pcapng ? nextPcapngRecord() : nextPcapRecord();
+    }
+
+    /**
+     * The record starting at a known file offset (from {@link PcapRecord#fileOffset()} or a
+     * {@link PacketIndex}), numbered {@code frameNumber}. Iteration continues from there.
+     *
+     * For PCAPNG the interface descriptions in front of the first packet are read once
+     * beforehand; interfaces declared later in the file are not seen by random access.
+     */
+    public PcapRecord readAt(long fileOffset, long frameNumber) throws IOException {
+        if (pcapng && interfaces.isEmpty()) {
+            readLeadingInterfaces();
+        }
+        this.position = fileOffset;
+        this.frameNumber = frameNumber - 1;
+        return next();
+    }
+
+    public void forEach(Consumer<PcapRecord> action) throws IOException {
+        PcapRecord record;
+        while ((record = next()) != null) {
+            action.accept(record);
+        }
+    }
+
+    public boolean isPcapng() {
+        return pcapng;
+    }
+
+    /**
+     * File offset of the next record. Once {@link #next()} returned null this is the end of
+     * the last complete record, i.e. where a writer still appending to the file will continue.
+     */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ==================== Classic PCAP ====================
+
+    private void readPcapHeader(int magic) throws IOException {
+        if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new IOException(String.format("Not a PCAP/PCAPNG file: magic 0x%08x", magic));
+        }
+        if (!ensure(0, 24)) {
+            throw new IOException("Truncated PCAP global header");
+        }
+        unitsPerSecond = magic == PCAP_MAGIC_NANOS ? 1_000_000_000L : 1_000_000L;
+        linkType = int32(20) & 0xFFFF;
+        position = 24;
+    }
+
+    private PcapRecord nextPcapRecord() throws IOException {
+        if (!ensure(position, 16)) {
+            return null;
+        }
+        long seconds = uint32(position);
+        long fraction = uint32(position + 4);
+        int capturedLength = int32(position + 8);
+        int originalLength = int32(position + 12);
+        if (capturedLength < 0 || !ensure(position + 16, capturedLength)) {
+            return null;
+        }
+        PcapRecord record = new PcapRecord(++frameNumber,
+            seconds * 1_000_000_000L + fraction * (1_000_000_000L / unitsPerSecond),
+            linkType, originalLength, view(position + 16, capturedLength), position);
+        position += 16L + capturedLength;
+        return record;
+    }
+
+    // ==================== PCAPNG ====================
+
+    private PcapRecord nextPcapngRecord() throws IOException {
+        while (ensure(position, 12)) {
+            long blockStart = position;
+            // The SHB type is a palindrome, so it can be recognised before the section byte order is known
+            int type = int32(blockStart);
+            if (type == PCAPNG_SHB) {
+                readSectionByteOrder(blockStart);
+            }
+            long length = uint32(blockStart + 4);
+            if (length < 12 || length % 4 != 0 || !ensure(blockStart, length)) {
+                return null;
+            }
+            position = blockStart + length;
+
+            switch (type) {
+                case PCAPNG_SHB -> interfaces.clear();
+                case PCAPNG_IDB -> interfaces.add(readInterface(blockStart, length));
+                case PCAPNG_EPB -> {
+                    return packet(blockStart, int32(blockStart + 8), uint32(blockStart + 12), uint32(blockStart + 16),
+                        int32(blockStart + 20), int32(blockStart + 24), blockStart + 28, length - 32);
+                }
+                case PCAPNG_OPB -> {
+                    return packet(blockStart, uint16(blockStart + 8), uint32(blockStart + 12), uint32(blockStart + 16),
+                        int32(blockStart + 20), int32(blockStart + 24), blockStart + 28, length - 32);
+                }
+                case PCAPNG_SPB -> {
+                    int originalLength = int32(blockStart + 8);
+                    int capturedLength = (int) Math.min(Integer.toUnsignedLong(originalLength), length - 16);
+                    return packet(blockStart, 0, -1, -1, capturedLength, originalLength, blockStart + 12, length - 16);
+                }
+                default -> { /* name resolution, statistics, custom blocks */ }
+            }
+        }
+        return null;
+    }
+
+    private void readLeadingInterfaces() throws IOException {
+        long savedPosition = position;
+        long savedFrame = frameNumber;
+        position = 0;
+        while (ensure(position, 12)) {
+            long blockStart = position;
+            int type = int32(blockStart);
+            if (type == PCAPNG_EPB || type == PCAPNG_OPB || type == PCAPNG_SPB) {
+                break;
+            }
+            if (type == PCAPNG_SHB) {
+                readSectionByteOrder(blockStart);
+            }
+            long length = uint32(blockStart + 4);
+            if (length < 12 || length % 4 != 0 || !ensure(blockStart, length)) {
+                break;
+            }
+            if (type == PCAPNG_IDB) {
+                interfaces.add(readInterface(blockStart, length));
+            }
+            position = blockStart + length;
+        }
+        position = savedPosition;
+        frameNumber = savedFrame;
+    }
+
+    private void readSectionByteOrder(long blockStart) throws IOException {
+        if (!ensure(blockStart, 12)) {
+            throw new IOException("Truncated PCAPNG section header");
+        }
+        int bom = window.order(ByteOrder.BIG_ENDIAN).getInt(offset(blockStart + 8));
+        if (bom == PCAPNG_BYTE_ORDER_MAGIC) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(bom) == PCAPNG_BYTE_ORDER_MAGIC) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            throw new IOException(String.format("Invalid PCAPNG byte-order magic 0x%08x", bom));
+        }
+    }
+
+    private Interface readInterface(long blockStart, long length) {
+        int ifLinkType = uint16(blockStart + 8);
+        long ifUnitsPerSecond = 1_000_000L;
+        long ifOffsetSeconds = 0;
+
+        long option = blockStart + 16;
+        long end = blockStart + length - 4;
+        while (option + 4 <= end) {
+            int code = uint16(option);
+            int optionLength = uint16(option + 2);
+            if (code == 0) break; // opt_endofopt
+            if (code == 9 && optionLength >= 1) { // if_tsresol
+                int resolution = window.get(offset(option + 4)) & 0xFF;
+                int exponent = resolution & 0x7F;
+                ifUnitsPerSecond = (resolution & 0x80) != 0
+                    ? 1L << Math.min(exponent, 62)
+                    : (long) Math.pow(10, Math.min(exponent, 18));
+            } else if (code == 14 && optionLength >= 8) { // if_tsoffset
+                ifOffsetSeconds = window.order(order).getLong(offset(option + 4));
+            }
+            option += 4 + ((optionLength + 3) & ~3);
+        }
+        return new Interface(ifLinkType, ifUnitsPerSecond, ifOffsetSeconds);
+    }
+
+    private PcapRecord packet(long blockStart, int interfaceId, long tsHigh, long tsLow, int capturedLength,
+                              int originalLength, long dataStart, long maxLength) {
+        Interface iface = interfaceId >= 0 && interfaceId < interfaces.size()
+            ? interfaces.get(interfaceId)
+            : new Interface(-1, 1_000_000L, 0);
+        int length = (int) Math.max(0, Math.min(Integer.toUnsignedLong(capturedLength), maxLength));
+        long nanos = tsHigh < 0 ? 0 : toNanos((tsHigh << 32) | tsLow, iface.unitsPerSecond()) + iface.offsetSeconds() * 1_000_000_000L;
+        return new PcapRecord(++frameNumber, nanos, iface.linkType(), originalLength, view(dataStart, length), blockStart);
+    }
+
+    private static long toNanos(long timestamp, long unitsPerSecond) {
+        if (unitsPerSecond == 1_000_000_000L) {
+            return timestamp;
+        }
+        long seconds = Long.divideUnsigned(timestamp, unitsPerSecond);
+        long remainder = Long.remainderUnsigned(timestamp, unitsPerSecond);
+        return seconds * 1_000_000_000L + (long) (remainder * (1_000_000_000.0 / unitsPerSecond));
+    }
+
+    // ==================== Mapping ====================
+
+    /**
+     * Make [start, start + length) addressable through the current window; false if past end of file
+     */
+    private boolean ensure(long start, long length) throws IOException {
+        if (start + length > size) {
+            return false;
+        }
+        if (window == null || start < windowStart || start + length > windowStart + window.capacity()) {
+            long mapSize = Math.min(size - start, Math.max(WINDOW_SIZE, length));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, mapSize);
+            windowStart = start;
+        }
+        return true;
+    }
+
+    private int offset(long absolute) {
+        return (int) (absolute - windowStart);
+    }
+
+    private ByteBuffer view(long start, int length) {
+        return window.slice(offset(start), length).asReadOnlyBuffer();
+    }
+
+    private int int32(long absolute) {
+        return window.order(order).getInt(offset(absolute));
+    }
+
+    private long uint32(long absolute) {
+        return Integer.toUnsignedLong(int32(absolute));
+    }
+
+    private int uint16(long absolute) {
+        return window.order(order).getShort(offset(absolute)) & 0xFFFF;
+    }
+}
@@ -0,0 +1,156 @@
+package com.nathan.p2.service.pcap;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * One captured frame as seen by {@link PcapReader}.
+ *
+ * {@code data} is a read-only view into the mapped capture file (no copy), positioned at
+ * the start of the link-layer frame. It stays valid after the reader is closed.
+ * {@code fileOffset} is where the record header (PCAP) or block (PCAPNG) starts in the file.
+ */
+public record PcapRecord(long frameNumber, long timestampNanos, int linkType, int originalLength, ByteBuffer data,
+                         long fileOffset) {
+
+    // Link types carrying GSMTAP (https://www.tcpdump.org/linktypes.html)
+    static final int LINKTYPE_NULL = 0;
+    static final int LINKTYPE_ETHERNET = 1;
+    static final int LINKTYPE_RAW = 101;
+    static final int LINKTYPE_LOOP = 108;
+    static final int LINKTYPE_LINUX_SLL = 113;
+    static final int LINKTYPE_GSMTAP_UM = 217;
+    static final int LINKTYPE_GSMTAP_ABIS = 218;
+    static final int LINKTYPE_IPV4 = 228;
+    static final int LINKTYPE_IPV6 = 229;
+    static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int IPPROTO_UDP = 17;
+
+    public int capturedLength() {
+        return data.remaining();
+    }
+
+    public double epochSeconds() {
+        return timestampNanos / 1_000_000_000.0;
+    }
+
+    public Instant timestamp() {
+        return Instant.ofEpochSecond(0, timestampNanos);
+    }
+
+    /**
+     * Offset of the GSMTAP header inside {@code data}, or -1 when the frame is not GSMTAP over UDP/4729
+     */
+    public int gsmtapOffset() {
+        int offset = switch (linkType) {
+            case LINKTYPE_GSMTAP_UM, LINKTYPE_GSMTAP_ABIS -> 0;
+            case LINKTYPE_ETHERNET -> ethernet(data);
+            case LINKTYPE_LINUX_SLL -> etherType(data, u16(data, 14), 16);
+            case LINKTYPE_LINUX_SLL2 -> etherType(data, u16(data, 0), 20);
+            case LINKTYPE_NULL, LINKTYPE_LOOP -> loopback(data);
+            case LINKTYPE_RAW -> ip(data, 0);
+            case LINKTYPE_IPV4 -> ipv4(data, 0);
+            case LINKTYPE_IPV6 -> ipv6(data, 0);
+            default -> -1;
+        };
+        return offset >= 0 && data.limit() - offset >= GsmtapHeader.LENGTH ? offset : -1;
+    }
+
+    public boolean isGsmtap() {
+        return gsmtapOffset() >= 0;
+    }
+
+    /**
+     * Decoded GSMTAP header, or null when the frame is not GSMTAP
+     */
+    public GsmtapHeader gsmtap() {
+        int offset = gsmtapOffset();
+        return offset >= 0 ? GsmtapHeader.parse(data, offset) : null;
+    }
+
+    /**
+     * View of the bytes following the GSMTAP header (the encapsulated RRC/NAS/MAC PDU)
+     */
+    public ByteBuffer gsmtapPayload() {
+        int offset = gsmtapOffset();
+        if (offset < 0) {
+            return ByteBuffer.allocate(0);
+        }
+        int start = Math.min(data.limit(), offset + GsmtapHeader.parse(data, offset).headerBytes());
+        return data.slice(start, data.limit() - start).asReadOnlyBuffer();
+    }
+
+    // ==================== Link / network layer ====================
+
+    private static int ethernet(ByteBuffer data) {
+        if (data.limit() < 14) return -1;
+        int offset = 12;
+        int type = u16(data, offset);
+        while (type == ETHERTYPE_VLAN && data.limit() >= offset + 6) {
+            offset += 4;
+            type = u16(data, offset);
+        }
+        return etherType(data, type, offset + 2);
+    }
+
+    private static int etherType(ByteBuffer data, int type, int offset) {
+        if (data.limit() < offset) return -1;
+        return switch (type) {
+            case ETHERTYPE_IPV4 -> ipv4(data, offset);
+            case ETHERTYPE_IPV6 -> ipv6(data, offset);
+            default -> -1;
+        };
+    }
+
+    private static int loopback(ByteBuffer data) {
+        if (data.limit() < 4) return -1;
+        // Address family is in the writer's host byte order; IPv4 is 2 everywhere, IPv6 is 24/28/30
+        int family = data.get(0) != 0 ? data.get(0) & 0xFF : data.get(3) & 0xFF;
+        return switch (family) {
+            case 2 -> ipv4(data, 4);
+            case 24, 28, 30 -> ipv6(data, 4);
+            default -> -1;
+        };
+    }
+
+    private static int ip(ByteBuffer data, int offset) {
+        if (data.limit() <= offset) return -1;
+        return switch ((data.get(offset) & 0xF0) >> 4) {
+            case 4 -> ipv4(data, offset);
+            case 6 -> ipv6(data, offset);
+            default -> -1;
+        };
+    }
+
+    private static int ipv4(ByteBuffer data, int offset) {
+        if (data.limit() < offset + 20) return -1;
+        int ihl = (data.get(offset) & 0x0F) * 4;
+        int protocol = data.get(offset + 9) & 0xFF;
+        int fragment = u16(data, offset + 6) & 0x1FFF;
+        if (ihl < 20 || protocol != IPPROTO_UDP || fragment != 0) return -1;
+        return udp(data, offset + ihl);
+    }
+
+    private static int ipv6(ByteBuffer data, int offset) {
+        if (data.limit() < offset + 40) return -1;
+        if ((data.get(offset + 6) & 0xFF) != IPPROTO_UDP) return -1;
+        return udp(data, offset + 40);
+    }
+
+    private static int udp(ByteBuffer data, int offset) {
+        if (data.limit() < offset + 8) return -1;
+        int srcPort = u16(data, offset);
+        int dstPort = u16(data, offset + 2);
+        if (srcPort != GsmtapHeader.UDP_PORT && dstPort != GsmtapHeader.UDP_PORT) return -1;
+        return offset + 8;
+    }
+
+    private static int u16(ByteBuffer data, int offset) {
+        if (data.limit() < offset + 2) return -1;
+        return ((data.get(offset) & 0xFF) << 8) | (data.get(offset + 1) & 0xFF);
+    }
+}
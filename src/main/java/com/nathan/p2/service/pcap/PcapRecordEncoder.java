@@ -0,0 +1,83 @@
+package com.nathan.p2.service.pcap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Classic PCAP encoding of GSMTAP datagrams, shared by the session file writer and the live
+ * tshark feed.
+ *
+ * The format is nanosecond PCAP with LINKTYPE_RAW: every datagram is wrapped in a synthesized
+ * IPv4/UDP header (127.0.0.1 -> 127.0.0.1:4729), so the result looks like a tcpdump capture of
+ * SCAT and "udp.port == 4729" decoding works unchanged.
+ * Not thread-safe (the IP identification counter is per encoder).
+ */
+public final class PcapRecordEncoder {
+
+    public static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    public static final int LINKTYPE_RAW = 101;
+    public static final int SNAPLEN = 65535;
+    public static final int GLOBAL_HEADER_LENGTH = 24;
+    public static final int RECORD_HEADER_LENGTH = 16;
+    public static final int IP_UDP_HEADER_LENGTH = 28;
+    /** Largest record {@link #encode} can produce */
+    public static final int MAX_RECORD_LENGTH = RECORD_HEADER_LENGTH + SNAPLEN;
+
+    private static final int LOOPBACK = 0x7F000001;
+
+    private short ipId;
+
+    /**
+     * Put the file header at the buffer's position
+     */
+    public static ByteBuffer putGlobalHeader(ByteBuffer buffer) {
+        return buffer.order(ByteOrder.LITTLE_ENDIAN)
+            .putInt(PCAP_MAGIC_NANOS)
+            .putShort((short) 2).putShort((short) 4)
+            .putInt(0).putInt(0)
+            .putInt(SNAPLEN)
+            .putInt(LINKTYPE_RAW);
+    }
+
+    /**
+     * Put one record for {@code datagram} (the UDP payload) received at {@code timestamp}
+     * (epoch nanoseconds) at the buffer's position. The datagram's position is not moved;
+     * payloads beyond the snapshot length are truncated.
+     */
+    public void encode(ByteBuffer buffer, ByteBuffer datagram, long timestamp) {
+        int length = Math.min(datagram.remaining(), SNAPLEN - IP_UDP_HEADER_LENGTH);
+        int frameLength = IP_UDP_HEADER_LENGTH + length;
+        buffer.order(ByteOrder.LITTLE_ENDIAN)
+            .putInt((int) (timestamp / 1_000_000_000L))
+            .putInt((int) (timestamp % 1_000_000_000L))
+            .putInt(frameLength)
+            .putInt(IP_UDP_HEADER_LENGTH + datagram.remaining());
+
+        // IPv4 (no options) + UDP, network byte order; UDP checksum 0 = not computed
+        int ipStart = buffer.position();
+        buffer.order(ByteOrder.BIG_ENDIAN)
+            .put((byte) 0x45).put((byte) 0)
+            .putShort((short) frameLength)
+            .putShort(ipId++).putShort((short) 0x4000)
+            .put((byte) 64).put((byte) 17)
+            .putShort((short) 0)
+            .putInt(LOOPBACK).putInt(LOOPBACK)
+            .putShort((short) GsmtapHeader.UDP_PORT).putShort((short) GsmtapHeader.UDP_PORT)
+            .putShort((short) (8 + length)).putShort((short) 0);
+        buffer.putShort(ipStart + 10, ipChecksum(buffer, ipStart));
+
+        buffer.put(buffer.position(), datagram, datagram.position(), length);
+        buffer.position(buffer.position() + length);
+    }
+
+    private static short ipChecksum(ByteBuffer buffer, int start) {
+        int sum = 0;
+        for (int i = 0; i < 20; i += 2) {
+            sum += buffer.getShort(start + i) & 0xFFFF;
+        }
+        while ((sum >> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        }
+        return (short) ~sum;
+    }
+}
@@ -0,0 +1,326 @@
+package com.nathan.p2.service.pcap;
+
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import com.nathan.p2.service.tshark.DisplayFilter;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * PCAP Scan Service - in-JVM GSMTAP queries over session captures
+ *
+ * Counting and filtering on GSMTAP header fields (type, sub-type, ARFCN, direction, time)
+ * does not need a dissector, so these run over the memory-mapped file without starting tshark.
+ * Finished sessions also get a {@link PacketIndex}, which answers these queries without
+ * scanning the capture at all.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PcapScanService {
+
+    private final PipelineSchedulers schedulers;
+
+    /**
+     * Display filter fields that can be answered from the frame and GSMTAP headers alone
+     */
+    private static final Set<String> HEADER_FIELDS = Set.of(
+        "frame", "frame.number", "frame.len", "frame.cap_len",
+        "gsmtap", "gsmtap.version", "gsmtap.hdr_len", "gsmtap.type", "gsmtap.ts",
+        "gsmtap.arfcn", "gsmtap.uplink", "gsmtap.pcs_band", "gsmtap.signal_dbm", "gsmtap.snr_db",
+        "gsmtap.frame_nr", "gsmtap.sub_type", "gsmtap.antenna", "gsmtap.sub_slot"
+    );
+
+    /**
+     * Header fields that can also be answered from the columns of a {@link PacketIndex}
+     */
+    private static final Set<String> INDEXED_FIELDS = Set.of(
+        "frame", "frame.number",
+        "gsmtap", "gsmtap.type", "gsmtap.sub_type", "gsmtap.arfcn", "gsmtap.uplink", "gsmtap.pcs_band"
+    );
+
+    /**
+     * All records of a capture, in file order
+     */
+    public Flux<PcapRecord> records(Path pcapFile) {
+        return Flux.<PcapRecord, PcapReader>using(
+                () -> PcapReader.open(pcapFile),
+                reader -> Flux.generate(sink -> {
+                    try {
+                        PcapRecord record = reader.next();
+                        if (record != null) {
+                            sink.next(record);
+                        } else {
+                            sink.complete();
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                }),
+                reader -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        log.debug("Error closing {}: {}", pcapFile, e.getMessage());
+                    }
+                })
+            .subscribeOn(schedulers.dissection());
+    }
+
+    /**
+     * GSMTAP records matching the filter.
+     * With a current packet index only the matching records are read from the capture.
+     */
+    public Flux<PcapRecord> filter(Path pcapFile, GsmtapFilter filter) {
+        return Mono.fromCallable(() -> openIndex(pcapFile))
+            .subscribeOn(schedulers.dissection())
+            .flatMapMany(index -> index
+                .map(packetIndex -> indexed(pcapFile, packetIndex, filter))
+                .orElseGet(() -> records(pcapFile)
+                    .filter(record -> {
+                        GsmtapHeader header = record.gsmtap();
+                        return header != null && filter.matches(record, header);
+                    })));
+    }
+
+    /**
+     * Write the sidecar packet index of a finished capture ("capture.pcap.idx")
+     */
+    public Mono<Path> buildIndex(Path pcapFile) {
+        return Mono.fromCallable(() -> {
+                long started = System.nanoTime();
+                Path indexFile = PacketIndex.write(pcapFile);
+                log.info("📇 Indexed {} in {} ms", pcapFile.getFileName(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                return indexFile;
+            })
+            .subscribeOn(schedulers.dissection());
+    }
+
+    public Mono<Long> count(Path pcapFile, GsmtapFilter filter) {
+        return Mono.fromCallable(() -> openIndex(pcapFile))
+            .subscribeOn(schedulers.dissection())
+            .flatMap(index -> index
+                .map(packetIndex -> Mono.just(packetIndex.count(filter)))
+                .orElseGet(() -> scanCount(pcapFile, filter)));
+    }
+
+    private Mono<Long> scanCount(Path pcapFile, GsmtapFilter filter) {
+        return scan(pcapFile, "count", reader -> {
+            long count = 0;
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                GsmtapHeader header = record.gsmtap();
+                if (header != null && filter.matches(record, header)) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Number of GSMTAP frames per type name (LTE_RRC, UMTS_RRC, ...)
+     */
+    public Mono<Map<String, Long>> countByType(Path pcapFile) {
+        return scan(pcapFile, "countByType", reader -> {
+            long[] counts = new long[256];
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                int offset = record.gsmtapOffset();
+                if (offset >= 0) {
+                    counts[record.data().get(offset + 2) & 0xFF]++;
+                }
+            }
+            Map<String, Long> byType = new TreeMap<>();
+            for (int type = 0; type < counts.length; type++) {
+                if (counts[type] > 0) {
+                    byType.put(GsmtapHeader.typeName(type), counts[type]);
+                }
+            }
+            return byType;
+        });
+    }
+
+    /**
+     * Count frames matching a display filter that only references frame/GSMTAP header fields.
+     * An empty filter counts every frame. Filters on the fields a {@link PacketIndex} keeps
+     * (GSMTAP type, sub-type, ARFCN and its flags) are answered from a current index.
+     */
+    public Mono<Long> count(Path pcapFile, DisplayFilter filter) {
+        if (!INDEXED_FIELDS.containsAll(filter.fields())) {
+            return scanCount(pcapFile, filter);
+        }
+        return Mono.fromCallable(() -> openIndex(pcapFile))
+            .subscribeOn(schedulers.dissection())
+            .flatMap(index -> index
+                .map(packetIndex -> Mono.just(indexedCount(packetIndex, filter)))
+                .orElseGet(() -> scanCount(pcapFile, filter)));
+    }
+
+    private static long indexedCount(PacketIndex index, DisplayFilter filter) {
+        long count = 0;
+        for (int row = 0; row < index.size(); row++) {
+            if (filter.test(toPacket(index, row))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Mono<Long> scanCount(Path pcapFile, DisplayFilter filter) {
+        return scan(pcapFile, "count[" + filter + "]", reader -> {
+            long count = 0;
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                if (filter.test(toPacket(record))) {
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * The compiled filter when it can be evaluated without a dissector
+     */
+    public static Optional<DisplayFilter> headerOnly(String filter) {
+        if (filter == null || filter.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            DisplayFilter compiled = DisplayFilter.compile(filter);
+            return HEADER_FIELDS.containsAll(compiled.fields()) ? Optional.of(compiled) : Optional.empty();
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private Flux<PcapRecord> indexed(Path pcapFile, PacketIndex index, GsmtapFilter filter) {
+        return Flux.<PcapRecord, PcapReader>using(
+                () -> PcapReader.open(pcapFile),
+                reader -> {
+                    IntStream.Builder selected = IntStream.builder();
+                    index.select(filter, selected::add);
+                    int[] rows = selected.build().toArray();
+                    return Flux.range(0, rows.length)
+                        .<PcapRecord>handle((i, sink) -> {
+                            int row = rows[i];
+                            try {
+                                PcapRecord record = reader.readAt(index.fileOffset(row), index.frameNumber(row));
+                                if (record != null) {
+                                    sink.next(record);
+                                }
+                            } catch (IOException e) {
+                                sink.error(e);
+                            }
+                        });
+                },
+                reader -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        log.debug("Error closing {}: {}", pcapFile, e.getMessage());
+                    }
+                })
+            .subscribeOn(schedulers.dissection());
+    }
+
+    private static Optional<PacketIndex> openIndex(Path pcapFile) {
+        try {
+            return PacketIndex.open(pcapFile);
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable packet index of {}: {}", pcapFile.getFileName(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static DissectedPacket toPacket(PcapRecord record) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("frame", "1");
+        fields.put("frame.number", Long.toString(record.frameNumber()));
+        fields.put("frame.len", Integer.toString(record.originalLength()));
+        fields.put("frame.cap_len", Integer.toString(record.capturedLength()));
+
+        GsmtapHeader header = record.gsmtap();
+        if (header != null) {
+            fields.put("gsmtap", "1");
+            fields.put("gsmtap.version", Integer.toString(header.version()));
+            fields.put("gsmtap.hdr_len", Integer.toString(header.headerBytes()));
+            fields.put("gsmtap.type", Integer.toString(header.type()));
+            fields.put("gsmtap.ts", Integer.toString(header.timeslot()));
+            fields.put("gsmtap.arfcn", Integer.toString(header.channel()));
+            fields.put("gsmtap.uplink", tsharkBoolean(header.uplink()));
+            fields.put("gsmtap.pcs_band", tsharkBoolean(header.pcsBand()));
+            fields.put("gsmtap.signal_dbm", Integer.toString(header.signalDbm()));
+            fields.put("gsmtap.snr_db", Integer.toString(header.snrDb()));
+            fields.put("gsmtap.frame_nr", Integer.toUnsignedString(header.frameNumber()));
+            fields.put("gsmtap.sub_type", Integer.toString(header.subType()));
+            fields.put("gsmtap.antenna", Integer.toString(header.antennaNr()));
+            fields.put("gsmtap.sub_slot", Integer.toString(header.subSlot()));
+        }
+        return new DissectedPacket((int) record.frameNumber(), record.epochSeconds(), fields);
+    }
+
+    /**
+     * A boolean field as tshark -T fields prints it
+     */
+    private static String tsharkBoolean(boolean value) {
+        return value ? "True" : "False";
+    }
+
+    /**
+     * The {@link #INDEXED_FIELDS} of an index row, as {@link #toPacket(PcapRecord)} renders them
+     */
+    private static DissectedPacket toPacket(PacketIndex index, int row) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("frame", "1");
+        fields.put("frame.number", Long.toString(index.frameNumber(row)));
+
+        int messageClass = index.messageClass(row);
+        if (messageClass != 0) {
+            int arfcn = index.arfcn(row);
+            fields.put("gsmtap", "1");
+            fields.put("gsmtap.type", Integer.toString(MessageClass.type(messageClass)));
+            fields.put("gsmtap.sub_type", Integer.toString(MessageClass.subType(messageClass)));
+            fields.put("gsmtap.arfcn", Integer.toString(arfcn & 0x3FFF));
+            fields.put("gsmtap.uplink", tsharkBoolean((arfcn & 0x4000) != 0));
+            fields.put("gsmtap.pcs_band", tsharkBoolean((arfcn & 0x8000) != 0));
+        }
+        return new DissectedPacket((int) index.frameNumber(row), index.timestampNanos(row) / 1e9, fields);
+    }
+
+    @FunctionalInterface
+    private interface ReaderTask<T> {
+        T run(PcapReader reader) throws IOException;
+    }
+
+    private <T> Mono<T> scan(Path pcapFile, String operation, ReaderTask<T> task) {
+        return Mono.fromCallable(() -> {
+                long started = System.nanoTime();
+                try (PcapReader reader = PcapReader.open(pcapFile)) {
+                    T result = task.run(reader);
+                    log.debug("📦 {} on {} in {} ms", operation, pcapFile.getFileName(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+                    return result;
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read " + pcapFile, e);
+                }
+            })
+            .subscribeOn(schedulers.dissection());
+    }
+}
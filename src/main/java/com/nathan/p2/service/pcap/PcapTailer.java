@@ -0,0 +1,222 @@
+package com.nathan.p2.service.pcap;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Follows a classic PCAP file while another process (tcpdump -U -w) appends to it.
+ *
+ * New bytes are read into one reusable direct buffer and handed out as whole units: first
+ * the 24-byte global header, then one record (16-byte record header plus captured bytes) at
+ * a time. A record that is only partly written stays in the buffer until the rest arrives.
+ * The tailer sleeps on a {@link WatchService} for the file's directory instead of polling
+ * on a fixed interval; the timeout passed to {@link #poll} bounds the wait on file systems
+ * without change notification.
+ *
+ * When the file is replaced (different file key) or truncated, whatever the old file still
+ * held is delivered first and the new file is then read from its global header.
+ * PCAPNG is not supported here; tcpdump writes classic PCAP.
+ */
+@Slf4j
+public final class PcapTailer implements Closeable {
+
+    private static final int GLOBAL_HEADER_LENGTH = 24;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    private static final int PCAP_MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    private static final int PCAPNG_SHB = 0x0A0D0D0A;
+
+    private final Path file;
+    private final WatchService watcher;
+
+    // Unconsumed bytes are between position and limit
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    private FileChannel channel;
+    private Object fileKey;
+    private long readPosition;
+    private boolean headerRead;
+    private ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+
+    public PcapTailer(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.watcher = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        buffer.flip();
+    }
+
+    /**
+     * Hand every complete unit appended since the last call to {@code action}, waiting up to
+     * {@code timeout} for the file to change if nothing is pending. The buffer passed to the
+     * action is a view into the reusable buffer: copy what you keep before returning.
+     *
+     * @return number of units handed over (global headers included)
+     */
+    public int poll(Duration timeout, Consumer<ByteBuffer> action) throws IOException, InterruptedException {
+        int delivered = drain(action);
+        if (delivered > 0) {
+            return delivered;
+        }
+        WatchKey key = watcher.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        if (key != null) {
+            // Any change in the directory is only a wake-up; the file itself is checked below
+            key.pollEvents();
+            key.reset();
+        }
+        return drain(action);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeChannel();
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private int drain(Consumer<ByteBuffer> action) throws IOException {
+        int delivered = 0;
+        while (true) {
+            if (channel == null && !openChannel()) {
+                return delivered;
+            }
+            delivered += deliverAvailable(action);
+            if (!replaced()) {
+                return delivered;
+            }
+            log.info("🔄 {} was rotated, following the new file", file.getFileName());
+            closeChannel();
+        }
+    }
+
+    /**
+     * Deliver units until the file has nothing more to read
+     */
+    private int deliverAvailable(Consumer<ByteBuffer> action) throws IOException {
+        int delivered = 0;
+        while (true) {
+            int required = requiredBytes();
+            if (buffer.remaining() < required) {
+                if (!fill(required)) {
+                    return delivered;
+                }
+                continue;
+            }
+            if (!headerRead) {
+                readGlobalHeader();
+            }
+            int start = buffer.position();
+            action.accept(buffer.slice(start, required).asReadOnlyBuffer().order(order));
+            buffer.position(start + required);
+            delivered++;
+        }
+    }
+
+    /**
+     * Size of the unit at the buffer position, as far as it is known from the bytes buffered so far
+     */
+    private int requiredBytes() throws IOException {
+        if (!headerRead) {
+            return GLOBAL_HEADER_LENGTH;
+        }
+        if (buffer.remaining() < RECORD_HEADER_LENGTH) {
+            return RECORD_HEADER_LENGTH;
+        }
+        int capturedLength = buffer.order(order).getInt(buffer.position() + 8);
+        if (capturedLength < 0 || capturedLength > MAX_RECORD_LENGTH) {
+            throw new IOException("Corrupt PCAP record in " + file.getFileName() + " at offset "
+                + (readPosition - buffer.remaining()) + ": captured length " + capturedLength);
+        }
+        return RECORD_HEADER_LENGTH + capturedLength;
+    }
+
+    private void readGlobalHeader() throws IOException {
+        int magic = buffer.order(ByteOrder.BIG_ENDIAN).getInt(buffer.position());
+        if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (magic == PCAPNG_SHB) {
+            throw new IOException("Cannot tail PCAPNG file " + file.getFileName());
+        } else {
+            throw new IOException(String.format("Not a PCAP file: %s (magic 0x%08x)", file.getFileName(), magic));
+        }
+        headerRead = true;
+    }
+
+    /**
+     * Read more of the file behind the unconsumed bytes; false if nothing new was written
+     */
+    private boolean fill(int required) throws IOException {
+        if (required > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(required - 1) << 1);
+            larger.put(buffer).flip();
+            buffer = larger;
+        }
+        buffer.compact();
+        int read;
+        try {
+            read = channel.read(buffer, readPosition);
+        } finally {
+            buffer.flip();
+        }
+        if (read <= 0) {
+            return false;
+        }
+        readPosition += read;
+        return true;
+    }
+
+    private boolean openChannel() throws IOException {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        readPosition = 0;
+        headerRead = false;
+        buffer.clear().flip();
+        return true;
+    }
+
+    /**
+     * The path now names another file, or ours was truncated
+     */
+    private boolean replaced() throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return !Objects.equals(attributes.fileKey(), fileKey) || attributes.size() < readPosition;
+        } catch (NoSuchFileException e) {
+            // Renamed away and not recreated yet: keep following the old file
+            return false;
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
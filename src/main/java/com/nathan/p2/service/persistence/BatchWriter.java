@@ -0,0 +1,112 @@
+package com.nathan.p2.service.persistence;
+
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batch Writer - bulk inserts of analysis results
+ *
+ * Rows are written in multi-row INSERT statements of eca.persistence.batch-size rows each,
+ * one statement (and round trip) per batch instead of one per row, on the persistence scheduler.
+ * Each table also has a {@link WriteBehind} buffer that collects rows from any number of
+ * producers and writes them when a batch is full or flush-interval has passed.
+ *
+ * Metrics per table: persistence.rows (rows inserted) and persistence.pending (see {@link WriteBehind}).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchWriter {
+
+    private final DatabaseClient databaseClient;
+    private final ToolsConfig config;
+    private final PipelineSchedulers schedulers;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<InsertTable<?>, WriteBehind<?>> buffers = new ConcurrentHashMap<>();
+    private final Map<InsertTable<?>, Counter> inserted = new ConcurrentHashMap<>();
+
+    /**
+     * Queue rows on the table's write-behind buffer; completes once all of them are inserted
+     */
+    public <T> Mono<Void> write(InsertTable<T> table, Collection<T> rows) {
+        return buffer(table).write(rows);
+    }
+
+    /**
+     * Write a stream of rows a batch at a time as they arrive, without holding the whole stream;
+     * at most one batch is buffered while the previous one is written. Completes with the number
+     * of rows written.
+     */
+    public <T> Mono<Long> writeAll(InsertTable<T> table, Flux<T> rows) {
+        return rows
+            .buffer(Math.max(1, config.getPersistence().getBatchSize()))
+            .concatMap(batch -> write(table, batch).thenReturn((long) batch.size()), 1)
+            .reduce(0L, Long::sum);
+    }
+
+    /**
+     * The table's write-behind buffer, shared by all producers
+     */
+    @SuppressWarnings("unchecked")
+    public <T> WriteBehind<T> buffer(InsertTable<T> table) {
+        return (WriteBehind<T>) buffers.computeIfAbsent(table, t -> new WriteBehind<>(this, table,
+            config.getPersistence(), meterRegistry));
+    }
+
+    /**
+     * Insert the rows now, bypassing the buffer; emits the number of rows inserted
+     */
+    public <T> Mono<Long> insert(InsertTable<T> table, List<T> rows) {
+        if (rows.isEmpty()) {
+            return Mono.just(0L);
+        }
+        int batchSize = Math.max(1, config.getPersistence().getBatchSize());
+        return Flux.range(0, (rows.size() + batchSize - 1) / batchSize)
+            .concatMap(i -> insertBatch(table, rows.subList(i * batchSize, Math.min(rows.size(), (i + 1) * batchSize))))
+            .reduce(0L, Long::sum)
+            .subscribeOn(schedulers.persistence());
+    }
+
+    private <T> Mono<Long> insertBatch(InsertTable<T> table, List<T> rows) {
+        return Mono.defer(() -> {
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(table.insertSql(rows.size()));
+            List<InsertTable.Column<T>> columns = table.columns();
+            for (int r = 0; r < rows.size(); r++) {
+                T row = rows.get(r);
+                for (int c = 0; c < columns.size(); c++) {
+                    InsertTable.Column<T> column = columns.get(c);
+                    Object value = column.value().apply(row);
+                    String parameter = InsertTable.parameter(r, c);
+                    spec = value != null ? spec.bind(parameter, value) : spec.bindNull(parameter, column.type());
+                }
+            }
+            return spec.fetch().rowsUpdated();
+        })
+        .doOnNext(count -> inserted.computeIfAbsent(table, t -> Counter.builder("persistence.rows")
+                .description("Rows bulk-inserted into the table")
+                .tag("table", t.name())
+                .register(meterRegistry))
+            .increment(count));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Rows still buffered are written before the connection pool goes away
+        buffers.values().forEach(WriteBehind::close);
+    }
+}
@@ -0,0 +1,87 @@
+package com.nathan.p2.service.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Table rows of type T are bulk-inserted into: the columns written and how each value is read
+ * from the entity. Every row of a batch binds all columns, nulls included, so one multi-row
+ * INSERT covers the batch; the id column is left to the database.
+ */
+public final class InsertTable<T> {
+
+    /**
+     * @param type declared type of the value, needed to bind a null
+     */
+    public record Column<T>(String name, Class<?> type, Function<T, ?> value) {}
+
+    private final String name;
+    private final List<Column<T>> columns;
+
+    private InsertTable(String name, List<Column<T>> columns) {
+        this.name = name;
+        this.columns = List.copyOf(columns);
+    }
+
+    public static <T> Builder<T> builder(String name) {
+        return new Builder<>(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<Column<T>> columns() {
+        return columns;
+    }
+
+    /**
+     * "INSERT INTO name (a, b) VALUES (:r0c0, :r0c1), (:r1c0, :r1c1), ..." for the given number of rows
+     */
+    String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(name).append(" (");
+        for (int c = 0; c < columns.size(); c++) {
+            sql.append(c > 0 ? ", " : "").append(columns.get(c).name());
+        }
+        sql.append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            sql.append(r > 0 ? ", (" : "(");
+            for (int c = 0; c < columns.size(); c++) {
+                sql.append(c > 0 ? ", :" : ":").append(parameter(r, c));
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    static String parameter(int row, int column) {
+        return "r" + row + "c" + column;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    public static final class Builder<T> {
+        private final String name;
+        private final List<Column<T>> columns = new ArrayList<>();
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public <V> Builder<T> column(String column, Class<V> type, Function<T, V> value) {
+            columns.add(new Column<>(column, type, value));
+            return this;
+        }
+
+        public InsertTable<T> build() {
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("No columns to insert into " + name);
+            }
+            return new InsertTable<>(name, columns);
+        }
+    }
+}
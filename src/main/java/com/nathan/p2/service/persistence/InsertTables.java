@@ -0,0 +1,67 @@
+package com.nathan.p2.service.persistence;
+
+import com.nathan.p2.domain.Anomaly;
+import com.nathan.p2.domain.GpsTrace;
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.domain.Record;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Bulk-insert mappings of the tables analysis results are written to (columns as in schema.sql)
+ */
+public final class InsertTables {
+
+    public static final InsertTable<KpiAggregate> KPI_AGGREGATES = InsertTable.<KpiAggregate>builder("kpi_aggregates")
+        .column("session_id", Long.class, KpiAggregate::getSessionId)
+        .column("metric", String.class, KpiAggregate::getMetric)
+        .column("window_start", LocalDateTime.class, KpiAggregate::getWindowStart)
+        .column("window_end", LocalDateTime.class, KpiAggregate::getWindowEnd)
+        .column("min_value", Double.class, KpiAggregate::getMinValue)
+        .column("avg_value", Double.class, KpiAggregate::getAvgValue)
+        .column("max_value", Double.class, KpiAggregate::getMaxValue)
+        .column("rat", String.class, KpiAggregate::getRat)
+        .column("latitude", Double.class, KpiAggregate::getLatitude)
+        .column("longitude", Double.class, KpiAggregate::getLongitude)
+        .column("cell_id", String.class, KpiAggregate::getCellId)
+        .column("pci", Integer.class, KpiAggregate::getPci)
+        .build();
+
+    public static final InsertTable<GpsTrace> GPS_TRACES = InsertTable.<GpsTrace>builder("gps_traces")
+        .column("session_id", Long.class, GpsTrace::getSessionId)
+        .column("timestamp", LocalDateTime.class, GpsTrace::getTimestamp)
+        .column("latitude", Double.class, GpsTrace::getLatitude)
+        .column("longitude", Double.class, GpsTrace::getLongitude)
+        .column("altitude", Double.class, GpsTrace::getAltitude)
+        .column("speed", Double.class, GpsTrace::getSpeed)
+        .build();
+
+    public static final InsertTable<Anomaly> ANOMALIES = InsertTable.<Anomaly>builder("anomalies")
+        .column("session_id", Long.class, Anomaly::getSessionId)
+        .column("category", String.class, a -> a.getCategory() != null ? a.getCategory().name() : null)
+        .column("severity", String.class, Anomaly::getSeverity)
+        .column("timestamp", LocalDateTime.class, Anomaly::getTimestamp)
+        .column("latitude", Double.class, Anomaly::getLatitude)
+        .column("longitude", Double.class, Anomaly::getLongitude)
+        .column("details_json", String.class, Anomaly::getDetailsJson)
+        .build();
+
+    public static final InsertTable<Record> RECORDS = InsertTable.<Record>builder("records")
+        .column("session_id", Long.class, Record::getSessionId)
+        .column("timestamp", Instant.class, Record::getTimestamp)
+        .column("protocol", String.class, Record::getProtocol)
+        .column("direction", String.class, Record::getDirection)
+        .column("message_type", String.class, Record::getMessageType)
+        .column("layer", String.class, Record::getLayer)
+        .column("rat", String.class, Record::getRat)
+        .column("frame_number", Integer.class, Record::getFrameNumber)
+        .column("hex_data", String.class, Record::getHexData)
+        .column("decoded_data", String.class, Record::getDecodedData)
+        .column("payload_json", String.class, Record::getPayloadJson)
+        .column("length", Integer.class, Record::getLength)
+        .build();
+
+    private InsertTables() {
+    }
+}
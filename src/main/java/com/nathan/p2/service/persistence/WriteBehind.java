@@ -0,0 +1,182 @@
+package com.nathan.p2.service.persistence;
+
+import com.nathan.p2.config.ToolsConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer of one table: rows from any producer are collected and inserted by
+ * {@link BatchWriter} once batch-size rows are waiting or flush-interval has passed, one batch
+ * at a time and in the order they were queued.
+ *
+ * {@link #write} completes when its rows are in the database, or fails with the error of the
+ * batch that could not be inserted.
+ */
+@Slf4j
+public final class WriteBehind<T> {
+
+    private final BatchWriter writer;
+    private final InsertTable<T> table;
+    private final int batchSize;
+
+    private final Sinks.Many<Batch<T>> batches = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable flusher;
+    private final Disposable ticker;
+    private final AtomicInteger pendingRows = new AtomicInteger();
+
+    // Rows not cut into a batch yet, and the last batch cut; guarded by this
+    private List<Pending<T>> pending = new ArrayList<>();
+    private CompletableFuture<Void> lastBatch = CompletableFuture.completedFuture(null);
+
+    /**
+     * Rows of one {@link #write} call, done when the last of them is inserted
+     */
+    private static final class Write {
+        final AtomicInteger remaining;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Write(int rows) {
+            remaining = new AtomicInteger(rows);
+        }
+    }
+
+    private record Pending<T>(T row, Write write) {}
+
+    private record Batch<T>(List<Pending<T>> rows, CompletableFuture<Void> done) {}
+
+    WriteBehind(BatchWriter writer, InsertTable<T> table, ToolsConfig.Persistence config, MeterRegistry meterRegistry) {
+        this.writer = writer;
+        this.table = table;
+        this.batchSize = Math.max(1, config.getBatchSize());
+        this.flusher = batches.asFlux()
+            .concatMap(this::insert)
+            .subscribe();
+        Duration interval = config.getFlushInterval();
+        this.ticker = Flux.interval(interval, interval)
+            .subscribe(tick -> cut());
+
+        Gauge.builder("persistence.pending", pendingRows, AtomicInteger::get)
+            .description("Rows queued for the table and not inserted yet")
+            .tag("table", table.name())
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue rows; completes once all of them are inserted
+     */
+    public Mono<Void> write(Collection<T> rows) {
+        if (rows.isEmpty()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            Write write = new Write(rows.size());
+            List<Pending<T>> queued = new ArrayList<>(rows.size());
+            for (T row : rows) {
+                queued.add(new Pending<>(row, write));
+            }
+            pendingRows.addAndGet(rows.size());
+            add(queued);
+            return Mono.fromFuture(write.done);
+        });
+    }
+
+    /**
+     * Write what is queued now; completes when it (and everything queued before) is inserted
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> Mono.fromFuture(cut()));
+    }
+
+    /**
+     * Rows queued and not inserted yet
+     */
+    public int pending() {
+        return pendingRows.get();
+    }
+
+    void close() {
+        ticker.dispose();
+        try {
+            flush().block(Duration.ofSeconds(30));
+        } catch (RuntimeException e) {
+            log.warn("Could not write the last {} rows of {}: {}", pending(), table, e.getMessage());
+        }
+        batches.tryEmitComplete();
+        flusher.dispose();
+    }
+
+    private synchronized void add(List<Pending<T>> rows) {
+        for (Pending<T> row : rows) {
+            pending.add(row);
+            if (pending.size() >= batchSize) {
+                cut();
+            }
+        }
+    }
+
+    /**
+     * Hand the queued rows over as one batch; the future of the last batch
+     */
+    private synchronized CompletableFuture<Void> cut() {
+        if (!pending.isEmpty()) {
+            Batch<T> batch = new Batch<>(pending, new CompletableFuture<>());
+            pending = new ArrayList<>();
+            lastBatch = batch.done();
+            // Serialized by the lock, as the unicast sink requires
+            if (batches.tryEmitNext(batch).isFailure()) {
+                reject(batch, new IllegalStateException("Write-behind buffer of " + table + " is closed"));
+                pendingRows.addAndGet(-batch.rows().size());
+                batch.done().complete(null);
+            }
+        }
+        return lastBatch;
+    }
+
+    private Mono<Void> insert(Batch<T> batch) {
+        List<T> rows = new ArrayList<>(batch.rows().size());
+        batch.rows().forEach(p -> rows.add(p.row()));
+        return writer.insert(table, rows)
+            .doOnSuccess(count -> {
+                for (Pending<T> p : batch.rows()) {
+                    if (p.write().remaining.decrementAndGet() == 0) {
+                        p.write().done.complete(null);
+                    }
+                }
+            })
+            .doOnError(e -> log.error("❌ Could not insert {} rows into {}: {}", rows.size(), table, e.getMessage()))
+            .onErrorResume(e -> {
+                reject(batch, e);
+                return Mono.empty();
+            })
+            .doFinally(signal -> {
+                pendingRows.addAndGet(-rows.size());
+                batch.done().complete(null);
+            })
+            .then();
+    }
+
+    /**
+     * Fail the writes with rows in the batch
+     */
+    private void reject(Batch<T> batch, Throwable error) {
+        Set<Write> failed = new LinkedHashSet<>();
+        for (Pending<T> p : batch.rows()) {
+            failed.add(p.write());
+        }
+        failed.forEach(write -> write.done.completeExceptionally(error));
+    }
+}
@@ -1,72 +1,257 @@
 package com.nathan.p2.service.process;
 
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.util.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * External Tool Service - starts tshark, adb, python and other tools
+ *
+ * Every start takes a slot of its tool from {@link ProcessAdmission} first, so a burst of
+ * requests queues by priority instead of starting everything at once; the slot is given back
+ * when the process exits. Cancelling a start that is still queued withdraws it, cancelling
+ * {@link #logs} stops the process, and a process outliving its spec's timeout (or by default
+ * its tool's eca.processes.tools.*.timeout; never for live capture) is stopped.
+ *
+ * Started processes are registered by handle and spec id; only the last stderr lines of each
+ * are kept (eca.processes.stderr-lines), and exited processes are forgotten after
+ * eca.processes.finished-retention.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class ExternalToolService {
-    private final Map<String, Process> processes = new ConcurrentHashMap<>();
-    private final Map<ProcessHandle, List<String>> stderrCache = new ConcurrentHashMap<>();
+    private static final long STOP_GRACE_SECONDS = 5;
+
+    // States of a start in launchUnlessCancelled
+    private static final int PENDING = 0;
+    private static final int LAUNCHING = 1;
+    private static final int LAUNCHED = 2;
+    private static final int CANCELLED = 3;
+
+    private final ProcessAdmission admission;
+    private final ToolsConfig config;
+
+    private ProcessRegistry registry;
+
+    @PostConstruct
+    public void init() {
+        registry = new ProcessRegistry(config.getProcesses().getStderrLines(), config.getProcesses().getFinishedRetention());
+    }
 
     public Mono<ProcessHandle> start(ProcessSpec spec) {
+        return startInteractive(spec).map(Process::toHandle);
+    }
+
+    /**
+     * Start a long-lived tool whose stdin/stdout the caller drives directly (e.g. sharkd).
+     * The process is still registered here, so stop() and stderr() work as usual.
+     */
+    public Mono<Process> startInteractive(ProcessSpec spec) {
+        return admit(spec).flatMap(permit -> launchUnlessCancelled(spec, permit));
+    }
+
+    /**
+     * Start a process built by the caller, under the same per-tool limits. Blocks while the
+     * tool has no free slot; the caller owns the process (it is not registered here).
+     */
+    public Process launch(ProcessBuilder builder, ToolPriority priority) throws IOException {
+        String tool = ProcessAdmission.tool(builder.command().get(0));
+        ProcessAdmission.Permit permit = acquire(tool, priority);
+        try {
+            Process p = builder.start();
+            p.onExit().thenRun(permit::release);
+            stopAfter(p, tool + " (PID " + p.pid() + ")", timeout(tool, priority, null));
+            return p;
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Keep a long-lived tool running: it is restarted whenever it exits until the returned
+     * handle is closed. {@code onStart} receives every new process (to attach to its stdin and
+     * stdout) on the supervising thread.
+     */
+    public SupervisedProcess supervise(ProcessSpec spec, Consumer<Process> onStart) {
+        SupervisedProcess supervised = new SupervisedProcess(this, spec, onStart);
+        supervised.start();
+        return supervised;
+    }
+
+    /**
+     * Start the spec on the calling thread, waiting for a slot of its tool
+     */
+    Process launch(ProcessSpec spec) throws IOException {
+        return launch(spec, acquire(ProcessAdmission.tool(spec.command()), spec.priority()));
+    }
+
+    private Mono<ProcessAdmission.Permit> admit(ProcessSpec spec) {
+        return Mono.create(sink -> {
+            CompletableFuture<ProcessAdmission.Permit> request =
+                admission.request(ProcessAdmission.tool(spec.command()), spec.priority());
+            sink.onCancel(() -> ProcessAdmission.withdraw(request));
+            request.whenComplete((permit, error) -> {
+                if (permit != null) {
+                    sink.success(permit);
+                }
+            });
+        });
+    }
+
+    /**
+     * Launch with the permit on an I/O thread. Cancelled before the launch, the slot is given
+     * back and nothing starts; cancelled during it, the process is stopped once started, and
+     * its exit gives the slot back. Either way no process runs without holding its slot.
+     */
+    private Mono<Process> launchUnlessCancelled(ProcessSpec spec, ProcessAdmission.Permit permit) {
+        AtomicInteger state = new AtomicInteger(PENDING);
         return Mono.fromCallable(() -> {
-            List<String> cmd = new ArrayList<>();
-            cmd.add(spec.command());
-            cmd.addAll(spec.args());
-            
-            ProcessBuilder pb = new ProcessBuilder(cmd);
-            pb.directory(spec.workingDirectory().toFile());
-            pb.environment().putAll(spec.environment());
-            
-            Process p = pb.start();
-            processes.put(spec.id(), p);
-            
-            // Capture stderr if requested
-            if (spec.captureStderr()) {
-                List<String> stderrLines = new ArrayList<>();
-                stderrCache.put(p.toHandle(), stderrLines);
-                
-                // Start stderr capture thread
-                new Thread(() -> {
-                    try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getErrorStream()))) {
-                        String line;
-                        while ((line = r.readLine()) != null) {
-                            stderrLines.add(line);
-                            log.debug("[{}] stderr: {}", spec.id(), line);
-                        }
-                    } catch (Exception e) {
-                        log.error("Error capturing stderr: {}", e.getMessage());
-                    }
-                }).start();
-            }
-            
-            log.info("Started: {} (PID: {})", spec.id(), p.pid());
-            return p.toHandle();
-        }).subscribeOn(Schedulers.boundedElastic());
+                if (!state.compareAndSet(PENDING, LAUNCHING)) {
+                    return null;
+                }
+                Process p = launch(spec, permit);
+                if (!state.compareAndSet(LAUNCHING, LAUNCHED)) {
+                    log.debug("Start of {} was cancelled, stopping it", spec.id());
+                    terminate(p);
+                    return null;
+                }
+                return p;
+            })
+            .subscribeOn(VirtualThreads.IO)
+            .doOnCancel(() -> {
+                if (state.compareAndSet(PENDING, CANCELLED)) {
+                    permit.release();
+                } else {
+                    state.compareAndSet(LAUNCHING, CANCELLED);
+                }
+            });
+    }
+
+    private ProcessAdmission.Permit acquire(String tool, ToolPriority priority) throws InterruptedIOException {
+        try {
+            return admission.acquire(tool, priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a " + tool + " slot");
+        }
+    }
+
+    private Process launch(ProcessSpec spec, ProcessAdmission.Permit permit) throws IOException {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(spec.command());
+        cmd.addAll(spec.args());
+        
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.directory(spec.workingDirectory().toFile());
+        pb.environment().putAll(spec.environment());
+        if (!spec.captureStderr()) {
+            // Unread, a full stderr pipe would stall the tool
+            pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        }
+        
+        Process p;
+        try {
+            p = pb.start();
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+        p.onExit().thenRun(permit::release);
+        registry.register(spec.id(), p, spec.captureStderr());
+        stopAfter(p, spec.id(), timeout(ProcessAdmission.tool(spec.command()), spec.priority(), spec.timeout()));
+        
+        log.info("Started: {} (PID: {}, {})", spec.id(), p.pid(), permit.priority());
+        return p;
+    }
+
+    /**
+     * How long a process may run: the spec's own timeout, else its tool's
+     * eca.processes.tools.*.timeout; live processes run as long as their capture. Zero = no limit.
+     */
+    private Duration timeout(String tool, ToolPriority priority, Duration requested) {
+        if (requested != null) {
+            return requested;
+        }
+        ToolsConfig.ToolLimit limit = config.getProcesses().getTools().get(tool);
+        if (priority == ToolPriority.LIVE || limit == null || limit.getTimeout() == null) {
+            return Duration.ZERO;
+        }
+        return limit.getTimeout();
+    }
+
+    /**
+     * Stop the process once it has run for {@code timeout}, so a hung tool gives its slot back
+     */
+    private static void stopAfter(Process p, String name, Duration timeout) {
+        if (timeout.isZero() || timeout.isNegative()) {
+            return;
+        }
+        p.onExit()
+            .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+            .exceptionally(expired -> {
+                log.warn("⏱️ {} still running after {}, stopping it", name, timeout);
+                terminate(p);
+                return null;
+            });
+    }
+
+    /**
+     * Ask the process to exit, and kill it if it has not within the grace period
+     */
+    private static void terminate(Process p) {
+        p.destroy();
+        p.onExit()
+            .orTimeout(STOP_GRACE_SECONDS, TimeUnit.SECONDS)
+            .exceptionally(timeout -> {
+                p.destroyForcibly();
+                return null;
+            });
+    }
+
+    /**
+     * Forget an exited process
+     */
+    void release(Process p) {
+        registry.find(p).ifPresent(registry::remove);
+    }
+
+    /**
+     * The most recently started process with the spec id, while it is registered
+     */
+    public Optional<ProcessHandle> find(String id) {
+        return registry.find(id).map(entry -> entry.process().toHandle());
     }
 
     public Flux<String> logs(ProcessHandle handle) {
         return Flux.<String>create(sink -> {
-            Process p = processes.values().stream()
-                .filter(proc -> proc.toHandle().equals(handle))
-                .findFirst().orElse(null);
+            Process p = registry.find(handle).map(ProcessRegistry.Entry::process).orElse(null);
             
             if (p == null) {
                 sink.error(new IllegalStateException("Process not found"));
                 return;
             }
+            // Nobody reads the output any more: stop the process, which also ends the read below
+            sink.onCancel(() -> terminate(p));
             
             try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
                 String line;
@@ -77,47 +262,39 @@ public class ExternalToolService {
             } catch (Exception e) {
                 sink.error(e);
             }
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(VirtualThreads.IO);
     }
 
+    /**
+     * The process's last captured stderr lines, then new ones as they are written, until it exits
+     */
     public Flux<String> stderr(ProcessHandle handle) {
-        return Flux.defer(() -> {
-            List<String> lines = stderrCache.get(handle);
-            if (lines == null) {
-                return Flux.empty();
-            }
-            return Flux.fromIterable(new ArrayList<>(lines));
-        });
+        return Flux.defer(() -> registry.find(handle)
+            .map(ProcessRegistry.Entry::stderr)
+            .orElse(Flux.empty()));
     }
 
     public Mono<Integer> stop(ProcessHandle handle) {
         return Mono.fromCallable(() -> {
-            Process p = processes.values().stream()
-                .filter(proc -> proc.toHandle().equals(handle))
-                .findFirst().orElse(null);
-            
-            if (p == null) return 0;
+            ProcessRegistry.Entry entry = registry.find(handle).orElse(null);
+            if (entry == null) return 0;
             
+            Process p = entry.process();
             p.destroy();
             if (!p.waitFor(10, TimeUnit.SECONDS)) {
-                p.destroyForcibly();
+                p.destroyForcibly().waitFor();
             }
             
             int code = p.exitValue();
-            processes.values().remove(p);
-            stderrCache.remove(handle);
+            registry.remove(entry);
             log.info("Stopped with code: {}", code);
             return code;
-        }).subscribeOn(Schedulers.boundedElastic());
+        }).subscribeOn(VirtualThreads.IO);
     }
 
     public Mono<Integer> awaitExit(ProcessHandle handle) {
-        return Mono.fromCallable(() -> {
-            Process p = processes.values().stream()
-                .filter(proc -> proc.toHandle().equals(handle))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Process not found"));
-            return p.waitFor();
-        }).subscribeOn(Schedulers.boundedElastic());
+        return Mono.defer(() -> registry.find(handle)
+            .map(entry -> Mono.fromFuture(entry.process().onExit()).map(Process::exitValue))
+            .orElseGet(() -> Mono.error(new IllegalStateException("Process not found"))));
     }
 }
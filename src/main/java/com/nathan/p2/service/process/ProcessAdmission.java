@@ -0,0 +1,259 @@
+package com.nathan.p2.service.process;
+
+import com.nathan.p2.config.ToolsConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process Admission - how many processes of each external tool may run at once
+ *
+ * Every tool (tshark, adb, python, ...) gets as many slots as fit both the cores and the share
+ * of physical memory external tools may use together (eca.processes), unless its limit is
+ * configured explicitly. A request for a tool without a free slot waits in a queue ordered by
+ * {@link ToolPriority}, then by arrival; live work is admitted at once, even beyond the limit.
+ * A waiting request can be withdrawn.
+ *
+ * Metrics per tool: process.running and process.queued (gauges), process.queue.wait and
+ * process.run.time (timers, also tagged with the priority).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProcessAdmission {
+
+    private final ToolsConfig config;
+    private final MeterRegistry meterRegistry;
+
+    private final int cores = Runtime.getRuntime().availableProcessors();
+    private final long memory = physicalMemory();
+    private final Map<String, Slots> tools = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private record Ticket(ToolPriority priority, long sequence, long enqueued, CompletableFuture<Permit> future) {}
+
+    private static final Comparator<Ticket> ORDER = Comparator.comparing(Ticket::priority)
+        .thenComparingLong(Ticket::sequence);
+
+    /**
+     * Name a command is limited under, e.g. "/usr/bin/python3.11" and "python.exe" are both "python"
+     */
+    public static String tool(String command) {
+        Path file = Path.of(command).getFileName();
+        String name = (file != null ? file.toString() : command).toLowerCase(Locale.ROOT);
+        if (name.endsWith(".exe")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        String base = name.replaceAll("[0-9.]+$", "");
+        return base.isEmpty() ? name : base;
+    }
+
+    /**
+     * Slots of the tool
+     */
+    public int limit(String tool) {
+        return slots(tool).limit;
+    }
+
+    /**
+     * A slot of the tool: completed at once when one is free (or the priority is live), otherwise
+     * when it is the tool's turn. Cancel the future, or use {@link #withdraw}, to stop waiting.
+     */
+    public CompletableFuture<Permit> request(String tool, ToolPriority priority) {
+        Slots slots = slots(tool);
+        Ticket ticket = new Ticket(priority, sequence.incrementAndGet(), System.nanoTime(), new CompletableFuture<>());
+        boolean admitted;
+        synchronized (slots) {
+            admitted = priority == ToolPriority.LIVE || (slots.running < slots.limit && slots.waiting.isEmpty());
+            if (admitted) {
+                slots.running++;
+            } else {
+                slots.waiting.add(ticket);
+            }
+        }
+        if (admitted) {
+            grant(slots, ticket);
+        } else {
+            log.debug("⏳ {} request waiting for a slot ({} of {} running, {} queued)",
+                tool, slots.running, slots.limit, slots.waiting.size());
+            ticket.future().whenComplete((permit, error) -> {
+                if (ticket.future().isCancelled()) {
+                    synchronized (slots) {
+                        slots.waiting.remove(ticket);
+                    }
+                }
+            });
+        }
+        return ticket.future();
+    }
+
+    /**
+     * Wait for a slot of the tool; the request is withdrawn when the thread is interrupted
+     */
+    public Permit acquire(String tool, ToolPriority priority) throws InterruptedException {
+        CompletableFuture<Permit> request = request(tool, priority);
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            withdraw(request);
+            throw e;
+        } catch (ExecutionException e) {
+            // Requests are only ever completed with a permit or cancelled
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop waiting for a slot; a slot granted in the meantime is given back
+     */
+    public static void withdraw(CompletableFuture<Permit> request) {
+        if (!request.cancel(false)) {
+            Permit permit = request.getNow(null);
+            if (permit != null) {
+                permit.release();
+            }
+        }
+    }
+
+    private void grant(Slots slots, Ticket ticket) {
+        slots.queueWait.get(ticket.priority()).record(System.nanoTime() - ticket.enqueued(), TimeUnit.NANOSECONDS);
+        Permit permit = new Permit(slots, ticket.priority());
+        if (!ticket.future().complete(permit)) {
+            // Withdrawn while it was being granted
+            permit.release();
+        }
+    }
+
+    private void release(Slots slots) {
+        List<Ticket> next = new ArrayList<>();
+        synchronized (slots) {
+            slots.running--;
+            while (slots.running < slots.limit && !slots.waiting.isEmpty()) {
+                Ticket ticket = slots.waiting.poll();
+                if (!ticket.future().isDone()) {
+                    slots.running++;
+                    next.add(ticket);
+                }
+            }
+        }
+        next.forEach(ticket -> grant(slots, ticket));
+    }
+
+    private Slots slots(String tool) {
+        return tools.computeIfAbsent(tool, this::createSlots);
+    }
+
+    private Slots createSlots(String tool) {
+        Slots slots = new Slots(tool, limitOf(tool));
+        Gauge.builder("process.running", slots, s -> s.running)
+            .description("Processes of the tool holding a slot")
+            .tag("tool", tool)
+            .register(meterRegistry);
+        Gauge.builder("process.queued", slots, s -> s.waiting.size())
+            .description("Invocations of the tool waiting for a slot")
+            .tag("tool", tool)
+            .register(meterRegistry);
+        for (ToolPriority priority : ToolPriority.values()) {
+            slots.queueWait.put(priority, Timer.builder("process.queue.wait")
+                .description("Time from request to start of a tool invocation")
+                .tags("tool", tool, "priority", priority.name())
+                .register(meterRegistry));
+            slots.runTime.put(priority, Timer.builder("process.run.time")
+                .description("Time a tool invocation held its slot")
+                .tags("tool", tool, "priority", priority.name())
+                .register(meterRegistry));
+        }
+        log.info("⚙️ Up to {} concurrent {} processes ({} cores, {} MB memory)",
+            slots.limit, tool, cores, memory / (1024 * 1024));
+        return slots;
+    }
+
+    /**
+     * Configured limit, else as many processes as fit the cores and the tools' share of memory
+     */
+    private int limitOf(String tool) {
+        ToolsConfig.Processes processes = config.getProcesses();
+        ToolsConfig.ToolLimit limit = processes.getTools().getOrDefault(tool, new ToolsConfig.ToolLimit());
+        if (limit.getMaxConcurrent() > 0) {
+            return limit.getMaxConcurrent();
+        }
+        int byCores = (int) (cores / Math.max(limit.getCoresPerProcess(), 0.01));
+        long byMemory = memory > 0
+            ? (long) (memory * processes.getMemoryFraction() / Math.max(limit.getMemoryPerProcess().toBytes(), 1))
+            : Integer.MAX_VALUE;
+        return (int) Math.max(1, Math.min(byCores, byMemory));
+    }
+
+    private static long physicalMemory() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize();
+        }
+        return 0;
+    }
+
+    private static final class Slots {
+        final String tool;
+        final int limit;
+        final PriorityQueue<Ticket> waiting = new PriorityQueue<>(ORDER);
+        final Map<ToolPriority, Timer> queueWait = new EnumMap<>(ToolPriority.class);
+        final Map<ToolPriority, Timer> runTime = new EnumMap<>(ToolPriority.class);
+        int running;
+
+        Slots(String tool, int limit) {
+            this.tool = tool;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * A slot held by one tool invocation
+     */
+    public final class Permit {
+        private final Slots slots;
+        private final ToolPriority priority;
+        private final long granted = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Slots slots, ToolPriority priority) {
+            this.slots = slots;
+            this.priority = priority;
+        }
+
+        public String tool() {
+            return slots.tool;
+        }
+
+        public ToolPriority priority() {
+            return priority;
+        }
+
+        /**
+         * Give the slot back to the next waiting invocation; later calls do nothing
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                slots.runTime.get(priority).record(System.nanoTime() - granted, TimeUnit.NANOSECONDS);
+                ProcessAdmission.this.release(slots);
+            }
+        }
+    }
+}
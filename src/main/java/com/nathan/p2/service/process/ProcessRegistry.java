@@ -0,0 +1,115 @@
+package com.nathan.p2.service.process;
+
+import com.nathan.p2.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes started by {@link ExternalToolService}, looked up by handle or spec id in O(1).
+ *
+ * Each process keeps only its last stderr lines, in a ring that new {@link Entry#stderr()}
+ * subscribers get replayed before the live lines. A process is forgotten (reaped) a while after
+ * it exited, so callers that look it up just after a quick exit still find its output.
+ */
+@Slf4j
+final class ProcessRegistry {
+
+    private final Map<ProcessHandle, Entry> byHandle = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+    private final int stderrLines;
+    private final Duration retention;
+
+    ProcessRegistry(int stderrLines, Duration retention) {
+        this.stderrLines = Math.max(1, stderrLines);
+        this.retention = retention;
+    }
+
+    /**
+     * One registered process
+     */
+    final class Entry {
+        private final String id;
+        private final Process process;
+        private final Sinks.Many<String> stderr;
+
+        private Entry(String id, Process process, boolean captureStderr) {
+            this.id = id;
+            this.process = process;
+            this.stderr = captureStderr ? Sinks.many().replay().limit(stderrLines) : null;
+        }
+
+        String id() {
+            return id;
+        }
+
+        Process process() {
+            return process;
+        }
+
+        /**
+         * The last captured stderr lines, then the live ones until the process closes stderr
+         */
+        Flux<String> stderr() {
+            return stderr != null ? stderr.asFlux() : Flux.empty();
+        }
+    }
+
+    Entry register(String id, Process process, boolean captureStderr) {
+        Entry entry = new Entry(id, process, captureStderr);
+        byHandle.put(process.toHandle(), entry);
+        // Spec ids are not guaranteed unique; the id index points at the latest process
+        byId.put(id, entry);
+        if (captureStderr) {
+            VirtualThreads.start("stderr-" + id, () -> readStderr(entry));
+        }
+        process.onExit().thenRun(() -> CompletableFuture.delayedExecutor(retention.toMillis(), TimeUnit.MILLISECONDS)
+            .execute(() -> remove(entry)));
+        return entry;
+    }
+
+    Optional<Entry> find(ProcessHandle handle) {
+        return Optional.ofNullable(byHandle.get(handle));
+    }
+
+    Optional<Entry> find(String id) {
+        return Optional.ofNullable(byId.get(id));
+    }
+
+    Optional<Entry> find(Process process) {
+        return find(process.toHandle()).filter(entry -> entry.process == process);
+    }
+
+    void remove(Entry entry) {
+        byHandle.remove(entry.process.toHandle(), entry);
+        byId.remove(entry.id, entry);
+    }
+
+    int size() {
+        return byHandle.size();
+    }
+
+    private void readStderr(Entry entry) {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(entry.process.getErrorStream()))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                entry.stderr.tryEmitNext(line);
+                log.debug("[{}] stderr: {}", entry.id, line);
+            }
+        } catch (IOException e) {
+            log.debug("[{}] stderr closed: {}", entry.id, e.getMessage());
+        } finally {
+            entry.stderr.tryEmitComplete();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.nathan.p2.service.process;
 
 import lombok.Builder;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -12,10 +13,13 @@ public record ProcessSpec(
     List<String> args,
     Path workingDirectory,
     Map<String, String> environment,
-    boolean captureStderr
+    boolean captureStderr,
+    ToolPriority priority, // default INTERACTIVE
+    Duration timeout // stopped when still running after this long; null = no limit
 ) {
     public ProcessSpec {
         args = args != null ? List.copyOf(args) : List.of();
         environment = environment != null ? Map.copyOf(environment) : Map.of();
+        priority = priority != null ? priority : ToolPriority.INTERACTIVE;
     }
 }
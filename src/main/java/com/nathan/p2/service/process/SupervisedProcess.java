@@ -0,0 +1,128 @@
+package com.nathan.p2.service.process;
+
+import com.nathan.p2.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A long-lived tool kept running by {@link ExternalToolService#supervise}: whenever the process
+ * exits or fails to start it is launched again, after a delay that doubles up to 10 s and
+ * resets once a run has lasted that long.
+ * Every new process is handed to the start callback before it is waited on.
+ */
+@Slf4j
+public final class SupervisedProcess implements Closeable {
+
+    private static final long MIN_RESTART_DELAY_MILLIS = 250;
+    private static final long MAX_RESTART_DELAY_MILLIS = 10_000;
+    private static final long STOP_GRACE_SECONDS = 5;
+
+    private final ExternalToolService tools;
+    private final ProcessSpec spec;
+    private final Consumer<Process> onStart;
+    private final Thread thread;
+
+    private volatile Process current;
+    private volatile boolean closed;
+    private volatile int restarts;
+
+    SupervisedProcess(ExternalToolService tools, ProcessSpec spec, Consumer<Process> onStart) {
+        this.tools = tools;
+        this.spec = spec;
+        this.onStart = onStart;
+        this.thread = VirtualThreads.unstarted("supervise-" + spec.id(), this::run);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    public String id() {
+        return spec.id();
+    }
+
+    /**
+     * Times the process was launched again after exiting or failing to start
+     */
+    public int restarts() {
+        return restarts;
+    }
+
+    public boolean isAlive() {
+        Process p = current;
+        return p != null && p.isAlive();
+    }
+
+    /**
+     * Stop supervising and terminate the running process
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        thread.interrupt();
+        Process p = current;
+        if (p != null) {
+            p.destroy();
+            try {
+                if (!p.waitFor(STOP_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                    p.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                p.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Stopped supervising {}", spec.id());
+    }
+
+    private void run() {
+        long delay = MIN_RESTART_DELAY_MILLIS;
+        while (!closed) {
+            long started = System.nanoTime();
+            String outcome;
+            try {
+                Process p = tools.launch(spec);
+                current = p;
+                if (closed) {
+                    p.destroy();
+                }
+                try {
+                    onStart.accept(p);
+                    outcome = "exited with code " + p.waitFor();
+                } catch (RuntimeException e) {
+                    log.error("Error in {} start callback", spec.id(), e);
+                    p.destroyForcibly();
+                    outcome = "was killed";
+                } finally {
+                    tools.release(p);
+                }
+            } catch (IOException e) {
+                outcome = "failed to start (" + e.getMessage() + ")";
+            } catch (InterruptedException e) {
+                // close() interrupts; the loop condition ends the thread
+                continue;
+            }
+            if (closed) {
+                break;
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= MAX_RESTART_DELAY_MILLIS) {
+                delay = MIN_RESTART_DELAY_MILLIS;
+            }
+            log.warn("⚠️ {} {}, restarting in {} ms", spec.id(), outcome, delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            delay = Math.min(delay * 2, MAX_RESTART_DELAY_MILLIS);
+            restarts++;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.nathan.p2.service.process;
+
+/**
+ * Order in which waiting tool invocations get a free slot, most urgent first
+ */
+public enum ToolPriority {
+    /** Live capture and decoding: never waits, but takes up a slot while it runs */
+    LIVE,
+    /** Analytics a user is waiting for */
+    INTERACTIVE,
+    /** Offline conversion and re-analysis of uploaded logs */
+    BATCH
+}
@@ -0,0 +1,155 @@
+package com.nathan.p2.service.scheduling;
+
+import com.nathan.p2.config.ToolsConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline Schedulers - one named, sized thread pool per kind of work
+ *
+ * Offline analysis used to share boundedElastic with the live streams, so a large upload could
+ * take every thread the live pipelines needed. Each stage now has its own threads and queue
+ * (eca.scheduling); unless configured, the batch stages together get the cores left after ingest:
+ * - ingest: live capture work (incremental KPIs of a running session)
+ * - dissection: pcap scans, sharkd queries and the dissection cache
+ * - analytics: offline analyzers, KPI accumulation, conversions
+ * - persistence: database writes (the H2 R2DBC driver executes on the subscribing thread)
+ * - egress: delivery of live stream elements to SSE/WebSocket subscribers
+ * Blocking process and adb I/O stays on {@link com.nathan.p2.util.VirtualThreads#IO}.
+ *
+ * Metrics per stage: scheduler.active and scheduler.queued (gauges), scheduler.completed.
+ * A task submitted to a full queue fails with RejectedExecutionException.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PipelineSchedulers {
+
+    public enum Stage {
+        INGEST, DISSECTION, ANALYTICS, PERSISTENCE, EGRESS
+    }
+
+    private final ToolsConfig config;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Stage, ThreadPoolExecutor> executors = new EnumMap<>(Stage.class);
+    private final Map<Stage, Scheduler> schedulers = new EnumMap<>(Stage.class);
+
+    @PostConstruct
+    public void init() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ToolsConfig.Scheduling scheduling = config.getScheduling();
+        int ingest = threads(scheduling.getIngest(), Math.max(2, cores / 4));
+        // Batch stages leave the ingest threads' share of the cores alone
+        int batch = Math.max(1, cores - ingest);
+        int sharkd = config.getDissection().getMaxConcurrency();
+        create(Stage.INGEST, scheduling.getIngest(), ingest, Thread.NORM_PRIORITY + 2);
+        create(Stage.DISSECTION, scheduling.getDissection(), threads(scheduling.getDissection(), sharkd > 0 ? sharkd : batch),
+            Thread.NORM_PRIORITY - 1);
+        create(Stage.ANALYTICS, scheduling.getAnalytics(), threads(scheduling.getAnalytics(), batch), Thread.NORM_PRIORITY - 1);
+        create(Stage.PERSISTENCE, scheduling.getPersistence(), threads(scheduling.getPersistence(), 2), Thread.NORM_PRIORITY);
+        create(Stage.EGRESS, scheduling.getEgress(), threads(scheduling.getEgress(), Math.max(2, cores / 4)),
+            Thread.NORM_PRIORITY + 1);
+        log.info("🧵 Schedulers: ingest {}, dissection {}, analytics {}, persistence {}, egress {} threads ({} cores)",
+            threads(Stage.INGEST), threads(Stage.DISSECTION), threads(Stage.ANALYTICS),
+            threads(Stage.PERSISTENCE), threads(Stage.EGRESS), cores);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        schedulers.values().forEach(Scheduler::dispose);
+    }
+
+    /**
+     * Live capture work that must keep up with the device
+     */
+    public Scheduler ingest() {
+        return schedulers.get(Stage.INGEST);
+    }
+
+    /**
+     * Reading and dissecting captures
+     */
+    public Scheduler dissection() {
+        return schedulers.get(Stage.DISSECTION);
+    }
+
+    /**
+     * Offline analysis of dissected data
+     */
+    public Scheduler analytics() {
+        return schedulers.get(Stage.ANALYTICS);
+    }
+
+    /**
+     * Database writes
+     */
+    public Scheduler persistence() {
+        return schedulers.get(Stage.PERSISTENCE);
+    }
+
+    /**
+     * Delivery to stream subscribers
+     */
+    public Scheduler egress() {
+        return schedulers.get(Stage.EGRESS);
+    }
+
+    public int threads(Stage stage) {
+        return executors.get(stage).getMaximumPoolSize();
+    }
+
+    private static int threads(ToolsConfig.StagePool pool, int auto) {
+        return pool.getThreads() > 0 ? pool.getThreads() : auto;
+    }
+
+    private void create(Stage stage, ToolsConfig.StagePool pool, int threads, int priority) {
+        String name = stage.name().toLowerCase(Locale.ROOT);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(Math.max(1, pool.getQueueCapacity())), threadFactory(name, priority));
+        executor.allowCoreThreadTimeOut(true);
+        executors.put(stage, executor);
+        schedulers.put(stage, Schedulers.fromExecutorService(executor, name));
+
+        Gauge.builder("scheduler.active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Tasks running on the stage's threads")
+            .tag("scheduler", name)
+            .register(meterRegistry);
+        Gauge.builder("scheduler.queued", executor, e -> e.getQueue().size())
+            .description("Tasks waiting for a thread of the stage")
+            .tag("scheduler", name)
+            .register(meterRegistry);
+        FunctionCounter.builder("scheduler.completed", executor, ThreadPoolExecutor::getCompletedTaskCount)
+            .description("Tasks the stage has run")
+            .tag("scheduler", name)
+            .register(meterRegistry);
+    }
+
+    private static ThreadFactory threadFactory(String name, int priority) {
+        AtomicInteger ids = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, name + "-" + ids.incrementAndGet());
+            thread.setDaemon(true);
+            // Only a hint (ignored by default on Linux), the thread counts are what keep batch work in bounds
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+}
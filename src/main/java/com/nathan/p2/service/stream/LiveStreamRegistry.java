@@ -0,0 +1,160 @@
+package com.nathan.p2.service.stream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Live Stream Registry - one upstream producer per (stream type, session), shared by all
+ * subscribers and torn down when the last of them leaves.
+ *
+ * The producer is started by the first subscriber: it receives the stream's {@link StreamSink}
+ * and returns a {@link Disposable} that stops it (kill its tshark process, interrupt its
+ * threads, cancel its timers). Subscribers are counted as they subscribe and cancel; at zero
+ * the producer is disposed, the sink completed and the entry removed, so no process or timer
+ * outlives its clients. A producer that completes or fails on its own is restarted by the
+ * next subscriber.
+ *
+ * Metrics: stream.producers (running producers).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LiveStreamRegistry {
+
+    private final StreamSinkFactory sinkFactory;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Key, Entry<?>> streams = new ConcurrentHashMap<>();
+
+    private record Key(String stream, String session) {}
+
+    private static final class Entry<T> {
+        final StreamSink<T> sink;
+        // Empty until the producer has started; disposing it first stops the producer as it arrives
+        final Disposable.Swap producer = Disposables.swap();
+        int subscribers;
+
+        Entry(StreamSink<T> sink) {
+            this.sink = sink;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("stream.producers", streams, Map::size)
+            .description("Live stream producers currently running")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Subscribe to the shared stream, starting its producer if this is the first subscriber
+     */
+    public <T> Flux<T> share(String stream, Object session, StreamPolicy<T> policy,
+                             Function<StreamSink<T>, Disposable> producer) {
+        Key key = new Key(stream, String.valueOf(session));
+        return Flux.defer(() -> {
+            Entry<T> entry = acquire(key, policy, producer);
+            return entry.sink.asFlux()
+                .doFinally(signal -> release(key, entry));
+        });
+    }
+
+    /**
+     * Sink of a running stream, to push extra elements into it
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<StreamSink<T>> sink(String stream, Object session) {
+        Entry<?> entry = streams.get(new Key(stream, String.valueOf(session)));
+        return entry != null ? Optional.of((StreamSink<T>) entry.sink) : Optional.empty();
+    }
+
+    /**
+     * Stop a stream regardless of its subscribers; they receive completion
+     */
+    public void stop(String stream, Object session) {
+        Entry<?> entry = streams.remove(new Key(stream, String.valueOf(session)));
+        if (entry != null) {
+            teardown(entry);
+            log.info("Stopped {} stream for session {}", stream, session);
+        }
+    }
+
+    @PreDestroy
+    public void stopAll() {
+        streams.keySet().forEach(key -> stop(key.stream(), key.session()));
+    }
+
+    /**
+     * Count a subscriber, registering a new entry if the stream is not running. The producer
+     * of a new entry is started after the map update, never inside it.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> acquire(Key key, StreamPolicy<T> policy, Function<StreamSink<T>, Disposable> producer) {
+        Entry<?>[] replaced = {null};
+        boolean[] created = {false};
+        Entry<T> acquired = (Entry<T>) streams.compute(key, (k, existing) -> {
+            Entry<T> entry = (Entry<T>) existing;
+            if (entry == null || entry.sink.isTerminated()) {
+                replaced[0] = entry;
+                entry = new Entry<>(sinkFactory.create(k.stream(), k.session(), policy));
+                created[0] = true;
+            }
+            entry.subscribers++;
+            return entry;
+        });
+        if (replaced[0] != null) {
+            replaced[0].producer.dispose();
+        }
+        if (created[0]) {
+            log.info("▶️ Starting {} stream for session {}", key.stream(), key.session());
+            try {
+                acquired.producer.update(producer.apply(acquired.sink));
+            } catch (RuntimeException e) {
+                log.error("Failed to start {} stream for session {}", key.stream(), key.session(), e);
+                acquired.sink.tryEmitError(e);
+            }
+        }
+        return acquired;
+    }
+
+    private void release(Key key, Entry<?> entry) {
+        boolean[] last = {false};
+        streams.computeIfPresent(key, (k, current) -> {
+            if (current != entry) {
+                // Already stopped or replaced
+                return current;
+            }
+            if (--entry.subscribers > 0) {
+                return entry;
+            }
+            last[0] = true;
+            return null;
+        });
+        if (last[0]) {
+            teardown(entry);
+            log.info("⏹️ Last subscriber left, stopped {} stream for session {}", key.stream(), key.session());
+        }
+    }
+
+    private static void teardown(Entry<?> entry) {
+        try {
+            entry.producer.dispose();
+        } catch (RuntimeException e) {
+            log.warn("Error stopping stream producer: {}", e.getMessage());
+        }
+        entry.sink.tryEmitComplete();
+    }
+}
@@ -0,0 +1,183 @@
+package com.nathan.p2.service.stream;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * What a {@link StreamSink} does when a subscriber does not keep up. Every subscriber gets
+ * its own buffer of at most {@code capacity} elements; elements that do not fit are dropped
+ * and counted, so a stalled client never holds more than that in memory.
+ *
+ * - {@link #buffer}: keep the oldest, reject new elements while full (order without holes until the first drop)
+ * - {@link #dropOldest}: keep the newest, evict from the head while full
+ * - {@link #latest}: keep only the most recent element
+ * - {@link #conflate}: keep the most recent element per key, in first-seen order
+ *
+ * {@link #withReplay} additionally hands the last N elements to every subscriber that joins
+ * a running stream.
+ */
+public final class StreamPolicy<T> {
+
+    enum Kind { BUFFER, DROP_OLDEST, LATEST, CONFLATE }
+
+    private final Kind kind;
+    private final int capacity;
+    private final Function<? super T, ?> key;
+    private final int replay;
+
+    private StreamPolicy(Kind kind, int capacity, Function<? super T, ?> key, int replay) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Stream buffer capacity must be positive: " + capacity);
+        }
+        if (replay < 0) {
+            throw new IllegalArgumentException("Stream replay window must not be negative: " + replay);
+        }
+        this.kind = kind;
+        this.capacity = capacity;
+        this.key = key;
+        this.replay = replay;
+    }
+
+    public static <T> StreamPolicy<T> buffer(int capacity) {
+        return new StreamPolicy<>(Kind.BUFFER, capacity, null, 0);
+    }
+
+    public static <T> StreamPolicy<T> dropOldest(int capacity) {
+        return new StreamPolicy<>(Kind.DROP_OLDEST, capacity, null, 0);
+    }
+
+    public static <T> StreamPolicy<T> latest() {
+        return new StreamPolicy<>(Kind.LATEST, 1, null, 0);
+    }
+
+    /**
+     * @param key      elements with equal keys replace each other while waiting
+     * @param capacity distinct keys kept; the oldest key is evicted beyond that
+     */
+    public static <T> StreamPolicy<T> conflate(Function<? super T, ?> key, int capacity) {
+        return new StreamPolicy<>(Kind.CONFLATE, capacity, Objects.requireNonNull(key), 0);
+    }
+
+    /**
+     * The same policy, replaying up to {@code replay} of the latest elements to late subscribers
+     */
+    public StreamPolicy<T> withReplay(int replay) {
+        return new StreamPolicy<>(kind, capacity, key, replay);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int replay() {
+        return replay;
+    }
+
+    /**
+     * Metric tag value
+     */
+    public String name() {
+        return kind.name().toLowerCase().replace('_', '-');
+    }
+
+    Buffer<T> newBuffer() {
+        return kind == Kind.CONFLATE ? new KeyedBuffer<>(capacity, key) : new QueueBuffer<>(capacity, kind == Kind.BUFFER);
+    }
+
+    /**
+     * Per-subscriber buffer; callers synchronize on it
+     */
+    interface Buffer<T> {
+        /**
+         * @return number of elements dropped to apply the policy (0 or 1)
+         */
+        int offer(T value);
+
+        T poll();
+
+        int size();
+    }
+
+    private static final class QueueBuffer<T> implements Buffer<T> {
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private final int capacity;
+        private final boolean rejectNewest;
+
+        QueueBuffer(int capacity, boolean rejectNewest) {
+            this.capacity = capacity;
+            this.rejectNewest = rejectNewest;
+        }
+
+        @Override
+        public int offer(T value) {
+            if (queue.size() < capacity) {
+                queue.addLast(value);
+                return 0;
+            }
+            if (!rejectNewest) {
+                queue.pollFirst();
+                queue.addLast(value);
+            }
+            return 1;
+        }
+
+        @Override
+        public T poll() {
+            return queue.pollFirst();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+    }
+
+    private static final class KeyedBuffer<T> implements Buffer<T> {
+        private final LinkedHashMap<Object, T> pending = new LinkedHashMap<>();
+        private final int capacity;
+        private final Function<? super T, ?> key;
+
+        KeyedBuffer(int capacity, Function<? super T, ?> key) {
+            this.capacity = capacity;
+            this.key = key;
+        }
+
+        @Override
+        public int offer(T value) {
+            Object k = key.apply(value);
+            if (pending.replace(k, value) != null) {
+                // Superseded before it was delivered
+                return 1;
+            }
+            int dropped = 0;
+            if (pending.size() >= capacity) {
+                Iterator<Map.Entry<Object, T>> oldest = pending.entrySet().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped = 1;
+            }
+            pending.put(k, value);
+            return dropped;
+        }
+
+        @Override
+        public T poll() {
+            Iterator<Map.Entry<Object, T>> oldest = pending.entrySet().iterator();
+            if (!oldest.hasNext()) {
+                return null;
+            }
+            T value = oldest.next().getValue();
+            oldest.remove();
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return pending.size();
+        }
+    }
+}
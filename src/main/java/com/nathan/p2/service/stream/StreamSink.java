@@ -0,0 +1,251 @@
+package com.nathan.p2.service.stream;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Multicast hot stream with a bounded buffer per subscriber, the replacement for
+ * {@code Sinks.many().multicast().onBackpressureBuffer()} in the live streaming services.
+ *
+ * Each subscriber drains its own buffer at the rate it requests; what does not fit is handled
+ * by the {@link StreamPolicy} and counted, so one stalled client neither grows the heap nor
+ * holds back the others. Elements emitted while nobody is subscribed are kept (within the
+ * same bound) for the next subscriber, and a completion or error reaches it after them.
+ * With a replay window ({@link StreamPolicy#withReplay}), a subscriber joining a running
+ * stream first receives the latest elements emitted before it subscribed.
+ * Subscribers are signalled on the egress scheduler, so encoding and writing to slow clients
+ * never runs on the producer's (ingest) thread.
+ * Create through {@link StreamSinkFactory}, which exports depth and drops as metrics.
+ */
+public final class StreamSink<T> {
+
+    // Elements handed from a subscriber's buffer to its egress thread at a time
+    private static final int EGRESS_PREFETCH = 32;
+
+    private final String stream;
+    private final String session;
+    private final StreamPolicy<T> policy;
+    private final Consumer<StreamSink<T>> onTerminate;
+    private final Scheduler egress;
+
+    private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean terminated = new AtomicBoolean();
+    private volatile Throwable error;
+    // Buffers emissions while nobody is subscribed; guarded by this
+    private Lane unclaimed;
+    // Latest elements for late subscribers; guarded by this
+    private final ArrayDeque<T> history;
+
+    StreamSink(String stream, String session, StreamPolicy<T> policy, Scheduler egress,
+               Consumer<StreamSink<T>> onTerminate) {
+        this.stream = stream;
+        this.session = session;
+        this.policy = policy;
+        this.egress = egress;
+        this.onTerminate = onTerminate;
+        this.history = policy.replay() > 0 ? new ArrayDeque<>(policy.replay()) : null;
+    }
+
+    public String stream() {
+        return stream;
+    }
+
+    public String session() {
+        return session;
+    }
+
+    public StreamPolicy<T> policy() {
+        return policy;
+    }
+
+    public Sinks.EmitResult tryEmitNext(T value) {
+        if (terminated.get()) {
+            return Sinks.EmitResult.FAIL_TERMINATED;
+        }
+        if (history != null) {
+            // Recording and fanning out under one lock, so a joining subscriber sees each element once
+            synchronized (this) {
+                if (history.size() == policy.replay()) {
+                    history.pollFirst();
+                }
+                history.addLast(value);
+                offer(value);
+            }
+            return Sinks.EmitResult.OK;
+        }
+        offer(value);
+        return Sinks.EmitResult.OK;
+    }
+
+    private void offer(T value) {
+        if (lanes.isEmpty()) {
+            synchronized (this) {
+                if (lanes.isEmpty()) {
+                    if (unclaimed == null) {
+                        unclaimed = new Lane();
+                    }
+                    unclaimed.offer(value);
+                    return;
+                }
+            }
+        }
+        for (Lane lane : lanes) {
+            lane.offer(value);
+        }
+    }
+
+    public Sinks.EmitResult tryEmitComplete() {
+        return terminate(null);
+    }
+
+    public Sinks.EmitResult tryEmitError(Throwable e) {
+        return terminate(e);
+    }
+
+    public Flux<T> asFlux() {
+        return Flux.create(emitter -> {
+            Lane lane = attach(emitter);
+            emitter.onRequest(n -> lane.drain());
+            emitter.onDispose(() -> lanes.remove(lane));
+        }, FluxSink.OverflowStrategy.IGNORE)
+            .publishOn(egress, EGRESS_PREFETCH);
+    }
+
+    public int currentSubscriberCount() {
+        return lanes.size();
+    }
+
+    public boolean isTerminated() {
+        return terminated.get();
+    }
+
+    /**
+     * Elements buffered for all subscribers (and for the next one, while there is none)
+     */
+    public int depth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.size();
+        }
+        Lane waiting;
+        synchronized (this) {
+            waiting = unclaimed;
+        }
+        return waiting != null ? depth + waiting.size() : depth;
+    }
+
+    /**
+     * Elements dropped or superseded by the policy, summed over subscribers
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private synchronized Lane attach(FluxSink<T> emitter) {
+        Lane lane = unclaimed;
+        unclaimed = null;
+        if (lane == null) {
+            lane = new Lane();
+            if (history != null) {
+                history.forEach(lane::offer);
+            }
+        }
+        if (terminated.get()) {
+            lane.done = true;
+        }
+        lane.emitter = emitter;
+        lanes.add(lane);
+        return lane;
+    }
+
+    private Sinks.EmitResult terminate(Throwable e) {
+        if (!terminated.compareAndSet(false, true)) {
+            return Sinks.EmitResult.FAIL_TERMINATED;
+        }
+        error = e;
+        Lane waiting;
+        synchronized (this) {
+            waiting = unclaimed;
+        }
+        if (waiting != null) {
+            waiting.done = true;
+        }
+        for (Lane lane : lanes) {
+            lane.done = true;
+            lane.drain();
+        }
+        onTerminate.accept(this);
+        return Sinks.EmitResult.OK;
+    }
+
+    /**
+     * One subscriber's buffer and its serialized drain loop
+     */
+    private final class Lane {
+        private final StreamPolicy.Buffer<T> buffer = policy.newBuffer();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile FluxSink<T> emitter;
+        private volatile boolean done;
+        private boolean signalled;
+
+        void offer(T value) {
+            int drops;
+            synchronized (buffer) {
+                drops = buffer.offer(value);
+            }
+            if (drops > 0) {
+                dropped.add(drops);
+            }
+            drain();
+        }
+
+        int size() {
+            synchronized (buffer) {
+                return buffer.size();
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                FluxSink<T> downstream = emitter;
+                if (downstream != null && !signalled) {
+                    while (downstream.requestedFromDownstream() > 0 && !downstream.isCancelled()) {
+                        T value;
+                        synchronized (buffer) {
+                            value = buffer.poll();
+                        }
+                        if (value == null) {
+                            break;
+                        }
+                        downstream.next(value);
+                    }
+                    if (done && size() == 0) {
+                        signalled = true;
+                        Throwable e = error;
+                        if (e != null) {
+                            downstream.error(e);
+                        } else {
+                            downstream.complete();
+                        }
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.nathan.p2.service.stream;
+
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates the bounded {@link StreamSink}s behind every live stream and exports, per stream
+ * type and session:
+ * - stream.queue.depth{stream,session,policy}: elements waiting for slow subscribers
+ * - stream.dropped{stream,session,policy}: elements dropped or superseded by the policy
+ * The meters are removed when the sink completes or fails. Subscribers are served on the
+ * egress scheduler.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StreamSinkFactory {
+
+    private final ToolsConfig config;
+    private final MeterRegistry meterRegistry;
+    private final PipelineSchedulers schedulers;
+
+    /**
+     * Per-subscriber buffer size for streams that do not need a specific one (eca.streams.buffer-capacity)
+     */
+    public int capacity() {
+        return config.getStreams().getBufferCapacity();
+    }
+
+    /**
+     * @param stream  stream type, e.g. "signaling"
+     * @param session owner of the stream (session or device id)
+     */
+    public <T> StreamSink<T> create(String stream, Object session, StreamPolicy<T> policy) {
+        Tags tags = Tags.of("stream", stream, "session", String.valueOf(session), "policy", policy.name());
+        // A stream reopened for the same session takes the meters over from the previous one
+        unregister(meterRegistry.find("stream.queue.depth").tags(tags).meters());
+        unregister(meterRegistry.find("stream.dropped").tags(tags).meters());
+        
+        List<Meter> meters = new CopyOnWriteArrayList<>();
+        StreamSink<T> sink = new StreamSink<>(stream, String.valueOf(session), policy, schedulers.egress(),
+            terminated -> unregister(meters));
+        meters.add(Gauge.builder("stream.queue.depth", sink, StreamSink::depth)
+            .description("Elements buffered for subscribers that have not requested them yet")
+            .tags(tags)
+            .register(meterRegistry));
+        meters.add(FunctionCounter.builder("stream.dropped", sink, StreamSink::dropped)
+            .description("Elements dropped by the stream's overflow policy")
+            .tags(tags)
+            .register(meterRegistry));
+        log.debug("Created {} stream for {} ({}, {} per subscriber)", stream, session, policy.name(), policy.capacity());
+        return sink;
+    }
+
+    /**
+     * Remove meters that are still the registered instances (not ones re-registered since)
+     */
+    private void unregister(Collection<Meter> meters) {
+        for (Meter meter : meters) {
+            Meter current = meterRegistry.find(meter.getId().getName()).tags(meter.getId().getTags()).meter();
+            if (current == meter) {
+                meterRegistry.remove(meter);
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.nathan.p2.service.tshark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Display Filter - evaluates the subset of Wireshark display filter syntax used by
+ * the KPI code against an already dissected packet, so many filters can share one tshark pass.
+ *
+ * Supported:
+ * - field presence:        lte-rrc.measurementReport_element
+ * - comparisons:           nas_eps.nas_msg_emm_type == 0x41   (==, !=, >, <, >=, <=, eq, ne, contains)
+ * - logical operators:     ||, or, &&, and, !, not, parentheses
+ *
+ * As in Wireshark (3.6 and later), a comparison matches when any occurrence of the field
+ * matches, except "!=", which needs every occurrence to differ. A comparison on an absent field
+ * never matches.
+ */
+public final class DisplayFilter {
+
+    private final String expression;
+    private final Predicate<DissectedPacket> predicate;
+    private final Set<String> fields;
+
+    private DisplayFilter(String expression, Predicate<DissectedPacket> predicate, Set<String> fields) {
+        this.expression = expression;
+        this.predicate = predicate;
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    public static DisplayFilter compile(String expression) {
+        Parser parser = new Parser(expression);
+        Predicate<DissectedPacket> predicate = parser.parseOr();
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Unexpected token '" + parser.peek() + "' in filter: " + expression);
+        }
+        return new DisplayFilter(expression, predicate, parser.fields);
+    }
+
+    public boolean test(DissectedPacket packet) {
+        return predicate.test(packet);
+    }
+
+    /**
+     * Field names referenced by the filter (to be requested with -e)
+     */
+    public Set<String> fields() {
+        return fields;
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static final class Parser {
+        private final List<String> tokens;
+        private final Set<String> fields = new LinkedHashSet<>();
+        private int pos;
+
+        Parser(String expression) {
+            this.tokens = tokenize(expression);
+        }
+
+        boolean hasNext() {
+            return pos < tokens.size();
+        }
+
+        String peek() {
+            return hasNext() ? tokens.get(pos) : null;
+        }
+
+        String next() {
+            if (!hasNext()) {
+                throw new IllegalArgumentException("Unexpected end of filter");
+            }
+            return tokens.get(pos++);
+        }
+
+        Predicate<DissectedPacket> parseOr() {
+            Predicate<DissectedPacket> left = parseAnd();
+            while ("||".equals(peek()) || "or".equalsIgnoreCase(peek())) {
+                next();
+                left = left.or(parseAnd());
+            }
+            return left;
+        }
+
+        Predicate<DissectedPacket> parseAnd() {
+            Predicate<DissectedPacket> left = parseUnary();
+            while ("&&".equals(peek()) || "and".equalsIgnoreCase(peek())) {
+                next();
+                left = left.and(parseUnary());
+            }
+            return left;
+        }
+
+        Predicate<DissectedPacket> parseUnary() {
+            String token = peek();
+            if ("!".equals(token) || "not".equalsIgnoreCase(token)) {
+                next();
+                return parseUnary().negate();
+            }
+            if ("(".equals(token)) {
+                next();
+                Predicate<DissectedPacket> inner = parseOr();
+                if (!")".equals(next())) {
+                    throw new IllegalArgumentException("Missing ')' in filter");
+                }
+                return inner;
+            }
+            return parseComparison();
+        }
+
+        Predicate<DissectedPacket> parseComparison() {
+            String field = next();
+            fields.add(field);
+
+            String op = peek();
+            if (op == null || !isOperator(op)) {
+                return packet -> packet.has(field);
+            }
+            next();
+            String value = unquote(next());
+
+            return switch (op.toLowerCase()) {
+                case "==", "eq" -> packet -> anyMatch(packet, field, v -> compare(v, value) == 0);
+                case "!=", "ne" -> packet -> packet.has(field) && !anyMatch(packet, field, v -> compare(v, value) == 0);
+                case ">", "gt" -> packet -> anyMatch(packet, field, v -> compare(v, value) > 0);
+                case "<", "lt" -> packet -> anyMatch(packet, field, v -> compare(v, value) < 0);
+                case ">=", "ge" -> packet -> anyMatch(packet, field, v -> compare(v, value) >= 0);
+                case "<=", "le" -> packet -> anyMatch(packet, field, v -> compare(v, value) <= 0);
+                case "contains" -> packet -> packet.get(field).contains(value);
+                default -> throw new IllegalArgumentException("Unsupported operator: " + op);
+            };
+        }
+
+        private static boolean isOperator(String token) {
+            return switch (token.toLowerCase()) {
+                case "==", "!=", ">", "<", ">=", "<=", "eq", "ne", "gt", "lt", "ge", "le", "contains" -> true;
+                default -> false;
+            };
+        }
+
+        private static boolean anyMatch(DissectedPacket packet, String field, Predicate<String> test) {
+            for (String value : packet.values(field)) {
+                if (test.test(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String unquote(String token) {
+            if (token.length() >= 2 && token.startsWith("\"") && token.endsWith("\"")) {
+                return token.substring(1, token.length() - 1);
+            }
+            return token;
+        }
+
+        private static List<String> tokenize(String expression) {
+            List<String> tokens = new ArrayList<>();
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '"') {
+                    int end = expression.indexOf('"', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string in filter: " + expression);
+                    }
+                    tokens.add(expression.substring(i, end + 1));
+                    i = end + 1;
+                } else if ("|&=!<>".indexOf(c) >= 0) {
+                    int start = i;
+                    while (i < expression.length() && "|&=!<>".indexOf(expression.charAt(i)) >= 0) {
+                        i++;
+                    }
+                    tokens.add(expression.substring(start, i));
+                } else {
+                    int start = i;
+                    while (i < expression.length()
+                            && !Character.isWhitespace(expression.charAt(i))
+                            && "()|&=!<>\"".indexOf(expression.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(expression.substring(start, i));
+                }
+            }
+            return tokens;
+        }
+    }
+
+    /**
+     * Compare a field value with a filter literal, numerically when both sides are numbers
+     * (tshark prints BASE_HEX fields as 0x.., filters may use either base; booleans as True/False,
+     * filters may use 1/0).
+     */
+    static int compare(String actual, String expected) {
+        Long a = parseNumber(actual);
+        Long b = parseNumber(expected);
+        if (a != null && b != null) {
+            return Long.compare(a, b);
+        }
+        return actual.compareTo(expected);
+    }
+
+    private static Long parseNumber(String value) {
+        try {
+            String v = value.trim();
+            if (v.equalsIgnoreCase("true")) {
+                return 1L;
+            }
+            if (v.equalsIgnoreCase("false")) {
+                return 0L;
+            }
+            if (v.startsWith("0x") || v.startsWith("0X")) {
+                return Long.parseLong(v.substring(2), 16);
+            }
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.nathan.p2.service.tshark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One frame produced by a single tshark field scan.
+ *
+ * Values are the raw "-T fields" output: FT_NONE fields print "1" when present,
+ * and repeated occurrences are joined with ','.
+ */
+public record DissectedPacket(int frameNumber, double timestamp, Map<String, String> fields) {
+
+    public boolean has(String field) {
+        String value = fields.get(field);
+        return value != null && !value.isEmpty();
+    }
+
+    public String get(String field) {
+        return fields.getOrDefault(field, "");
+    }
+
+    /**
+     * All occurrences of a field, in frame order
+     */
+    public List<String> values(String field) {
+        String value = fields.get(field);
+        if (value == null || value.isEmpty()) {
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.isEmpty()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+}
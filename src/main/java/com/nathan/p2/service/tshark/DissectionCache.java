@@ -0,0 +1,265 @@
+package com.nathan.p2.service.tshark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Dissection Cache - results of tshark/sharkd queries on finished captures
+ *
+ * Entries are keyed by the capture's identity (path, size, modification time), the query
+ * (kind, display filter, fields) and the tshark version, so a changed file or an upgraded
+ * Wireshark never serves an old answer. Two tiers:
+ * - memory: LRU bounded by the serialized size of the cached values
+ * - disk: one JSON file per entry in ".dissection-cache" next to the capture, oldest removed first
+ *
+ * Captures modified within settle-time (still being written) are not cached.
+ * Concurrent identical queries share one computation.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DissectionCache {
+    public static final String CACHE_DIR = ".dissection-cache";
+
+    private final ToolsConfig config;
+    private final ObjectMapper objectMapper;
+    private final PipelineSchedulers schedulers;
+
+    private final Map<String, Entry> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private long memoryBytes;
+
+    private record Entry(Object value, long weight) {}
+
+    /**
+     * What was asked of the dissector
+     */
+    @Builder
+    public record Query(String kind, String filter, List<String> fields, String toolVersion) {
+        public Query {
+            filter = filter != null ? filter : "";
+            fields = fields != null ? List.copyOf(fields) : List.of();
+            toolVersion = toolVersion != null ? toolVersion : "unknown";
+        }
+    }
+
+    /**
+     * Cached result of the query on the capture, or the computed one (stored when the capture is settled)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> get(Path pcapFile, Query query, TypeReference<T> type, Supplier<Mono<T>> compute) {
+        if (!config.getDissection().isCacheEnabled()) {
+            return compute.get();
+        }
+        // Stat the capture off the subscribing thread
+        return Mono.fromCallable(() -> Optional.ofNullable(settledKey(pcapFile, query)))
+            .subscribeOn(schedulers.dissection())
+            .flatMap(settled -> {
+                if (settled.isEmpty()) {
+                    return compute.get();
+                }
+                String key = settled.get();
+                T cached = fromMemory(key);
+                if (cached != null) {
+                    return Mono.just(cached);
+                }
+                String digest = digest(key);
+                return (Mono<T>) inFlight.computeIfAbsent(digest, d -> Mono.fromCallable(() -> this.<T>fromDisk(pcapFile, digest, key, type))
+                    .subscribeOn(schedulers.dissection())
+                    .switchIfEmpty(Mono.defer(compute).flatMap(value -> store(pcapFile, digest, key, value).thenReturn(value)))
+                    .doFinally(signal -> inFlight.remove(d))
+                    .cache());
+            });
+    }
+
+    /**
+     * Drop every cached result of a capture, in memory and on disk
+     */
+    public void invalidate(Path pcapFile) {
+        String prefix = pcapFile.toAbsolutePath().normalize() + "|";
+        synchronized (memory) {
+            memory.entrySet().removeIf(entry -> {
+                if (entry.getKey().startsWith(prefix)) {
+                    memoryBytes -= entry.getValue().weight();
+                    return true;
+                }
+                return false;
+            });
+        }
+        Path dir = cacheDir(pcapFile);
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // Nothing cached on disk
+        }
+    }
+
+    // ==================== Keys ====================
+
+    /**
+     * Key of the query on the capture as it is now, or null if the capture is still changing
+     */
+    private String settledKey(Path pcapFile, Query query) {
+        try {
+            Path file = pcapFile.toAbsolutePath().normalize();
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (System.currentTimeMillis() - modified < config.getDissection().getCacheSettleTime().toMillis()) {
+                return null;
+            }
+            return file + "|" + size + "|" + modified + "|" + query.toolVersion() + "|" + query.kind()
+                + "|" + query.filter() + "|" + String.join(",", query.fields());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String digest(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path cacheDir(Path pcapFile) {
+        return pcapFile.toAbsolutePath().normalize().getParent().resolve(CACHE_DIR);
+    }
+
+    // ==================== Memory tier ====================
+
+    @SuppressWarnings("unchecked")
+    private <T> T fromMemory(String key) {
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            return entry != null ? (T) entry.value() : null;
+        }
+    }
+
+    private void toMemory(String key, Object value, long weight) {
+        long limit = config.getDissection().getCacheMemorySize().toBytes();
+        if (weight > limit / 4) {
+            return;
+        }
+        synchronized (memory) {
+            Entry previous = memory.put(key, new Entry(value, weight));
+            memoryBytes += weight - (previous != null ? previous.weight() : 0);
+            var eldest = memory.entrySet().iterator();
+            while (memoryBytes > limit && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().weight();
+                eldest.remove();
+            }
+        }
+    }
+
+    // ==================== Disk tier ====================
+
+    private <T> T fromDisk(Path pcapFile, String digest, String key, TypeReference<T> type) {
+        Path file = cacheDir(pcapFile).resolve(digest + ".json");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            JsonNode node = objectMapper.readTree(bytes);
+            if (!key.equals(node.path("key").asText())) {
+                return null;
+            }
+            T value = objectMapper.convertValue(node.get("value"), type);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            toMemory(key, value, bytes.length);
+            return value;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Ignoring unreadable cache entry {}: {}", file.getFileName(), e.getMessage());
+            return null;
+        }
+    }
+
+    private Mono<Void> store(Path pcapFile, String digest, String key, Object value) {
+        return Mono.fromRunnable(() -> {
+                try {
+                    ObjectNode node = objectMapper.createObjectNode();
+                    node.put("key", key);
+                    node.set("value", objectMapper.valueToTree(value));
+                    byte[] bytes = objectMapper.writeValueAsBytes(node);
+                    toMemory(key, value, bytes.length);
+
+                    long diskLimit = config.getDissection().getCacheDiskSize().toBytes();
+                    if (bytes.length > diskLimit / 4) {
+                        return;
+                    }
+                    Path dir = Files.createDirectories(cacheDir(pcapFile));
+                    Path tmp = dir.resolve(digest + ".tmp");
+                    Files.write(tmp, bytes);
+                    Files.move(tmp, dir.resolve(digest + ".json"),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    trimDisk(dir, diskLimit);
+                } catch (IOException | IllegalArgumentException e) {
+                    log.debug("Could not cache result for {}: {}", pcapFile.getFileName(), e.getMessage());
+                }
+            })
+            .subscribeOn(schedulers.dissection())
+            .then();
+    }
+
+    /**
+     * Remove least recently used entries until the directory fits the limit
+     */
+    private void trimDisk(Path dir, long limit) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = new ArrayList<>(listing.filter(file -> file.toString().endsWith(".json")).toList());
+        }
+        long total = 0;
+        Map<Path, Long> sizes = new LinkedHashMap<>();
+        Map<Path, Long> modified = new LinkedHashMap<>();
+        for (Path file : files) {
+            long size = Files.size(file);
+            sizes.put(file, size);
+            modified.put(file, Files.getLastModifiedTime(file).toMillis());
+            total += size;
+        }
+        if (total <= limit) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(modified::get));
+        for (Path file : files) {
+            if (total <= limit) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            total -= sizes.get(file);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.nathan.p2.service.tshark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.service.pcap.DatagramRing;
+import com.nathan.p2.service.pcap.PcapRecordEncoder;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.process.SupervisedProcess;
+import com.nathan.p2.util.VirtualThreads;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Live decode of GSMTAP datagrams by one long-lived "tshark -l -i - -T json" process.
+ *
+ * Datagrams handed to {@link #onDatagram} are encoded as PCAP records and queued; a writer
+ * thread of the decoder feeds them to tshark's stdin, flushing whenever the queue runs empty,
+ * so a slow or stalled tshark never holds up the ring consumer (and with it every other
+ * consumer of the shared ring). Records that do not fit the bounded queue are dropped and
+ * counted. The "_source.layers" of every packet tshark prints is passed to the output as soon
+ * as it is complete. Nothing touches the disk, so a packet is decoded as soon as
+ * tshark has dissected it instead of after the next PCAP flush and re-read.
+ *
+ * tshark is supervised by {@link ExternalToolService}: after a crash it is restarted and fed a
+ * fresh PCAP header; datagrams arriving while no tshark is accepting input are skipped and
+ * counted. Frame numbers restart at 1 with every new process.
+ */
+@Slf4j
+public final class LiveTSharkDecoder implements DatagramRing.Handler, Closeable {
+
+    private final String id;
+    private final ObjectMapper objectMapper;
+    private final Consumer<JsonNode> output;
+    private final PcapRecordEncoder encoder = new PcapRecordEncoder();
+    private final ByteBuffer record = ByteBuffer.allocate(PcapRecordEncoder.MAX_RECORD_LENGTH);
+    // Encoded records waiting for the writer thread
+    private final BlockingQueue<byte[]> pending;
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private SupervisedProcess process;
+
+    // Stdin of the running tshark, null while it is (re)starting
+    private volatile OutputStream stdin;
+
+    private LiveTSharkDecoder(String id, ObjectMapper objectMapper, Consumer<JsonNode> output, int queueCapacity) {
+        this.id = id;
+        this.objectMapper = objectMapper;
+        this.output = output;
+        this.pending = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writer = VirtualThreads.unstarted("tshark-feed-" + id, this::feed);
+    }
+
+    /**
+     * Start the supervised {@code tshark}; decoded packets go to {@code output}. At most
+     * {@code queueCapacity} records wait for tshark's stdin.
+     */
+    public static LiveTSharkDecoder start(ExternalToolService tools, ProcessSpec tshark, ObjectMapper objectMapper,
+                                          int queueCapacity, Consumer<JsonNode> output) {
+        LiveTSharkDecoder decoder = new LiveTSharkDecoder(tshark.id(), objectMapper, output, queueCapacity);
+        decoder.writer.start();
+        // The first process may be attached before supervise returns, so the decoder is complete by then
+        decoder.process = tools.supervise(tshark, decoder::attach);
+        return decoder;
+    }
+
+    /**
+     * Queue one datagram; called from a single ring consumer thread, never blocks
+     */
+    @Override
+    public void onDatagram(ByteBuffer datagram, long timestampNanos) {
+        if (stdin == null) {
+            skipped.increment();
+            return;
+        }
+        record.clear();
+        encoder.encode(record, datagram, timestampNanos);
+        // A copy: the ring slot is only valid during this call
+        if (!pending.offer(Arrays.copyOf(record.array(), record.position()))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Datagrams not decoded because tshark was restarting
+     */
+    public long skipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Datagrams not decoded because tshark fell behind and the queue was full
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public int restarts() {
+        return process.restarts();
+    }
+
+    @Override
+    public void close() {
+        stdin = null;
+        writer.interrupt();
+        process.close();
+    }
+
+    /**
+     * Writer thread: feed queued records to the running tshark until closed
+     */
+    private void feed() {
+        try {
+            while (true) {
+                byte[] next = pending.take();
+                OutputStream out = stdin;
+                if (out == null) {
+                    skipped.increment();
+                    continue;
+                }
+                try {
+                    out.write(next);
+                    // A backlog goes out with one flush
+                    if (pending.isEmpty()) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    // tshark is gone; the supervisor starts the next one
+                    log.debug("tshark {} stdin closed: {}", id, e.getMessage());
+                    if (stdin == out) {
+                        stdin = null;
+                    }
+                    skipped.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void attach(Process p) {
+        stdin = null;
+        OutputStream out = p.getOutputStream();
+        try {
+            out.write(PcapRecordEncoder.putGlobalHeader(ByteBuffer.allocate(PcapRecordEncoder.GLOBAL_HEADER_LENGTH)).array());
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Could not start feeding tshark {}: {}", id, e.getMessage());
+            p.destroyForcibly();
+            return;
+        }
+        // Ends by itself when the process exits and closes stdout
+        TSharkJsonStreamParser.layers(p::getInputStream, objectMapper)
+            .subscribeOn(VirtualThreads.IO)
+            .subscribe(output, e -> log.warn("tshark {} output unreadable: {}", id, e.getMessage()));
+        stdin = out;
+        log.info("🦈 Live decode {} started (PID: {})", id, p.pid());
+    }
+}
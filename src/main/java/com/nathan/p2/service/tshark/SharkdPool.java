@@ -0,0 +1,278 @@
+package com.nathan.p2.service.tshark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nathan.p2.config.ToolsConfig;
+import com.nathan.p2.service.process.ExternalToolService;
+import com.nathan.p2.service.process.ProcessSpec;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import com.nathan.p2.util.PlatformUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sharkd Pool - long-lived dissection workers per session capture
+ *
+ * Starting tshark costs far more than a typical interactive query (dissector registration,
+ * reading and indexing the file). The pool keeps sharkd processes with the capture already
+ * loaded and multiplexes queries over them:
+ * - up to workers-per-capture processes per file, started on demand
+ * - queries run on the dissection scheduler, whose thread count bounds those in flight
+ * - workers idle for idle-timeout, or whose file changed on disk, are stopped
+ *
+ * When sharkd is missing or fails to start, queries error out and callers fall back to tshark.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SharkdPool {
+    private static final long RETRY_UNAVAILABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final ExternalToolService toolService;
+    private final ToolsConfig config;
+    private final ObjectMapper objectMapper;
+    private final PipelineSchedulers schedulers;
+
+    private final Map<Path, Workers> pools = new ConcurrentHashMap<>();
+    private final AtomicInteger workerIds = new AtomicInteger();
+
+    private Disposable reaper;
+    private volatile long unavailableUntil;
+
+    @PostConstruct
+    public void init() {
+        int concurrency = schedulers.threads(PipelineSchedulers.Stage.DISSECTION);
+        reaper = Flux.interval(config.getDissection().getIdleTimeout().dividedBy(2))
+            .subscribe(tick -> evictIdle());
+        log.info("🦈 sharkd pool: {} concurrent queries, {} workers per capture",
+            concurrency, config.getDissection().getWorkersPerCapture());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reaper != null) {
+            reaper.dispose();
+        }
+        pools.keySet().forEach(this::evict);
+    }
+
+    /**
+     * False when disabled in configuration or sharkd recently failed to start
+     */
+    public boolean isAvailable() {
+        return config.getDissection().isSharkdEnabled() && System.nanoTime() - unavailableUntil >= 0;
+    }
+
+    public Mono<Long> count(Path pcapFile, String filter) {
+        return submit(pcapFile, worker -> worker.count(filter));
+    }
+
+    /**
+     * Matching frames with epoch timestamps and the requested fields (display values)
+     */
+    public Mono<List<DissectedPacket>> frames(Path pcapFile, String filter, List<String> fields) {
+        return submit(pcapFile, worker -> {
+            List<DissectedPacket> packets = new ArrayList<>();
+            worker.frames(filter, fields, packets::add);
+            return packets;
+        });
+    }
+
+    /**
+     * Stop all workers of a capture, e.g. when its session is deleted
+     */
+    public void evict(Path pcapFile) {
+        Workers workers = pools.remove(key(pcapFile));
+        if (workers != null) {
+            workers.closeAll();
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask<T> {
+        T run(SharkdWorker worker) throws IOException;
+    }
+
+    private <T> Mono<T> submit(Path pcapFile, WorkerTask<T> task) {
+        if (!isAvailable()) {
+            return Mono.error(new IllegalStateException("sharkd unavailable"));
+        }
+        return Mono.defer(() -> {
+            AtomicReference<SharkdWorker> inFlight = new AtomicReference<>();
+            return Mono.fromCallable(() -> {
+                    Workers workers = pools.computeIfAbsent(key(pcapFile), Workers::new);
+                    SharkdWorker worker = workers.borrow();
+                    inFlight.set(worker);
+                    boolean healthy = false;
+                    try {
+                        T result = task.run(worker);
+                        healthy = true;
+                        return result;
+                    } catch (SharkdWorker.SharkdException e) {
+                        // The request was rejected (e.g. bad filter); the worker itself is fine
+                        healthy = true;
+                        throw e;
+                    } finally {
+                        inFlight.set(null);
+                        workers.release(worker, healthy);
+                    }
+                })
+                .subscribeOn(schedulers.dissection())
+                .timeout(config.getDissection().getRequestTimeout())
+                .doOnError(TimeoutException.class, e -> {
+                    // A stuck sharkd only unblocks its reader when the process goes away
+                    SharkdWorker stuck = inFlight.get();
+                    if (stuck != null) {
+                        log.warn("sharkd query on {} timed out, stopping worker", pcapFile.getFileName());
+                        stuck.close();
+                    }
+                });
+        });
+    }
+
+    private void evictIdle() {
+        long idleNanos = config.getDissection().getIdleTimeout().toNanos();
+        pools.forEach((file, workers) -> {
+            workers.closeIdle(idleNanos);
+            if (workers.size.get() == 0) {
+                pools.remove(file, workers);
+            }
+        });
+    }
+
+    private static Path key(Path pcapFile) {
+        return pcapFile.toAbsolutePath().normalize();
+    }
+
+    private SharkdWorker spawn(Path file) throws IOException {
+        String tshark = PlatformUtils.resolveTSharkPath(config.getTools().getTshark().getPath());
+        ProcessSpec spec = ProcessSpec.builder()
+            .id("sharkd-" + workerIds.incrementAndGet())
+            .command(PlatformUtils.resolveSharkdPath(config.getTools().getSharkd().getPath(), tshark))
+            .args(List.of("-"))
+            .workingDirectory(file.getParent())
+            .environment(Map.of())
+            .captureStderr(true)
+            .build();
+
+        long started = System.nanoTime();
+        Process process;
+        try {
+            process = toolService.startInteractive(spec)
+                .timeout(config.getDissection().getRequestTimeout())
+                .block();
+        } catch (RuntimeException e) {
+            if (Exceptions.unwrap(e) instanceof TimeoutException) {
+                // Every sharkd slot is taken, e.g. by idle workers of other captures; tshark answers this one
+                throw new IOException("No sharkd slot free for " + file.getFileName(), e);
+            }
+            unavailableUntil = System.nanoTime() + RETRY_UNAVAILABLE_NANOS;
+            log.warn("sharkd could not be started, using tshark for the next minute: {}", e.getMessage());
+            throw new IOException("sharkd unavailable", e);
+        }
+
+        SharkdWorker worker = new SharkdWorker(process, file, objectMapper);
+        try {
+            worker.load();
+        } catch (IOException e) {
+            worker.close();
+            toolService.stop(process.toHandle()).subscribe();
+            throw e;
+        }
+        log.info("🦈 sharkd loaded {} in {} ms", file.getFileName(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return worker;
+    }
+
+    private void discard(SharkdWorker worker) {
+        worker.close();
+        toolService.stop(worker.handle()).subscribe();
+    }
+
+    /**
+     * Workers for one capture file
+     */
+    private final class Workers {
+        private final Path file;
+        private final LinkedBlockingDeque<SharkdWorker> idle = new LinkedBlockingDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Workers(Path file) {
+            this.file = file;
+        }
+
+        SharkdWorker borrow() throws IOException, InterruptedException {
+            int limit = Math.max(1, config.getDissection().getWorkersPerCapture());
+            while (true) {
+                SharkdWorker worker = idle.pollFirst();
+                if (worker == null) {
+                    if (size.incrementAndGet() <= limit) {
+                        try {
+                            return spawn(file);
+                        } catch (IOException | RuntimeException e) {
+                            size.decrementAndGet();
+                            throw e;
+                        }
+                    }
+                    size.decrementAndGet();
+                    worker = idle.pollFirst(config.getDissection().getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                    if (worker == null) {
+                        throw new IOException("No sharkd worker free for " + file.getFileName());
+                    }
+                }
+                if (worker.isAlive() && !worker.isStale()) {
+                    return worker;
+                }
+                size.decrementAndGet();
+                discard(worker);
+            }
+        }
+
+        void release(SharkdWorker worker, boolean healthy) {
+            if (healthy && worker.isAlive()) {
+                // Most recently used first, so surplus workers age out at the tail
+                idle.offerFirst(worker);
+            } else {
+                size.decrementAndGet();
+                discard(worker);
+            }
+        }
+
+        void closeIdle(long idleNanos) {
+            SharkdWorker worker;
+            while ((worker = idle.peekLast()) != null && worker.idleNanos() > idleNanos) {
+                if (idle.removeLastOccurrence(worker)) {
+                    size.decrementAndGet();
+                    discard(worker);
+                    log.debug("Stopped idle sharkd for {}", file.getFileName());
+                }
+            }
+        }
+
+        void closeAll() {
+            SharkdWorker worker;
+            while ((worker = idle.pollFirst()) != null) {
+                size.decrementAndGet();
+                discard(worker);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.nathan.p2.service.tshark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * One sharkd process with a capture loaded.
+ *
+ * sharkd ("sharkd -") reads JSON-RPC 2.0 requests from stdin and answers each with one JSON
+ * object on stdout. Dissectors are registered once at startup and the file is indexed by
+ * "load", so later queries only pay for the dissection itself. Responses are parsed as a
+ * stream, so counting a million frames does not build a million-element tree.
+ *
+ * Not thread-safe: sharkd serves one request at a time, {@link SharkdPool} hands a worker
+ * to one caller at a time.
+ */
+@Slf4j
+public final class SharkdWorker implements Closeable {
+
+    private final Process process;
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final OutputStream requests;
+    private final JsonParser responses;
+
+    private long nextId = 1;
+    private long loadedSize = -1;
+    private long loadedModified = -1;
+    private volatile long lastUsed = System.nanoTime();
+
+    SharkdWorker(Process process, Path file, ObjectMapper objectMapper) throws IOException {
+        this.process = process;
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.requests = process.getOutputStream();
+        // A Reader, because byte-stream encoding detection would block until sharkd first writes
+        this.responses = objectMapper.getFactory()
+            .createParser(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Load (index) the capture. Must succeed before any query.
+     */
+    void load() throws IOException {
+        long size = Files.size(file);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        send("load", Map.of("file", file.toAbsolutePath().toString()));
+        JsonNode result = objectMapper.readTree(readResult());
+        finishResponse();
+        if (!"OK".equals(result.path("status").asText())) {
+            throw new IOException("sharkd could not load " + file + ": " + result);
+        }
+        loadedSize = size;
+        loadedModified = modified;
+    }
+
+    /**
+     * Number of frames matching the display filter (all frames for an empty filter)
+     */
+    public long count(String filter) throws IOException {
+        send("frames", framesParams(filter, List.of("frame.number")));
+        expectResultArray();
+        long count = 0;
+        while (responses.nextToken() == JsonToken.START_OBJECT) {
+            responses.skipChildren();
+            count++;
+        }
+        finishResponse();
+        return count;
+    }
+
+    /**
+     * Matching frames with their epoch timestamp and the requested fields, in frame order.
+     * Values are sharkd custom-column strings; repeated occurrences are joined with ','.
+     */
+    public void frames(String filter, List<String> fields, Consumer<DissectedPacket> action) throws IOException {
+        List<String> columns = new ArrayList<>(fields.size() + 1);
+        columns.add("frame.time_epoch");
+        columns.addAll(fields);
+        send("frames", framesParams(filter, columns));
+        expectResultArray();
+        while (responses.nextToken() == JsonToken.START_OBJECT) {
+            JsonNode frame = objectMapper.readTree(responses);
+            JsonNode values = frame.path("c");
+            Map<String, String> fieldValues = new HashMap<>();
+            for (int i = 1; i < columns.size() && i < values.size(); i++) {
+                String value = values.get(i).asText();
+                if (!value.isEmpty()) {
+                    fieldValues.put(columns.get(i), value);
+                }
+            }
+            double timestamp;
+            try {
+                timestamp = Double.parseDouble(values.path(0).asText());
+            } catch (NumberFormatException e) {
+                timestamp = 0;
+            }
+            action.accept(new DissectedPacket(frame.path("num").asInt(), timestamp, fieldValues));
+        }
+        finishResponse();
+    }
+
+    public boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * The capture changed on disk since it was loaded (e.g. a live session still writing it)
+     */
+    public boolean isStale() {
+        try {
+            return Files.size(file) != loadedSize || Files.getLastModifiedTime(file).toMillis() != loadedModified;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    public long idleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    public ProcessHandle handle() {
+        return process.toHandle();
+    }
+
+    @Override
+    public void close() {
+        try {
+            requests.close();
+        } catch (IOException e) {
+            log.debug("Error closing sharkd stdin: {}", e.getMessage());
+        }
+        process.destroy();
+    }
+
+    // ==================== JSON-RPC ====================
+
+    private static Map<String, Object> framesParams(String filter, List<String> columns) {
+        Map<String, Object> params = new HashMap<>();
+        if (filter != null && !filter.isBlank()) {
+            params.put("filter", filter);
+        }
+        // "field:occurrence" is a custom column; occurrence 0 means all occurrences
+        for (int i = 0; i < columns.size(); i++) {
+            params.put("column" + i, columns.get(i) + ":0");
+        }
+        return params;
+    }
+
+    private void send(String method, Map<String, Object> params) throws IOException {
+        lastUsed = System.nanoTime();
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("jsonrpc", "2.0");
+        request.put("id", nextId++);
+        request.put("method", method);
+        request.put("params", params);
+        requests.write(objectMapper.writeValueAsBytes(request));
+        requests.write('\n');
+        requests.flush();
+    }
+
+    /**
+     * Advance to the value of "result" in the next response, failing on a JSON-RPC error
+     */
+    private JsonParser readResult() throws IOException {
+        if (responses.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("sharkd closed its output");
+        }
+        while (responses.nextToken() == JsonToken.FIELD_NAME) {
+            String name = responses.currentName();
+            responses.nextToken();
+            if ("result".equals(name)) {
+                return responses;
+            }
+            if ("error".equals(name)) {
+                JsonNode error = objectMapper.readTree(responses);
+                finishResponse();
+                throw new SharkdException(error.path("code").asInt(), error.path("message").asText());
+            }
+            responses.skipChildren();
+        }
+        throw new IOException("sharkd response without result");
+    }
+
+    private void expectResultArray() throws IOException {
+        if (readResult().currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Unexpected sharkd frames response: " + responses.currentToken());
+        }
+    }
+
+    /**
+     * Skip whatever follows the part of the response we consumed, up to the closing brace
+     */
+    private void finishResponse() throws IOException {
+        JsonToken token;
+        while ((token = responses.nextToken()) != null && token != JsonToken.END_OBJECT) {
+            responses.skipChildren();
+        }
+    }
+
+    /**
+     * Error reported by sharkd for a request, e.g. an invalid display filter
+     */
+    public static class SharkdException extends IOException {
+        private final int code;
+
+        public SharkdException(int code, String message) {
+            super("sharkd error " + code + ": " + message);
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.nathan.p2.service.tshark;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+
+/**
+ * Streaming reader for "tshark -T json" output.
+ *
+ * tshark prints one array with an object per packet:
+ *   [ { "_index": ..., "_source": { "layers": { "frame.number": ["1"], ... } } }, ... ]
+ *
+ * Only one packet's "_source.layers" tree is materialised at a time and packets are pulled
+ * on demand, so memory stays flat regardless of capture size and the first packet is
+ * available while tshark is still running.
+ */
+@Slf4j
+public final class TSharkJsonStreamParser {
+
+    private TSharkJsonStreamParser() {}
+
+    /**
+     * Emit the "_source.layers" object of every packet read from the stream.
+     * The stream is closed when the Flux terminates or is cancelled.
+     */
+    public static Flux<JsonNode> layers(Callable<InputStream> source, ObjectMapper objectMapper) {
+        return Flux.using(
+            () -> objectMapper.getFactory().createParser(source.call()),
+            parser -> Flux.<JsonNode>generate(sink -> {
+                try {
+                    JsonNode layers = nextLayers(parser, objectMapper);
+                    if (layers != null) {
+                        sink.next(layers);
+                    } else {
+                        sink.complete();
+                    }
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+            }),
+            parser -> {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    log.debug("Error closing tshark JSON stream: {}", e.getMessage());
+                }
+            });
+    }
+
+    /**
+     * Advance to the next packet object and return its layers, or null at end of input
+     */
+    static JsonNode nextLayers(JsonParser parser, ObjectMapper objectMapper) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.START_OBJECT) {
+                JsonNode layers = readPacket(parser, objectMapper);
+                if (layers != null) {
+                    return layers;
+                }
+            }
+            // Top-level '[' / ']' and anything unexpected between packets is ignored
+        }
+        return null;
+    }
+
+    private static JsonNode readPacket(JsonParser parser, ObjectMapper objectMapper) throws IOException {
+        JsonNode layers = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("_source".equals(name) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String sourceField = parser.currentName();
+                    JsonToken sourceValue = parser.nextToken();
+                    if ("layers".equals(sourceField) && sourceValue == JsonToken.START_OBJECT) {
+                        layers = objectMapper.readTree(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return layers;
+    }
+}
@@ -116,6 +116,29 @@ public class PlatformUtils {
         return "tshark";
     }
     
+    /**
+     * Resolve sharkd (Wireshark's JSON-RPC dissection daemon). It ships next to tshark,
+     * so a tshark found on disk is used to locate it.
+     */
+    public static String resolveSharkdPath(String configuredPath, String tsharkPath) {
+        if (configuredPath != null && !configuredPath.isEmpty() && new File(configuredPath).exists()) {
+            return configuredPath;
+        }
+        
+        String executable = IS_WINDOWS ? "sharkd.exe" : "sharkd";
+        String bundled = getBundledToolPath("sharkd", executable);
+        if (bundled != null) return bundled;
+        
+        if (tsharkPath != null) {
+            File sibling = new File(new File(tsharkPath).getAbsoluteFile().getParentFile(), executable);
+            if (new File(tsharkPath).exists() && sibling.exists()) {
+                return sibling.getPath();
+            }
+        }
+        
+        return configuredPath != null && !configuredPath.isEmpty() ? configuredPath : executable;
+    }
+    
     /**
      * Check if running on Windows
      */
@@ -0,0 +1,70 @@
+package com.nathan.p2.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Kernel statistics of UDP sockets bound to a local port, read from /proc/net/udp and
+ * /proc/net/udp6 (Linux only).
+ *
+ * Line format (after the header line):
+ *   sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ref pointer drops
+ * Addresses are hex "ADDR:PORT"; queue sizes are hex bytes; drops counts datagrams the kernel
+ * discarded because the socket receive buffer was full.
+ */
+@Slf4j
+public final class UdpSocketStats {
+
+    private static final List<Path> PROC_FILES = List.of(Path.of("/proc/net/udp"), Path.of("/proc/net/udp6"));
+
+    /**
+     * @param receiveQueue bytes waiting in the socket receive buffers
+     * @param drops        datagrams dropped by the kernel since the sockets were created
+     */
+    public record Stats(long receiveQueue, long drops) {}
+
+    private UdpSocketStats() {}
+
+    /**
+     * Totals over all sockets bound to the port, or empty where /proc/net/udp is not available
+     */
+    public static Optional<Stats> forLocalPort(int port) {
+        if (!PlatformUtils.isLinux()) {
+            return Optional.empty();
+        }
+        long queue = 0;
+        long drops = 0;
+        boolean found = false;
+        for (Path file : PROC_FILES) {
+            if (!Files.isReadable(file)) {
+                continue;
+            }
+            try {
+                List<String> lines = Files.readAllLines(file);
+                for (int i = 1; i < lines.size(); i++) {
+                    String[] columns = lines.get(i).trim().split("\\s+");
+                    if (columns.length < 13 || localPort(columns[1]) != port) {
+                        continue;
+                    }
+                    String[] queues = columns[4].split(":");
+                    queue += Long.parseLong(queues[1], 16);
+                    drops += Long.parseLong(columns[12]);
+                    found = true;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not read {}: {}", file, e.getMessage());
+            }
+        }
+        return found ? Optional.of(new Stats(queue, drops)) : Optional.empty();
+    }
+
+    private static int localPort(String address) {
+        int colon = address.lastIndexOf(':');
+        return colon >= 0 ? Integer.parseInt(address.substring(colon + 1), 16) : -1;
+    }
+}
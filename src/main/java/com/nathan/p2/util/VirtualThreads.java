@@ -0,0 +1,46 @@
+package com.nathan.p2.util;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual thread execution for blocking I/O
+ *
+ * Process stdout/stderr pumps, file tailing and ADB shell calls spend nearly all their time
+ * blocked in a read or waitFor. Each of them gets its own virtual thread, which costs a few KB
+ * instead of a platform thread, so hundreds of sessions and streams do not multiply OS threads
+ * and none of that blocking lands on the Netty event loops.
+ *
+ * Not for CPU-bound work or latency-critical loops (the GSMTAP listener and ring consumers
+ * keep their platform threads).
+ */
+public final class VirtualThreads {
+
+    private static final ExecutorService EXECUTOR =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vio-", 0).factory());
+
+    /**
+     * Reactor scheduler running every task on a new virtual thread, for subscribeOn/publishOn of blocking I/O
+     */
+    public static final Scheduler IO = Schedulers.fromExecutorService(EXECUTOR, "virtual-io");
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Start a named virtual thread
+     */
+    public static Thread start(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).start(task);
+    }
+
+    /**
+     * A named virtual thread, not started yet (e.g. to register it before it runs)
+     */
+    public static Thread unstarted(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+}
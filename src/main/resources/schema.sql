@@ -73,5 +73,8 @@ CREATE TABLE IF NOT EXISTS records (
 
 CREATE INDEX IF NOT EXISTS idx_kpi_session ON kpi_aggregates(session_id);
 CREATE INDEX IF NOT EXISTS idx_gps_session ON gps_traces(session_id);
-CREATE INDEX IF NOT EXISTS idx_records_session ON records(session_id);
-CREATE INDEX IF NOT EXISTS idx_records_protocol ON records(session_id, protocol);
+-- Superseded by the frame-ordered indexes below, which page records without a sort
+DROP INDEX IF EXISTS idx_records_session;
+DROP INDEX IF EXISTS idx_records_protocol;
+CREATE INDEX IF NOT EXISTS idx_records_session_frame ON records(session_id, frame_number);
+CREATE INDEX IF NOT EXISTS idx_records_session_protocol_frame ON records(session_id, protocol, frame_number);
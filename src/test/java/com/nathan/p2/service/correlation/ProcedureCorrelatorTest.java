@@ -0,0 +1,230 @@
+package com.nathan.p2.service.correlation;
+
+import com.nathan.p2.service.tshark.DissectedPacket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcedureCorrelatorTest {
+
+    // T300, 2 s to the response and 2 s from it to the end
+    private static final ProcedureDefinition RRC_SETUP = standard(ProcedureType.RRC_SETUP, "LTE");
+    // T3410, 15 s to the response and 6 s from it to the end
+    private static final ProcedureDefinition ATTACH = standard(ProcedureType.ATTACH, "LTE");
+    // Keyed by bearer id, no response step, T3485 8 s
+    private static final ProcedureDefinition ERAB_SETUP = standard(ProcedureType.ERAB_SETUP, "LTE");
+
+    private final List<Procedure> procedures = new ArrayList<>();
+    private int frame;
+
+    private static ProcedureDefinition standard(ProcedureType type, String rat) {
+        return ProcedureDefinition.STANDARD.stream()
+            .filter(definition -> definition.type() == type && definition.rat().equals(rat))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private ProcedureCorrelator correlator(ProcedureDefinition... definitions) {
+        return new ProcedureCorrelator(List.of(definitions), procedures::add);
+    }
+
+    /**
+     * The next frame, with the given field/value pairs
+     */
+    private DissectedPacket packet(double timestamp, String... fieldsAndValues) {
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            fields.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return new DissectedPacket(++frame, timestamp, fields);
+    }
+
+    private DissectedPacket element(double timestamp, String element) {
+        return packet(timestamp, element, "1");
+    }
+
+    private DissectedPacket unrelated(double timestamp) {
+        return packet(timestamp, "lte-rrc.measurementReport_element", "1");
+    }
+
+    @Test
+    void completedProcedureReportsBothLatencies() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP);
+
+        correlator.accept(element(10.0, "lte-rrc.rrcConnectionRequest_element"));
+        correlator.accept(element(10.25, "lte-rrc.rrcConnectionSetup_element"));
+        assertEquals(1, correlator.openProcedures());
+        correlator.accept(element(10.5, "lte-rrc.rrcConnectionSetupComplete_element"));
+
+        assertEquals(1, procedures.size());
+        Procedure procedure = procedures.get(0);
+        assertEquals(Procedure.Outcome.SUCCESS, procedure.outcome());
+        assertEquals(1, procedure.startFrame());
+        assertEquals(2, procedure.responseFrame());
+        assertEquals(3, procedure.endFrame());
+        assertEquals(250, procedure.responseLatencyMs());
+        assertEquals(500, procedure.latencyMs());
+        assertEquals(0, correlator.openProcedures());
+    }
+
+    @Test
+    void procedureWithoutResponseTimesOutOnItsGuardTimer() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP);
+
+        correlator.accept(element(10.0, "lte-rrc.rrcConnectionRequest_element"));
+        // Exactly at the deadline the timer has not run out yet
+        correlator.accept(unrelated(12.0));
+        assertTrue(procedures.isEmpty());
+
+        correlator.accept(unrelated(12.1));
+
+        assertEquals(1, procedures.size());
+        Procedure procedure = procedures.get(0);
+        assertEquals(Procedure.Outcome.TIMEOUT, procedure.outcome());
+        assertEquals("T300 expiry", procedure.cause());
+        assertEquals(-1, procedure.latencyMs());
+        assertEquals(-1, procedure.responseLatencyMs());
+        assertEquals(0, correlator.openProcedures());
+    }
+
+    @Test
+    void responseReArmsTheTimerWithTheCompletionGuard() {
+        ProcedureCorrelator correlator = correlator(ATTACH);
+
+        correlator.accept(packet(0.0, "nas_eps.nas_msg_emm_type", "0x41"));
+        correlator.accept(packet(14.0, "nas_eps.nas_msg_emm_type", "0x42"));
+        // Past the start guard (15 s), within the completion guard (14 + 6 s)
+        correlator.accept(unrelated(19.0));
+        assertTrue(procedures.isEmpty());
+
+        correlator.accept(unrelated(20.5));
+
+        assertEquals(1, procedures.size());
+        Procedure procedure = procedures.get(0);
+        assertEquals(Procedure.Outcome.TIMEOUT, procedure.outcome());
+        assertEquals("No completion after response", procedure.cause());
+        assertEquals(14000, procedure.responseLatencyMs());
+        assertEquals(-1, procedure.latencyMs());
+    }
+
+    @Test
+    void decidedProcedureIsNotTimedOutLater() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP);
+
+        correlator.accept(element(0.0, "lte-rrc.rrcConnectionRequest_element"));
+        correlator.accept(element(0.5, "lte-rrc.rrcConnectionReject_element"));
+        correlator.accept(unrelated(60.0));
+        correlator.finish();
+
+        assertEquals(1, procedures.size());
+        assertEquals(Procedure.Outcome.FAILURE, procedures.get(0).outcome());
+        assertEquals("Rejected", procedures.get(0).cause());
+    }
+
+    @Test
+    void expireFinalisesWithoutAFrame() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP, ATTACH);
+
+        correlator.accept(element(0.0, "lte-rrc.rrcConnectionRequest_element"));
+        correlator.accept(packet(1.0, "nas_eps.nas_msg_emm_type", "0x41"));
+
+        correlator.expire(5.0);
+        assertEquals(1, procedures.size());
+        assertEquals(ProcedureType.RRC_SETUP, procedures.get(0).type());
+        assertEquals(1, correlator.openProcedures());
+
+        correlator.expire(16.5);
+        assertEquals(2, procedures.size());
+        assertEquals("T3410 expiry", procedures.get(1).cause());
+    }
+
+    @Test
+    void keyedProceduresTimeOutIndependently() {
+        ProcedureCorrelator correlator = correlator(ERAB_SETUP);
+
+        correlator.accept(packet(0.0, "nas_eps.nas_msg_esm_type", "0xc1", "nas_eps.bearer_id", "5"));
+        correlator.accept(packet(4.0, "nas_eps.nas_msg_esm_type", "0xc1", "nas_eps.bearer_id", "6"));
+        correlator.accept(packet(9.0, "nas_eps.nas_msg_esm_type", "0xc2", "nas_eps.bearer_id", "6"));
+
+        assertEquals(2, procedures.size());
+        Procedure timedOut = procedures.get(0);
+        assertEquals("5", timedOut.key());
+        assertEquals(Procedure.Outcome.TIMEOUT, timedOut.outcome());
+        assertEquals("T3485 expiry", timedOut.cause());
+        Procedure completed = procedures.get(1);
+        assertEquals("6", completed.key());
+        assertEquals(Procedure.Outcome.SUCCESS, completed.outcome());
+        assertEquals(5000, completed.latencyMs());
+    }
+
+    @Test
+    void failureCarriesTheCauseField() {
+        ProcedureCorrelator correlator = correlator(ERAB_SETUP);
+
+        correlator.accept(packet(0.0, "nas_eps.nas_msg_esm_type", "0xc1", "nas_eps.bearer_id", "5"));
+        correlator.accept(packet(1.0, "nas_eps.nas_msg_esm_type", "0xc3", "nas_eps.bearer_id", "5",
+            "nas_eps.esm.cause", "26"));
+
+        assertEquals(1, procedures.size());
+        assertEquals(Procedure.Outcome.FAILURE, procedures.get(0).outcome());
+        assertEquals("26", procedures.get(0).cause());
+    }
+
+    @Test
+    void restartFailsTheOpenProcedure() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP);
+
+        correlator.accept(element(0.0, "lte-rrc.rrcConnectionRequest_element"));
+        correlator.accept(element(1.0, "lte-rrc.rrcConnectionRequest_element"));
+
+        assertEquals(1, procedures.size());
+        assertEquals(Procedure.Outcome.FAILURE, procedures.get(0).outcome());
+        assertEquals("Restarted", procedures.get(0).cause());
+        assertEquals(1, correlator.openProcedures());
+
+        // The stale deadline of the first attempt does not end the second one
+        correlator.accept(unrelated(2.5));
+        assertEquals(1, procedures.size());
+        correlator.accept(unrelated(3.5));
+        assertEquals(2, procedures.size());
+        assertEquals(2, procedures.get(1).startFrame());
+        assertEquals(Procedure.Outcome.TIMEOUT, procedures.get(1).outcome());
+    }
+
+    @Test
+    void oldestProcedureIsEvictedBeyondTheLimit() {
+        ProcedureCorrelator correlator = correlator(ERAB_SETUP);
+
+        for (int bearer = 0; bearer <= ProcedureCorrelator.MAX_OPEN_PER_MACHINE; bearer++) {
+            correlator.accept(packet(0.0, "nas_eps.nas_msg_esm_type", "0xc1", "nas_eps.bearer_id", String.valueOf(bearer)));
+        }
+
+        assertEquals(ProcedureCorrelator.MAX_OPEN_PER_MACHINE, correlator.openProcedures());
+        assertEquals(1, procedures.size());
+        assertEquals("0", procedures.get(0).key());
+        assertEquals("Evicted", procedures.get(0).cause());
+    }
+
+    @Test
+    void finishReportsOpenProceduresAsIncomplete() {
+        ProcedureCorrelator correlator = correlator(RRC_SETUP, ATTACH);
+
+        correlator.accept(element(0.0, "lte-rrc.rrcConnectionRequest_element"));
+        correlator.accept(packet(0.5, "nas_eps.nas_msg_emm_type", "0x41"));
+        correlator.finish();
+
+        assertEquals(2, procedures.size());
+        assertTrue(procedures.stream().allMatch(procedure -> procedure.outcome() == Procedure.Outcome.INCOMPLETE));
+        assertEquals(0, correlator.openProcedures());
+
+        // Their deadlines are gone with them
+        correlator.expire(100.0);
+        assertEquals(2, procedures.size());
+    }
+}
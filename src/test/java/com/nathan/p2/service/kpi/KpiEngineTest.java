@@ -0,0 +1,163 @@
+package com.nathan.p2.service.kpi;
+
+import com.nathan.p2.domain.KpiAggregate;
+import com.nathan.p2.service.TSharkIntegrationService;
+import com.nathan.p2.service.process.ToolPriority;
+import com.nathan.p2.service.scheduling.PipelineSchedulers;
+import com.nathan.p2.service.tshark.DissectedPacket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KpiEngineTest {
+
+    private static final Path PCAP = Path.of("capture.pcap");
+    private static final String EMM_TYPE = "nas_eps.nas_msg_emm_type";
+
+    private final TSharkIntegrationService tshark = mock(TSharkIntegrationService.class);
+    private final PipelineSchedulers schedulers = mock(PipelineSchedulers.class);
+
+    @BeforeEach
+    void setUp() {
+        when(schedulers.analytics()).thenReturn(Schedulers.immediate());
+    }
+
+    private static DissectedPacket packet(int frame, Map<String, String> fields) {
+        return new DissectedPacket(frame, frame, fields);
+    }
+
+    private Map<String, KpiAggregate> run(List<KpiAccumulatorSource> sources, List<DissectedPacket> packets) {
+        when(tshark.scanFields(eq(PCAP), anyCollection(), eq(ToolPriority.BATCH))).thenReturn(Flux.fromIterable(packets));
+        List<KpiAggregate> kpis = new KpiEngine(tshark, sources, schedulers).run(7L, PCAP).block();
+        return kpis.stream().collect(Collectors.toMap(KpiAggregate::getMetric, Function.identity()));
+    }
+
+    @Test
+    void countsProceduresInOnePass() {
+        List<DissectedPacket> packets = List.of(
+            packet(1, Map.of(EMM_TYPE, "0x41")),
+            packet(2, Map.of(EMM_TYPE, "0x42")),
+            packet(3, Map.of(EMM_TYPE, "0x41")),
+            packet(4, Map.of(EMM_TYPE, "0x41")),
+            packet(5, Map.of(EMM_TYPE, "0x42")),
+            packet(6, Map.of(EMM_TYPE, "0x41")),
+            packet(7, Map.of(EMM_TYPE, "0x42")),
+            packet(8, Map.of("lte-rrc.measurementReport_element", "1")),
+            packet(9, Map.of("lte-rrc.measurementReport_element", "1")));
+
+        Map<String, KpiAggregate> kpis = run(List.of(new ProcedureKpiSource()), packets);
+
+        KpiAggregate attach = kpis.get("LTE_ATTACH_SR");
+        assertEquals(75.0, attach.getAvgValue(), 1e-9);
+        assertEquals("LTE", attach.getRat());
+        assertEquals(7L, attach.getSessionId());
+        assertEquals(2.0, kpis.get("LTE_MEAS_REPORT_COUNT").getAvgValue(), 1e-9);
+        assertEquals(0.0, kpis.get("LTE_TAU_SR").getAvgValue(), 1e-9);
+        // No attempts: the configured fallback
+        KpiAggregate rach = kpis.get("LTE_RACH_SR");
+        assertEquals(95.0, rach.getAvgValue(), 1e-9);
+        assertEquals(90.0, rach.getMinValue(), 1e-9);
+        assertEquals(100.0, rach.getMaxValue(), 1e-9);
+        verify(tshark, times(1)).scanFields(any(), anyCollection(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void requestsTheUnionOfAllAccumulatorFields() {
+        run(List.of(new CountingSource("A", "a.x"), new CountingSource("B", "b.y"), new CountingSource("C", "a.x")), List.of());
+
+        ArgumentCaptor<Collection<String>> fields = ArgumentCaptor.forClass(Collection.class);
+        verify(tshark).scanFields(eq(PCAP), fields.capture(), eq(ToolPriority.BATCH));
+        assertEquals(Set.of("a.x", "b.y"), Set.copyOf(fields.getValue()));
+    }
+
+    @Test
+    void aFailingAccumulatorDoesNotStopTheOthers() {
+        KpiAccumulatorSource failing = () -> new CountingAccumulator("FAILING", "a.x") {
+            @Override
+            public void accept(DissectedPacket packet) {
+                throw new IllegalStateException("broken");
+            }
+        };
+        List<DissectedPacket> packets = List.of(
+            packet(1, Map.of("a.x", "1")),
+            packet(2, Map.of("a.x", "1")),
+            packet(3, Map.of()));
+
+        Map<String, KpiAggregate> kpis = run(List.of(failing, new CountingSource("A", "a.x")), packets);
+
+        assertEquals(2.0, kpis.get("A").getAvgValue(), 1e-9);
+        assertEquals(0.0, kpis.get("FAILING").getAvgValue(), 1e-9);
+    }
+
+    @Test
+    void everyRunStartsFromFreshAccumulators() {
+        List<DissectedPacket> packets = List.of(packet(1, Map.of("a.x", "1")));
+        CountingSource source = new CountingSource("A", "a.x");
+
+        run(List.of(source), packets);
+        Map<String, KpiAggregate> second = run(List.of(source), packets);
+
+        assertEquals(1.0, second.get("A").getAvgValue(), 1e-9);
+    }
+
+    /**
+     * Counts the frames carrying one field as KPI {@code metric}
+     */
+    private record CountingSource(String metric, String field) implements KpiAccumulatorSource {
+        @Override
+        public KpiAccumulator newAccumulator() {
+            return new CountingAccumulator(metric, field);
+        }
+    }
+
+    private static class CountingAccumulator implements KpiAccumulator {
+        private final String metric;
+        private final String field;
+        private long count;
+
+        CountingAccumulator(String metric, String field) {
+            this.metric = metric;
+            this.field = field;
+        }
+
+        @Override
+        public Set<String> fields() {
+            return Set.of(field);
+        }
+
+        @Override
+        public void accept(DissectedPacket packet) {
+            if (packet.has(field)) {
+                count++;
+            }
+        }
+
+        @Override
+        public List<KpiAggregate> results(Long sessionId) {
+            List<KpiAggregate> results = new ArrayList<>();
+            results.add(KpiAccumulator.kpi(sessionId, metric, (double) count, (double) count, (double) count, "ALL"));
+            return results;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.nathan.p2.service.pcap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaptureTailTest {
+
+    private static final long T0 = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A capture as it will look once complete, with the offset where every record ends
+     */
+    private record Capture(byte[] bytes, List<Integer> recordEnds) {
+        byte[] upTo(int length) {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static Capture pcap(int records) {
+        ByteBuffer file = ByteBuffer.allocate(64 * 1024);
+        PcapRecordEncoder.putGlobalHeader(file);
+        PcapRecordEncoder encoder = new PcapRecordEncoder();
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            byte[] datagram = new byte[GsmtapHeader.LENGTH + 4];
+            datagram[0] = 2;
+            datagram[1] = 4;
+            datagram[GsmtapHeader.LENGTH] = (byte) i;
+            encoder.encode(file, ByteBuffer.wrap(datagram), T0 + i);
+            ends.add(file.position());
+        }
+        return new Capture(Arrays.copyOf(file.array(), file.position()), ends);
+    }
+
+    private static Capture pcapng(int records) {
+        ByteBuffer file = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        // Section header, then one raw IP interface without options
+        file.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1).putInt(28);
+        file.putInt(1).putInt(24).putShort((short) PcapRecord.LINKTYPE_RAW).putShort((short) 0).putInt(65535).putInt(0).putInt(24);
+        List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i < records; i++) {
+            byte[] data = {(byte) i, 1, 2, 3, 4, 5};
+            int padded = (data.length + 3) & ~3;
+            int length = 32 + padded;
+            file.putInt(6).putInt(length).putInt(0).putInt(0).putInt(i)
+                .putInt(data.length).putInt(data.length)
+                .put(data).put(new byte[padded - data.length]).putInt(length);
+            ends.add(file.position());
+        }
+        return new Capture(Arrays.copyOf(file.array(), file.position()), ends);
+    }
+
+    /**
+     * Timestamps of the records in a chunk
+     */
+    private static List<Long> timestamps(Path chunk) throws IOException {
+        List<Long> timestamps = new ArrayList<>();
+        try (PcapReader reader = PcapReader.open(chunk)) {
+            reader.forEach(record -> timestamps.add(record.timestampNanos()));
+        }
+        return timestamps;
+    }
+
+    @Test
+    void leavesAPartialTrailingRecordForTheNextIncrement() throws IOException {
+        Capture capture = pcap(4);
+        Path file = dir.resolve("capture.pcap");
+        // Two records and part of the third
+        Files.write(file, capture.upTo(capture.recordEnds().get(1) + 10));
+        CaptureTail tail = new CaptureTail();
+
+        CaptureTail.Increment first = tail.next(file, "chunk-");
+        assertNotNull(first);
+        assertEquals(2, first.frames());
+        assertEquals(PcapRecordEncoder.GLOBAL_HEADER_LENGTH, first.headerLength());
+        assertEquals(capture.recordEnds().get(1).longValue(), first.nextOffset());
+        assertEquals(List.of(T0, T0 + 1), timestamps(first.chunk()));
+        tail.advance(first);
+        CaptureTail.delete(first.chunk());
+        assertEquals(2, tail.frames());
+
+        // Only the partial record so far
+        assertNull(tail.next(file, "chunk-"));
+
+        Files.write(file, capture.bytes());
+        CaptureTail.Increment second = tail.next(file, "chunk-");
+        assertEquals(2, second.frames());
+        assertEquals(capture.bytes().length, second.nextOffset());
+        assertEquals(List.of(T0 + 2, T0 + 3), timestamps(second.chunk()));
+        tail.advance(second);
+        assertEquals(4, tail.frames());
+        assertNull(tail.next(file, "chunk-"));
+    }
+
+    @Test
+    void unprocessedIncrementIsReadAgain() throws IOException {
+        Capture capture = pcap(2);
+        Path file = Files.write(dir.resolve("capture.pcap"), capture.bytes());
+        CaptureTail tail = new CaptureTail();
+
+        CaptureTail.Increment failed = tail.next(file, "chunk-");
+        CaptureTail.Increment retried = tail.next(file, "chunk-");
+
+        assertEquals(failed.nextOffset(), retried.nextOffset());
+        assertEquals(failed.frames(), retried.frames());
+        assertEquals(timestamps(failed.chunk()), timestamps(retried.chunk()));
+        assertEquals(0, tail.frames());
+    }
+
+    @Test
+    void pcapngChunksKeepTheSectionAndInterfaces() throws IOException {
+        Capture capture = pcapng(3);
+        Path file = dir.resolve("capture.pcapng");
+        Files.write(file, capture.upTo(capture.recordEnds().get(0) + 12));
+        CaptureTail tail = new CaptureTail();
+
+        CaptureTail.Increment first = tail.next(file, "chunk-");
+        assertEquals(1, first.frames());
+        assertEquals(28 + 24, first.headerLength());
+        tail.advance(first);
+
+        Files.write(file, capture.bytes());
+        CaptureTail.Increment second = tail.next(file, "chunk-");
+        assertEquals(2, second.frames());
+        try (PcapReader reader = PcapReader.open(second.chunk())) {
+            assertTrue(reader.isPcapng());
+            PcapRecord record = reader.next();
+            assertEquals(PcapRecord.LINKTYPE_RAW, record.linkType());
+            assertEquals(1, record.data().get(0));
+            assertEquals(2, reader.next().data().get(0));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void restartedCaptureIsDetected() throws IOException {
+        Capture capture = pcap(3);
+        Path file = Files.write(dir.resolve("capture.pcap"), capture.bytes());
+        CaptureTail tail = new CaptureTail();
+        tail.advance(tail.next(file, "chunk-"));
+        assertFalse(tail.shrank(file));
+
+        Files.write(file, capture.upTo(capture.recordEnds().get(0)));
+        assertTrue(tail.shrank(file));
+
+        tail.reset();
+        assertEquals(0, tail.frames());
+        CaptureTail.Increment restarted = tail.next(file, "chunk-");
+        assertEquals(1, restarted.frames());
+        assertEquals(List.of(T0), timestamps(restarted.chunk()));
+    }
+
+    @Test
+    void missingOrEmptyCaptureHasNoIncrement() throws IOException {
+        CaptureTail tail = new CaptureTail();
+
+        assertNull(tail.next(dir.resolve("missing.pcap"), "chunk-"));
+        Path headerOnly = Files.write(dir.resolve("empty.pcap"), pcap(0).bytes());
+        assertNull(tail.next(headerOnly, "chunk-"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.nathan.p2.service.pcap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketIndexTest {
+
+    private static final long T0 = 1_700_000_000_000_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+    private static final int UPLINK = 0x4000;
+
+    @TempDir
+    Path dir;
+
+    private record Frame(long timestamp, int type, int subType, int arfcn, byte[] payload) {}
+
+    private static Frame measurementReport(long timestamp) {
+        // UL-DCCH, c1 index 1 in 4 bits
+        return new Frame(timestamp, MessageClass.TYPE_LTE_RRC, MessageClass.RRC_UL_DCCH, UPLINK | 1300, new byte[]{0x08, 0x00});
+    }
+
+    private static Frame attachRequest(long timestamp) {
+        // Plain EMM: protocol discriminator 7, message type 0x41
+        return new Frame(timestamp, MessageClass.TYPE_LTE_NAS, 0, 1300, new byte[]{0x07, 0x41, 0x00});
+    }
+
+    private static Frame rrcConnectionSetup(long timestamp) {
+        // DL-CCCH, c1 index 3 in 2 bits
+        return new Frame(timestamp, MessageClass.TYPE_LTE_RRC, MessageClass.RRC_DL_CCCH, 6300, new byte[]{0x60});
+    }
+
+    private Path capture(List<Frame> frames) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate(64 * 1024);
+        PcapRecordEncoder.putGlobalHeader(file);
+        PcapRecordEncoder encoder = new PcapRecordEncoder();
+        for (Frame frame : frames) {
+            ByteBuffer datagram = ByteBuffer.allocate(GsmtapHeader.LENGTH + frame.payload().length)
+                .put((byte) 2).put((byte) 4).put((byte) frame.type()).put((byte) 0)
+                .putShort((short) frame.arfcn()).put((byte) -90).put((byte) 10)
+                .putInt(0)
+                .put((byte) frame.subType()).put((byte) 0).put((byte) 0).put((byte) 0)
+                .put(frame.payload())
+                .flip();
+            encoder.encode(file, datagram, frame.timestamp());
+        }
+        return Files.write(dir.resolve("capture.pcap"), Arrays.copyOf(file.array(), file.position()));
+    }
+
+    private static PacketIndex open(Path pcap) throws IOException {
+        return PacketIndex.open(pcap).orElseThrow();
+    }
+
+    @Test
+    void roundTripsEveryColumn() throws IOException {
+        Path pcap = capture(List.of(measurementReport(T0), attachRequest(T0 + SECOND), rrcConnectionSetup(T0 + 2 * SECOND)));
+
+        assertEquals(PacketIndex.indexPath(pcap), PacketIndex.write(pcap));
+        PacketIndex index = open(pcap);
+
+        assertEquals(3, index.size());
+        List<PcapRecord> records = new ArrayList<>();
+        try (PcapReader reader = PcapReader.open(pcap)) {
+            reader.forEach(records::add);
+        }
+        for (int row = 0; row < records.size(); row++) {
+            PcapRecord record = records.get(row);
+            assertEquals(record.frameNumber(), index.frameNumber(row));
+            assertEquals(record.fileOffset(), index.fileOffset(row));
+            assertEquals(record.timestampNanos(), index.timestampNanos(row));
+            assertEquals(MessageClass.classify(record), index.messageClass(row));
+            assertEquals(record.gsmtap().arfcn(), index.arfcn(row));
+        }
+        assertTrue(MessageClass.matches(index.messageClass(0), MessageClass.forName("measurementReport")));
+        assertTrue(MessageClass.matches(index.messageClass(1), MessageClass.forName("attachRequest")));
+        assertTrue(MessageClass.matches(index.messageClass(2), MessageClass.forName("rrcConnectionSetup")));
+        assertEquals(UPLINK | 1300, index.arfcn(0));
+    }
+
+    @Test
+    void indexedOffsetsLeadBackToTheFrames() throws IOException {
+        Path pcap = capture(List.of(measurementReport(T0), attachRequest(T0 + SECOND), rrcConnectionSetup(T0 + 2 * SECOND)));
+        PacketIndex.write(pcap);
+        PacketIndex index = open(pcap);
+
+        try (PcapReader reader = PcapReader.open(pcap)) {
+            PcapRecord record = reader.readAt(index.fileOffset(1), index.frameNumber(1));
+            assertEquals(2, record.frameNumber());
+            assertEquals(T0 + SECOND, record.timestampNanos());
+            byte[] payload = new byte[3];
+            record.gsmtapPayload().get(payload);
+            assertArrayEquals(new byte[]{0x07, 0x41, 0x00}, payload);
+        }
+    }
+
+    @Test
+    void queriesMatchTheGsmtapFilter() throws IOException {
+        Path pcap = capture(List.of(
+            measurementReport(T0), attachRequest(T0 + SECOND), measurementReport(T0 + 2 * SECOND),
+            rrcConnectionSetup(T0 + 3 * SECOND)));
+        PacketIndex.write(pcap);
+        PacketIndex index = open(pcap);
+
+        assertEquals(4, index.count(GsmtapFilter.all()));
+        assertEquals(3, index.count(GsmtapFilter.ofType(MessageClass.TYPE_LTE_RRC)));
+        assertEquals(2, index.count(GsmtapFilter.builder().messageClass(MessageClass.forName("measurementReport")).build()));
+        assertEquals(2, index.count(GsmtapFilter.builder().uplink(true).build()));
+        assertEquals(1, index.count(GsmtapFilter.builder().arfcn(6300).build()));
+
+        Instant from = Instant.ofEpochSecond(0, T0 + SECOND);
+        Instant to = Instant.ofEpochSecond(0, T0 + 3 * SECOND);
+        List<Integer> rows = new ArrayList<>();
+        index.select(GsmtapFilter.builder().from(from).to(to).build(), rows::add);
+        assertEquals(List.of(1, 2), rows);
+        assertEquals(1, index.lowerBound(from));
+    }
+
+    @Test
+    void timeQueriesScanWhenFramesAreOutOfOrder() throws IOException {
+        Path pcap = capture(List.of(
+            measurementReport(T0 + 2 * SECOND), attachRequest(T0), rrcConnectionSetup(T0 + SECOND)));
+        PacketIndex.write(pcap);
+        PacketIndex index = open(pcap);
+
+        Instant from = Instant.ofEpochSecond(0, T0 + SECOND);
+        assertEquals(0, index.lowerBound(from));
+        List<Integer> rows = new ArrayList<>();
+        index.select(GsmtapFilter.builder().from(from).build(), rows::add);
+        assertEquals(List.of(0, 2), rows);
+    }
+
+    @Test
+    void staleOrMissingIndexIsIgnored() throws IOException {
+        Path pcap = capture(List.of(measurementReport(T0)));
+        assertFalse(PacketIndex.open(pcap).isPresent());
+
+        PacketIndex.write(pcap);
+        assertTrue(PacketIndex.open(pcap).isPresent());
+
+        Files.setLastModifiedTime(pcap, FileTime.fromMillis(Files.getLastModifiedTime(pcap).toMillis() + 10_000));
+        assertFalse(PacketIndex.open(pcap).isPresent());
+    }
+
+    @Test
+    void emptyCaptureHasAnEmptyIndex() throws IOException {
+        Path pcap = capture(List.of());
+        PacketIndex.write(pcap);
+        PacketIndex index = open(pcap);
+
+        assertEquals(0, index.size());
+        assertEquals(0, index.count(GsmtapFilter.all()));
+    }
+}
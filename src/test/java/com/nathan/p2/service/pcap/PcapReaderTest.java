@@ -0,0 +1,239 @@
+package com.nathan.p2.service.pcap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PcapReaderTest {
+
+    private static final byte[] FIRST = {1, 2, 3, 4, 5};
+    private static final byte[] SECOND = {6, 7, 8, 9, 10, 11, 12, 13};
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private Path write(String name, ByteBuffer content) throws IOException {
+        return Files.write(dir.resolve(name), Arrays.copyOf(content.array(), content.position()));
+    }
+
+    // ==================== Classic PCAP ====================
+
+    private static ByteBuffer pcap(ByteOrder order, int magic, int linkType) {
+        return ByteBuffer.allocate(4096).order(order)
+            .putInt(magic).putShort((short) 2).putShort((short) 4)
+            .putInt(0).putInt(0).putInt(65535).putInt(linkType);
+    }
+
+    private static void pcapRecord(ByteBuffer file, long seconds, long fraction, byte[] data, int originalLength) {
+        file.putInt((int) seconds).putInt((int) fraction).putInt(data.length).putInt(originalLength).put(data);
+    }
+
+    @Test
+    void readsLittleEndianMicrosecondPcap() throws IOException {
+        ByteBuffer content = pcap(ByteOrder.LITTLE_ENDIAN, 0xA1B2C3D4, PcapRecord.LINKTYPE_RAW);
+        pcapRecord(content, 1_700_000_000L, 250_000, FIRST, 60);
+        pcapRecord(content, 1_700_000_001L, 5, SECOND, SECOND.length);
+        Path file = write("le.pcap", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertFalse(reader.isPcapng());
+
+            PcapRecord first = reader.next();
+            assertEquals(1, first.frameNumber());
+            assertEquals(1_700_000_000_250_000_000L, first.timestampNanos());
+            assertEquals(PcapRecord.LINKTYPE_RAW, first.linkType());
+            assertEquals(FIRST.length, first.capturedLength());
+            assertEquals(60, first.originalLength());
+            assertEquals(24, first.fileOffset());
+            assertArrayEquals(FIRST, bytes(first.data()));
+
+            PcapRecord second = reader.next();
+            assertEquals(2, second.frameNumber());
+            assertEquals(1_700_000_001_000_005_000L, second.timestampNanos());
+            assertEquals(24 + 16 + FIRST.length, second.fileOffset());
+            assertArrayEquals(SECOND, bytes(second.data()));
+
+            assertNull(reader.next());
+            assertEquals(Files.size(file), reader.position());
+        }
+    }
+
+    @Test
+    void readsBigEndianNanosecondPcap() throws IOException {
+        ByteBuffer content = pcap(ByteOrder.BIG_ENDIAN, 0xA1B23C4D, PcapRecord.LINKTYPE_ETHERNET);
+        pcapRecord(content, 1_700_000_000L, 123_456_789, FIRST, FIRST.length);
+        Path file = write("be.pcap", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            PcapRecord record = reader.next();
+            assertEquals(1_700_000_000_123_456_789L, record.timestampNanos());
+            assertEquals(PcapRecord.LINKTYPE_ETHERNET, record.linkType());
+            assertArrayEquals(FIRST, bytes(record.data()));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void truncatedTrailingRecordEndsIteration() throws IOException {
+        ByteBuffer content = pcap(ByteOrder.LITTLE_ENDIAN, 0xA1B2C3D4, PcapRecord.LINKTYPE_RAW);
+        pcapRecord(content, 1, 0, FIRST, FIRST.length);
+        long complete = content.position();
+        // Header of the next record and only part of its data, as while a writer is appending
+        content.putInt(2).putInt(0).putInt(SECOND.length).putInt(SECOND.length).put(SECOND, 0, 3);
+        Path file = write("partial.pcap", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(1, reader.next().frameNumber());
+            assertNull(reader.next());
+            assertEquals(complete, reader.position());
+        }
+    }
+
+    @Test
+    void readAtSeeksToARecord() throws IOException {
+        ByteBuffer content = pcap(ByteOrder.LITTLE_ENDIAN, 0xA1B2C3D4, PcapRecord.LINKTYPE_RAW);
+        pcapRecord(content, 1, 0, FIRST, FIRST.length);
+        pcapRecord(content, 2, 0, SECOND, SECOND.length);
+        Path file = write("seek.pcap", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            PcapRecord record = reader.readAt(24 + 16 + FIRST.length, 2);
+            assertEquals(2, record.frameNumber());
+            assertArrayEquals(SECOND, bytes(record.data()));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path text = Files.writeString(dir.resolve("notes.txt"), "not a capture");
+        Path tiny = Files.write(dir.resolve("tiny.pcap"), new byte[]{1, 2});
+
+        assertThrows(IOException.class, () -> PcapReader.open(text));
+        assertThrows(IOException.class, () -> PcapReader.open(tiny));
+    }
+
+    // ==================== PCAPNG ====================
+
+    private static ByteBuffer pcapng(ByteOrder order) {
+        return ByteBuffer.allocate(4096).order(order)
+            .putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D)
+            .putShort((short) 1).putShort((short) 0).putLong(-1).putInt(28);
+    }
+
+    /**
+     * Interface description; {@code tsresol} < 0 leaves the default microsecond resolution
+     */
+    private static void interfaceBlock(ByteBuffer file, int linkType, int tsresol) {
+        int length = tsresol < 0 ? 24 : 32;
+        file.putInt(1).putInt(length).putShort((short) linkType).putShort((short) 0).putInt(65535);
+        if (tsresol >= 0) {
+            file.putShort((short) 9).putShort((short) 1).put((byte) tsresol).put(new byte[3]);
+            file.putShort((short) 0).putShort((short) 0);
+        } else {
+            file.putInt(0);
+        }
+        file.putInt(length);
+    }
+
+    private static long enhancedPacket(ByteBuffer file, int interfaceId, long timestamp, byte[] data) {
+        long offset = file.position();
+        int padded = (data.length + 3) & ~3;
+        int length = 32 + padded;
+        file.putInt(6).putInt(length).putInt(interfaceId)
+            .putInt((int) (timestamp >>> 32)).putInt((int) timestamp)
+            .putInt(data.length).putInt(data.length + 100)
+            .put(data).put(new byte[padded - data.length]).putInt(length);
+        return offset;
+    }
+
+    @Test
+    void readsPcapngWithPerInterfaceResolution() throws IOException {
+        ByteBuffer content = pcapng(ByteOrder.LITTLE_ENDIAN);
+        interfaceBlock(content, PcapRecord.LINKTYPE_RAW, 9);
+        interfaceBlock(content, PcapRecord.LINKTYPE_ETHERNET, -1);
+        long firstOffset = enhancedPacket(content, 0, 1_700_000_000_123_456_789L, FIRST);
+        // Name resolution block, skipped
+        content.putInt(4).putInt(16).putInt(0).putInt(16);
+        long secondOffset = enhancedPacket(content, 1, 1_700_000_000_250_000L, SECOND);
+        Path file = write("capture.pcapng", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertTrue(reader.isPcapng());
+
+            PcapRecord first = reader.next();
+            assertEquals(1, first.frameNumber());
+            assertEquals(1_700_000_000_123_456_789L, first.timestampNanos());
+            assertEquals(PcapRecord.LINKTYPE_RAW, first.linkType());
+            assertEquals(FIRST.length + 100, first.originalLength());
+            assertEquals(firstOffset, first.fileOffset());
+            assertArrayEquals(FIRST, bytes(first.data()));
+
+            PcapRecord second = reader.next();
+            assertEquals(2, second.frameNumber());
+            assertEquals(1_700_000_000_250_000_000L, second.timestampNanos());
+            assertEquals(PcapRecord.LINKTYPE_ETHERNET, second.linkType());
+            assertEquals(secondOffset, second.fileOffset());
+            assertArrayEquals(SECOND, bytes(second.data()));
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void readsBigEndianPcapngAndSeeks() throws IOException {
+        ByteBuffer content = pcapng(ByteOrder.BIG_ENDIAN);
+        interfaceBlock(content, PcapRecord.LINKTYPE_RAW, -1);
+        List<Long> offsets = new ArrayList<>();
+        offsets.add(enhancedPacket(content, 0, 1_000_000L, FIRST));
+        offsets.add(enhancedPacket(content, 0, 2_000_000L, SECOND));
+        Path file = write("be.pcapng", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            PcapRecord record = reader.readAt(offsets.get(1), 2);
+            assertEquals(2, record.frameNumber());
+            assertEquals(2_000_000_000L, record.timestampNanos());
+            assertEquals(PcapRecord.LINKTYPE_RAW, record.linkType());
+            assertArrayEquals(SECOND, bytes(record.data()));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void truncatedPcapngBlockEndsIteration() throws IOException {
+        ByteBuffer content = pcapng(ByteOrder.LITTLE_ENDIAN);
+        interfaceBlock(content, PcapRecord.LINKTYPE_RAW, -1);
+        enhancedPacket(content, 0, 1, FIRST);
+        long complete = content.position();
+        enhancedPacket(content, 0, 2, SECOND);
+        content.position(content.position() - 6);
+        Path file = write("partial.pcapng", content);
+
+        try (PcapReader reader = PcapReader.open(file)) {
+            assertEquals(1, reader.next().frameNumber());
+            assertNull(reader.next());
+            assertEquals(complete, reader.position());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.nathan.p2.service.persistence;
+
+import com.nathan.p2.config.ToolsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WriteBehindTest {
+
+    private static final InsertTable<String> TABLE = InsertTable.<String>builder("test_rows")
+        .column("value", String.class, row -> row)
+        .build();
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final BatchWriter writer = mock(BatchWriter.class);
+    private final List<List<String>> inserted = new CopyOnWriteArrayList<>();
+    private WriteBehind<String> buffer;
+
+    @BeforeEach
+    void setUp() {
+        // Batches containing "bad" fail like a rejected INSERT
+        when(writer.insert(eq(TABLE), anyList())).thenAnswer(invocation -> {
+            List<String> rows = List.copyOf(invocation.getArgument(1));
+            if (rows.contains("bad")) {
+                return Mono.error(new IllegalStateException("constraint violated"));
+            }
+            inserted.add(rows);
+            return Mono.just((long) rows.size());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private WriteBehind<String> buffer(int batchSize, Duration flushInterval) {
+        ToolsConfig.Persistence config = new ToolsConfig.Persistence();
+        config.setBatchSize(batchSize);
+        config.setFlushInterval(flushInterval);
+        buffer = new WriteBehind<>(writer, TABLE, config, new SimpleMeterRegistry());
+        return buffer;
+    }
+
+    @Test
+    void fullBatchesAreInsertedAndTheRestWaitsForAFlush() {
+        WriteBehind<String> buffer = buffer(3, Duration.ofHours(1));
+
+        CompletableFuture<Void> write = buffer.write(List.of("a", "b", "c", "d", "e")).toFuture();
+
+        assertEquals(List.of(List.of("a", "b", "c")), inserted);
+        assertFalse(write.isDone());
+        assertEquals(2, buffer.pending());
+
+        StepVerifier.create(buffer.flush()).verifyComplete();
+
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("d", "e")), inserted);
+        assertTrue(write.isDone());
+        assertFalse(write.isCompletedExceptionally());
+        assertEquals(0, buffer.pending());
+    }
+
+    @Test
+    void rowsOfSeveralWritersShareABatchInOrder() {
+        WriteBehind<String> buffer = buffer(3, Duration.ofHours(1));
+
+        CompletableFuture<Void> first = buffer.write(List.of("a", "b")).toFuture();
+        CompletableFuture<Void> second = buffer.write(List.of("c")).toFuture();
+
+        assertEquals(List.of(List.of("a", "b", "c")), inserted);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    void flushIntervalWritesAPartialBatch() {
+        WriteBehind<String> buffer = buffer(100, Duration.ofMillis(50));
+
+        StepVerifier.create(buffer.write(List.of("a")))
+            .expectComplete()
+            .verify(TIMEOUT);
+
+        assertEquals(List.of(List.of("a")), inserted);
+    }
+
+    @Test
+    void aFailedBatchFailsOnlyTheWritesWithRowsInIt() {
+        WriteBehind<String> buffer = buffer(2, Duration.ofHours(1));
+
+        Mono<Void> failing = buffer.write(List.of("a", "bad"));
+        Mono<Void> spanning = buffer.write(List.of("c", "bad", "e", "f"));
+        Mono<Void> fine = buffer.write(List.of("g", "h"));
+
+        StepVerifier.create(failing)
+            .expectErrorMessage("constraint violated")
+            .verify(TIMEOUT);
+        StepVerifier.create(spanning)
+            .expectErrorMessage("constraint violated")
+            .verify(TIMEOUT);
+        StepVerifier.create(fine).expectComplete().verify(TIMEOUT);
+
+        assertEquals(List.of(List.of("e", "f"), List.of("g", "h")), inserted);
+        assertEquals(0, buffer.pending());
+    }
+
+    @Test
+    void writesAreQueuedOnlyWhenSubscribed() {
+        WriteBehind<String> buffer = buffer(1, Duration.ofHours(1));
+
+        Mono<Void> write = buffer.write(List.of("a"));
+        assertEquals(0, buffer.pending());
+        verify(writer, never()).insert(eq(TABLE), anyList());
+
+        StepVerifier.create(write).expectComplete().verify(TIMEOUT);
+        assertEquals(List.of(List.of("a")), inserted);
+    }
+
+    @Test
+    void emptyWriteCompletesAtOnce() {
+        WriteBehind<String> buffer = buffer(1, Duration.ofHours(1));
+
+        StepVerifier.create(buffer.write(List.of())).verifyComplete();
+        verify(writer, never()).insert(eq(TABLE), anyList());
+    }
+
+    @Test
+    void closeWritesWhatIsQueuedAndRefusesLaterRows() {
+        WriteBehind<String> buffer = buffer(10, Duration.ofHours(1));
+        CompletableFuture<Void> queued = buffer.write(List.of("a", "b")).toFuture();
+
+        buffer.close();
+        this.buffer = null;
+
+        assertEquals(List.of(List.of("a", "b")), inserted);
+        assertTrue(queued.isDone());
+        CompletableFuture<Void> late = buffer.write(List.of("c")).toFuture();
+        StepVerifier.create(buffer.flush()).expectComplete().verify(TIMEOUT);
+        assertTrue(late.isCompletedExceptionally());
+        assertEquals(0, buffer.pending());
+    }
+}
@@ -0,0 +1,179 @@
+package com.nathan.p2.service.process;
+
+import com.nathan.p2.config.ToolsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProcessAdmissionTest {
+
+    private static final String TOOL = "tshark";
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProcessAdmission admission;
+
+    @BeforeEach
+    void setUp() {
+        admission = withLimit(1);
+    }
+
+    private ProcessAdmission withLimit(int maxConcurrent) {
+        ToolsConfig config = new ToolsConfig();
+        ToolsConfig.ToolLimit limit = new ToolsConfig.ToolLimit();
+        limit.setMaxConcurrent(maxConcurrent);
+        config.getProcesses().getTools().put(TOOL, limit);
+        // Gauges are bound to the first admission registering them, so every admission gets its own registry
+        meterRegistry = new SimpleMeterRegistry();
+        return new ProcessAdmission(config, meterRegistry);
+    }
+
+    private double running() {
+        return meterRegistry.get("process.running").tag("tool", TOOL).gauge().value();
+    }
+
+    private double queued() {
+        return meterRegistry.get("process.queued").tag("tool", TOOL).gauge().value();
+    }
+
+    @Test
+    void namesToolsByExecutable() {
+        assertEquals("python", ProcessAdmission.tool("/usr/bin/python3.11"));
+        assertEquals("python", ProcessAdmission.tool("python.exe"));
+        assertEquals("tshark", ProcessAdmission.tool("/usr/bin/tshark"));
+        assertEquals("adb", ProcessAdmission.tool("adb"));
+    }
+
+    @Test
+    void admitsUpToTheLimitThenQueues() {
+        admission = withLimit(2);
+        assertEquals(2, admission.limit(TOOL));
+
+        CompletableFuture<ProcessAdmission.Permit> first = admission.request(TOOL, ToolPriority.BATCH);
+        CompletableFuture<ProcessAdmission.Permit> second = admission.request(TOOL, ToolPriority.BATCH);
+        CompletableFuture<ProcessAdmission.Permit> third = admission.request(TOOL, ToolPriority.BATCH);
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(2, running());
+        assertEquals(1, queued());
+
+        first.join().release();
+        assertTrue(third.isDone());
+        assertEquals(TOOL, third.join().tool());
+        assertEquals(2, running());
+        assertEquals(0, queued());
+    }
+
+    @Test
+    void grantsByPriorityThenArrival() {
+        ProcessAdmission.Permit held = admission.request(TOOL, ToolPriority.INTERACTIVE).join();
+        CompletableFuture<ProcessAdmission.Permit> batchFirst = admission.request(TOOL, ToolPriority.BATCH);
+        CompletableFuture<ProcessAdmission.Permit> interactive = admission.request(TOOL, ToolPriority.INTERACTIVE);
+        CompletableFuture<ProcessAdmission.Permit> batchSecond = admission.request(TOOL, ToolPriority.BATCH);
+
+        held.release();
+        assertTrue(interactive.isDone());
+        assertFalse(batchFirst.isDone());
+
+        interactive.join().release();
+        assertTrue(batchFirst.isDone());
+        assertFalse(batchSecond.isDone());
+
+        batchFirst.join().release();
+        assertTrue(batchSecond.isDone());
+        assertEquals(ToolPriority.BATCH, batchSecond.join().priority());
+    }
+
+    @Test
+    void queuedRequestsDoNotJumpAheadOfWaitingOnes() {
+        admission = withLimit(2);
+        ProcessAdmission.Permit first = admission.request(TOOL, ToolPriority.BATCH).join();
+        admission.request(TOOL, ToolPriority.BATCH).join();
+        CompletableFuture<ProcessAdmission.Permit> waiting = admission.request(TOOL, ToolPriority.INTERACTIVE);
+
+        first.release();
+        assertTrue(waiting.isDone());
+        // Both slots are taken again, so a new request waits
+        assertFalse(admission.request(TOOL, ToolPriority.INTERACTIVE).isDone());
+    }
+
+    @Test
+    void liveIsAdmittedBeyondTheLimit() {
+        ProcessAdmission.Permit held = admission.request(TOOL, ToolPriority.BATCH).join();
+        CompletableFuture<ProcessAdmission.Permit> live = admission.request(TOOL, ToolPriority.LIVE);
+        CompletableFuture<ProcessAdmission.Permit> waiting = admission.request(TOOL, ToolPriority.INTERACTIVE);
+
+        assertTrue(live.isDone());
+        assertEquals(2, running());
+
+        // Still at the limit after the live process ends
+        live.join().release();
+        assertFalse(waiting.isDone());
+
+        held.release();
+        assertTrue(waiting.isDone());
+    }
+
+    @Test
+    void releaseIsIdempotent() {
+        ProcessAdmission.Permit held = admission.request(TOOL, ToolPriority.BATCH).join();
+        CompletableFuture<ProcessAdmission.Permit> next = admission.request(TOOL, ToolPriority.BATCH);
+        CompletableFuture<ProcessAdmission.Permit> after = admission.request(TOOL, ToolPriority.BATCH);
+
+        held.release();
+        held.release();
+
+        assertTrue(next.isDone());
+        assertFalse(after.isDone());
+        assertEquals(1, running());
+    }
+
+    @Test
+    void withdrawnRequestLeavesTheQueue() {
+        ProcessAdmission.Permit held = admission.request(TOOL, ToolPriority.BATCH).join();
+        CompletableFuture<ProcessAdmission.Permit> withdrawn = admission.request(TOOL, ToolPriority.BATCH);
+
+        ProcessAdmission.withdraw(withdrawn);
+        assertTrue(withdrawn.isCancelled());
+        assertEquals(0, queued());
+
+        held.release();
+        assertEquals(0, running());
+        assertTrue(admission.request(TOOL, ToolPriority.BATCH).isDone());
+    }
+
+    @Test
+    void withdrawingAGrantedRequestGivesTheSlotBack() {
+        CompletableFuture<ProcessAdmission.Permit> granted = admission.request(TOOL, ToolPriority.BATCH);
+        assertTrue(granted.isDone());
+
+        ProcessAdmission.withdraw(granted);
+
+        assertEquals(0, running());
+        assertTrue(admission.request(TOOL, ToolPriority.BATCH).isDone());
+    }
+
+    @Test
+    void interruptedAcquireIsWithdrawn() throws InterruptedException {
+        ProcessAdmission.Permit held = admission.acquire(TOOL, ToolPriority.BATCH);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> admission.acquire(TOOL, ToolPriority.BATCH));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(0, queued());
+
+        held.release();
+        assertEquals(0, running());
+    }
+}
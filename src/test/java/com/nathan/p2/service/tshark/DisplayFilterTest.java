@@ -0,0 +1,120 @@
+package com.nathan.p2.service.tshark;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DisplayFilterTest {
+
+    private static DissectedPacket packet(Map<String, String> fields) {
+        return new DissectedPacket(1, 0.0, fields);
+    }
+
+    @Test
+    void fieldPresence() {
+        DisplayFilter filter = DisplayFilter.compile("lte-rrc.measurementReport_element");
+
+        assertTrue(filter.test(packet(Map.of("lte-rrc.measurementReport_element", "1"))));
+        assertFalse(filter.test(packet(Map.of("lte-rrc.measurementReport_element", ""))));
+        assertFalse(filter.test(packet(Map.of())));
+    }
+
+    @Test
+    void equalityComparesHexAndDecimalNumerically() {
+        DisplayFilter filter = DisplayFilter.compile("nas_eps.nas_msg_emm_type == 0x41");
+
+        assertTrue(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x41"))));
+        assertTrue(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "65"))));
+        assertFalse(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x42"))));
+        assertTrue(DisplayFilter.compile("nas_eps.nas_msg_emm_type eq 65")
+            .test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x41"))));
+    }
+
+    @Test
+    void equalityMatchesAnyOccurrence() {
+        DisplayFilter filter = DisplayFilter.compile("nas_eps.nas_msg_emm_type == 0x42");
+
+        assertTrue(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x41,0x42"))));
+    }
+
+    @Test
+    void notEqualNeedsEveryOccurrenceToDiffer() {
+        DisplayFilter filter = DisplayFilter.compile("nas_eps.nas_msg_emm_type != 0x41");
+
+        assertTrue(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x42"))));
+        assertTrue(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x42,0x43"))));
+        assertFalse(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x41"))));
+        assertFalse(filter.test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x41,0x42"))));
+        assertFalse(DisplayFilter.compile("nas_eps.nas_msg_emm_type ne 0x41")
+            .test(packet(Map.of("nas_eps.nas_msg_emm_type", "0x42,0x41"))));
+    }
+
+    @Test
+    void comparisonsOnAbsentFieldNeverMatch() {
+        DissectedPacket empty = packet(Map.of());
+
+        assertFalse(DisplayFilter.compile("rrc.rrc_TransactionIdentifier == 1").test(empty));
+        assertFalse(DisplayFilter.compile("rrc.rrc_TransactionIdentifier != 1").test(empty));
+        assertFalse(DisplayFilter.compile("rrc.rrc_TransactionIdentifier > 1").test(empty));
+        assertFalse(DisplayFilter.compile("rrc.rrc_TransactionIdentifier <= 1").test(empty));
+        assertTrue(DisplayFilter.compile("!(rrc.rrc_TransactionIdentifier == 1)").test(empty));
+    }
+
+    @Test
+    void booleansMatchEitherSpelling() {
+        DissectedPacket uplink = packet(Map.of("gsmtap.uplink", "True"));
+
+        assertTrue(DisplayFilter.compile("gsmtap.uplink == 1").test(uplink));
+        assertTrue(DisplayFilter.compile("gsmtap.uplink == true").test(uplink));
+        assertFalse(DisplayFilter.compile("gsmtap.uplink == 0").test(uplink));
+        assertTrue(DisplayFilter.compile("gsmtap.uplink == True").test(packet(Map.of("gsmtap.uplink", "1"))));
+    }
+
+    @Test
+    void orderingAndContains() {
+        DissectedPacket packet = packet(Map.of("lte-rrc.rsrpResult", "45", "frame.protocols", "eth:ip:udp:gsmtap:lte_rrc"));
+
+        assertTrue(DisplayFilter.compile("lte-rrc.rsrpResult > 40").test(packet));
+        assertTrue(DisplayFilter.compile("lte-rrc.rsrpResult >= 45").test(packet));
+        assertFalse(DisplayFilter.compile("lte-rrc.rsrpResult < 45").test(packet));
+        assertTrue(DisplayFilter.compile("frame.protocols contains \"lte_rrc\"").test(packet));
+        assertFalse(DisplayFilter.compile("frame.protocols contains nr_rrc").test(packet));
+    }
+
+    @Test
+    void logicalOperatorsAndPrecedence() {
+        DissectedPacket setup = packet(Map.of("nr-rrc.rrcSetup", "1"));
+        DissectedPacket complete = packet(Map.of("nr-rrc.rrcSetupComplete", "1"));
+
+        // && binds tighter than ||
+        DisplayFilter filter = DisplayFilter.compile("nr-rrc.rrcSetup || nr-rrc.rrcReject && nr-rrc.rrcSetupComplete");
+        assertTrue(filter.test(setup));
+        assertFalse(filter.test(complete));
+
+        DisplayFilter grouped = DisplayFilter.compile("(nr-rrc.rrcSetup or nr-rrc.rrcSetupComplete) and not nr-rrc.rrcReject");
+        assertTrue(grouped.test(setup));
+        assertTrue(grouped.test(complete));
+        assertFalse(grouped.test(packet(Map.of("nr-rrc.rrcSetup", "1", "nr-rrc.rrcReject", "1"))));
+    }
+
+    @Test
+    void collectsReferencedFields() {
+        DisplayFilter filter = DisplayFilter.compile("a.x == 1 && (b.y || !c.z) && a.x != 2");
+
+        assertEquals(Set.of("a.x", "b.y", "c.z"), filter.fields());
+    }
+
+    @Test
+    void rejectsMalformedFilters() {
+        assertThrows(IllegalArgumentException.class, () -> DisplayFilter.compile("(a.x == 1"));
+        assertThrows(IllegalArgumentException.class, () -> DisplayFilter.compile("a.x == "));
+        assertThrows(IllegalArgumentException.class, () -> DisplayFilter.compile("a.x == \"open"));
+        assertThrows(IllegalArgumentException.class, () -> DisplayFilter.compile("a.x b.y"));
+    }
+}